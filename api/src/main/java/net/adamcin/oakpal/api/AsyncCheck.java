@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Extended marker interface for progress checks that declare themselves read-only and insensitive to the ordering of
+ * their path events relative to the progress of the package importer. When the {@code OakMachine} is built with async
+ * check dispatch enabled, the {@link #importedPath(org.apache.jackrabbit.vault.packaging.PackageId, String,
+ * javax.jcr.Node, PathAction)} and {@link #deletedPath(org.apache.jackrabbit.vault.packaging.PackageId, String,
+ * javax.jcr.Session)} events for this check are deferred, batched, and delivered on a dedicated worker thread, instead
+ * of synchronously from the importer.
+ * <p>
+ * The following guarantees still hold:
+ * <ol>
+ * <li>Path events are delivered to each check in the order they were raised, on a single worker thread.</li>
+ * <li>All path events raised for a package are delivered before any subsequent package-level event, like
+ * {@link #afterExtract(org.apache.jackrabbit.vault.packaging.PackageId, javax.jcr.Session)}, which is always delivered
+ * on the scan thread.</li>
+ * </ol>
+ * <p>
+ * However, the {@link javax.jcr.Node} provided to a path event may reflect repository state written by the importer
+ * after the event was raised, and it may not exist anymore at all.
+ * <p>
+ * The node still belongs to the single JCR session that the importer writes to. To avoid concurrent access to that
+ * session, batched path events are only delivered while the importer is paused, between batches or at the end of a
+ * package extraction, so path events for async checks run in parallel with each other, but not with the importer.
+ * The importer therefore still waits for the slowest async check, and async dispatch only shortens a scan with more
+ * than one slow async check. Handlers must only read from the node and the session, and must not save or refresh the
+ * session.
+ *
+ * @since 2.2.3
+ */
+@ConsumerType
+public interface AsyncCheck extends ProgressCheck {
+
+}
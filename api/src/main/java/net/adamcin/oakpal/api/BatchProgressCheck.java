@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ConsumerType;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.List;
+
+/**
+ * Extended interface for progress checks that receive the path events raised by the package importer in batches,
+ * instead of by individual {@link #importedPath(PackageId, String, Node, PathAction)} and
+ * {@link #deletedPath(PackageId, String, Session)} calls. The {@code OakMachine} does not call those methods for a check
+ * that implements this interface, and it does not look up the imported {@link Node} for each path unless another
+ * check requires it.
+ * <p>
+ * The following guarantees hold:
+ * <ol>
+ * <li>Every batch contains path events raised for a single package, in the order they were raised.</li>
+ * <li>All path events raised for a package are delivered before any subsequent package-level event, like
+ * {@link #afterExtract(PackageId, Session)}.</li>
+ * </ol>
+ * <p>
+ * However, the repository state exposed by the {@code inspectSession} may reflect changes made by the importer after
+ * a path event was raised. Use {@link PathEvent#getNode(Session)} to resolve the node for an event on demand.
+ *
+ * @since 2.2.3
+ */
+@ConsumerType
+public interface BatchProgressCheck extends ProgressCheck {
+
+    /**
+     * Notified with a batch of path events raised by the package importer. An exception thrown by this method is
+     * reported for the path of the first event in the batch.
+     *
+     * @param packageId      the current package
+     * @param pathEvents     the path events, in the order they were raised
+     * @param inspectSession session providing access to repository state
+     * @throws RepositoryException because of access to a {@link Session}
+     */
+    void pathEvents(PackageId packageId, List<PathEvent> pathEvents, Session inspectSession)
+            throws RepositoryException;
+
+    /**
+     * Deliver a batch of path events to a check by calling
+     * {@link ProgressCheck#importedPath(PackageId, String, Node, PathAction)} or
+     * {@link ProgressCheck#deletedPath(PackageId, String, Session)} for each event, as the {@code OakMachine} would for
+     * a check that does not implement this interface.
+     *
+     * @param check          the progress check
+     * @param packageId      the current package
+     * @param pathEvents     the path events
+     * @param inspectSession session providing access to repository state
+     * @throws RepositoryException because of access to a {@link Session}
+     */
+    static void replayPathEvents(final @NotNull ProgressCheck check,
+                                 final PackageId packageId,
+                                 final @NotNull List<PathEvent> pathEvents,
+                                 final Session inspectSession) throws RepositoryException {
+        for (PathEvent pathEvent : pathEvents) {
+            if (pathEvent.getAction() == PathAction.DELETED) {
+                check.deletedPath(packageId, pathEvent.getPath(), inspectSession);
+            } else {
+                final Node node = pathEvent.getNode(inspectSession);
+                if (node != null) {
+                    check.importedPath(packageId, pathEvent.getPath(), node, pathEvent.getAction());
+                }
+            }
+        }
+    }
+
+    /**
+     * A path event record.
+     */
+    final class PathEvent {
+        private final String path;
+        private final PathAction action;
+
+        public PathEvent(final @NotNull String path, final @NotNull PathAction action) {
+            this.path = path;
+            this.action = action;
+        }
+
+        /**
+         * Get the affected path.
+         *
+         * @return the path
+         */
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the reported path action type. Deleted paths are reported as {@link PathAction#DELETED}.
+         *
+         * @return the path action type
+         */
+        public @NotNull PathAction getAction() {
+            return action;
+        }
+
+        /**
+         * Resolve the node at the path, if the action type allows it and the node still exists.
+         *
+         * @param inspectSession session providing access to repository state
+         * @return the node, or null
+         * @throws RepositoryException if the node can not be read
+         */
+        public @Nullable Node getNode(final @NotNull Session inspectSession) throws RepositoryException {
+            if (action.canGetItem() && inspectSession.nodeExists(path)) {
+                return inspectSession.getNode(path);
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return action + " " + path;
+        }
+    }
+}
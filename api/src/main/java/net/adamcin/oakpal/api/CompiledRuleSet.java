@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * An immutable, precompiled form of a list of {@link Rule}s, which returns the same result as
+ * {@link Rules#lastMatch(List, String, Function)}, but which is cheaper to evaluate repeatedly against many values.
+ * <p>
+ * When compiled, the leading literal prefix of each rule pattern (i.e. {@code /apps/} for {@code /apps/.*}) is
+ * extracted and indexed in a character trie. A single pass over the value through the trie selects the rules
+ * whose prefix is satisfied, together with any rules that have no usable prefix, and those candidates are then
+ * evaluated from last to first, so that the first match is returned without evaluating any earlier rules.
+ *
+ * @since 2.2.3
+ */
+public final class CompiledRuleSet {
+    private static final String META_CHARS = "\\[](){}.*+?^$|";
+    private static final String QUANTIFIER_CHARS = "*+?{";
+
+    private final List<Rule> rules;
+    private final Rule defaultRule;
+    private final BitSet unprefixed;
+    private final TrieNode root;
+
+    private CompiledRuleSet(final @NotNull List<Rule> rules, final @NotNull Rule defaultRule) {
+        this.rules = rules;
+        this.defaultRule = defaultRule;
+        this.unprefixed = new BitSet(rules.size());
+        this.root = new TrieNode();
+        for (int i = 0; i < rules.size(); i++) {
+            final String prefix = literalPrefix(rules.get(i));
+            if (prefix == null || prefix.isEmpty()) {
+                unprefixed.set(i);
+            } else {
+                TrieNode node = root;
+                for (int c = 0; c < prefix.length(); c++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(c), key -> new TrieNode());
+                }
+                node.rules.set(i);
+            }
+        }
+    }
+
+    /**
+     * Compile the list of rules, using {@link Rules#fuzzyDefaultInclude(List)} to select the default rule when none
+     * match.
+     *
+     * @param rules a list of rules to match against values. the last one to match, if any, is returned.
+     * @return a new compiled rule set
+     */
+    public static CompiledRuleSet compile(final @Nullable List<Rule> rules) {
+        return compile(rules, Rules::fuzzyDefaultInclude);
+    }
+
+    /**
+     * Compile the list of rules, using the provided selector function to select the default rule when none match.
+     *
+     * @param rules         a list of rules to match against values. the last one to match, if any, is returned.
+     * @param selectDefault a function to select the default rule based on the specified list of rules.
+     * @return a new compiled rule set
+     */
+    public static CompiledRuleSet compile(final @Nullable List<Rule> rules,
+                                          final @Nullable Function<List<Rule>, Rule> selectDefault) {
+        final List<Rule> copy = rules == null
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(rules));
+        final Rule defaultRule = Optional.ofNullable(selectDefault)
+                .map(func -> func.apply(copy))
+                .orElse(Rules.DEFAULT_INCLUDE);
+        return new CompiledRuleSet(copy, defaultRule);
+    }
+
+    /**
+     * Get the compiled rules.
+     *
+     * @return the unmodifiable list of rules
+     */
+    public @NotNull List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Get the rule that is returned when none of the rules match.
+     *
+     * @return the default rule
+     */
+    public @NotNull Rule getDefaultRule() {
+        return defaultRule;
+    }
+
+    /**
+     * Evaluate the compiled rules against the String value.
+     *
+     * @param value the string value to match against.
+     * @return the last rule in the list that matches the value, or the default rule
+     * @see Rules#lastMatch(List, String, Function)
+     */
+    public @NotNull Rule lastMatch(final @NotNull String value) {
+        if (rules.isEmpty()) {
+            return defaultRule;
+        }
+        final BitSet candidates = (BitSet) unprefixed.clone();
+        TrieNode node = root;
+        for (int c = 0; c < value.length(); c++) {
+            node = node.children.get(value.charAt(c));
+            if (node == null) {
+                break;
+            }
+            candidates.or(node.rules);
+        }
+        for (int i = candidates.previousSetBit(rules.size() - 1); i >= 0; i = candidates.previousSetBit(i - 1)) {
+            final Rule rule = rules.get(i);
+            if (rule.matches(value)) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    /**
+     * Extract the literal prefix that every value must start with to fully match the rule pattern. Returns null if the
+     * rule is not a plain {@link Rule}, whose {@link Rule#matches(String)} method may be overridden, or if the pattern
+     * has flags or alternations that make the prefix unreliable.
+     *
+     * @param rule the rule
+     * @return the literal prefix or null
+     */
+    static @Nullable String literalPrefix(final @NotNull Rule rule) {
+        if (rule.getClass() != Rule.class || rule.getPattern().flags() != 0) {
+            return null;
+        }
+        final String regex = rule.getPattern().pattern();
+        if (regex.indexOf('|') >= 0) {
+            return null;
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int lastLiteral = 0;
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final int cp = regex.codePointAt(i);
+            if (cp == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    // character class, back reference, or quoting construct
+                    break;
+                }
+                lastLiteral = prefix.length();
+                prefix.append(regex.charAt(i + 1));
+                i += 2;
+            } else if (META_CHARS.indexOf(cp) >= 0) {
+                if (QUANTIFIER_CHARS.indexOf(cp) >= 0) {
+                    // the quantifier applies to the preceding literal, so it can't be part of the prefix
+                    prefix.setLength(lastLiteral);
+                }
+                break;
+            } else {
+                lastLiteral = prefix.length();
+                prefix.appendCodePoint(cp);
+                i += Character.charCount(cp);
+            }
+        }
+        return prefix.toString();
+    }
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private final BitSet rules = new BitSet();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ConsumerType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extended interface for progress checks that only need path events for a subset of the repository. The
+ * {@code OakMachine} does not call {@link #importedPath(org.apache.jackrabbit.vault.packaging.PackageId, String,
+ * javax.jcr.Node, PathAction)} or {@link #deletedPath(org.apache.jackrabbit.vault.packaging.PackageId, String,
+ * javax.jcr.Session)} for a path that is not accepted by {@link #isInterestedInPath(String)}, and it does not look up
+ * the imported {@link javax.jcr.Node} at all when no check is interested in the path.
+ * <p>
+ * When every check that receives individual path events is a path interest check, the {@code OakMachine} passes a
+ * lazy node to {@code importedPath}, which is only looked up when a check first calls one of its methods other than
+ * {@link javax.jcr.Node#getPath()}. The importer also reports imported property paths, so a path interest check may
+ * receive a path that is not a node, and its lazy node throws a {@link javax.jcr.PathNotFoundException} when used.
+ * That failure is also reported to the error listener. Imported paths that are never looked up are not reported.
+ * <p>
+ * By default, the path interest is declared as a list of {@link RuleType#INCLUDE} and {@link RuleType#EXCLUDE} path
+ * rules, evaluated by {@link Rules#lastMatch(List, String)}. A check that is configured with a
+ * {@link org.apache.jackrabbit.vault.fs.api.WorkspaceFilter} may instead override {@link #isInterestedInPath(String)}
+ * to return {@code filter.covers(path)}.
+ *
+ * @since 2.2.3
+ */
+@ConsumerType
+public interface PathInterestCheck extends ProgressCheck {
+
+    /**
+     * Get the list of path rules that determine which paths this check receives events for. An empty list means that
+     * the check is interested in all paths.
+     *
+     * @return the list of path interest rules
+     */
+    default @NotNull List<Rule> getPathInterestRules() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns true if the check should receive path events for the path.
+     *
+     * @param path the affected path
+     * @return true if the check is interested in the path
+     */
+    default boolean isInterestedInPath(final @NotNull String path) {
+        final List<Rule> rules = getPathInterestRules();
+        return rules.isEmpty() || Rules.lastMatch(rules, path).isInclude();
+    }
+}
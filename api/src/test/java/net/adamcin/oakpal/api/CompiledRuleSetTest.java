@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CompiledRuleSetTest {
+
+    private static Rule rule(final RuleType type, final String regex) {
+        return new Rule(type, Pattern.compile(regex));
+    }
+
+    private static Rule rule(final RuleType type, final String regex, final int flags) {
+        return new Rule(type, Pattern.compile(regex, flags));
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("/apps/", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/.*")));
+        assertEquals("/apps/", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "^/apps/.*")));
+        assertEquals("/apps/foo", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/foo")));
+        assertEquals("/apps/fo", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/foo?")));
+        assertEquals("/apps/fo", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/foo*")));
+        assertEquals("/apps/fo", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/foo{2}")));
+        assertEquals("/apps", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps\\.?")));
+        assertEquals("/apps.", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps\\.\\d")));
+        assertEquals("/apps/", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/(foo)")));
+        assertEquals("/apps/", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/[a-z]+")));
+        assertEquals("", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, ".*")));
+        assertEquals("", CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "(/apps)?/.*")));
+        assertNull(CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "(?i)/apps/.*")));
+        assertNull(CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/.*|/libs/.*")));
+        assertNull(CompiledRuleSet.literalPrefix(rule(RuleType.ALLOW, "/apps/.*", Pattern.CASE_INSENSITIVE)));
+        assertNull(CompiledRuleSet.literalPrefix(new Rule(RuleType.ALLOW, Pattern.compile("/apps/.*")) {
+            @Override
+            public boolean matches(final String value) {
+                return true;
+            }
+        }));
+    }
+
+    @Test
+    public void testCompile_defaults() {
+        assertSame("expect default include", Rules.DEFAULT_INCLUDE,
+                CompiledRuleSet.compile(null).lastMatch("/foo"));
+        assertSame("expect default include for null selector", Rules.DEFAULT_INCLUDE,
+                CompiledRuleSet.compile(Collections.emptyList(), null).lastMatch("/foo"));
+        final List<Rule> rules = Collections.singletonList(rule(RuleType.INCLUDE, "/apps/.*"));
+        assertSame("expect fuzzy default exclude", Rules.DEFAULT_EXCLUDE,
+                CompiledRuleSet.compile(rules).getDefaultRule());
+        assertSame("expect fuzzy default deny", Rules.DEFAULT_EXCLUDE,
+                CompiledRuleSet.compile(rules, Rules::fuzzyDefaultDeny).getDefaultRule());
+        assertSame("expect default exclude", Rules.DEFAULT_EXCLUDE,
+                CompiledRuleSet.compile(rules).lastMatch("/libs/foo"));
+    }
+
+    @Test
+    public void testGetRules() {
+        final List<Rule> rules = new ArrayList<>(Arrays.asList(
+                rule(RuleType.INCLUDE, "/apps/.*"),
+                rule(RuleType.EXCLUDE, "/apps/foo")));
+        final CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+        rules.clear();
+        assertEquals("expect copy of rules", 2, ruleSet.getRules().size());
+    }
+
+    @Test
+    public void testLastMatch_sameAsRules() {
+        final List<Rule> rules = Arrays.asList(
+                rule(RuleType.DENY, "/.*"),
+                rule(RuleType.ALLOW, "/apps(/.*)?"),
+                rule(RuleType.DENY, "/apps/foo?"),
+                rule(RuleType.ALLOW, "/apps/fo+/bar"),
+                rule(RuleType.DENY, ".*/jcr:content/.*"),
+                rule(RuleType.ALLOW, "/apps/.*|/libs/.*"),
+                rule(RuleType.DENY, "/libs/.*", Pattern.CASE_INSENSITIVE),
+                rule(RuleType.ALLOW, "/content/dam/[^/]+"),
+                rule(RuleType.DENY, "/content/dam/x"));
+        final CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+        final List<String> values = Arrays.asList("", "/", "/apps", "/apps/", "/apps/fo", "/apps/foo",
+                "/apps/fooo/bar", "/apps/fo/bar", "/apps/foo/jcr:content/bar", "/libs/foo", "/LIBS/foo",
+                "/content", "/content/dam/x", "/content/dam/y", "/content/dam/x/y", "/etc", "relative");
+        for (String value : values) {
+            assertSame("expect same rule for " + value,
+                    Rules.lastMatch(rules, value), ruleSet.lastMatch(value));
+        }
+    }
+
+    @Test
+    public void testLastMatch_lastWins() {
+        final Rule first = rule(RuleType.EXCLUDE, "/apps/.*");
+        final Rule second = rule(RuleType.INCLUDE, "/apps/foo/.*");
+        final Rule third = rule(RuleType.EXCLUDE, ".*");
+        final CompiledRuleSet ruleSet = CompiledRuleSet.compile(Arrays.asList(first, second));
+        assertSame("expect second", second, ruleSet.lastMatch("/apps/foo/bar"));
+        assertSame("expect first", first, ruleSet.lastMatch("/apps/bar"));
+        assertSame("expect default", Rules.DEFAULT_INCLUDE, ruleSet.lastMatch("/libs/bar"));
+        assertSame("expect third", third,
+                CompiledRuleSet.compile(Arrays.asList(first, second, third)).lastMatch("/apps/foo/bar"));
+    }
+}
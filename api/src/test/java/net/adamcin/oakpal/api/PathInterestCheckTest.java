@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathInterestCheckTest {
+
+    private static PathInterestCheck withRules(final List<Rule> rules) {
+        return new PathInterestCheck() {
+            @Override
+            public @NotNull List<Rule> getPathInterestRules() {
+                return rules;
+            }
+
+            @Override
+            public Collection<Violation> getReportedViolations() {
+                return Collections.emptyList();
+            }
+        };
+    }
+
+    @Test
+    public void testIsInterestedInPath() {
+        final PathInterestCheck allPaths = withRules(Collections.emptyList());
+        assertTrue("expect interest in all paths", allPaths.isInterestedInPath("/content/foo"));
+
+        final PathInterestCheck appsOnly = withRules(Arrays.asList(
+                new Rule(RuleType.INCLUDE, Pattern.compile("/apps(/.*)?")),
+                new Rule(RuleType.EXCLUDE, Pattern.compile("/apps/system(/.*)?"))));
+        assertTrue("expect interest in /apps", appsOnly.isInterestedInPath("/apps/foo"));
+        assertFalse("expect no interest in /apps/system", appsOnly.isInterestedInPath("/apps/system/foo"));
+        assertFalse("expect no interest in /content", appsOnly.isInterestedInPath("/content/foo"));
+
+        final PathInterestCheck notContent = withRules(Collections.singletonList(
+                new Rule(RuleType.EXCLUDE, Pattern.compile("/content(/.*)?"))));
+        assertTrue("expect interest in /apps", notContent.isInterestedInPath("/apps/foo"));
+        assertFalse("expect no interest in /content", notContent.isInterestedInPath("/content/foo"));
+    }
+}
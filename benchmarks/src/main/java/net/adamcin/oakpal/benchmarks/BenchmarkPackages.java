@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Resolves the package files scanned by the benchmarks. The {@code caliper} source is the
+ * {@code oakpal-caliper.all} package copied by the build, and {@code synthetic-<count>} sources are generated on
+ * first use with {@code count} items under a single {@code /synthetic} filter root, using
+ * {@link TestPackageUtil#prepareTestPackageFromFolder(String, File)}.
+ */
+public final class BenchmarkPackages {
+    public static final String SOURCE_CALIPER = "caliper";
+    public static final String PREFIX_SYNTHETIC = "synthetic-";
+    static final int ITEMS_PER_GROUP = 100;
+
+    private BenchmarkPackages() {
+        /* no instantiation */
+    }
+
+    /**
+     * Resolve a package file for the named source.
+     *
+     * @param source {@code caliper} or {@code synthetic-<count>}
+     * @return the package file
+     * @throws IOException if the package can't be found or generated
+     */
+    public static File getPackage(final @NotNull String source) throws IOException {
+        if (SOURCE_CALIPER.equals(source)) {
+            final File caliper = TestPackageUtil.getCaliperPackage();
+            if (!caliper.isFile()) {
+                throw new IOException("caliper package not found at " + caliper.getAbsolutePath()
+                        + ". run the benchmarks from the benchmarks module directory after mvn -Pbenchmarks package");
+            }
+            return caliper;
+        } else if (source.startsWith(PREFIX_SYNTHETIC)) {
+            return getSyntheticPackage(Integer.parseInt(source.substring(PREFIX_SYNTHETIC.length())));
+        }
+        throw new IllegalArgumentException("unknown package source: " + source);
+    }
+
+    /**
+     * Build (or reuse) a synthetic package with the specified number of items.
+     *
+     * @param itemCount the number of items to import
+     * @return the package file
+     * @throws IOException if the package can't be generated
+     */
+    public static File getSyntheticPackage(final int itemCount) throws IOException {
+        final String name = PREFIX_SYNTHETIC + itemCount;
+        final File srcFolder = new File("target/benchmark-packages/" + name);
+        if (!srcFolder.isDirectory()) {
+            writeSyntheticContent(srcFolder, name, itemCount);
+        }
+        return TestPackageUtil.prepareTestPackageFromFolder(name + ".zip", srcFolder);
+    }
+
+    static void writeSyntheticContent(final @NotNull File srcFolder, final @NotNull String name,
+                                      final int itemCount) throws IOException {
+        final File vaultDir = new File(srcFolder, "META-INF/vault");
+        write(new File(vaultDir, "filter.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<workspaceFilter version=\"1.0\">\n"
+                + "    <filter root=\"/synthetic\"/>\n"
+                + "</workspaceFilter>\n");
+        write(new File(vaultDir, "properties.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+                + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                + "<properties>\n"
+                + "    <entry key=\"group\">oakpal-benchmarks</entry>\n"
+                + "    <entry key=\"name\">" + name + "</entry>\n"
+                + "    <entry key=\"version\">1.0</entry>\n"
+                + "    <entry key=\"packageFormatVersion\">2</entry>\n"
+                + "</properties>\n");
+        final File rootDir = new File(srcFolder, "jcr_root/synthetic");
+        write(new File(rootDir, ".content.xml"), unstructured(""));
+        for (int i = 0; i < itemCount; i++) {
+            final File groupDir = new File(rootDir, "group-" + (i / ITEMS_PER_GROUP));
+            if (i % ITEMS_PER_GROUP == 0) {
+                write(new File(groupDir, ".content.xml"), unstructured(""));
+            }
+            write(new File(new File(groupDir, "item-" + i), ".content.xml"), unstructured(
+                    "    title=\"item-" + i + "\"\n"
+                            + "    index=\"{Long}" + i + "\">\n"
+                            + "    <jcr:content\n"
+                            + "        jcr:primaryType=\"nt:unstructured\"\n"
+                            + "        description=\"synthetic item\"\n"
+                            + "        tags=\"[one,two,three]\"/>\n"));
+        }
+    }
+
+    private static String unstructured(final @NotNull String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\"\n"
+                + "    jcr:primaryType=\"nt:unstructured\""
+                + (body.isEmpty() ? "/>\n" : "\n" + body + "</jcr:root>\n");
+    }
+
+    private static void write(final @NotNull File file, final @NotNull String content) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("failed to create directory " + file.getParentFile().getAbsolutePath());
+        }
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.api.Rule;
+import net.adamcin.oakpal.api.RuleType;
+import net.adamcin.oakpal.core.AbortedScanException;
+import net.adamcin.oakpal.core.CheckReport;
+import net.adamcin.oakpal.core.CheckSpec;
+import net.adamcin.oakpal.core.DefaultErrorListener;
+import net.adamcin.oakpal.core.OakMachine;
+import net.adamcin.oakpal.core.OakpalPlan;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.json.JsonObject;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static net.adamcin.oakpal.api.JavaxJson.arr;
+import static net.adamcin.oakpal.api.JavaxJson.key;
+import static net.adamcin.oakpal.api.JavaxJson.obj;
+
+/**
+ * Scans a package with a plan containing a single built-in check from {@code net.adamcin.oakpal.core.checks}, so
+ * that the cost of each check can be compared against the {@code empty} plan in {@link ScanBenchmark}.
+ * {@code Echo} is not included, because it only prints every event to stdout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CheckBenchmark {
+
+    @Param({"AcHandling", "CompositeStoreAlignment", "ExpectAces", "ExpectPaths", "FilterSets", "JcrProperties",
+            "Overlaps", "PackageGraph", "Paths", "SlingJcrInstaller", "Subpackages"})
+    public String check;
+
+    @Param({BenchmarkPackages.SOURCE_CALIPER, "synthetic-10000"})
+    public String packageSource;
+
+    private OakMachine machine;
+    private List<File> packages;
+
+    /**
+     * Select a config for the named check which exercises its per-path logic.
+     *
+     * @param check the simple name of the check class
+     * @return the check config
+     */
+    static JsonObject configFor(final @NotNull String check) {
+        switch (check) {
+            case "Paths":
+                return obj().key("rules", arr(
+                        new Rule(RuleType.DENY, Pattern.compile("/etc(/.*)?")),
+                        new Rule(RuleType.DENY, Pattern.compile("/libs(/.*)?")),
+                        new Rule(RuleType.ALLOW, Pattern.compile("/libs/settings(/.*)?")))).get();
+            case "JcrProperties":
+                return obj()
+                        .key("scopePaths", arr(new Rule(RuleType.INCLUDE, Pattern.compile("/(apps|synthetic)/.*"))))
+                        .key("properties", arr(
+                                key("name", "jcr:title").key("denyIfMultivalued", true),
+                                key("name", "tags").key("valueRules",
+                                        arr(new Rule(RuleType.DENY, Pattern.compile("four"))))))
+                        .get();
+            case "ExpectPaths":
+                return obj().key("expectedPaths", arr("/synthetic", "/apps")).get();
+            default:
+                return obj().get();
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        final OakpalPlan plan = OakpalPlan.fromJson(obj()
+                .key(OakpalPlan.keys().checks(), arr(
+                        key(CheckSpec.keys().name(), check)
+                                .key(CheckSpec.keys().impl(), "net.adamcin.oakpal.core.checks." + check)
+                                .key(CheckSpec.keys().config(), configFor(check))))
+                .get());
+        machine = plan.toOakMachineBuilder(new DefaultErrorListener(), getClass().getClassLoader()).build();
+        packages = Collections.singletonList(BenchmarkPackages.getPackage(packageSource));
+    }
+
+    @Benchmark
+    public List<CheckReport> scanWithCheck() throws AbortedScanException {
+        return machine.scanPackages(packages);
+    }
+}
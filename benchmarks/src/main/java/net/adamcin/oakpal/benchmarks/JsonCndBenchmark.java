@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.core.JsonCnd;
+import org.apache.jackrabbit.spi.QNodeTypeDefinition;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceMapping;
+import org.apache.jackrabbit.vault.fs.spi.NodeTypeSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.json.JsonObject;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link JsonCnd} conversion between CND, qualified node type definitions, and JSON, using the bundled
+ * {@code benchmark.cnd} resource.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCndBenchmark {
+
+    private URL cndUrl;
+    private NamespaceMapping mapping;
+    private List<QNodeTypeDefinition> nodeTypes;
+    private JsonObject json;
+
+    @Setup
+    public void setup() {
+        cndUrl = getClass().getResource("benchmark.cnd");
+        final NodeTypeSet nodeTypeSet = JsonCnd.readNodeTypes(JsonCnd.BUILTIN_MAPPINGS,
+                Collections.singletonList(cndUrl)).get(0).getOrElse(() -> {
+            throw new IllegalStateException("failed to read " + cndUrl);
+        });
+        mapping = nodeTypeSet.getNamespaceMapping();
+        nodeTypes = new ArrayList<>(nodeTypeSet.getNodeTypes().values());
+        json = JsonCnd.toJson(nodeTypes, mapping);
+    }
+
+    @Benchmark
+    public Object readCnd() {
+        return JsonCnd.readNodeTypes(JsonCnd.BUILTIN_MAPPINGS, Collections.singletonList(cndUrl));
+    }
+
+    @Benchmark
+    public List<QNodeTypeDefinition> getQTypesFromJson() {
+        return JsonCnd.getQTypesFromJson(json, mapping);
+    }
+
+    @Benchmark
+    public JsonObject toJson() {
+        return JsonCnd.toJson(nodeTypes, mapping);
+    }
+}
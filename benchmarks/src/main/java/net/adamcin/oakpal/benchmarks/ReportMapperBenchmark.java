@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.api.Violation;
+import net.adamcin.oakpal.core.CheckReport;
+import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.core.SimpleReport;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ReportMapper} JSON serialization and deserialization of check reports.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportMapperBenchmark {
+    static final int REPORT_COUNT = 10;
+
+    @Param({"10", "1000"})
+    public int violationsPerReport;
+
+    private List<CheckReport> reports;
+    private String json;
+
+    @Setup
+    public void setup() throws IOException {
+        final PackageId packageId = PackageId.fromString("oakpal-benchmarks:synthetic:1.0");
+        reports = new ArrayList<>(REPORT_COUNT);
+        for (int r = 0; r < REPORT_COUNT; r++) {
+            final List<Violation> violations = new ArrayList<>(violationsPerReport);
+            for (int v = 0; v < violationsPerReport; v++) {
+                violations.add(new SimpleViolation(Severity.values()[v % Severity.values().length],
+                        "imported path /synthetic/group-" + r + "/item-" + v + " matches deny pattern /synthetic/.*",
+                        packageId));
+            }
+            reports.add(new SimpleReport("check-" + r, violations));
+        }
+        json = writeReports();
+    }
+
+    @Benchmark
+    public String writeReports() throws IOException {
+        final StringWriter writer = new StringWriter();
+        ReportMapper.writeReports(reports, () -> writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public List<CheckReport> readReports() throws IOException {
+        return ReportMapper.readReports(() -> new StringReader(json));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.api.CompiledRuleSet;
+import net.adamcin.oakpal.api.Rule;
+import net.adamcin.oakpal.api.RuleType;
+import net.adamcin.oakpal.api.Rules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link Rules#lastMatch(List, String)} with {@link CompiledRuleSet#lastMatch(String)} for a mix of
+ * literal-prefix and unanchored rule patterns, evaluated against a fixed set of repository paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RulesBenchmark {
+    static final int PATH_COUNT = 1000;
+    static final String[] ROOTS = {"/apps", "/libs", "/content", "/conf", "/etc", "/home", "/var", "/oak:index"};
+
+    @Param({"10", "50"})
+    public int ruleCount;
+
+    private List<Rule> rules;
+    private CompiledRuleSet compiled;
+    private String[] paths;
+
+    @Setup
+    public void setup() {
+        rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            final String root = ROOTS[i % ROOTS.length];
+            final RuleType type = i % 2 == 0 ? RuleType.DENY : RuleType.ALLOW;
+            if (i % 5 == 4) {
+                rules.add(new Rule(type, Pattern.compile(".*/jcr:content/item-" + i + "(/.*)?")));
+            } else {
+                rules.add(new Rule(type, Pattern.compile(root + "/project-" + i + "(/.*)?")));
+            }
+        }
+        compiled = CompiledRuleSet.compile(rules);
+        paths = new String[PATH_COUNT];
+        for (int i = 0; i < PATH_COUNT; i++) {
+            paths[i] = ROOTS[i % ROOTS.length] + "/project-" + (i % (ruleCount * 2))
+                    + "/jcr:content/item-" + (i % 7);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATH_COUNT)
+    public void rulesLastMatch(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(Rules.lastMatch(rules, path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATH_COUNT)
+    public void compiledRuleSetLastMatch(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(compiled.lastMatch(path));
+        }
+    }
+}
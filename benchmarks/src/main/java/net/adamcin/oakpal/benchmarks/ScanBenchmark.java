@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.benchmarks;
+
+import net.adamcin.oakpal.core.AbortedScanException;
+import net.adamcin.oakpal.core.CheckReport;
+import net.adamcin.oakpal.core.DefaultErrorListener;
+import net.adamcin.oakpal.core.OakMachine;
+import net.adamcin.oakpal.core.OakpalPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link OakMachine#scanPackages(List)} benchmark, including repository initialization, package
+ * installation, and check event handling, for the empty plan and for the basic plan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    @Param({BenchmarkPackages.SOURCE_CALIPER, "synthetic-1000", "synthetic-10000"})
+    public String packageSource;
+
+    @Param({"empty", "basic"})
+    public String plan;
+
+    private OakMachine machine;
+    private List<File> packages;
+
+    @Setup
+    public void setup() throws Exception {
+        final URL planUrl = "basic".equals(plan) ? OakpalPlan.BASIC_PLAN_URL : OakpalPlan.EMPTY_PLAN_URL;
+        final OakpalPlan oakpalPlan = OakpalPlan.fromJson(planUrl).getOrElse(() -> {
+            throw new IllegalStateException("failed to read plan " + planUrl);
+        });
+        machine = oakpalPlan.toOakMachineBuilder(new DefaultErrorListener(), getClass().getClassLoader()).build();
+        packages = Collections.singletonList(BenchmarkPackages.getPackage(packageSource));
+    }
+
+    @Benchmark
+    public List<CheckReport> scanPackages() throws AbortedScanException {
+        return machine.scanPackages(packages);
+    }
+}
@@ -18,31 +18,76 @@ package net.adamcin.oakpal.cli;
 
 import net.adamcin.oakpal.core.CheckReport;
 import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.core.ScanMetrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static net.adamcin.oakpal.api.Fun.compose1;
 
-class AllReportsMessage implements StructuredMessage {
+class AllReportsMessage implements StreamedJson.Message {
 
     private final List<CheckReport> reports;
+    private final ScanMetrics metrics;
 
     AllReportsMessage(final @NotNull List<CheckReport> reports) {
+        this(reports, null);
+    }
+
+    AllReportsMessage(final @NotNull List<CheckReport> reports, final @Nullable ScanMetrics metrics) {
         this.reports = reports;
+        this.metrics = metrics;
     }
 
     @Override
     public String toString() {
-        return reports.stream()
+        final String reportsString = reports.stream()
                 .map(compose1(ReportMessage::new, ReportMessage::toString))
                 .collect(Collectors.joining(System.lineSeparator()));
+        if (metrics == null) {
+            return reportsString;
+        }
+        return reportsString + System.lineSeparator() + metricsToString(metrics);
+    }
+
+    static String metricsToString(final @NotNull ScanMetrics metrics) {
+        StringWriter sw = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(sw)) {
+            writer.println("metrics: phases");
+            printTimers(writer, metrics.getPhases());
+            writer.println("metrics: checks");
+            printTimers(writer, metrics.getCheckTotals());
+            writer.println("metrics: extracts");
+            printTimers(writer, metrics.getExtracts());
+            if (!metrics.getSubpackages().isEmpty()) {
+                writer.println("metrics: subpackages");
+                printTimers(writer, metrics.getSubpackages());
+            }
+        }
+        return sw.toString().trim();
+    }
+
+    private static void printTimers(final @NotNull PrintWriter writer,
+                                    final @NotNull Map<String, ScanMetrics.Timer> timers) {
+        timers.forEach((name, timer) ->
+                writer.println(String.format(" +- %s: %.3f ms (%d)", name, timer.getTotalMillis(), timer.getCount())));
     }
 
     @Override
     public JsonObject toJson() {
-        return ReportMapper.reportsToJsonObject(reports);
+        return ReportMapper.reportsToJsonObject(reports, metrics);
+    }
+
+    @Override
+    public void writeJson(final @NotNull Writer writer) throws IOException {
+        ReportMapper.writeReports(reports, metrics, writer);
     }
 }
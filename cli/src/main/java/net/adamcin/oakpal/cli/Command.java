@@ -6,12 +6,16 @@ import net.adamcin.oakpal.api.Severity;
 import net.adamcin.oakpal.api.Violation;
 import net.adamcin.oakpal.core.CheckReport;
 import net.adamcin.oakpal.core.DefaultErrorListener;
+import net.adamcin.oakpal.core.ErrorListener;
 import net.adamcin.oakpal.core.FileBlobMemoryNodeStore;
 import net.adamcin.oakpal.core.OakMachine;
 import net.adamcin.oakpal.core.OakpalPlan;
+import net.adamcin.oakpal.core.ScanMetrics;
+import net.adamcin.oakpal.core.SegmentTarScanNodeStore;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +30,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -50,6 +55,13 @@ final class Command {
     static final Integer EXIT_MINOR_VIOLATION = 12;
 
     IO<Integer> perform(final @NotNull Console console, final @NotNull String[] args) {
+        return perform(console, args, (scanConsole, opts) -> opts.getDaemonPort() != null
+                ? new Daemon(this, scanConsole).serve(opts.getDaemonPort(), opts.getCacheDir())
+                : doScan(scanConsole, opts));
+    }
+
+    IO<Integer> perform(final @NotNull Console console, final @NotNull String[] args,
+                        final @NotNull BiFunction<Console, Options, IO<Integer>> scanner) {
         final Result<Options> optsResult = parseArgs(console, args);
         if (optsResult.isFailure()) {
             return console.printLineErr(optsResult.getError().get().getMessage())
@@ -63,32 +75,52 @@ final class Command {
             } else if (opts.isJustVersion()) {
                 return printVersion(console::printLine).add(IO.unit(0));
             } else {
-                return doScan(console, opts);
+                return scanner.apply(console, opts);
             }
         }
     }
 
     Supplier<NodeStore> getNodeStoreSupplier(final @NotNull Options opts) {
-        if (opts.isStoreBlobs()) {
+        return getNodeStoreSupplier(opts, false);
+    }
+
+    Supplier<NodeStore> getNodeStoreSupplier(final @NotNull Options opts, final boolean planSegmentStore) {
+        if (opts.isSegmentStore() || (planSegmentStore && !opts.isStoreBlobs())) {
+            return SegmentTarScanNodeStore.supplier(opts.getCacheDir().toPath().resolve("segments").toFile());
+        } else if (opts.isStoreBlobs()) {
             return () -> new FileBlobMemoryNodeStore(
-                    opts.getCacheDir().toPath().resolve("blobs").toFile().getAbsolutePath());
+                    opts.getCacheDir().toPath().resolve("blobs").toFile().getAbsolutePath(),
+                    opts.getBlobStoreMaxSize());
         } else {
             return MemoryNodeStore::new;
         }
     }
 
     IO<Integer> doScan(final @NotNull Console console, final @NotNull Options opts) {
+        final ScanMetrics metrics = opts.isMetrics() ? new ScanMetrics() : null;
+        return doScan(console, opts, metrics,
+                getOakMachineBuilder(opts, new DefaultErrorListener(), metrics).map(OakMachine.Builder::build));
+    }
+
+    Result<OakMachine.Builder> getOakMachineBuilder(final @NotNull Options opts,
+                                                    final @NotNull ErrorListener errorListener,
+                                                    final @Nullable ScanMetrics metrics) {
         final ClassLoader cl = opts.getScanClassLoader();
         final URL planUrl = opts.getPlanUrl();
+        return OakpalPlan.fromJson(planUrl)
+                .map(opts::applyOverrides)
+                .flatMap(result1(plan ->
+                        plan.toOakMachineBuilder(errorListener, cl)
+                                .withNodeStoreSupplier(getNodeStoreSupplier(opts, plan.isSegmentStore()))
+                                .withScanMetrics(metrics)));
+    }
 
+    IO<Integer> doScan(final @NotNull Console console, final @NotNull Options opts,
+                       final @Nullable ScanMetrics metrics, final @NotNull Result<OakMachine> oakResult) {
         /* ------------ */
         /* perform scan */
         /* ------------ */
-        final Result<List<CheckReport>> scanResult = OakpalPlan.fromJson(planUrl)
-                .flatMap(result1(plan ->
-                        opts.applyOverrides(plan).toOakMachineBuilder(new DefaultErrorListener(), cl)
-                                .withNodeStoreSupplier(getNodeStoreSupplier(opts))))
-                .map(OakMachine.Builder::build).flatMap(oak -> runOakScan(opts, oak));
+        final Result<List<CheckReport>> scanResult = oakResult.flatMap(oak -> runOakScan(opts, oak));
 
         if (scanResult.isFailure()) {
             return console.printLineErr(scanResult.teeLogError().getError().get().getMessage())
@@ -96,7 +128,7 @@ final class Command {
         } else {
             final List<CheckReport> reports = scanResult.getOrDefault(Collections.emptyList());
             final Optional<Integer> highestSeverity = getHighestReportSeverity(opts, reports);
-            return printReports(reports, opts.getPrinter()).add(IO.unit(highestSeverity.orElse(0)));
+            return printReports(reports, metrics, opts.getPrinter()).add(IO.unit(highestSeverity.orElse(0)));
         }
     }
 
@@ -126,7 +158,13 @@ final class Command {
 
     IO<Nothing> printReports(final @NotNull List<CheckReport> reports,
                              final @NotNull Function<StructuredMessage, IO<Nothing>> linePrinter) {
-        return linePrinter.apply(new AllReportsMessage(reports));
+        return printReports(reports, null, linePrinter);
+    }
+
+    IO<Nothing> printReports(final @NotNull List<CheckReport> reports,
+                             final @Nullable ScanMetrics metrics,
+                             final @NotNull Function<StructuredMessage, IO<Nothing>> linePrinter) {
+        return linePrinter.apply(new AllReportsMessage(reports, metrics));
     }
 
     IO<Nothing> printHelp(final @NotNull Function<Object, IO<Nothing>> linePrinter) {
@@ -191,6 +229,42 @@ final class Command {
                 case "--outfile":
                     builder.setOutFile(isNoOpt ? null : console.getCwd().toPath().resolve(args[++i]).toFile());
                     break;
+                case "-bm":
+                case "--blob-store-max-size":
+                    if (isNoOpt) {
+                        builder.setBlobStoreMaxSize(0L);
+                    } else {
+                        final String maxSizeArg = args[++i];
+                        final Result<Long> maxSizeResult = result1((String value) -> Long.valueOf(value))
+                                .apply(maxSizeArg);
+                        if (maxSizeResult.isFailure()) {
+                            return Result.failure(maxSizeResult.getError().get());
+                        }
+                        maxSizeResult.forEach(builder::setBlobStoreMaxSize);
+                    }
+                    break;
+                case "-ss":
+                case "--segment-store":
+                    builder.setSegmentStore(!isNoOpt);
+                    break;
+                case "-d":
+                case "--daemon":
+                    if (isNoOpt) {
+                        builder.setDaemonPort(null);
+                    } else {
+                        final String portArg = args[++i];
+                        final Result<Integer> portResult = result1((String value) -> Integer.valueOf(value))
+                                .apply(portArg);
+                        if (portResult.isFailure()) {
+                            return Result.failure(portResult.getError().get());
+                        }
+                        portResult.forEach(builder::setDaemonPort);
+                    }
+                    break;
+                case "-m":
+                case "--metrics":
+                    builder.setMetrics(!isNoOpt);
+                    break;
                 case "-j":
                 case "--json":
                     builder.setOutputJson(!isNoOpt);
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.cli;
+
+import net.adamcin.oakpal.api.Nothing;
+import net.adamcin.oakpal.api.ReportCollector;
+import net.adamcin.oakpal.api.Result;
+import net.adamcin.oakpal.api.Violation;
+import net.adamcin.oakpal.core.DefaultErrorListener;
+import net.adamcin.oakpal.core.NodeTypeRegistryCache;
+import net.adamcin.oakpal.core.OakMachine;
+import net.adamcin.oakpal.core.OakpalPlan;
+import net.adamcin.oakpal.core.ScanMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static net.adamcin.oakpal.api.Fun.result0;
+import static net.adamcin.oakpal.api.Fun.result1;
+import static net.adamcin.oakpal.api.JavaxJson.key;
+
+/**
+ * Serves scan requests from local clients on a loopback port, started with {@code oakpal --daemon <port>}, so that
+ * repeated scans skip JVM startup, plan parsing, check loading, and repository initialization.
+ * <p>
+ * Each connection sends a single line containing a JSON request object, with an {@code args} array accepting the same
+ * arguments as the command line, an optional {@code cwd} string to resolve relative paths against, and an optional
+ * {@code env} object of the client's environment variables, like {@code OAKPAL_OPEAR}, which otherwise default to
+ * the daemon's own environment. The daemon
+ * responds with one JSON object per line: {@code {"out": ...}} for each line of standard output, which is the JSON
+ * object of the reports when {@code --json} is specified, {@code {"err": "..."}} for each line of standard error, and
+ * finally {@code {"exit": <exitCode>}}. A request of {@code {"shutdown": true}} stops the daemon, and a request of
+ * {@code {"reload": true}} discards the warm machines.
+ * <p>
+ * Any local process can connect to a loopback port, so the daemon generates a random token when it starts, and writes
+ * it to a {@code daemon-<port>.token} file in the cache directory that only the owner can read. Every request must
+ * include the token in its {@code token} string, and is otherwise rejected with a general error.
+ * <p>
+ * Connections are read on a small, bounded pool of threads, and a connection that does not send its request line
+ * within {@value #REQUEST_READ_TIMEOUT_MILLIS} milliseconds is closed, so that an idle client can not block other
+ * clients. Connections beyond the pool and its queue are rejected. Authorized requests are then performed one at a
+ * time. An {@link OakMachine} is kept for each distinct combination of plan and scan
+ * options, with a snapshot baseline, so that the init stages and pre-install packages only run for the first scan
+ * with each combination. All machines share one {@link NodeTypeRegistryCache}. Requests that enable
+ * {@code --metrics} build a new machine for each scan, so that the metrics only cover that scan.
+ */
+final class Daemon {
+    static final int MAX_MACHINES = 8;
+    static final int MAX_CONNECTION_THREADS = 4;
+    static final int MAX_QUEUED_CONNECTIONS = 16;
+    static final int MAX_REQUEST_CHARS = 1024 * 1024;
+    static final int REQUEST_READ_TIMEOUT_MILLIS = 10000;
+    static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+    static final String KEY_CWD = "cwd";
+    static final String KEY_ARGS = "args";
+    static final String KEY_ENV = "env";
+    static final String KEY_TOKEN = "token";
+    static final String KEY_SHUTDOWN = "shutdown";
+    static final String KEY_RELOAD = "reload";
+    static final String KEY_OUT = "out";
+    static final String KEY_ERR = "err";
+    static final String KEY_EXIT = "exit";
+
+    private final Command command;
+    private final Console console;
+    private final String token = newToken();
+    private final NodeTypeRegistryCache registryCache = new NodeTypeRegistryCache();
+    private final Map<List<Object>, OakMachine> machines =
+            new LinkedHashMap<List<Object>, OakMachine>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>, OakMachine> eldest) {
+                    return size() > MAX_MACHINES;
+                }
+            };
+    private volatile boolean stopped;
+
+    Daemon(final @NotNull Command command, final @NotNull Console console) {
+        this.command = command;
+        this.console = console;
+    }
+
+    IO<Integer> serve(final int port, final @NotNull File cacheDir) {
+        return () -> {
+            try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+                return serve(server, cacheDir);
+            } catch (final IOException e) {
+                return console.printLineErr(e.getMessage()).add(IO.unit(Command.EXIT_GENERAL_ERROR)).get();
+            }
+        };
+    }
+
+    int serve(final @NotNull ServerSocket server, final @NotNull File cacheDir) throws IOException {
+        final File tokenFile = writeTokenFile(new File(cacheDir, "daemon-" + server.getLocalPort() + ".token"));
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONNECTION_THREADS, MAX_CONNECTION_THREADS,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_CONNECTIONS));
+        try {
+            console.printLine("oakpal daemon listening on port " + server.getLocalPort()
+                    + " with token file " + tokenFile.getAbsolutePath()).get();
+            // poll the stopped flag, which is set by a shutdown request on a connection thread
+            server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+            while (!stopped) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (final SocketTimeoutException e) {
+                    continue;
+                }
+                try {
+                    executor.execute(() -> serveConnection(socket));
+                } catch (final RejectedExecutionException e) {
+                    console.printLineErr("oakpal daemon request rejected: too many connections").get();
+                    socket.close();
+                }
+            }
+            return 0;
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(tokenFile.toPath());
+        }
+    }
+
+    void serveConnection(final @NotNull Socket socket) {
+        try (Socket closeable = socket) {
+            closeable.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+            handle(closeable.getInputStream(), closeable.getOutputStream());
+        } catch (final IOException | RuntimeException e) {
+            console.printLineErr("oakpal daemon request failed: " + e.getMessage()).get();
+        }
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    @NotNull String getToken() {
+        return token;
+    }
+
+    static @NotNull String newToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Write the token to a new file that only the owner can read and write.
+     *
+     * @param tokenFile the token file
+     * @return the token file
+     * @throws IOException if the file can not be written
+     */
+    @NotNull File writeTokenFile(final @NotNull File tokenFile) throws IOException {
+        final Path tokenPath = tokenFile.getAbsoluteFile().toPath();
+        Files.createDirectories(tokenPath.getParent());
+        Files.deleteIfExists(tokenPath);
+        if (Files.getFileAttributeView(tokenPath.getParent(), PosixFileAttributeView.class) != null) {
+            Files.createFile(tokenPath,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenPath);
+            final File file = tokenPath.toFile();
+            if (!(file.setReadable(false, false) && file.setReadable(true, true)
+                    && file.setWritable(false, false) && file.setWritable(true, true))) {
+                Files.deleteIfExists(tokenPath);
+                throw new IOException("failed to restrict permissions of token file " + tokenPath);
+            }
+        }
+        Files.write(tokenPath, token.getBytes(StandardCharsets.UTF_8));
+        return tokenPath.toFile();
+    }
+
+    boolean isAuthorized(final @NotNull JsonObject request) {
+        final JsonValue requestToken = request.get(KEY_TOKEN);
+        return requestToken instanceof JsonString && MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8),
+                ((JsonString) requestToken).getString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    void handle(final @NotNull InputStream input, final @NotNull OutputStream output) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        final String line = readRequestLine(reader);
+        if (line == null) {
+            return;
+        }
+        synchronized (this) {
+            performRequest(line, writer);
+        }
+    }
+
+    /**
+     * Read the request line, up to {@value #MAX_REQUEST_CHARS} characters.
+     *
+     * @param reader the connection reader
+     * @return the request line, or null if the connection was closed before sending anything
+     * @throws IOException if the read times out, or the request is too long
+     */
+    static @Nullable String readRequestLine(final @NotNull BufferedReader reader) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) >= 0 && c != '\n') {
+            if (line.length() >= MAX_REQUEST_CHARS) {
+                throw new IOException("request exceeds " + MAX_REQUEST_CHARS + " characters");
+            }
+            line.append((char) c);
+        }
+        if (c < 0 && line.length() == 0) {
+            return null;
+        }
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+        }
+        return line.toString();
+    }
+
+    private void performRequest(final @NotNull String line, final @NotNull PrintWriter writer) {
+        final RequestConsole requestConsole = new RequestConsole(console.getCwd(), console.getEnv(), writer);
+        final Result<JsonObject> requestResult = result1(Daemon::readRequest).apply(line);
+        final int exitCode;
+        if (requestResult.isFailure()) {
+            exitCode = requestConsole.printLineErr("invalid request: " + requestResult.getError().get().getMessage())
+                    .add(IO.unit(Command.EXIT_GENERAL_ERROR)).get();
+        } else {
+            final JsonObject request = requestResult.getOrDefault(JsonValue.EMPTY_JSON_OBJECT);
+            if (!isAuthorized(request)) {
+                exitCode = requestConsole.printLineErr("unauthorized request: missing or invalid token")
+                        .add(IO.unit(Command.EXIT_GENERAL_ERROR)).get();
+            } else if (request.getBoolean(KEY_SHUTDOWN, false)) {
+                stopped = true;
+                exitCode = 0;
+            } else if (request.getBoolean(KEY_RELOAD, false)) {
+                machines.clear();
+                exitCode = 0;
+            } else {
+                final File cwd = request.containsKey(KEY_CWD)
+                        ? new File(request.getString(KEY_CWD))
+                        : console.getCwd();
+                final String[] args = request.containsKey(KEY_ARGS)
+                        ? request.getJsonArray(KEY_ARGS).getValuesAs(JsonString.class).stream()
+                        .map(JsonString::getString).toArray(String[]::new)
+                        : new String[0];
+                final Map<String, String> env = request.containsKey(KEY_ENV)
+                        ? request.getJsonObject(KEY_ENV).entrySet().stream()
+                        .filter(entry -> entry.getValue() instanceof JsonString)
+                        .collect(Collectors.toMap(Map.Entry::getKey,
+                                entry -> ((JsonString) entry.getValue()).getString()))
+                        : console.getEnv();
+                final RequestConsole scanConsole = new RequestConsole(cwd, env, writer);
+                // an unexpected error must fail the request without stopping the daemon
+                final Result<Integer> performResult =
+                        result0(() -> command.perform(scanConsole, args, this::doScan).get()).get();
+                scanConsole.dispose();
+                exitCode = performResult.isFailure()
+                        ? scanConsole.printLineErr(performResult.teeLogError().getError().get().toString())
+                        .add(IO.unit(Command.EXIT_GENERAL_ERROR)).get()
+                        : performResult.getOrDefault(Command.EXIT_GENERAL_ERROR);
+            }
+        }
+        requestConsole.write(key(KEY_EXIT, exitCode).get());
+    }
+
+    static JsonObject readRequest(final @NotNull String line) {
+        try (JsonReader reader = Json.createReader(new StringReader(line))) {
+            return reader.readObject();
+        }
+    }
+
+    IO<Integer> doScan(final @NotNull Console scanConsole, final @NotNull Options opts) {
+        if (opts.getDaemonPort() != null) {
+            return scanConsole.printLineErr("the daemon is already running")
+                    .add(IO.unit(Command.EXIT_GENERAL_ERROR));
+        }
+        if (opts.isMetrics()) {
+            final ScanMetrics metrics = new ScanMetrics();
+            return command.doScan(scanConsole, opts, metrics,
+                    command.getOakMachineBuilder(opts, new DefaultErrorListener(), metrics)
+                            .map(builder -> builder.withNodeTypeRegistryCache(registryCache).build()));
+        }
+        return command.doScan(scanConsole, opts, null, getWarmMachine(opts));
+    }
+
+    Result<OakMachine> getWarmMachine(final @NotNull Options opts) {
+        final List<Object> machineKey = getMachineKey(opts);
+        final OakMachine warmMachine = machines.get(machineKey);
+        if (warmMachine != null) {
+            return Result.success(warmMachine);
+        }
+        final Result<OakMachine> machineResult = command.getOakMachineBuilder(opts, new ScanErrorListener(), null)
+                .map(builder -> builder
+                        .withSnapshotBaseline(true)
+                        .withNodeTypeRegistryCache(registryCache)
+                        .build());
+        machineResult.forEach(machine -> machines.put(machineKey, machine));
+        return machineResult;
+    }
+
+    /**
+     * Collect the options that determine how an {@link OakMachine} is built. Local files are identified by their
+     * path and last modified time, so that a changed plan, opear, pre-install package, or repoinit script builds a new
+     * machine. Directories on the plan classpath, like the base directory of a plan file, are identified by the
+     * number of files under them and the latest modified time, so that edited checklists, script checks, and CNDs
+     * also build a new machine.
+     *
+     * @param opts the request options
+     * @return the machine key
+     */
+    static List<Object> getMachineKey(final @NotNull Options opts) {
+        return Arrays.asList(
+                opts.getPlanUrl().toExternalForm(),
+                stamp(opts.getPlanFile()),
+                stamp(opts.getOpearFile()),
+                opts.getPlanName(),
+                opts.getCacheDir().getAbsolutePath(),
+                opts.isStoreBlobs(),
+                opts.isSegmentStore(),
+                opts.getBlobStoreMaxSize(),
+                opts.isNoHooks(),
+                opts.getPreInstallFiles().stream().map(Daemon::stamp).collect(Collectors.toList()),
+                opts.getRepoInitFiles().stream().map(Daemon::stamp).collect(Collectors.toList()),
+                opts.getRunModes(),
+                opts.isNoRunModes(),
+                opts.getExtendedClassPathFiles().stream().map(Daemon::stamp).collect(Collectors.toList()),
+                stampPlanUrls(opts),
+                stampClassPath(opts.getScanClassLoader(), opts.getCacheDir()));
+    }
+
+    static List<String> stampPlanUrls(final @NotNull Options opts) {
+        return OakpalPlan.fromJson(opts.getPlanUrl()).map(opts::applyOverrides)
+                .map(plan -> Stream.concat(plan.getPreInstallUrls().stream(), plan.getRepoInitUrls().stream())
+                        .map(url -> stampUrl(url, opts.getCacheDir()))
+                        .collect(Collectors.toList()))
+                .getOrDefault(Collections.emptyList());
+    }
+
+    static List<String> stampClassPath(final @Nullable ClassLoader classLoader, final @NotNull File cacheDir) {
+        final List<String> stamps = new ArrayList<>();
+        for (ClassLoader cl = classLoader; cl != null && cl != Daemon.class.getClassLoader(); cl = cl.getParent()) {
+            if (cl instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) cl).getURLs()) {
+                    stamps.add(stampUrl(url, cacheDir));
+                }
+            }
+        }
+        return stamps;
+    }
+
+    static @NotNull String stampUrl(final @NotNull URL url, final @NotNull File cacheDir) {
+        if (!"file".equals(url.getProtocol())) {
+            return url.toExternalForm();
+        }
+        try {
+            return stampTree(new File(url.toURI()), cacheDir);
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return url.toExternalForm();
+        }
+    }
+
+    /**
+     * Stamp a file by its path and last modified time, or a directory by its path, the number of files under it, and
+     * the latest modified time of the files and directories under it. The cache directory is skipped, unless it
+     * contains the stamped directory, so that the blob store and segment stores of each scan do not change the stamp.
+     *
+     * @param root     the file or directory
+     * @param cacheDir the cache directory
+     * @return the stamp
+     */
+    static @NotNull String stampTree(final @NotNull File root, final @NotNull File cacheDir) {
+        if (!root.isDirectory()) {
+            return stamp(root);
+        }
+        final Path rootPath = root.getAbsoluteFile().toPath().normalize();
+        final Path cachePath = cacheDir.getAbsoluteFile().toPath().normalize();
+        final long[] countAndLatest = new long[]{0L, 0L};
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    if (dir.startsWith(cachePath) && !rootPath.startsWith(cachePath)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    countAndLatest[1] = Math.max(countAndLatest[1], attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    countAndLatest[0]++;
+                    countAndLatest[1] = Math.max(countAndLatest[1], attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            return stamp(root);
+        }
+        return rootPath + "@" + countAndLatest[1] + "#" + countAndLatest[0];
+    }
+
+    static @Nullable String stamp(final @Nullable File file) {
+        if (file == null) {
+            return null;
+        }
+        return file.getAbsolutePath() + "@" + file.lastModified();
+    }
+
+    /**
+     * Clears reported violations at the start of each scan, so that a warm {@link OakMachine} only reports the errors
+     * of the current scan.
+     */
+    static final class ScanErrorListener extends DefaultErrorListener {
+        private final ReportCollector collector = new ReportCollector();
+
+        @Override
+        protected void reportViolation(final Violation violation) {
+            collector.reportViolation(violation);
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return collector.getReportedViolations();
+        }
+
+        @Override
+        public void startedScan() {
+            collector.clearViolations();
+        }
+    }
+
+    /**
+     * Writes the output of a single request to the client connection.
+     */
+    static final class RequestConsole implements Console {
+        private final File cwd;
+        private final Map<String, String> env;
+        private final PrintWriter writer;
+        private final Map<File, DisposablePrinter> printers = new HashMap<>();
+
+        RequestConsole(final @NotNull File cwd,
+                       final @NotNull Map<String, String> env,
+                       final @NotNull PrintWriter writer) {
+            this.cwd = cwd;
+            this.env = env;
+            this.writer = writer;
+        }
+
+        @Override
+        public @NotNull File getCwd() {
+            return cwd;
+        }
+
+        @Override
+        public @NotNull Map<String, String> getEnv() {
+            return Collections.unmodifiableMap(env);
+        }
+
+        void write(final @NotNull JsonObject message) {
+            writer.println(message.toString());
+            writer.flush();
+        }
+
+        @Override
+        public IO<Nothing> printLine(final Object object) {
+            return () -> {
+                // each message must be written on a single line, so streamed json is built as a json object
+                final Object value = object instanceof StreamedJson ? ((StreamedJson) object).toJson() : object;
+                write(key(KEY_OUT, value instanceof JsonValue ? value : String.valueOf(value)).get());
+                return Nothing.instance;
+            };
+        }
+
+        @Override
+        public IO<Nothing> printLineErr(final Object object) {
+            return () -> {
+                write(key(KEY_ERR, String.valueOf(object)).get());
+                return Nothing.instance;
+            };
+        }
+
+        @Override
+        public Result<DisposablePrinter> openPrinter(final @NotNull File outFile) {
+            final Result<DisposablePrinter> printerResult =
+                    result1((File file) -> new PrintWriter(file, StandardCharsets.UTF_8.name())).apply(outFile)
+                            .map(Main.DisposablePrinterImpl::new);
+            printerResult.forEach(printer -> printers.put(outFile, printer));
+            return printerResult;
+        }
+
+        @Override
+        public void dispose() {
+            printers.values().forEach(DisposablePrinter::dispose);
+            printers.clear();
+        }
+    }
+}
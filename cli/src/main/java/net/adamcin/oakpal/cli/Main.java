@@ -3,6 +3,7 @@ package net.adamcin.oakpal.cli;
 import static net.adamcin.oakpal.api.Fun.result1;
 
 import java.io.File;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
@@ -50,7 +51,11 @@ final class Main implements Console {
     @Override
     public IO<Nothing> printLine(final @NotNull Object object) {
         return () -> {
-            stdout.println(object.toString());
+            if (object instanceof StreamedJson) {
+                ((StreamedJson) object).println(new PrintWriter(new OutputStreamWriter(stdout)));
+            } else {
+                stdout.println(object.toString());
+            }
             return Nothing.instance;
         };
     }
@@ -78,8 +83,12 @@ final class Main implements Console {
         @Override
         public IO<Nothing> apply(final Object object) {
             return () -> {
-                writer.println(object.toString());
-                writer.flush();
+                if (object instanceof StreamedJson) {
+                    ((StreamedJson) object).println(writer);
+                } else {
+                    writer.println(object.toString());
+                    writer.flush();
+                }
                 return Nothing.instance;
             };
         }
@@ -4,6 +4,7 @@ import net.adamcin.oakpal.api.Fun;
 import net.adamcin.oakpal.api.Nothing;
 import net.adamcin.oakpal.api.Result;
 import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.core.DedupFileBlobStore;
 import net.adamcin.oakpal.core.InstallHookPolicy;
 import net.adamcin.oakpal.core.OakpalPlan;
 import net.adamcin.oakpal.core.opear.AdhocOpear;
@@ -57,6 +58,10 @@ final class Options {
     private final List<File> scanFiles;
     private final Function<StructuredMessage, IO<Nothing>> printer;
     private final Severity failOnSeverity;
+    private final boolean metrics;
+    private final boolean segmentStore;
+    private final long blobStoreMaxSize;
+    private final Integer daemonPort;
 
     Options() {
         this(true, true, false,
@@ -69,7 +74,11 @@ final class Options {
                 Collections.emptyList(), false,
                 Collections.emptyList(),
                 EMPTY_PRINTER,
-                Severity.MAJOR);
+                Severity.MAJOR,
+                false,
+                false,
+                DedupFileBlobStore.DEFAULT_MAX_SIZE_MB,
+                null);
     }
 
     Options(final boolean justHelp,
@@ -90,7 +99,11 @@ final class Options {
             final boolean noHooks,
             final @NotNull List<File> scanFiles,
             final @NotNull Function<StructuredMessage, IO<Nothing>> printer,
-            final @NotNull Severity failOnSeverity) {
+            final @NotNull Severity failOnSeverity,
+            final boolean metrics,
+            final boolean segmentStore,
+            final long blobStoreMaxSize,
+            final @Nullable Integer daemonPort) {
         this.justHelp = justHelp;
         this.justVersion = justVersion;
         this.storeBlobs = storeBlobs;
@@ -110,6 +123,10 @@ final class Options {
         this.scanFiles = scanFiles;
         this.printer = printer;
         this.failOnSeverity = failOnSeverity;
+        this.metrics = metrics;
+        this.segmentStore = segmentStore;
+        this.blobStoreMaxSize = blobStoreMaxSize;
+        this.daemonPort = daemonPort;
     }
 
     public boolean isJustHelp() {
@@ -128,6 +145,22 @@ final class Options {
         return noHooks;
     }
 
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public boolean isSegmentStore() {
+        return segmentStore;
+    }
+
+    public long getBlobStoreMaxSize() {
+        return blobStoreMaxSize;
+    }
+
+    public @Nullable Integer getDaemonPort() {
+        return daemonPort;
+    }
+
     public URL getPlanUrl() {
         return planUrl;
     }
@@ -291,6 +324,10 @@ final class Options {
         private File opearFile;
         private List<File> scanFiles = new ArrayList<>();
         private Severity failOnSeverity;
+        private boolean metrics;
+        private boolean segmentStore;
+        private long blobStoreMaxSize = DedupFileBlobStore.DEFAULT_MAX_SIZE_MB;
+        private Integer daemonPort;
 
         public Builder setJustHelp(final boolean justHelp) {
             this.justHelp = justHelp;
@@ -307,6 +344,26 @@ final class Options {
             return this;
         }
 
+        public Builder setBlobStoreMaxSize(final long blobStoreMaxSize) {
+            this.blobStoreMaxSize = blobStoreMaxSize;
+            return this;
+        }
+
+        public Builder setSegmentStore(final boolean segmentStore) {
+            this.segmentStore = segmentStore;
+            return this;
+        }
+
+        public Builder setMetrics(final boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder setDaemonPort(final @Nullable Integer daemonPort) {
+            this.daemonPort = daemonPort;
+            return this;
+        }
+
         public Builder setOutputJson(final boolean outputJson) {
             this.outputJson = outputJson;
             return this;
@@ -468,7 +525,8 @@ final class Options {
                                             planFileBaseDir, preInstallFiles, repoInitFiles, runModes, noRunModes,
                                             extendedClassPathFiles, noHooks, scanFiles, writer,
                                             Optional.ofNullable(failOnSeverity)
-                                                    .orElse(DEFAULT_OPTIONS.failOnSeverity))))));
+                                                    .orElse(DEFAULT_OPTIONS.failOnSeverity),
+                                            metrics, segmentStore, blobStoreMaxSize, daemonPort)))));
         }
     }
 
@@ -481,8 +539,11 @@ final class Options {
     static @NotNull Result<Function<StructuredMessage, IO<Nothing>>> messageWriter(final @NotNull Console console,
                                                                                    final boolean outputJson,
                                                                                    final @Nullable File outFile) {
+        // stream the json of large messages, like the check reports, instead of building the json object first
         final Function<StructuredMessage, Object> objectifier = outputJson
-                ? StructuredMessage::toJson : message -> message;
+                ? message -> message instanceof StreamedJson.Message
+                ? new StreamedJson((StreamedJson.Message) message) : message.toJson()
+                : message -> message;
         final Result<Function<Object, IO<Nothing>>> printerResult = Optional.ofNullable(outFile)
                 .map(file -> console.openPrinter(file).map(printer -> (Function<Object, IO<Nothing>>) printer))
                 .orElse(Result.success(console::printLine));
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.cli;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * The json form of a structured message that can write its json directly to a writer, like the check reports of a
+ * scan. Printers write it with {@link #println(PrintWriter)} instead of building the json object tree first.
+ */
+final class StreamedJson {
+
+    /**
+     * A {@link StructuredMessage} that can write its json form to a writer.
+     */
+    interface Message extends StructuredMessage {
+
+        /**
+         * Write the same json as {@link #toJson()} to the writer, without closing it.
+         *
+         * @param writer the writer
+         * @throws IOException for failing to write
+         */
+        void writeJson(@NotNull Writer writer) throws IOException;
+    }
+
+    private final Message message;
+
+    StreamedJson(final @NotNull Message message) {
+        this.message = message;
+    }
+
+    /**
+     * Write the json to the writer, followed by a line separator, and flush the writer.
+     *
+     * @param writer the writer
+     */
+    void println(final @NotNull PrintWriter writer) {
+        try {
+            message.writeJson(writer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.println();
+        writer.flush();
+    }
+
+    /**
+     * Build the json object, for consumers that need it as a single value.
+     *
+     * @return the json object
+     */
+    JsonObject toJson() {
+        return message.toJson();
+    }
+
+    @Override
+    public String toString() {
+        final StringWriter sw = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(sw)) {
+            println(writer);
+        }
+        return sw.toString().trim();
+    }
+}
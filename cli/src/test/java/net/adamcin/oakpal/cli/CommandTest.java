@@ -6,12 +6,16 @@ import net.adamcin.oakpal.api.Result;
 import net.adamcin.oakpal.api.Severity;
 import net.adamcin.oakpal.api.SimpleViolation;
 import net.adamcin.oakpal.core.CheckReport;
+import net.adamcin.oakpal.core.DedupFileBlobStore;
 import net.adamcin.oakpal.core.FileBlobMemoryNodeStore;
 import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.core.ScanMetrics;
+import net.adamcin.oakpal.core.SegmentTarScanNodeStore;
 import net.adamcin.oakpal.core.SimpleReport;
 import net.adamcin.oakpal.testing.TestPackageUtil;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -87,6 +91,25 @@ public class CommandTest {
                         new Options.Builder()
                                 .build(console)
                                 .getOrDefault(null)).get() instanceof MemoryNodeStore);
+        final NodeStore segmentStore = command.getNodeStoreSupplier(
+                new Options.Builder()
+                        .setSegmentStore(true)
+                        .build(console)
+                        .getOrDefault(null)).get();
+        assertTrue("is SegmentTarScanNodeStore", segmentStore instanceof SegmentTarScanNodeStore);
+        ((SegmentTarScanNodeStore) segmentStore).close();
+        final NodeStore planSegmentStore = command.getNodeStoreSupplier(
+                new Options.Builder()
+                        .build(console)
+                        .getOrDefault(null), true).get();
+        assertTrue("is SegmentTarScanNodeStore for plan", planSegmentStore instanceof SegmentTarScanNodeStore);
+        ((SegmentTarScanNodeStore) planSegmentStore).close();
+        assertTrue("store blobs overrides plan segment store",
+                command.getNodeStoreSupplier(
+                        new Options.Builder()
+                                .setStoreBlobs(true)
+                                .build(console)
+                                .getOrDefault(null), true).get() instanceof FileBlobMemoryNodeStore);
     }
 
     @Test
@@ -121,6 +144,27 @@ public class CommandTest {
         }
     }
 
+    @Test
+    public void testWriteReportsWithMetrics() {
+        final List<CheckReport> reports = new ArrayList<>();
+        reports.add(new SimpleReport("some check", Collections.emptyList()));
+        final ScanMetrics metrics = new ScanMetrics();
+        metrics.recordCheckEvent("some check", "importedPath", 1000000L);
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 2000000L);
+
+        final String output = captureStructured(false, (command, printer) ->
+                command.printReports(reports, metrics, printer));
+        assertTrue("expect scan phase in metrics summary", output.contains(" +- scan: 2.000 ms (1)"));
+        assertTrue("expect check in metrics summary", output.contains(" +- some check: 1.000 ms (1)"));
+
+        final String jsonOutput = captureStructured(true, (command, printer) ->
+                command.printReports(reports, metrics, printer));
+        assertTrue("expect metrics key", jsonOutput.contains("\"" + ReportMapper.keys().metrics() + "\""));
+        List<CheckReport> readReports = uncheck0(() ->
+                ReportMapper.readReports(() -> new BufferedReader(new StringReader(jsonOutput)))).get();
+        assertEquals("expect same reports", reports, readReports);
+    }
+
     private Console getMockConsole() {
         final Console console = mock(Console.class);
         doCallRealMethod().when(console).getCwd();
@@ -264,6 +308,37 @@ public class CommandTest {
         validator.expectSuccess(args("--no-store-blobs", "-b"),
                 options -> assertTrue("is store blobs", options.isStoreBlobs()));
 
+        validator.expectSuccess(args(),
+                options -> assertFalse("is not metrics", options.isMetrics()));
+        validator.expectSuccess(args("-m"),
+                options -> assertTrue("is metrics", options.isMetrics()));
+        validator.expectSuccess(args("--metrics", "--no-metrics"),
+                options -> assertFalse("is not metrics", options.isMetrics()));
+
+        validator.expectSuccess(args(),
+                options -> assertEquals("expect default blob store max size",
+                        DedupFileBlobStore.DEFAULT_MAX_SIZE_MB, options.getBlobStoreMaxSize()));
+        validator.expectSuccess(args("-bm", "512"),
+                options -> assertEquals("expect blob store max size", 512L, options.getBlobStoreMaxSize()));
+        validator.expectSuccess(args("--blob-store-max-size", "512", "+bm"),
+                options -> assertEquals("expect unbounded blob store", 0L, options.getBlobStoreMaxSize()));
+        validator.expectFailure(args("-bm", "lots"));
+
+        validator.expectSuccess(args(),
+                options -> assertNull("expect no daemon port", options.getDaemonPort()));
+        validator.expectSuccess(args("-d", "4502"),
+                options -> assertEquals("expect daemon port", Integer.valueOf(4502), options.getDaemonPort()));
+        validator.expectSuccess(args("--daemon", "4502", "+d"),
+                options -> assertNull("expect no daemon port", options.getDaemonPort()));
+        validator.expectFailure(args("--daemon", "any"));
+
+        validator.expectSuccess(args(),
+                options -> assertFalse("is not segment store", options.isSegmentStore()));
+        validator.expectSuccess(args("-ss"),
+                options -> assertTrue("is segment store", options.isSegmentStore()));
+        validator.expectSuccess(args("--segment-store", "+ss"),
+                options -> assertFalse("is not segment store", options.isSegmentStore()));
+
         validator.expectFailure(args("-s", "extreme"));
         validator.expectSuccess(args(),
                 options -> assertEquals("expect major by default",
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.cli;
+
+import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.core.OakMachine;
+import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static net.adamcin.oakpal.api.Fun.uncheck0;
+import static net.adamcin.oakpal.api.JavaxJson.arr;
+import static net.adamcin.oakpal.api.JavaxJson.key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DaemonTest {
+
+    final File testOutputBaseDir = new File("target/test-output/DaemonTest");
+    final File cacheBaseDir = new File(testOutputBaseDir, "oakpal-cache");
+
+    @Before
+    public void setUp() throws Exception {
+        testOutputBaseDir.mkdirs();
+    }
+
+    private static Console newConsole() {
+        return new Main(new File(".").getAbsoluteFile(), Collections.emptyMap(), System.err, System.err);
+    }
+
+    private static List<JsonObject> handle(final Daemon daemon, final String request) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        daemon.handle(new ByteArrayInputStream((request + "\n").getBytes(StandardCharsets.UTF_8)), output);
+        return new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(output.toByteArray()), StandardCharsets.UTF_8)).lines()
+                .map(Daemon::readRequest)
+                .collect(Collectors.toList());
+    }
+
+    private static JsonObject last(final List<JsonObject> messages) {
+        return messages.get(messages.size() - 1);
+    }
+
+    @Test
+    public void testHandle_scan() throws Exception {
+        final File pack = new File(testOutputBaseDir, "simple-content.zip");
+        TestPackageUtil.buildJarFromDir(new File("src/test/resources/simple-content"), pack,
+                Collections.emptyMap());
+        final Daemon daemon = new Daemon(new Command(), newConsole());
+        final String request = key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_CWD, new File(".").getAbsolutePath())
+                .key(Daemon.KEY_ARGS, arr("-j", "-c", cacheBaseDir.getPath(), pack.getAbsolutePath()))
+                .get().toString();
+        for (int i = 0; i < 2; i++) {
+            final List<JsonObject> messages = handle(daemon, request);
+            assertEquals("expect exit code", 0, last(messages).getInt(Daemon.KEY_EXIT));
+            assertTrue("expect reports json", messages.stream()
+                    .filter(message -> message.containsKey(Daemon.KEY_OUT))
+                    .anyMatch(message -> message.getJsonObject(Daemon.KEY_OUT)
+                            .containsKey(ReportMapper.keys().reports())));
+        }
+        assertFalse("expect running", daemon.isStopped());
+    }
+
+    @Test
+    public void testHandle_errors() throws Exception {
+        final Daemon daemon = new Daemon(new Command(), newConsole());
+        final List<JsonObject> invalid = handle(daemon, "not json");
+        assertTrue("expect err message", invalid.get(0).containsKey(Daemon.KEY_ERR));
+        assertEquals("expect general error", (int) Command.EXIT_GENERAL_ERROR,
+                last(invalid).getInt(Daemon.KEY_EXIT));
+
+        final List<JsonObject> noToken = handle(daemon, key(Daemon.KEY_ARGS, arr("--version")).get().toString());
+        assertTrue("expect err message for missing token", noToken.get(0).containsKey(Daemon.KEY_ERR));
+        assertEquals("expect general error for missing token", (int) Command.EXIT_GENERAL_ERROR,
+                last(noToken).getInt(Daemon.KEY_EXIT));
+
+        final List<JsonObject> badToken = handle(daemon, key(Daemon.KEY_TOKEN, "not_the_token")
+                .key(Daemon.KEY_SHUTDOWN, true).get().toString());
+        assertEquals("expect general error for invalid token", (int) Command.EXIT_GENERAL_ERROR,
+                last(badToken).getInt(Daemon.KEY_EXIT));
+        assertFalse("expect running after unauthorized shutdown", daemon.isStopped());
+
+        final List<JsonObject> badArgs = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_ARGS, arr("not_a_file.zip")).get().toString());
+        assertEquals("expect general error for bad args", (int) Command.EXIT_GENERAL_ERROR,
+                last(badArgs).getInt(Daemon.KEY_EXIT));
+
+        final List<JsonObject> missingArg = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_ARGS, arr("-c")).get().toString());
+        assertEquals("expect general error for missing arg", (int) Command.EXIT_GENERAL_ERROR,
+                last(missingArg).getInt(Daemon.KEY_EXIT));
+
+        final List<JsonObject> nested = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken()).key(Daemon.KEY_ARGS,
+                arr("-c", cacheBaseDir.getPath(), "--daemon", "0")).get().toString());
+        assertEquals("expect general error for nested daemon", (int) Command.EXIT_GENERAL_ERROR,
+                last(nested).getInt(Daemon.KEY_EXIT));
+
+        final List<JsonObject> help = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_ARGS, arr("--help")).get().toString());
+        assertTrue("expect help output", help.get(0).containsKey(Daemon.KEY_OUT));
+        assertEquals("expect success for help", 0, last(help).getInt(Daemon.KEY_EXIT));
+        assertFalse("expect running", daemon.isStopped());
+    }
+
+    @Test
+    public void testHandle_env() throws Exception {
+        final File notAnOpear = new File(testOutputBaseDir, "not-an-opear.txt");
+        Files.write(notAnOpear.toPath(), "not a jar".getBytes(StandardCharsets.UTF_8));
+        final Daemon daemon = new Daemon(new Command(), newConsole());
+        final List<JsonObject> daemonEnv = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_ARGS, arr("-c", cacheBaseDir.getPath(), "--no-plan")).get().toString());
+        assertEquals("expect success with the daemon env", 0, last(daemonEnv).getInt(Daemon.KEY_EXIT));
+        final List<JsonObject> clientEnv = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_ENV, key(Console.ENV_OAKPAL_OPEAR, notAnOpear.getAbsolutePath()))
+                .key(Daemon.KEY_ARGS, arr("-c", cacheBaseDir.getPath())).get().toString());
+        assertEquals("expect the client env to select the opear", (int) Command.EXIT_GENERAL_ERROR,
+                last(clientEnv).getInt(Daemon.KEY_EXIT));
+        assertTrue("expect the opear error", clientEnv.stream()
+                .filter(message -> message.containsKey(Daemon.KEY_ERR))
+                .anyMatch(message -> message.getString(Daemon.KEY_ERR).contains("not a jar format file")));
+    }
+
+    @Test
+    public void testReadRequestLine() throws Exception {
+        assertNull("expect null for closed connection",
+                Daemon.readRequestLine(new BufferedReader(new StringReader(""))));
+        assertEquals("expect line without line separator", "{}",
+                Daemon.readRequestLine(new BufferedReader(new StringReader("{}\r\nmore"))));
+        final char[] tooLong = new char[Daemon.MAX_REQUEST_CHARS + 1];
+        Arrays.fill(tooLong, 'a');
+        try {
+            Daemon.readRequestLine(new BufferedReader(new StringReader(new String(tooLong))));
+            fail("expect IOException for request that is too long");
+        } catch (final IOException e) {
+            assertTrue("expect message", e.getMessage().contains("exceeds"));
+        }
+    }
+
+    @Test
+    public void testGetWarmMachine() throws Exception {
+        final Command command = new Command();
+        final Console console = newConsole();
+        final Daemon daemon = new Daemon(command, console);
+        final Options opts = command.parseArgs(console,
+                new String[]{"-c", cacheBaseDir.getPath()}).getOrDefault(null);
+        final Options sameOpts = command.parseArgs(console,
+                new String[]{"-c", cacheBaseDir.getPath()}).getOrDefault(null);
+        final Options runModeOpts = command.parseArgs(console,
+                new String[]{"-c", cacheBaseDir.getPath(), "-r", "author"}).getOrDefault(null);
+        final OakMachine machine = daemon.getWarmMachine(opts).getOrDefault(null);
+        assertSame("expect same machine for same options", machine,
+                daemon.getWarmMachine(sameOpts).getOrDefault(null));
+        assertNotSame("expect new machine for different run modes", machine,
+                daemon.getWarmMachine(runModeOpts).getOrDefault(null));
+        assertEquals("expect same key", Daemon.getMachineKey(opts), Daemon.getMachineKey(sameOpts));
+
+        final List<JsonObject> reload = handle(daemon, key(Daemon.KEY_TOKEN, daemon.getToken())
+                .key(Daemon.KEY_RELOAD, true).get().toString());
+        assertEquals("expect success for reload", 0, last(reload).getInt(Daemon.KEY_EXIT));
+        assertNotSame("expect new machine after reload", machine,
+                daemon.getWarmMachine(sameOpts).getOrDefault(null));
+    }
+
+    @Test
+    public void testGetMachineKey_planResources() throws Exception {
+        final File planDir = new File(testOutputBaseDir, "testGetMachineKey_planResources");
+        final File checkFile = new File(planDir, "checks/check.js");
+        checkFile.getParentFile().mkdirs();
+        final File planFile = new File(planDir, "plan.json");
+        Files.write(planFile.toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        Files.write(checkFile.toPath(), "function getCheckName() { return \"check\"; }"
+                .getBytes(StandardCharsets.UTF_8));
+        checkFile.setLastModified(System.currentTimeMillis() - 60000L);
+        final Command command = new Command();
+        final Console console = newConsole();
+        final String[] args = {"-c", cacheBaseDir.getPath(), "-pf", planFile.getAbsolutePath()};
+        final List<Object> key = Daemon.getMachineKey(command.parseArgs(console, args).getOrDefault(null));
+        assertEquals("expect same key for unchanged plan resources", key,
+                Daemon.getMachineKey(command.parseArgs(console, args).getOrDefault(null)));
+        checkFile.setLastModified(System.currentTimeMillis() + 60000L);
+        assertNotEquals("expect new key for edited script check", key,
+                Daemon.getMachineKey(command.parseArgs(console, args).getOrDefault(null)));
+    }
+
+    @Test
+    public void testWriteTokenFile() throws Exception {
+        final Daemon daemon = new Daemon(new Command(), newConsole());
+        final File tokenFile = daemon.writeTokenFile(new File(cacheBaseDir, "testWriteTokenFile.token"));
+        assertEquals("expect token", daemon.getToken(),
+                new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8));
+        if (Files.getFileAttributeView(tokenFile.toPath(), PosixFileAttributeView.class) != null) {
+            assertEquals("expect owner-only permissions", "rw-------",
+                    PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        }
+        assertNotEquals("expect different token for each daemon", daemon.getToken(),
+                new Daemon(new Command(), newConsole()).getToken());
+    }
+
+    @Test
+    public void testScanErrorListener() {
+        final Daemon.ScanErrorListener errorListener = new Daemon.ScanErrorListener();
+        errorListener.reportViolation(new SimpleViolation(Severity.MAJOR, "an error"));
+        assertEquals("expect violation", 1, errorListener.getReportedViolations().size());
+        errorListener.startedScan();
+        assertTrue("expect no violations after startedScan", errorListener.getReportedViolations().isEmpty());
+    }
+
+    @Test
+    public void testServe() throws Exception {
+        final Daemon daemon = new Daemon(new Command(), newConsole());
+        try (ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            final CompletableFuture<Integer> served =
+                    CompletableFuture.supplyAsync(uncheck0(() -> daemon.serve(server, cacheBaseDir)));
+            final File tokenFile = new File(cacheBaseDir, "daemon-" + server.getLocalPort() + ".token");
+            // an idle connection must not block other clients
+            final Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            for (String request : new String[]{
+                    key(Daemon.KEY_TOKEN, daemon.getToken()).key(Daemon.KEY_ARGS, arr("--version")).get().toString(),
+                    key(Daemon.KEY_TOKEN, daemon.getToken()).key(Daemon.KEY_SHUTDOWN, true).get().toString()}) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+                     PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                             StandardCharsets.UTF_8));
+                     BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                             StandardCharsets.UTF_8))) {
+                    socket.setSoTimeout(Daemon.REQUEST_READ_TIMEOUT_MILLIS / 2);
+                    writer.println(request);
+                    writer.flush();
+                    final List<JsonObject> messages = reader.lines().map(Daemon::readRequest)
+                            .collect(Collectors.toList());
+                    assertEquals("expect success", 0, last(messages).getInt(Daemon.KEY_EXIT));
+                    if (!request.contains(Daemon.KEY_SHUTDOWN)) {
+                        assertTrue("expect token file while serving", tokenFile.exists());
+                    }
+                }
+            }
+            assertEquals("expect daemon exit code", 0, (int) served.get(30, TimeUnit.SECONDS));
+            assertTrue("expect stopped", daemon.isStopped());
+            assertFalse("expect token file deleted", tokenFile.exists());
+            idle.close();
+        }
+    }
+}
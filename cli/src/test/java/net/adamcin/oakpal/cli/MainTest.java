@@ -1,12 +1,25 @@
 package net.adamcin.oakpal.cli;
 
+import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.core.CheckReport;
+import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.core.SimpleReport;
 import net.adamcin.oakpal.testing.TestPackageUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.json.Json;
+import javax.json.JsonReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -62,7 +75,7 @@ public class MainTest {
     }
 
     @Test
-    public void testOutputFile() {
+    public void testOutputFile() throws Exception {
         final File testOutputDir = new File(testOutputBaseDir, "testOutputFile");
         testOutputDir.mkdirs();
         final File testOutputFile = new File(testOutputDir, "out.txt");
@@ -79,6 +92,29 @@ public class MainTest {
                 "-f", "src/test/resources/opears/simpleEcho",
                 "-j", "-o", testOutputJson.getPath()});
         assertTrue("testOutputJson exists", testOutputJson.exists());
+        assertTrue("testOutputJson contains reports",
+                !ReportMapper.readReportsFromFile(testOutputJson).isEmpty());
+    }
+
+    @Test
+    public void testPrintLine_streamedJson() throws Exception {
+        final List<CheckReport> reports = Arrays.asList(
+                new SimpleReport("test/first", Collections.singletonList(
+                        new SimpleViolation(Severity.MAJOR, "one"))),
+                new SimpleReport("test/second", Collections.emptyList()));
+        final AllReportsMessage message = new AllReportsMessage(reports);
+        final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        final Main main = new Main(new File("."), Collections.emptyMap(), new PrintStream(stdout), System.err);
+        main.printLine(new StreamedJson(message)).get();
+        main.printLine("after").get();
+        final String output = stdout.toString();
+        assertTrue("expect text after json", output.trim().endsWith("after"));
+        final String json = output.substring(0, output.lastIndexOf("after"));
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            assertEquals("expect streamed json equal to the json object", message.toJson(), reader.readObject());
+        }
+        assertEquals("expect same reports", reports,
+                ReportMapper.readReports(() -> new StringReader(new StreamedJson(message).toString())));
     }
 
     @Test
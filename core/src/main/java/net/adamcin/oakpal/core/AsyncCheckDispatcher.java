@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.AsyncCheck;
+import net.adamcin.oakpal.api.ProgressCheck;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+/**
+ * Internal dispatcher for {@link AsyncCheck} path events, created for a single scan. Each registered check gets a
+ * dedicated worker thread, which consumes batches of events from a bounded ring buffer. The scan thread appends events
+ * to the current batch for each check, and calls {@link #barrier()} at the end of each package extraction, before the
+ * next package-level event, to wait for all workers to drain their buffers.
+ * <p>
+ * Path events carry {@link javax.jcr.Node}s from the importer's session, which must not be read while the importer is
+ * writing to it. Delivery is therefore deferred, not concurrent: batches are only handed to the workers at a barrier,
+ * which is also performed whenever a batch is full, so that the workers of different checks process their events in
+ * parallel with each other while the scan thread waits, but never in parallel with the importer. The importer still
+ * stalls for the slowest async check in each batch, so this only shortens a scan that has more than one slow async
+ * check.
+ * <p>
+ * Any work that must happen on the scan thread as a result of a path event, like reporting a listener exception to
+ * the {@link ErrorListener}, should be passed to {@link #defer(Runnable)}, and will be run at the next barrier.
+ */
+final class AsyncCheckDispatcher implements AutoCloseable {
+    static final int DEFAULT_BATCH_SIZE = 256;
+    static final int DEFAULT_RING_SIZE = 64;
+
+    private final Map<ProgressCheck, Worker> workers = new IdentityHashMap<>();
+    private final ConcurrentLinkedQueue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+    private final int batchSize;
+
+    AsyncCheckDispatcher(final @NotNull List<? extends ProgressCheck> asyncChecks,
+                         final int batchSize,
+                         final int ringSize) {
+        this.batchSize = Math.max(1, batchSize);
+        int count = 0;
+        for (ProgressCheck check : asyncChecks) {
+            if (!workers.containsKey(check)) {
+                final Worker worker = new Worker(check, Math.max(1, ringSize));
+                final Thread thread = new Thread(worker, "oakpal-async-check-" + (++count));
+                thread.setDaemon(true);
+                worker.thread = thread;
+                workers.put(check, worker);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the check should be passed to {@link #dispatch(ProgressCheck, Consumer)}.
+     *
+     * @param check the progress check
+     * @return true if the check has a dedicated worker
+     */
+    boolean isAsync(final @NotNull ProgressCheck check) {
+        return workers.containsKey(check);
+    }
+
+    /**
+     * Append an event to the current batch for the check, and perform a {@link #barrier()} if the batch is full.
+     *
+     * @param check         the async progress check
+     * @param checkConsumer the event visitor
+     */
+    void dispatch(final @NotNull ProgressCheck check, final @NotNull Consumer<ProgressCheck> checkConsumer) {
+        final Worker worker = workers.get(check);
+        worker.batch.add(checkConsumer);
+        if (worker.batch.size() >= batchSize) {
+            barrier();
+        }
+    }
+
+    /**
+     * Schedule a task to be run on the scan thread at the next barrier.
+     *
+     * @param task the task
+     */
+    void defer(final @NotNull Runnable task) {
+        deferred.add(task);
+    }
+
+    /**
+     * Flush all pending batches, block until every worker has processed them, and then run any deferred tasks on the
+     * calling thread.
+     */
+    void barrier() {
+        if (!workers.isEmpty()) {
+            final CountDownLatch latch = new CountDownLatch(workers.size());
+            for (Worker worker : workers.values()) {
+                worker.batch.add(check -> latch.countDown());
+                worker.flush();
+            }
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Runnable task = deferred.poll();
+        while (task != null) {
+            task.run();
+            task = deferred.poll();
+        }
+    }
+
+    /**
+     * Perform a final barrier and stop the worker threads.
+     */
+    @Override
+    public void close() {
+        try {
+            barrier();
+        } finally {
+            for (Worker worker : workers.values()) {
+                worker.thread.interrupt();
+            }
+        }
+    }
+
+    List<Thread> getThreads() {
+        final List<Thread> threads = new ArrayList<>();
+        for (Worker worker : workers.values()) {
+            threads.add(worker.thread);
+        }
+        return Collections.unmodifiableList(threads);
+    }
+
+    final class Worker implements Runnable {
+        private final ProgressCheck check;
+        private final BlockingQueue<List<Consumer<ProgressCheck>>> ring;
+        private List<Consumer<ProgressCheck>> batch = new ArrayList<>();
+        private Thread thread;
+
+        Worker(final @NotNull ProgressCheck check, final int ringSize) {
+            this.check = check;
+            this.ring = new ArrayBlockingQueue<>(ringSize);
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                final List<Consumer<ProgressCheck>> full = batch;
+                batch = new ArrayList<>(batchSize);
+                try {
+                    ring.put(full);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (Consumer<ProgressCheck> event : ring.take()) {
+                        try {
+                            event.accept(check);
+                        } catch (final Error e) {
+                            defer(() -> {
+                                throw e;
+                            });
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // closed
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.BatchProgressCheck;
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.ProgressCheck;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.jetbrains.annotations.NotNull;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Internal dispatcher for {@link BatchProgressCheck} path events. The scan thread appends each path event to a single
+ * pending batch that is shared by all registered checks, and the batch is delivered to every check when it is full,
+ * when a path event is raised for a different package, session, or silenced state, or when {@link #flush()} is called
+ * before any package-level event.
+ */
+final class BatchCheckDispatcher {
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Delivers a full batch to the registered checks.
+     */
+    @FunctionalInterface
+    interface BatchHandler {
+        void onBatch(boolean silenced, @NotNull PackageId packageId, @NotNull Session session,
+                     @NotNull List<BatchProgressCheck.PathEvent> pathEvents);
+    }
+
+    private final Map<ProgressCheck, Boolean> batchChecks = new IdentityHashMap<>();
+    private final int batchSize;
+    private final BatchHandler handler;
+    private List<BatchProgressCheck.PathEvent> batch = new ArrayList<>();
+    private PackageId packageId;
+    private Session session;
+    private boolean silenced;
+
+    BatchCheckDispatcher(final @NotNull List<? extends ProgressCheck> batchChecks,
+                         final int batchSize,
+                         final @NotNull BatchHandler handler) {
+        for (ProgressCheck check : batchChecks) {
+            this.batchChecks.put(check, true);
+        }
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+    }
+
+    /**
+     * Returns true if any batch checks are registered.
+     *
+     * @return true if path events should be passed to {@link #append(boolean, PackageId, Session, String, PathAction)}
+     */
+    boolean hasBatchChecks() {
+        return !batchChecks.isEmpty();
+    }
+
+    /**
+     * Returns true if the check should receive path events in batches.
+     *
+     * @param check the progress check
+     * @return true if the check is registered with this dispatcher
+     */
+    boolean isBatch(final @NotNull ProgressCheck check) {
+        return batchChecks.containsKey(check);
+    }
+
+    /**
+     * Append a path event to the pending batch.
+     *
+     * @param silenced  true if the current package is silenced
+     * @param packageId the current package
+     * @param session   the inspect session
+     * @param path      the affected path
+     * @param action    the path action
+     */
+    void append(final boolean silenced,
+                final @NotNull PackageId packageId,
+                final @NotNull Session session,
+                final @NotNull String path,
+                final @NotNull PathAction action) {
+        if (!batch.isEmpty()
+                && (silenced != this.silenced || session != this.session || !packageId.equals(this.packageId))) {
+            flush();
+        }
+        this.silenced = silenced;
+        this.packageId = packageId;
+        this.session = session;
+        batch.add(new BatchProgressCheck.PathEvent(path, action));
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Deliver the pending batch, if it is not empty.
+     */
+    void flush() {
+        if (!batch.isEmpty()) {
+            final List<BatchProgressCheck.PathEvent> full = Collections.unmodifiableList(batch);
+            batch = new ArrayList<>();
+            final PackageId fullPackageId = this.packageId;
+            final Session fullSession = this.session;
+            this.packageId = null;
+            this.session = null;
+            handler.onBatch(silenced, fullPackageId, fullSession, full);
+        }
+    }
+
+    /**
+     * Pass a batch of path events to the check, either directly if it implements {@link BatchProgressCheck}, or
+     * otherwise as individual path events. Used by the internal facades.
+     *
+     * @param check          the check
+     * @param packageId      the current package
+     * @param pathEvents     the path events
+     * @param inspectSession the inspect session
+     * @throws RepositoryException because of access to a {@link Session}
+     */
+    static void deliver(final @NotNull ProgressCheck check,
+                        final PackageId packageId,
+                        final @NotNull List<BatchProgressCheck.PathEvent> pathEvents,
+                        final Session inspectSession) throws RepositoryException {
+        if (check instanceof BatchProgressCheck) {
+            ((BatchProgressCheck) check).pathEvents(packageId, pathEvents, inspectSession);
+        } else {
+            BatchProgressCheck.replayPathEvents(check, packageId, pathEvents, inspectSession);
+        }
+    }
+}
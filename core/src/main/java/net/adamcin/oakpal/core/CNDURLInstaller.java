@@ -15,6 +15,7 @@
  */
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.Fun;
 import org.apache.jackrabbit.commons.cnd.CndImporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -29,11 +30,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Utility class for installation of CNDs by {@link URL}. Inspired by sling mocks.
@@ -48,6 +54,11 @@ final class CNDURLInstaller {
 
     private final ErrorListener errorListener;
 
+    /**
+     * CND text read ahead of registration, keyed by external form to avoid {@link URL#equals(Object)} host lookups.
+     */
+    private final Map<String, String> cndContents = new ConcurrentHashMap<>();
+
     /**
      * Create a new installer. Finds MANIFEST.MF Sling-Nodetypes entries on construction.
      *
@@ -67,6 +78,7 @@ final class CNDURLInstaller {
      * @param session Session
      */
     public void register(Session session) throws RepositoryException {
+        prefetch(Stream.concat(unorderedCnds.stream(), postInstallCnds.stream()).collect(Collectors.toList()));
         register(session, unorderedCnds);
         registerByUrl(session, postInstallCnds);
     }
@@ -79,6 +91,7 @@ final class CNDURLInstaller {
      * @return map of resulting node type errors
      */
     public void register(Session session, List<URL> nodeTypeResources) throws RepositoryException {
+        prefetch(nodeTypeResources);
         registerNodeTypes(session, nodeTypeResources);
     }
 
@@ -90,9 +103,53 @@ final class CNDURLInstaller {
      * @return map of resulting node type errors
      */
     public void registerByUrl(Session session, List<URL> nodeTypeUrls) throws RepositoryException {
+        prefetch(nodeTypeUrls);
         registerNodeTypesByUrl(session, nodeTypeUrls);
     }
 
+    /**
+     * Read the CNDs that have not already been read on the common fork-join pool, so that the registration retry loop
+     * parses from memory instead of reopening each URL on every iteration. Registration itself remains sequential,
+     * because each CND may depend on namespaces and node types registered by another. URLs that can't be read are
+     * skipped here, so that the error is reported by the registration attempt as before.
+     *
+     * @param nodeTypeUrls the CND URLs to read
+     */
+    void prefetch(final @NotNull List<URL> nodeTypeUrls) {
+        nodeTypeUrls.parallelStream()
+                .filter(url -> !cndContents.containsKey(url.toExternalForm()))
+                .forEach(url -> Fun.result1(CNDURLInstaller::readCnd).apply(url)
+                        .forEach(content -> cndContents.put(url.toExternalForm(), content)));
+    }
+
+    /**
+     * Read all CNDs ahead of registration, and return their content in the order of the unordered CNDs followed by the
+     * post-install CNDs, with null in place of each CND that can't be read.
+     *
+     * @return the CND contents
+     */
+    @NotNull List<String> getCndContents() {
+        final List<URL> allCnds = Stream.concat(unorderedCnds.stream(), postInstallCnds.stream())
+                .collect(Collectors.toList());
+        prefetch(allCnds);
+        return allCnds.stream()
+                .map(url -> cndContents.get(url.toExternalForm()))
+                .collect(Collectors.toList());
+    }
+
+    static String readCnd(final @NotNull URL url) throws IOException {
+        try (InputStream is = url.openStream();
+             Reader reader = new InputStreamReader(is)) {
+            final StringBuilder sb = new StringBuilder();
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        }
+    }
+
     /**
      * Registers node types found in classpath in JCR repository.
      *
@@ -184,8 +241,10 @@ final class CNDURLInstaller {
                                           final NodeTypeManager nodeTypeManager,
                                           final NamespaceRegistry namespaceRegistry,
                                           final ValueFactory valueFactory) throws Throwable {
-        try (InputStream is = namedResource.openStream()) {
-            Reader reader = new InputStreamReader(is);
+        final String content = cndContents.get(namedResource.toExternalForm());
+        try (Reader reader = content != null
+                ? new StringReader(content)
+                : new InputStreamReader(namedResource.openStream())) {
             CndImporter.registerNodeTypes(reader, namedResource.toExternalForm(), nodeTypeManager, namespaceRegistry,
                     valueFactory, false);
         }
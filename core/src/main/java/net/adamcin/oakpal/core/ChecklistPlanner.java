@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.Fun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -215,11 +216,14 @@ public final class ChecklistPlanner {
     }
 
     public static List<Checklist> constructChecklists(final Map<URL, List<JsonObject>> parsed) throws Exception {
+        final List<Map.Entry<URL, List<JsonObject>>> entries = new ArrayList<>(parsed.entrySet());
+        final List<String> moduleNames = Util.mapInParallel(entries,
+                entry -> bestModuleName(entry.getKey()), Exception.class);
         List<Checklist> checklists = new ArrayList<>();
-        for (Map.Entry<URL, List<JsonObject>> entry : parsed.entrySet()) {
-            final URL manifestUrl = entry.getKey();
-            final String moduleName = bestModuleName(manifestUrl);
-            entry.getValue().forEach(json -> checklists.add(Checklist.fromJson(moduleName, manifestUrl, json)));
+        for (int i = 0; i < entries.size(); i++) {
+            final URL manifestUrl = entries.get(i).getKey();
+            final String moduleName = moduleNames.get(i);
+            entries.get(i).getValue().forEach(json -> checklists.add(Checklist.fromJson(moduleName, manifestUrl, json)));
         }
         return checklists;
     }
@@ -241,18 +245,23 @@ public final class ChecklistPlanner {
 
     static Map<URL, List<JsonObject>> parseChecklists(final Map<URL, List<URL>> manifestLookup)
             throws Exception {
-        Map<URL, List<JsonObject>> parsed = new LinkedHashMap<>();
-        for (Map.Entry<URL, List<URL>> manifestEntry : manifestLookup.entrySet()) {
-            final URL manifestUrl = manifestEntry.getKey();
-            final List<URL> checklistUrls = manifestEntry.getValue();
-            final List<JsonObject> allParsedForModule = new ArrayList<>();
-            parsed.put(manifestUrl, allParsedForModule);
-            for (URL checklistUrl : checklistUrls) {
-                try (InputStream is = checklistUrl.openStream();
-                     JsonReader reader = Json.createReader(is)) {
-                    allParsedForModule.add(reader.readObject());
-                }
+        // flatten to (manifest, checklist) pairs so that a module with many checklists is also parsed in parallel
+        final List<Map.Entry<URL, URL>> checklistEntries = manifestLookup.entrySet().stream()
+                .flatMap(entry -> entry.getValue().stream().map(checklistUrl -> Fun.toEntry(entry.getKey(), checklistUrl)))
+                .collect(Collectors.toList());
+        final List<JsonObject> checklistJsons = Util.mapInParallel(checklistEntries, entry -> {
+            try (InputStream is = entry.getValue().openStream();
+                 JsonReader reader = Json.createReader(is)) {
+                return reader.readObject();
             }
+        }, Exception.class);
+
+        Map<URL, List<JsonObject>> parsed = new LinkedHashMap<>();
+        for (URL manifestUrl : manifestLookup.keySet()) {
+            parsed.put(manifestUrl, new ArrayList<>());
+        }
+        for (int i = 0; i < checklistEntries.size(); i++) {
+            parsed.get(checklistEntries.get(i).getKey()).add(checklistJsons.get(i));
         }
         return parsed;
     }
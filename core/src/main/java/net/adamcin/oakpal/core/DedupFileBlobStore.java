@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.jackrabbit.oak.commons.StringUtils;
+import org.apache.jackrabbit.oak.spi.blob.FileBlobStore;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A persistent, content-addressed {@link FileBlobStore} intended to be shared across scans and across JVMs. Blocks are
+ * stored by digest using the same directory layout as {@link FileBlobStore}, so an existing blob store directory can
+ * be reused as-is, and a block that is already present is never written again.
+ * <p>
+ * Compared to {@link FileBlobStore}, this store:
+ * <ul>
+ * <li>writes new blocks to a uniquely-named temp file before atomically moving it into place, so that parallel JVMs
+ * storing the same block never corrupt each other's writes,</li>
+ * <li>updates the last modified time of a block when it is stored again or read, at most once per
+ * {@link #TOUCH_INTERVAL_MILLIS}, so that it can be used as the LRU access time, and</li>
+ * <li>supports {@link #evict()}, which deletes the least-recently-used blocks until the total size of the store is
+ * within the configured maximum size.</li>
+ * </ul>
+ *
+ * @see FileBlobMemoryNodeStore
+ * @since 2.2.3
+ */
+public class DedupFileBlobStore extends FileBlobStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DedupFileBlobStore.class);
+
+    /**
+     * The default maximum size of the store in megabytes.
+     */
+    public static final long DEFAULT_MAX_SIZE_MB = 10240L;
+
+    /**
+     * Blocks are only touched when the last modified time is older than this interval, to avoid an extra metadata write
+     * for every read.
+     */
+    static final long TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * Blocks accessed within this period are never evicted, since a scan in another JVM may still reference them.
+     */
+    static final long EVICTION_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1L);
+
+    static final String LOCK_FILE_NAME = ".evict.lock";
+    static final String BLOCK_SUFFIX = ".dat";
+    static final String TEMP_SUFFIX = ".temp";
+
+    private final File baseDir;
+    private final long maxSizeBytes;
+
+    /**
+     * Create a store in the specified directory with the {@link #DEFAULT_MAX_SIZE_MB}.
+     *
+     * @param dir the blob store directory
+     */
+    public DedupFileBlobStore(final @NotNull String dir) {
+        this(dir, DEFAULT_MAX_SIZE_MB);
+    }
+
+    /**
+     * Create a store in the specified directory with the specified maximum size.
+     *
+     * @param dir       the blob store directory
+     * @param maxSizeMb the maximum size in megabytes enforced by {@link #evict()}. specify 0 or less for no maximum.
+     */
+    public DedupFileBlobStore(final @NotNull String dir, final long maxSizeMb) {
+        super(dir);
+        this.baseDir = new File(dir);
+        this.maxSizeBytes = maxSizeMb > 0 ? maxSizeMb * 1024L * 1024L : 0L;
+    }
+
+    /**
+     * Get the maximum size of the store in bytes, or 0 if unbounded.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    /**
+     * Get the file for a block digest, matching the layout used by {@link FileBlobStore}.
+     *
+     * @param digest the block digest
+     * @return the block file
+     */
+    File getBlockFile(final byte[] digest) {
+        final String id = StringUtils.convertBytesToHex(digest);
+        final String sub1 = id.substring(id.length() - 2);
+        final String sub2 = id.substring(id.length() - 4, id.length() - 2);
+        return new File(new File(new File(baseDir, sub1), sub2), id + BLOCK_SUFFIX);
+    }
+
+    @Override
+    protected void storeBlock(final byte[] digest, final int level, final byte[] data) throws IOException {
+        final File file = getBlockFile(digest);
+        if (file.exists()) {
+            touch(file);
+            return;
+        }
+        final Path parent = Files.createDirectories(file.getParentFile().toPath());
+        final Path temp = Files.createTempFile(parent, file.getName(), TEMP_SUFFIX);
+        try {
+            Files.write(temp, data);
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // another process stored the same block first
+            touch(file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    protected byte[] readBlockFromBackend(final BlockId id) throws IOException {
+        touch(getBlockFile(id.getDigest()));
+        return super.readBlockFromBackend(id);
+    }
+
+    static void touch(final @NotNull File file) {
+        final long now = System.currentTimeMillis();
+        if (now - file.lastModified() > TOUCH_INTERVAL_MILLIS && !file.setLastModified(now)) {
+            LOGGER.debug("failed to update last modified time of {}", file);
+        }
+    }
+
+    /**
+     * Delete the least-recently-used blocks, and any abandoned temp files, until the total size of the store is no
+     * greater than the maximum size. Blocks accessed within the last hour are never deleted. If another thread or JVM is
+     * already evicting from the same directory, this method returns immediately.
+     *
+     * @return the number of deleted blocks
+     * @throws IOException if the lock file can not be opened or the directory can not be walked
+     */
+    public int evict() throws IOException {
+        if (maxSizeBytes <= 0L || !baseDir.isDirectory() || getTotalSize() <= maxSizeBytes) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(new File(baseDir, LOCK_FILE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return 0;
+            }
+            return evictLocked(System.currentTimeMillis() - EVICTION_GRACE_MILLIS);
+        } catch (OverlappingFileLockException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Get the total size of the stored blocks in bytes.
+     *
+     * @return the total size of the stored blocks
+     * @throws IOException if the directory can not be walked
+     */
+    public long getTotalSize() throws IOException {
+        if (!baseDir.isDirectory()) {
+            return 0L;
+        }
+        try (Stream<Path> paths = Files.walk(baseDir.toPath())) {
+            return paths.map(Path::toFile)
+                    .filter(file -> file.isFile() && file.getName().endsWith(BLOCK_SUFFIX))
+                    .mapToLong(File::length)
+                    .sum();
+        }
+    }
+
+    static final class Block {
+        final File file;
+        final long lastModified;
+        final long length;
+
+        Block(final @NotNull File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+    }
+
+    int evictLocked(final long graceCutoff) throws IOException {
+        final List<Block> blocks = new ArrayList<>();
+        long totalSize = 0L;
+        try (Stream<Path> paths = Files.walk(baseDir.toPath())) {
+            for (File file : (Iterable<File>) paths.map(Path::toFile).filter(File::isFile)::iterator) {
+                final String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    if (file.lastModified() < graceCutoff && !file.delete()) {
+                        LOGGER.debug("failed to delete abandoned temp file {}", file);
+                    }
+                } else if (name.endsWith(BLOCK_SUFFIX)) {
+                    final Block block = new Block(file);
+                    blocks.add(block);
+                    totalSize += block.length;
+                }
+            }
+        }
+        if (totalSize <= maxSizeBytes) {
+            return 0;
+        }
+        blocks.sort(Comparator.comparingLong(block -> block.lastModified));
+        int deleted = 0;
+        for (Block block : blocks) {
+            if (totalSize <= maxSizeBytes || block.lastModified >= graceCutoff) {
+                break;
+            }
+            if (block.file.delete()) {
+                totalSize -= block.length;
+                deleted++;
+            }
+        }
+        LOGGER.debug("evicted {} blocks from {}", deleted, baseDir);
+        return deleted;
+    }
+}
@@ -23,7 +23,10 @@ import org.apache.jackrabbit.oak.spi.blob.FileBlobStore;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.oak.spi.state.ProxyNodeStore;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -32,15 +35,40 @@ import java.io.InputStream;
  * production scans than a {@link MemoryNodeStore} by itself.
  *
  * If the size of the tree, excluding binaries, is likely to consume all heap, consider upgrading to a SegmentNodeStore.
+ *
+ * Since 2.2.3, binaries are stored in a {@link DedupFileBlobStore}, which is meant to be reused by every scan, and which
+ * evicts least-recently-used blocks beyond its maximum size when this node store is closed.
  */
-public class FileBlobMemoryNodeStore extends ProxyNodeStore {
+public class FileBlobMemoryNodeStore extends ProxyNodeStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileBlobMemoryNodeStore.class);
 
     private final MemoryNodeStore nodeStore;
-    private final FileBlobStore blobStore;
+    private final DedupFileBlobStore blobStore;
 
     public FileBlobMemoryNodeStore(final @NotNull String blobStorePath) {
+        this(blobStorePath, DedupFileBlobStore.DEFAULT_MAX_SIZE_MB);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param blobStorePath the blob store directory
+     * @param maxSizeMb     the maximum size of the blob store in megabytes, or 0 for no maximum
+     * @since 2.2.3
+     */
+    public FileBlobMemoryNodeStore(final @NotNull String blobStorePath, final long maxSizeMb) {
         this.nodeStore = new MemoryNodeStore();
-        this.blobStore = new FileBlobStore(blobStorePath);
+        this.blobStore = new DedupFileBlobStore(blobStorePath, maxSizeMb);
+    }
+
+    /**
+     * Get the blob store.
+     *
+     * @return the blob store
+     * @since 2.2.3
+     */
+    public @NotNull DedupFileBlobStore getBlobStore() {
+        return blobStore;
     }
 
     @Override
@@ -52,4 +80,18 @@ public class FileBlobMemoryNodeStore extends ProxyNodeStore {
     public @NotNull Blob createBlob(final @NotNull InputStream inputStream) throws IOException {
         return new BlobStoreBlob(this.blobStore, this.blobStore.writeBlob(inputStream));
     }
+
+    /**
+     * Evict least-recently-used blocks from the blob store if it exceeds its maximum size.
+     *
+     * @since 2.2.3
+     */
+    @Override
+    public void close() {
+        try {
+            blobStore.evict();
+        } catch (IOException e) {
+            LOGGER.warn("failed to evict blocks from blob store", e);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.plugins.memory.AbstractBlob;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.spi.state.ProxyNodeStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A {@link ProxyNodeStore} that creates a {@link Blob} referencing a file on disk, instead of copying its content,
+ * when a binary is created from a stream returned by {@link #openReference(File)}. All other binaries are created by
+ * the wrapped node store.
+ * <p>
+ * Used by {@link OakMachine.Builder#withPackageFilesByReference(boolean)} to register a scanned package file in the
+ * package manager without copying it into the repository. A node store that persists node states, like a segment
+ * store, still copies the content of a reference blob when the node state is written.
+ *
+ * @since 2.2.3
+ */
+final class FileReferenceNodeStore extends ProxyNodeStore {
+    private final NodeStore nodeStore;
+
+    FileReferenceNodeStore(final @NotNull NodeStore nodeStore) {
+        this.nodeStore = nodeStore;
+    }
+
+    @Override
+    protected NodeStore getNodeStore() {
+        return nodeStore;
+    }
+
+    @Override
+    public @NotNull Blob createBlob(final @NotNull InputStream inputStream) throws IOException {
+        if (inputStream instanceof ReferenceInputStream) {
+            return new FileBlob(((ReferenceInputStream) inputStream).file);
+        }
+        return super.createBlob(inputStream);
+    }
+
+    /**
+     * Open a stream for a file that is recognized by {@link #createBlob(InputStream)}. Other node stores will read it
+     * like any other {@link FileInputStream}.
+     *
+     * @param file the file
+     * @return a file input stream
+     * @throws FileNotFoundException if the file does not exist
+     */
+    static InputStream openReference(final @NotNull File file) throws FileNotFoundException {
+        return new ReferenceInputStream(file);
+    }
+
+    static final class ReferenceInputStream extends FileInputStream {
+        private final File file;
+
+        ReferenceInputStream(final @NotNull File file) throws FileNotFoundException {
+            super(file);
+            this.file = file;
+        }
+    }
+
+    static final class FileBlob extends AbstractBlob {
+        private final File file;
+
+        FileBlob(final @NotNull File file) {
+            this.file = file;
+        }
+
+        @Override
+        public @NotNull InputStream getNewStream() {
+            try {
+                return new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long length() {
+            return file.length();
+        }
+    }
+}
@@ -16,9 +16,12 @@
 
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.Violation;
 import org.apache.jackrabbit.api.JackrabbitWorkspace;
 import org.apache.jackrabbit.api.security.authorization.PrivilegeManager;
 import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.spi.PrivilegeDefinition;
 import org.apache.jackrabbit.spi.QNodeTypeDefinition;
 import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
@@ -50,6 +53,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static net.adamcin.oakpal.api.Fun.onEntry;
 import static net.adamcin.oakpal.api.Fun.result1;
@@ -61,6 +65,11 @@ import static net.adamcin.oakpal.core.OakMachine.NT_UNDECLARED;
  * Encapsulation of JCR initialization parameters for multistage inits.
  */
 public final class InitStage {
+    /**
+     * The number of forced roots created in the session before each save.
+     */
+    static final int FORCED_ROOT_BATCH_SIZE = 1024;
+
     private final List<String> repoInits;
 
     private final List<URL> repoInitUrls;
@@ -348,28 +357,77 @@ public final class InitStage {
     void initSession(final Session admin, final ErrorListener errorListener,
                      final OakMachine.RepoInitProcessor repoInitProcessor)
             throws RepositoryException {
+        initSession(admin, errorListener, repoInitProcessor, null, null);
+    }
 
+    void initSession(final Session admin, final ErrorListener errorListener,
+                     final OakMachine.RepoInitProcessor repoInitProcessor,
+                     final @Nullable NodeTypeRegistryCache registryCache,
+                     final @Nullable NodeStore nodeStore)
+            throws RepositoryException {
+        if (registryCache != null && nodeStore != null && !admin.hasPendingChanges()) {
+            final RegistrationErrorTracker errorTracker = new RegistrationErrorTracker(errorListener);
+            final CNDURLInstaller cndInstaller = new CNDURLInstaller(errorTracker,
+                    this.unorderedCndUrls, this.orderedCndUrls);
+            final NodeTypeRegistryCache.Key key = new NodeTypeRegistryCache.Key(
+                    cndInstaller.getCndContents().stream()
+                            .map(NodeTypeRegistryCache::digestCnd)
+                            .collect(Collectors.toList()),
+                    unorderedCndUrls.size(), namespaces, qNodeTypes, privilegeNames, privileges);
+            final List<NodeState> before = NodeTypeRegistryCache.captureRegistries(nodeStore.getRoot());
+            if (registryCache.restore(nodeStore, key, before)) {
+                admin.refresh(true);
+                // the restored registry already contains the namespaces, but the session prefixes must be remapped
+                registerNamespaces(admin, errorListener);
+            } else {
+                registerTypes(admin, errorTracker, cndInstaller);
+                if (!errorTracker.hasErrors() && !admin.hasPendingChanges()) {
+                    registryCache.put(key, before, NodeTypeRegistryCache.captureRegistries(nodeStore.getRoot()));
+                }
+            }
+        } else {
+            registerTypes(admin, errorListener, new CNDURLInstaller(errorListener,
+                    this.unorderedCndUrls, this.orderedCndUrls));
+        }
 
-        final CNDURLInstaller cndInstaller = new CNDURLInstaller(errorListener,
-                this.unorderedCndUrls, this.orderedCndUrls);
-
-        cndInstaller.register(admin);
-
-        final NamespaceRegistry registry = admin.getWorkspace().getNamespaceRegistry();
+        createForcedRoots(admin, errorListener);
 
-        // uri to prefix !!
-        namespaces.entrySet().stream().forEachOrdered(onEntry((uri, prefix) -> {
-            try {
-                if (Arrays.asList(registry.getURIs()).contains(uri)) {
-                    admin.setNamespacePrefix(prefix, uri);
-                } else {
-                    registry.registerNamespace(prefix, uri);
-                }
-            } catch (final Exception e) {
-                errorListener.onJcrNamespaceRegistrationError(e, prefix, uri);
+        repoInitUrls.stream().forEachOrdered(uncheckVoid1(repoinitUrl -> {
+            try (final InputStream repoinitInput = repoinitUrl.openStream();
+                 final Reader repoinitReader = new InputStreamReader(repoinitInput, StandardCharsets.UTF_8)) {
+                repoInitProcessor.apply(admin, repoinitReader);
+                admin.save();
+            } catch (Exception e) {
+                errorListener.onRepoInitUrlError(e, repoinitUrl);
+                admin.refresh(false);
             }
         }));
 
+        if (!repoInits.isEmpty()) {
+            try (Reader repoinitReader = new StringReader(String.join("\n", repoInits))) {
+                repoInitProcessor.apply(admin, repoinitReader);
+                admin.save();
+            } catch (Exception e) {
+                errorListener.onRepoInitInlineError(e, repoInits);
+                admin.refresh(false);
+            }
+        }
+    }
+
+    /**
+     * Register the CNDs, namespaces, node types, and privileges of this stage.
+     *
+     * @param admin         the admin session
+     * @param errorListener the error listener
+     * @param cndInstaller  the CND installer for this stage
+     * @throws RepositoryException for repository errors
+     */
+    private void registerTypes(final Session admin, final ErrorListener errorListener,
+                               final CNDURLInstaller cndInstaller) throws RepositoryException {
+        cndInstaller.register(admin);
+
+        registerNamespaces(admin, errorListener);
+
         if (!qNodeTypes.isEmpty()) {
             try {
                 NodeTypeDefinitionFactory fac = new NodeTypeDefinitionFactory(admin);
@@ -419,45 +477,105 @@ public final class InitStage {
                 privileges.stream().forEachOrdered(privConsumer);
             }
         }
+    }
 
-        forcedRoots.values().stream()
+    private void registerNamespaces(final Session admin, final ErrorListener errorListener)
+            throws RepositoryException {
+        final NamespaceRegistry registry = admin.getWorkspace().getNamespaceRegistry();
+
+        // uri to prefix !!
+        namespaces.entrySet().stream().forEachOrdered(onEntry((uri, prefix) -> {
+            try {
+                if (Arrays.asList(registry.getURIs()).contains(uri)) {
+                    admin.setNamespacePrefix(prefix, uri);
+                } else {
+                    registry.registerNamespace(prefix, uri);
+                }
+            } catch (final Exception e) {
+                errorListener.onJcrNamespaceRegistrationError(e, prefix, uri);
+            }
+        }));
+    }
+
+    private void createForcedRoots(final Session admin, final ErrorListener errorListener)
+            throws RepositoryException {
+        final List<ForcedRoot> sortedRoots = forcedRoots.values().stream()
                 .filter(ForcedRoot::hasPath)
                 .sorted(Comparator.comparing(root -> root.getPath().length()))
-                .forEachOrdered(uncheckVoid1(root -> {
+                .collect(Collectors.toList());
+        for (int from = 0; from < sortedRoots.size(); from += FORCED_ROOT_BATCH_SIZE) {
+            final List<ForcedRoot> batch = sortedRoots
+                    .subList(from, Math.min(sortedRoots.size(), from + FORCED_ROOT_BATCH_SIZE));
+            try {
+                for (ForcedRoot root : batch) {
+                    createForcedRoot(admin, root);
+                }
+                admin.save();
+            } catch (final Exception batchError) {
+                // retry the batch with one save per root to identify each root that fails
+                admin.refresh(false);
+                for (ForcedRoot root : batch) {
                     try {
-                        final String primaryType = root.getPrimaryType() != null
-                                ? root.getPrimaryType()
-                                : NT_UNDECLARED;
-                        final List<String> mixinTypes = root.getMixinTypes();
-                        Node rootNode = JcrUtils.getOrCreateByPath(root.getPath(),
-                                NT_UNDECLARED, primaryType, admin, false);
-                        mixinTypes.forEach(uncheckVoid1(rootNode::addMixin));
+                        createForcedRoot(admin, root);
                         admin.save();
                     } catch (final Exception e) {
                         errorListener.onForcedRootCreationError(e, root);
                         admin.refresh(false);
                     }
-                }));
-
-        repoInitUrls.stream().forEachOrdered(uncheckVoid1(repoinitUrl -> {
-            try (final InputStream repoinitInput = repoinitUrl.openStream();
-                 final Reader repoinitReader = new InputStreamReader(repoinitInput, StandardCharsets.UTF_8)) {
-                repoInitProcessor.apply(admin, repoinitReader);
-                admin.save();
-            } catch (Exception e) {
-                errorListener.onRepoInitUrlError(e, repoinitUrl);
-                admin.refresh(false);
+                }
             }
-        }));
+        }
+    }
 
-        if (!repoInits.isEmpty()) {
-            try (Reader repoinitReader = new StringReader(String.join("\n", repoInits))) {
-                repoInitProcessor.apply(admin, repoinitReader);
-                admin.save();
-            } catch (Exception e) {
-                errorListener.onRepoInitInlineError(e, repoInits);
-                admin.refresh(false);
-            }
+    static void createForcedRoot(final @NotNull Session admin, final @NotNull ForcedRoot root)
+            throws RepositoryException {
+        final String primaryType = root.getPrimaryType() != null
+                ? root.getPrimaryType()
+                : NT_UNDECLARED;
+        final Node rootNode = JcrUtils.getOrCreateByPath(root.getPath(),
+                NT_UNDECLARED, primaryType, admin, false);
+        for (String mixinType : root.getMixinTypes()) {
+            rootNode.addMixin(mixinType);
+        }
+    }
+
+    /**
+     * Forwards registration errors to the scan error listener, and remembers whether any were reported, so that
+     * registrations with errors are not cached. It is only passed to the registration steps.
+     */
+    static final class RegistrationErrorTracker implements ErrorListener {
+        private final ErrorListener delegate;
+        private boolean errors;
+
+        RegistrationErrorTracker(final @NotNull ErrorListener delegate) {
+            this.delegate = delegate;
+        }
+
+        boolean hasErrors() {
+            return errors;
+        }
+
+        @Override
+        public void onNodeTypeRegistrationError(final Throwable error, final URL resource) {
+            errors = true;
+            delegate.onNodeTypeRegistrationError(error, resource);
+        }
+
+        @Override
+        public void onJcrNamespaceRegistrationError(final Throwable error, final String prefix, final String uri) {
+            errors = true;
+            delegate.onJcrNamespaceRegistrationError(error, prefix, uri);
+        }
+
+        @Override
+        public void onJcrPrivilegeRegistrationError(final Throwable error, final String jcrPrivilege) {
+            errors = true;
+            delegate.onJcrPrivilegeRegistrationError(error, jcrPrivilege);
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return delegate.getReportedViolations();
         }
     }
 }
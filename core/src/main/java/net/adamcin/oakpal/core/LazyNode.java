@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Resolves the {@link Node} of an imported path from the session on the first call to one of its methods, other than
+ * {@link Node#getPath()}, so that a path event only looks up the node when a check actually uses it.
+ */
+final class LazyNode implements InvocationHandler {
+    private final Session session;
+    private final String path;
+    private Node node;
+    private RepositoryException resolveError;
+
+    private LazyNode(final @NotNull Session session, final @NotNull String path) {
+        this.session = session;
+        this.path = path;
+    }
+
+    static @NotNull LazyNode of(final @NotNull Session session, final @NotNull String path) {
+        return new LazyNode(session, path);
+    }
+
+    /**
+     * Create the proxy node that is passed to the checks.
+     *
+     * @return a node that resolves the path on first use
+     */
+    @NotNull Node newProxy() {
+        return (Node) Proxy.newProxyInstance(LazyNode.class.getClassLoader(), new Class<?>[]{Node.class}, this);
+    }
+
+    /**
+     * Get the error thrown when a check caused the node to be resolved and the session could not get it.
+     *
+     * @return the resolve error, or null if the node was never resolved or was resolved successfully
+     */
+    synchronized @Nullable RepositoryException getResolveError() {
+        return resolveError;
+    }
+
+    synchronized @NotNull Node resolve() throws RepositoryException {
+        if (node == null) {
+            if (resolveError != null) {
+                throw resolveError;
+            }
+            try {
+                node = session.getNode(path);
+            } catch (final RepositoryException e) {
+                resolveError = e;
+                throw e;
+            }
+        }
+        return node;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if ("getPath".equals(method.getName()) && method.getParameterCount() == 0) {
+            return path;
+        } else if ("toString".equals(method.getName()) && method.getParameterCount() == 0) {
+            return "LazyNode(" + path + ")";
+        } else if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+            return System.identityHashCode(proxy);
+        }
+        try {
+            return method.invoke(resolve(), args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
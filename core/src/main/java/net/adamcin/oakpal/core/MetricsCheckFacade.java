@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.BatchProgressCheck;
+import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.ProgressCheck;
+import net.adamcin.oakpal.api.SilenceableCheck;
+import net.adamcin.oakpal.api.SlingInstallable;
+import net.adamcin.oakpal.api.SlingSimulator;
+import net.adamcin.oakpal.api.Violation;
+import org.apache.jackrabbit.vault.fs.config.MetaInf;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+/**
+ * Internal facade class which records the elapsed time of each event passed to the wrapped {@link ProgressCheck} in a
+ * {@link ScanMetrics} instance.
+ */
+class MetricsCheckFacade implements BatchProgressCheck {
+
+    @FunctionalInterface
+    interface Event<E extends Exception> {
+        void run() throws E;
+    }
+
+    private final ProgressCheck wrapped;
+    private final ScanMetrics metrics;
+
+    MetricsCheckFacade(final @NotNull ProgressCheck wrapped, final @NotNull ScanMetrics metrics) {
+        this.wrapped = wrapped;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Wrap the check, preserving the {@link SilenceableCheck} interface if implemented.
+     *
+     * @param check   the check to wrap
+     * @param metrics the metrics to record events in
+     * @return a new facade
+     */
+    static MetricsCheckFacade wrap(final @NotNull ProgressCheck check, final @NotNull ScanMetrics metrics) {
+        if (check instanceof SilenceableCheck) {
+            return new Silenceable((SilenceableCheck) check, metrics);
+        }
+        return new MetricsCheckFacade(check, metrics);
+    }
+
+    @NotNull ProgressCheck getWrapped() {
+        return wrapped;
+    }
+
+    final <E extends Exception> void time(final @NotNull String eventName, final @NotNull Event<E> event) throws E {
+        final long start = System.nanoTime();
+        try {
+            event.run();
+        } finally {
+            metrics.recordCheckEvent(String.valueOf(wrapped.getCheckName()), eventName, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String getCheckName() {
+        return wrapped.getCheckName();
+    }
+
+    @Override
+    public @Nullable String getResourceBundleBaseName() {
+        return wrapped.getResourceBundleBaseName();
+    }
+
+    @Override
+    public void setResourceBundle(final ResourceBundle resourceBundle) {
+        wrapped.setResourceBundle(resourceBundle);
+    }
+
+    @Override
+    public Collection<Violation> getReportedViolations() {
+        return wrapped.getReportedViolations();
+    }
+
+    @Override
+    public void simulateSling(final SlingSimulator slingSimulator, final Set<String> runModes) {
+        wrapped.simulateSling(slingSimulator, runModes);
+    }
+
+    @Override
+    public void startedScan() {
+        time("startedScan", wrapped::startedScan);
+    }
+
+    @Override
+    public void finishedScan() {
+        time("finishedScan", wrapped::finishedScan);
+    }
+
+    @Override
+    public void identifyPackage(final PackageId packageId, final File file) {
+        time("identifyPackage", () -> wrapped.identifyPackage(packageId, file));
+    }
+
+    @Override
+    public void readManifest(final PackageId packageId, final Manifest manifest) {
+        time("readManifest", () -> wrapped.readManifest(packageId, manifest));
+    }
+
+    @Override
+    public void beforeExtract(final PackageId packageId, final Session inspectSession,
+                              final PackageProperties packageProperties, final MetaInf metaInf,
+                              final List<PackageId> subpackages) throws RepositoryException {
+        time("beforeExtract", () ->
+                wrapped.beforeExtract(packageId, inspectSession, packageProperties, metaInf, subpackages));
+    }
+
+    @Override
+    public void importedPath(final PackageId packageId, final String path, final Node node,
+                             final PathAction action) throws RepositoryException {
+        time("importedPath", () -> wrapped.importedPath(packageId, path, node, action));
+    }
+
+    @Override
+    public void deletedPath(final PackageId packageId, final String path, final Session inspectSession)
+            throws RepositoryException {
+        time("deletedPath", () -> wrapped.deletedPath(packageId, path, inspectSession));
+    }
+
+    @Override
+    public void pathEvents(final PackageId packageId, final List<PathEvent> pathEvents, final Session inspectSession)
+            throws RepositoryException {
+        time("pathEvents", () -> BatchCheckDispatcher.deliver(wrapped, packageId, pathEvents, inspectSession));
+    }
+
+    @Override
+    public void afterExtract(final PackageId packageId, final Session inspectSession) throws RepositoryException {
+        time("afterExtract", () -> wrapped.afterExtract(packageId, inspectSession));
+    }
+
+    @Override
+    public void identifySubpackage(final PackageId packageId, final PackageId parentId) {
+        time("identifySubpackage", () -> wrapped.identifySubpackage(packageId, parentId));
+    }
+
+    @Override
+    public void beforeSlingInstall(final PackageId scanPackageId,
+                                   final SlingInstallable slingInstallable,
+                                   final Session inspectSession) throws RepositoryException {
+        time("beforeSlingInstall", () -> wrapped.beforeSlingInstall(scanPackageId, slingInstallable, inspectSession));
+    }
+
+    @Override
+    public void identifyEmbeddedPackage(final PackageId packageId,
+                                        final PackageId parentId,
+                                        final EmbeddedPackageInstallable slingInstallable) {
+        time("identifyEmbeddedPackage", () -> wrapped.identifyEmbeddedPackage(packageId, parentId, slingInstallable));
+    }
+
+    @Override
+    public void appliedRepoInitScripts(final PackageId scanPackageId,
+                                       final List<String> scripts,
+                                       final SlingInstallable slingInstallable,
+                                       final Session inspectSession) throws RepositoryException {
+        time("appliedRepoInitScripts", () ->
+                wrapped.appliedRepoInitScripts(scanPackageId, scripts, slingInstallable, inspectSession));
+    }
+
+    @Override
+    public void afterScanPackage(final PackageId scanPackageId, final Session inspectSession)
+            throws RepositoryException {
+        time("afterScanPackage", () -> wrapped.afterScanPackage(scanPackageId, inspectSession));
+    }
+
+    /**
+     * Variant which forwards {@link SilenceableCheck#setSilenced(boolean)} to the wrapped check.
+     */
+    static final class Silenceable extends MetricsCheckFacade implements SilenceableCheck {
+        private final SilenceableCheck silenceable;
+
+        Silenceable(final @NotNull SilenceableCheck wrapped, final @NotNull ScanMetrics metrics) {
+            super(wrapped, metrics);
+            this.silenceable = wrapped;
+        }
+
+        @Override
+        public void setSilenced(final boolean silenced) {
+            silenceable.setSilenced(silenced);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.CompositeIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.reference.ReferenceEditorProvider;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.spi.PrivilegeDefinition;
+import org.apache.jackrabbit.spi.QNodeTypeDefinition;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.jcr.RepositoryException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+/**
+ * A cache of the node type, namespace, and privilege registries produced by the {@link InitStage}s of an
+ * {@link OakMachine}, which can be shared by many scans and many {@link OakMachine} instances, using
+ * {@link OakMachine.Builder#withNodeTypeRegistryCache(NodeTypeRegistryCache)}.
+ * <p>
+ * Each entry is keyed by the combined CND, node type, namespace, and privilege inputs of an {@link InitStage}, where
+ * CNDs are identified by a digest of their content, and it holds the {@code jcr:system/jcr:nodeTypes},
+ * {@code jcr:system/rep:namespaces}, and {@code jcr:system/rep:privileges} subtrees as they were both before and after
+ * the registration. When a later scan reaches the same stage with equal registries, the resulting subtrees are copied
+ * directly into the scan repository, skipping the parsing of the CNDs and the validation of the node type hierarchy.
+ * Registrations that report any error to the {@link ErrorListener} are not cached, so that each scan reports the same
+ * errors.
+ * <p>
+ * Entries are held in memory, detached from the node store that produced them, and the least-recently-used entries are
+ * evicted when the maximum number of entries is exceeded. Entries are not persisted, so they are only reused by scans in
+ * the same JVM.
+ *
+ * @since 2.2.3
+ */
+public final class NodeTypeRegistryCache {
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    static final String JCR_SYSTEM = "jcr:system";
+    static final List<String> REGISTRY_NAMES = Collections.unmodifiableList(
+            Arrays.asList("jcr:nodeTypes", "rep:namespaces", "rep:privileges"));
+
+    private final Map<Key, Entry> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a cache with the {@link #DEFAULT_MAX_ENTRIES}.
+     */
+    public NodeTypeRegistryCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create a cache with a maximum number of entries.
+     *
+     * @param maxEntries the maximum number of entries to keep
+     */
+    public NodeTypeRegistryCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The number of registrations restored from the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of registrations that were not found in the cache.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Copy the cached registries for the key into the node store, if an entry exists for the key whose registries
+     * before registration are equal to the current registries in the node store.
+     *
+     * @param nodeStore the scan repository node store
+     * @param key       the registration inputs
+     * @param before    the current registries, from {@link #captureRegistries(NodeState)}
+     * @return true if the registries were restored
+     * @throws RepositoryException if the registries fail to merge
+     */
+    boolean restore(final @NotNull NodeStore nodeStore, final @NotNull Key key,
+                    final @NotNull List<NodeState> before) throws RepositoryException {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || !entry.before.equals(before)) {
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        final NodeBuilder rootBuilder = nodeStore.getRoot().builder();
+        final NodeBuilder system = rootBuilder.child(JCR_SYSTEM);
+        for (int i = 0; i < REGISTRY_NAMES.size(); i++) {
+            system.setChildNode(REGISTRY_NAMES.get(i), entry.after.get(i));
+        }
+        try {
+            // keep the property indexes consistent with the restored subtrees
+            nodeStore.merge(rootBuilder, new EditorHook(new IndexUpdateProvider(
+                    CompositeIndexEditorProvider.compose(Arrays.asList(
+                            new PropertyIndexEditorProvider(),
+                            new ReferenceEditorProvider())))), CommitInfo.EMPTY);
+        } catch (final CommitFailedException e) {
+            throw new RepositoryException("failed to restore cached node type registries", e);
+        }
+        return true;
+    }
+
+    /**
+     * Cache the registries produced for the key.
+     *
+     * @param key    the registration inputs
+     * @param before the registries before registration
+     * @param after  the registries after registration
+     */
+    void put(final @NotNull Key key, final @NotNull List<NodeState> before, final @NotNull List<NodeState> after) {
+        final Entry entry = new Entry(detach(before), detach(after));
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Capture the registry subtrees of the root node state.
+     *
+     * @param root the repository root state
+     * @return the registry subtrees, in the order of {@link #REGISTRY_NAMES}
+     */
+    static List<NodeState> captureRegistries(final @NotNull NodeState root) {
+        final NodeState system = root.getChildNode(JCR_SYSTEM);
+        final List<NodeState> registries = new ArrayList<>(REGISTRY_NAMES.size());
+        for (String name : REGISTRY_NAMES) {
+            registries.add(system.getChildNode(name));
+        }
+        return registries;
+    }
+
+    /**
+     * Copy the node states into memory, so that the entries remain readable after the source node store is closed.
+     *
+     * @param states the node states to copy
+     * @return the copied node states
+     */
+    static List<NodeState> detach(final @NotNull List<NodeState> states) {
+        final List<NodeState> copies = new ArrayList<>(states.size());
+        for (NodeState state : states) {
+            final NodeBuilder builder = EMPTY_NODE.builder();
+            copyState(state, builder);
+            copies.add(builder.getNodeState());
+        }
+        return copies;
+    }
+
+    private static void copyState(final @NotNull NodeState from, final @NotNull NodeBuilder to) {
+        for (PropertyState property : from.getProperties()) {
+            to.setProperty(PropertyStates.createProperty(property.getName(),
+                    property.getValue(property.getType()), property.getType()));
+        }
+        for (ChildNodeEntry child : from.getChildNodeEntries()) {
+            copyState(child.getNodeState(), to.child(child.getName()));
+        }
+    }
+
+    private static final class Entry {
+        private final List<NodeState> before;
+        private final List<NodeState> after;
+
+        private Entry(final @NotNull List<NodeState> before, final @NotNull List<NodeState> after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * The registration inputs of an {@link InitStage}. The CNDs are identified by the digests of their content, in the
+     * order of the unordered CNDs followed by the ordered CNDs.
+     */
+    static final class Key {
+        private final List<String> cndDigests;
+        private final int unorderedCndCount;
+        private final Map<String, String> namespaces;
+        private final List<QNodeTypeDefinition> qNodeTypes;
+        private final Set<String> privilegeNames;
+        private final Set<PrivilegeDefinition> privileges;
+
+        Key(final @NotNull List<String> cndDigests,
+            final int unorderedCndCount,
+            final @NotNull Map<String, String> namespaces,
+            final @NotNull List<QNodeTypeDefinition> qNodeTypes,
+            final @NotNull Set<String> privilegeNames,
+            final @NotNull Set<PrivilegeDefinition> privileges) {
+            this.cndDigests = cndDigests;
+            this.unorderedCndCount = unorderedCndCount;
+            this.namespaces = namespaces;
+            this.qNodeTypes = qNodeTypes;
+            this.privilegeNames = privilegeNames;
+            this.privileges = privileges;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return unorderedCndCount == key.unorderedCndCount
+                    && cndDigests.equals(key.cndDigests)
+                    && namespaces.equals(key.namespaces)
+                    && qNodeTypes.equals(key.qNodeTypes)
+                    && privilegeNames.equals(key.privilegeNames)
+                    && privileges.equals(key.privileges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cndDigests, unorderedCndCount, namespaces, qNodeTypes, privilegeNames, privileges);
+        }
+    }
+
+    /**
+     * Compute a hex SHA-256 digest of the CND content, or return null if the content is null.
+     *
+     * @param cndContent the CND content
+     * @return the digest, or null
+     */
+    static @Nullable String digestCnd(final @Nullable String cndContent) {
+        if (cndContent == null) {
+            return null;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(cndContent.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -16,12 +16,17 @@
 
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.AsyncCheck;
+import net.adamcin.oakpal.api.BatchProgressCheck;
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.Fun;
 import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.PathInterestCheck;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.SilenceableCheck;
+import net.adamcin.oakpal.api.SimpleViolation;
 import net.adamcin.oakpal.api.SlingInstallable;
+import net.adamcin.oakpal.api.Violation;
 import net.adamcin.oakpal.core.sling.DefaultSlingSimulator;
 import net.adamcin.oakpal.core.sling.SlingRepoInitScripts;
 import net.adamcin.oakpal.core.sling.SlingSimulatorBackend;
@@ -30,12 +35,24 @@ import org.apache.jackrabbit.api.JackrabbitRepository;
 import org.apache.jackrabbit.commons.cnd.DefinitionBuilderFactory;
 import org.apache.jackrabbit.commons.cnd.TemplateBuilderFactory;
 import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.jcr.Jcr;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.reference.ReferenceEditorProvider;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.observation.ChangeCollectorProvider;
 import org.apache.jackrabbit.oak.security.internal.SecurityProviderBuilder;
+import org.apache.jackrabbit.oak.spi.commit.CommitHook;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorProvider;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.lifecycle.RepositoryInitializer;
 import org.apache.jackrabbit.oak.spi.nodetype.NodeTypeConstants;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
 import org.apache.jackrabbit.oak.spi.security.ConfigurationParameters;
 import org.apache.jackrabbit.oak.spi.security.authentication.AuthenticationConfiguration;
 import org.apache.jackrabbit.oak.spi.security.authorization.AuthorizationConfiguration;
@@ -43,24 +60,35 @@ import org.apache.jackrabbit.oak.spi.security.privilege.PrivilegeConstants;
 import org.apache.jackrabbit.oak.spi.security.user.UserConfiguration;
 import org.apache.jackrabbit.oak.spi.security.user.UserConstants;
 import org.apache.jackrabbit.oak.spi.security.user.action.AccessControlAction;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.oak.spi.xml.ImportBehavior;
 import org.apache.jackrabbit.oak.spi.xml.ProtectedItemImporter;
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
+import org.apache.jackrabbit.vault.fs.io.Archive;
 import org.apache.jackrabbit.vault.packaging.DependencyHandling;
 import org.apache.jackrabbit.vault.packaging.DependencyUtil;
 import org.apache.jackrabbit.vault.packaging.InstallHookProcessorFactory;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
 import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.PackageException;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.Packaging;
 import org.apache.jackrabbit.vault.packaging.SubPackageHandling;
 import org.apache.jackrabbit.vault.packaging.VaultPackage;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageImpl;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageManagerImpl;
+import org.apache.jackrabbit.vault.packaging.impl.ZipVaultPackage;
 import org.apache.sling.repoinit.parser.RepoInitParsingException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
@@ -70,6 +98,7 @@ import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
 import javax.jcr.nodetype.NodeTypeTemplate;
 import javax.jcr.version.OnParentVersionAction;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -78,18 +107,24 @@ import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
@@ -102,10 +137,13 @@ import static net.adamcin.oakpal.core.repoinit.DefaultRepoInitFactory.newDefault
  * Entry point for OakPAL Acceptance Library. See {@link ProgressCheck} for the event listener interface.
  */
 public final class OakMachine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OakMachine.class);
     public static final String NS_URI_OAKPAL = "oakpaltmp";
     public static final String NS_PREFIX_OAKPAL = "oakpaltmp";
     public static final String LN_UNDECLARED = "Undeclared";
     public static final String NT_UNDECLARED = "{" + NS_URI_OAKPAL + "}" + LN_UNDECLARED;
+    // index definitions disabled by RepositoryProfile.LEAN
+    static final List<String> LEAN_DISABLED_INDEXES = Collections.singletonList("nodetype");
 
     private final Packaging packagingService;
 
@@ -137,6 +175,37 @@ public final class OakMachine {
 
     private final Set<String> runModes;
 
+    private final boolean snapshotBaseline;
+
+    private Baseline baseline;
+
+    private final boolean asyncCheckDispatch;
+
+    private final ScanMetrics scanMetrics;
+
+    // the progressChecks, wrapped by MetricsCheckFacade when scanMetrics is set
+    private final List<ProgressCheck> scanChecks;
+
+    private final BatchCheckDispatcher batchDispatcher;
+
+    // the scan checks which declare a path interest, mapped to the unwrapped PathInterestCheck
+    private final Map<ProgressCheck, PathInterestCheck> pathInterests = new IdentityHashMap<>();
+
+    // true when every non-batch check declares a path interest, and so accepts a lazily resolved node
+    private final boolean lazyNodes;
+
+    private final boolean packageFilesByReference;
+
+    private final RepositoryProfile repositoryProfile;
+
+    private final NodeTypeRegistryCache nodeTypeRegistryCache;
+
+    // closeable node stores returned by the nodeStoreSupplier, to close when each repository is shut down
+    private final Map<Repository, Closeable> closeableStores = new ConcurrentHashMap<>();
+
+    // the node store underlying each repository, used to restore cached node type registries
+    private final Map<Repository, NodeStore> scanStores = new ConcurrentHashMap<>();
+
     private OakMachine(final Packaging packagingService,
                        final List<ProgressCheck> progressChecks,
                        final ErrorListener errorListener,
@@ -151,7 +220,13 @@ public final class OakMachine {
                        final SubpackageSilencer subpackageSilencer,
                        final RepoInitProcessor repoInitProcessor,
                        final SlingSimulatorBackend slingSimulator,
-                       final Set<String> runModes) {
+                       final Set<String> runModes,
+                       final boolean snapshotBaseline,
+                       final boolean asyncCheckDispatch,
+                       final ScanMetrics scanMetrics,
+                       final boolean packageFilesByReference,
+                       final RepositoryProfile repositoryProfile,
+                       final NodeTypeRegistryCache nodeTypeRegistryCache) {
         this.packagingService = packagingService != null ? packagingService : newOakpalPackagingService();
         this.progressChecks = progressChecks;
         this.errorListener = errorListener;
@@ -171,6 +246,31 @@ public final class OakMachine {
         this.runModes = runModes != null
                 ? Collections.unmodifiableSet(new LinkedHashSet<>(runModes))
                 : Collections.emptySet();
+        this.snapshotBaseline = snapshotBaseline;
+        this.asyncCheckDispatch = asyncCheckDispatch;
+        this.scanMetrics = scanMetrics;
+        this.scanChecks = scanMetrics != null
+                ? progressChecks.stream()
+                .map(check -> MetricsCheckFacade.wrap(check, scanMetrics))
+                .collect(Collectors.toList())
+                : progressChecks;
+        this.batchDispatcher = new BatchCheckDispatcher(scanChecks.stream()
+                .filter(OakMachine::isBatchCheck)
+                .collect(Collectors.toList()),
+                BatchCheckDispatcher.DEFAULT_BATCH_SIZE,
+                this::propagateCheckPathEvents);
+        for (ProgressCheck check : scanChecks) {
+            final PathInterestCheck pathInterest = getPathInterestCheck(check);
+            if (pathInterest != null) {
+                pathInterests.put(check, pathInterest);
+            }
+        }
+        // other checks may rely on only receiving imported paths that exist as nodes, so they get resolved nodes
+        this.lazyNodes = scanChecks.stream()
+                .allMatch(check -> batchDispatcher.isBatch(check) || pathInterests.containsKey(check));
+        this.packageFilesByReference = packageFilesByReference;
+        this.repositoryProfile = repositoryProfile != null ? repositoryProfile : RepositoryProfile.DEFAULT;
+        this.nodeTypeRegistryCache = nodeTypeRegistryCache;
     }
 
     /**
@@ -216,6 +316,18 @@ public final class OakMachine {
 
         private Set<String> runModes;
 
+        private boolean snapshotBaseline;
+
+        private boolean asyncCheckDispatch;
+
+        private ScanMetrics scanMetrics;
+
+        private boolean packageFilesByReference;
+
+        private RepositoryProfile repositoryProfile;
+
+        private NodeTypeRegistryCache nodeTypeRegistryCache;
+
         /**
          * Provide a {@link Packaging} service for use in retrieving a {@link JcrPackageManager} for an admin session.
          * <p>
@@ -434,7 +546,9 @@ public final class OakMachine {
          * <p>
          * Note: OakMachine will call {@link Supplier#get} for every execution of {@link #scanPackage(File...)}.
          * Beyond the call to this supplier function, it is the client's responsibility to manage the external
-         * NodeStore's state between scans when using the same {@link OakMachine} instance.
+         * NodeStore's state between scans when using the same {@link OakMachine} instance. If the NodeStore
+         * implements {@link Closeable}, as {@link SegmentTarScanNodeStore} does, it will be closed when the scan
+         * repository is shut down.
          *
          * @param nodeStoreSupplier the NodeStore
          * @return my builder self
@@ -496,6 +610,108 @@ public final class OakMachine {
             return this;
         }
 
+        /**
+         * Set to {@code true} to build the post-InitStage, post-pre-install repository state only once for the
+         * {@link OakMachine}, and to keep it as a frozen {@link NodeState} baseline. Each subsequent scan, and each
+         * call to {@link #adminInitAndInspect(InspectBody)}, will then fork a fresh repository from the baseline,
+         * skipping the InitStages and pre-install packages entirely.
+         * <p>
+         * Note: the {@link NodeStore} supplier is called to build the baseline, and again for each fork. When it
+         * returns a plain {@link MemoryNodeStore}, the fork references the baseline state directly. Any other node
+         * store, like a segment store or a node store with a file blob store, receives a copy of the baseline state,
+         * which costs more than the in-memory fork, but keeps the configured storage for every scan.
+         * <p>
+         * Because pre-install packages are only installed while building the baseline, the {@link ProgressCheck}s
+         * will not receive silenced events for them during the forked scans. The checks do receive the events of the
+         * baseline pass, between their own {@link ProgressCheck#startedScan()} and {@link ProgressCheck#finishedScan()}
+         * events, and {@link ProgressCheck#startedScan()} is called again once the baseline is built to reset their
+         * state. Errors reported to the {@link ErrorListener} while building the baseline are included in the error
+         * report of every scan forked from it.
+         *
+         * @param snapshotBaseline true to fork each scan repository from a frozen baseline
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withSnapshotBaseline(final boolean snapshotBaseline) {
+            this.snapshotBaseline = snapshotBaseline;
+            return this;
+        }
+
+        /**
+         * Set to {@code true} to defer path events for each {@link AsyncCheck} and deliver them on a dedicated
+         * worker thread, in batches, so that the async checks process each batch in parallel with each other. Because
+         * the checks read from the importer's session, each batch is delivered while the importer waits, and all
+         * pending path events are delivered before any subsequent package-level event. Each scan creates its own
+         * worker threads. Checks which do not implement {@link AsyncCheck} are unaffected.
+         *
+         * @param asyncCheckDispatch true to enable async dispatch of path events to {@link AsyncCheck}s
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withAsyncCheckDispatch(final boolean asyncCheckDispatch) {
+            this.asyncCheckDispatch = asyncCheckDispatch;
+            return this;
+        }
+
+        /**
+         * Provide a {@link ScanMetrics} instance to record the elapsed time and invocation count of each
+         * {@link ProgressCheck} event, as well as the time spent extracting each package, processing each subpackage,
+         * applying repoinit scripts, and in each scan phase. The same instance accumulates metrics across multiple
+         * scans.
+         *
+         * @param scanMetrics the metrics to record, or null to disable instrumentation
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withScanMetrics(final @Nullable ScanMetrics scanMetrics) {
+            this.scanMetrics = scanMetrics;
+            return this;
+        }
+
+        /**
+         * Set to {@code true} to register each scanned package file in the package manager by reference, instead of
+         * uploading a copy of it into the repository. The package file is opened once as a zip archive, from which the
+         * manifest, the package metadata, and the content are read. This avoids holding a copy of each package file in
+         * memory when scanning with the default {@link MemoryNodeStore}. Packages that are installed from urls, like
+         * pre-install packages, and embedded subpackages are still uploaded normally.
+         *
+         * @param packageFilesByReference true to register scanned package files by reference
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withPackageFilesByReference(final boolean packageFilesByReference) {
+            this.packageFilesByReference = packageFilesByReference;
+            return this;
+        }
+
+        /**
+         * Select the {@link RepositoryProfile} that determines which commit hooks the scan repository runs for each
+         * session save. Use {@link RepositoryProfile#LEAN} to skip index and observation editors that checks rarely
+         * depend on, or {@link RepositoryProfile#FULL} (the default) for checks that execute JCR queries.
+         *
+         * @param repositoryProfile the repository profile, or null for the default
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withRepositoryProfile(final @Nullable RepositoryProfile repositoryProfile) {
+            this.repositoryProfile = repositoryProfile;
+            return this;
+        }
+
+        /**
+         * Share a {@link NodeTypeRegistryCache} to reuse the node types, namespaces, and privileges registered by each
+         * {@link InitStage} in later scans, instead of parsing and registering them again for every scan repository.
+         * The same cache may be shared by many {@link OakMachine} instances.
+         *
+         * @param nodeTypeRegistryCache the registry cache, or null to register for every scan
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withNodeTypeRegistryCache(final @Nullable NodeTypeRegistryCache nodeTypeRegistryCache) {
+            this.nodeTypeRegistryCache = nodeTypeRegistryCache;
+            return this;
+        }
+
         /**
          * Construct a {@link OakMachine} from the {@link Builder} state.
          *
@@ -516,7 +732,13 @@ public final class OakMachine {
                     subpackageSilencer,
                     repoInitProcesser,
                     slingSimulator,
-                    runModes);
+                    runModes,
+                    snapshotBaseline,
+                    asyncCheckDispatch,
+                    scanMetrics,
+                    packageFilesByReference,
+                    repositoryProfile,
+                    nodeTypeRegistryCache);
         }
     }
 
@@ -528,6 +750,16 @@ public final class OakMachine {
         return errorListener;
     }
 
+    /**
+     * Get the scan metrics, if provided to the builder.
+     *
+     * @return the scan metrics or null
+     * @since 2.2.3
+     */
+    public @Nullable ScanMetrics getScanMetrics() {
+        return scanMetrics;
+    }
+
     /**
      * Return the urls filtered and mapped back to files.
      *
@@ -599,20 +831,26 @@ public final class OakMachine {
         Session admin = null;
         Repository scanRepo = null;
         try {
-            scanRepo = initRepository();
-            admin = loginAdmin(scanRepo);
-            addOakpalTypes(admin);
+            final Baseline forkFrom = snapshotBaseline ? getOrCreateBaseline() : null;
+            if (forkFrom != null) {
+                scanRepo = initRepository(forkFrom);
+                admin = loginAdmin(scanRepo);
+                forkFrom.restoreSessionPrefixes(admin);
+                initSlingSimulator(admin, packagingService.getPackageManager(admin), errorListener);
+            } else {
+                scanRepo = initRepository();
+                admin = loginAdmin(scanRepo);
+                addOakpalTypes(admin);
 
-            final JcrPackageManager manager = packagingService.getPackageManager(admin);
+                final JcrPackageManager manager = packagingService.getPackageManager(admin);
 
-            for (InitStage initStage : this.initStages) {
-                initStage.initSession(admin, getErrorListener(), repoInitProcessor);
-            }
+                initSessionStages(scanRepo, admin);
 
-            initSlingSimulator(admin, manager, errorListener);
+                initSlingSimulator(admin, manager, errorListener);
 
-            for (final URL url : preInstallUrls) {
-                processPackageUrl(admin, manager, true, url);
+                for (final URL url : preInstallUrls) {
+                    processPackageUrl(admin, manager, null, true, url);
+                }
             }
 
             inspectBody.tryAccept(admin);
@@ -650,57 +888,98 @@ public final class OakMachine {
      * <li>{@link #initRepository()} creates an fresh Oak repository.</li>
      * <li>{@link #loginAdmin(Repository)} opens an admin user JCR session.</li>
      * <li>{@code InitStage.initSession(Session, ErrorListener, RepoInitProcessor)} is called for each registered {@link InitStage}</li>
-     * <li>{@link #processPackageFile(Session, JcrPackageManager, boolean, File)} is performed for each of the
-     * {@link #preInstallUrls}</li>
+     * <li>{@link #processPackageFile(Session, JcrPackageManager, AsyncCheckDispatcher, boolean, File)} is performed
+     * for each of the {@link #preInstallUrls}</li>
      * <li>Each registered {@link ProgressCheck} receives a {@link ProgressCheck#startedScan()} event.</li>
-     * <li>{@link #processPackageFile(Session, JcrPackageManager, boolean, File)} is performed for each of the elements
-     * of the {@code files} array.</li>
+     * <li>{@link #processPackageFile(Session, JcrPackageManager, AsyncCheckDispatcher, boolean, File)} is performed
+     * for each of the elements of the {@code files} array.</li>
      * <li>Each registered {@link ProgressCheck} receives a {@link ProgressCheck#finishedScan()} event.</li>
      * <li>The admin session is closed.</li>
      * <li>The repository is shutdown.</li>
      * </ol>
      *
+     * <p>
+     * When {@link Builder#withSnapshotBaseline(boolean)} is enabled, the first scan builds the baseline repository
+     * state (the initRepository, InitStage, and pre-install steps above) in a separate bootstrap pass, and every scan
+     * then forks its repository from that baseline before proceeding directly to the {@link ProgressCheck#startedScan()}
+     * step.
+     *
      * @param files a list of FileVault content package files to be installed in sequence.
      * @return a list of any CheckReports reported during the scan.
      * @throws AbortedScanException for any errors that terminate the scan.
      */
     public List<CheckReport> scanPackages(final List<File> files) throws AbortedScanException {
+        final long scanStart = System.nanoTime();
         getErrorListener().startedScan();
 
         Session admin = null;
         Repository scanRepo = null;
+        AsyncCheckDispatcher asyncDispatcher = null;
+        // a scan that builds the baseline reports the baseline errors itself
+        Collection<Violation> baselineErrors = Collections.emptyList();
         try {
-            scanRepo = initRepository();
+            final Baseline existingBaseline = snapshotBaseline ? getBaseline() : null;
+            final Baseline forkFrom = snapshotBaseline ? getOrCreateBaseline() : null;
+            if (existingBaseline != null) {
+                baselineErrors = existingBaseline.getErrors();
+            }
+
+            scanRepo = forkFrom != null
+                    ? initRepository(forkFrom)
+                    : initRepository();
 
             admin = loginAdmin(scanRepo);
 
-            addOakpalTypes(admin);
+            if (forkFrom != null) {
+                forkFrom.restoreSessionPrefixes(admin);
+            } else {
+                addOakpalTypes(admin);
+            }
 
             final JcrPackageManager manager = packagingService.getPackageManager(admin);
 
-            for (final InitStage initStage : this.initStages) {
-                initStage.initSession(admin, getErrorListener(), repoInitProcessor);
+            if (forkFrom == null) {
+                final long initStart = System.nanoTime();
+                initSessionStages(scanRepo, admin);
+                recordPhase(ScanMetrics.PHASE_INIT_STAGES, initStart);
             }
 
             initSlingSimulator(admin, manager, errorListener);
-            progressChecks.forEach(check -> check.simulateSling(slingSimulator, runModes));
+            scanChecks.forEach(check -> check.simulateSling(slingSimulator, runModes));
             slingSimulator.startedScan();
-            progressChecks.forEach(ProgressCheck::startedScan);
+            scanChecks.forEach(ProgressCheck::startedScan);
+
+            if (asyncCheckDispatch) {
+                asyncDispatcher = new AsyncCheckDispatcher(scanChecks.stream()
+                        .filter(check -> isAsyncCheck(check) && !batchDispatcher.isBatch(check))
+                        .collect(Collectors.toList()),
+                        AsyncCheckDispatcher.DEFAULT_BATCH_SIZE,
+                        AsyncCheckDispatcher.DEFAULT_RING_SIZE);
+            }
 
-            for (final URL url : preInstallUrls) {
-                processPackageUrl(admin, manager, true, url);
+            if (forkFrom == null) {
+                final long preInstallStart = System.nanoTime();
+                for (final URL url : preInstallUrls) {
+                    processPackageUrl(admin, manager, asyncDispatcher, true, url);
+                }
+                recordPhase(ScanMetrics.PHASE_PRE_INSTALL, preInstallStart);
             }
 
             if (files != null) {
                 for (final File file : files) {
-                    processPackageFile(admin, manager, false, file);
+                    processPackageFile(admin, manager, asyncDispatcher, false, file);
                 }
             }
 
         } catch (RepositoryException e) {
             throw new AbortedScanException(e);
         } finally {
-            progressChecks.forEach(ProgressCheck::finishedScan);
+            batchDispatcher.flush();
+            if (asyncDispatcher != null) {
+                asyncDispatcher.close();
+            }
+
+            scanChecks.forEach(ProgressCheck::finishedScan);
             slingSimulator.finishedScan();
 
             if (admin != null) {
@@ -710,10 +989,19 @@ public final class OakMachine {
             shutdownRepository(scanRepo);
 
             getErrorListener().finishedScan();
+            recordPhase(ScanMetrics.PHASE_SCAN, scanStart);
         }
 
         List<CheckReport> reports = new ArrayList<>();
-        reports.add(SimpleReport.generateReport(getErrorListener()));
+        final SimpleReport errorReport = SimpleReport.generateReport(getErrorListener());
+        if (baselineErrors.isEmpty() || errorReport.getViolations().containsAll(baselineErrors)) {
+            reports.add(errorReport);
+        } else {
+            // an error listener that is reset by startedScan() no longer holds the baseline errors
+            final List<Violation> errors = new ArrayList<>(baselineErrors);
+            errors.addAll(errorReport.getViolations());
+            reports.add(new SimpleReport(errorReport.getCheckName(), errors));
+        }
         List<CheckReport> listenerReports = progressChecks.stream()
                 .map(SimpleReport::generateReport)
                 .collect(Collectors.toList());
@@ -723,6 +1011,173 @@ public final class OakMachine {
         return Collections.unmodifiableList(reports);
     }
 
+    /**
+     * Frozen post-InitStage, post-pre-install repository state, along with any session-scoped namespace prefix
+     * remappings that were made by the InitStages, which would otherwise be lost when the admin session is closed.
+     */
+    static final class Baseline {
+        private final NodeState root;
+
+        // prefix to uri
+        private final Map<String, String> sessionPrefixes;
+
+        private final List<Violation> errors;
+
+        Baseline(final @NotNull NodeState root, final @NotNull Map<String, String> sessionPrefixes) {
+            this(root, sessionPrefixes, Collections.emptyList());
+        }
+
+        Baseline(final @NotNull NodeState root, final @NotNull Map<String, String> sessionPrefixes,
+                 final @NotNull Collection<Violation> errors) {
+            this.root = root;
+            this.sessionPrefixes = Collections.unmodifiableMap(new LinkedHashMap<>(sessionPrefixes));
+            this.errors = Collections.unmodifiableList(errors.stream()
+                    .map(SimpleViolation::fromReported).collect(Collectors.toList()));
+        }
+
+        @NotNull NodeState getRoot() {
+            return root;
+        }
+
+        /**
+         * The errors reported to the {@link ErrorListener} while building the baseline.
+         *
+         * @return the baseline errors
+         */
+        @NotNull List<Violation> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Replace the content of an empty node store with the baseline state.
+         *
+         * @param nodeStore the node store to fork onto
+         * @throws RepositoryException if the baseline state fails to merge
+         */
+        void copyTo(final @NotNull NodeStore nodeStore) throws RepositoryException {
+            final NodeBuilder rootBuilder = nodeStore.getRoot().builder();
+            final List<String> names = new ArrayList<>();
+            rootBuilder.getChildNodeNames().forEach(names::add);
+            for (String name : names) {
+                rootBuilder.getChildNode(name).remove();
+            }
+            for (PropertyState property : nodeStore.getRoot().getProperties()) {
+                rootBuilder.removeProperty(property.getName());
+            }
+            for (ChildNodeEntry child : root.getChildNodeEntries()) {
+                rootBuilder.setChildNode(child.getName(), child.getNodeState());
+            }
+            for (PropertyState property : root.getProperties()) {
+                rootBuilder.setProperty(property);
+            }
+            try {
+                nodeStore.merge(rootBuilder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            } catch (final CommitFailedException e) {
+                throw new RepositoryException("failed to fork the snapshot baseline", e);
+            }
+        }
+
+        @NotNull Map<String, String> getSessionPrefixes() {
+            return sessionPrefixes;
+        }
+
+        void restoreSessionPrefixes(final @NotNull Session admin) throws RepositoryException {
+            for (Map.Entry<String, String> entry : sessionPrefixes.entrySet()) {
+                admin.setNamespacePrefix(entry.getKey(), entry.getValue());
+            }
+        }
+
+        static Map<String, String> captureSessionPrefixes(final @NotNull Session admin) throws RepositoryException {
+            final NamespaceRegistry registry = admin.getWorkspace().getNamespaceRegistry();
+            final Map<String, String> remapped = new LinkedHashMap<>();
+            for (String prefix : admin.getNamespacePrefixes()) {
+                final String uri = admin.getNamespaceURI(prefix);
+                if (!prefix.equals(registry.getPrefix(uri))) {
+                    remapped.put(prefix, uri);
+                }
+            }
+            return remapped;
+        }
+    }
+
+    /**
+     * Return the snapshot baseline, building it first if necessary.
+     *
+     * @return the snapshot baseline
+     * @throws AbortedScanException for preinstall errors
+     * @throws RepositoryException  for repository errors
+     */
+    synchronized Baseline getOrCreateBaseline() throws AbortedScanException, RepositoryException {
+        if (this.baseline == null) {
+            this.baseline = bootstrapBaseline();
+        }
+        return this.baseline;
+    }
+
+    /**
+     * Return the snapshot baseline if it has already been built, without building it.
+     *
+     * @return the snapshot baseline, or null
+     */
+    synchronized @Nullable Baseline getBaseline() {
+        return this.baseline;
+    }
+
+    /**
+     * Run the InitStages and pre-install packages against a fresh repository, with the same check lifecycle as a
+     * normal scan so that sling-simulated installables are also included, and return the frozen result.
+     *
+     * @return the new baseline
+     * @throws AbortedScanException for preinstall errors
+     * @throws RepositoryException  for repository errors
+     */
+    Baseline bootstrapBaseline() throws AbortedScanException, RepositoryException {
+        // the baseline root is read by every subsequent fork, so a Closeable node store is deliberately left open here
+        final NodeStore nodeStore = Optional.ofNullable(nodeStoreSupplier.get()).orElseGet(MemoryNodeStore::new);
+        final int priorErrors = getErrorListener().getReportedViolations().size();
+        Session admin = null;
+        Repository scanRepo = null;
+        try {
+            scanRepo = initRepository(nodeStore);
+            admin = loginAdmin(scanRepo);
+            addOakpalTypes(admin);
+
+            final JcrPackageManager manager = packagingService.getPackageManager(admin);
+
+            final long initStart = System.nanoTime();
+            initSessionStages(scanRepo, admin);
+            recordPhase(ScanMetrics.PHASE_INIT_STAGES, initStart);
+
+            initSlingSimulator(admin, manager, errorListener);
+            scanChecks.forEach(check -> check.simulateSling(slingSimulator, runModes));
+            slingSimulator.startedScan();
+            scanChecks.forEach(ProgressCheck::startedScan);
+
+            final long preInstallStart = System.nanoTime();
+            for (final URL url : preInstallUrls) {
+                processPackageUrl(admin, manager, null, true, url);
+            }
+            recordPhase(ScanMetrics.PHASE_PRE_INSTALL, preInstallStart);
+
+            admin.save();
+            return new Baseline(nodeStore.getRoot(), Baseline.captureSessionPrefixes(admin),
+                    getErrorListener().getReportedViolations().stream()
+                            .skip(priorErrors).collect(Collectors.toList()));
+        } finally {
+            batchDispatcher.flush();
+            scanChecks.forEach(ProgressCheck::finishedScan);
+            slingSimulator.finishedScan();
+            // discard any check state and violations from the baseline pass, which is not part of any scan
+            scanChecks.forEach(ProgressCheck::startedScan);
+
+            if (admin != null) {
+                admin.logout();
+            }
+
+            shutdownRepository(scanRepo);
+        }
+    }
+
     private void addOakpalTypes(final Session admin) throws RepositoryException {
         this.installVltNodetypes(admin);
         admin.getWorkspace().getNamespaceRegistry().registerNamespace(NS_PREFIX_OAKPAL, NS_URI_OAKPAL);
@@ -765,25 +1220,40 @@ public final class OakMachine {
         admin.getWorkspace().getNodeTypeManager().registerNodeType(builder.build(), false);
     }
 
-    private void processPackage(Session admin, JcrPackageManager manager, JcrPackage jcrPackage, final boolean preInstall)
+    private void processPackage(Session admin, JcrPackageManager manager,
+                                @Nullable AsyncCheckDispatcher asyncDispatcher, JcrPackage jcrPackage,
+                                final boolean preInstall)
             throws IOException, PackageException, RepositoryException {
 
         final PackageId packageId = jcrPackage.getPackage().getId();
-        Optional.ofNullable(jcrPackage.getData()).map(uncheck1(Property::getBinary)).ifPresent(
-                uncheckVoid1(binary -> {
-                    try (InputStream input = binary.getStream();
-                         JarInputStream jarInput = new JarInputStream(input)) {
-                        final Manifest manifest = jarInput.getManifest();
-                        if (manifest != null) {
-                            propagateCheckPackageEvent(preInstall, packageId,
-                                    handler -> handler.readManifest(packageId, new Manifest(manifest)));
+        final Archive archive = jcrPackage.getPackage().getArchive();
+        if (archive != null) {
+            // read the manifest from the already opened archive, rather than streaming the package binary again
+            final Archive.Entry manifestEntry = archive.getEntry(JarFile.MANIFEST_NAME);
+            if (manifestEntry != null) {
+                try (InputStream input = archive.openInputStream(manifestEntry)) {
+                    final Manifest manifest = new Manifest(input);
+                    propagateCheckPackageEvent(preInstall, packageId,
+                            handler -> handler.readManifest(packageId, new Manifest(manifest)));
+                }
+            }
+        } else {
+            Optional.ofNullable(jcrPackage.getData()).map(uncheck1(Property::getBinary)).ifPresent(
+                    uncheckVoid1(binary -> {
+                        try (InputStream input = binary.getStream();
+                             JarInputStream jarInput = new JarInputStream(input)) {
+                            final Manifest manifest = jarInput.getManifest();
+                            if (manifest != null) {
+                                propagateCheckPackageEvent(preInstall, packageId,
+                                        handler -> handler.readManifest(packageId, new Manifest(manifest)));
+                            }
                         }
-                    }
-                }));
+                    }));
+        }
 
         final Session inspectSession = Util.wrapSessionReadOnly(admin);
-        final ProgressTrackerListener tracker =
-                new ImporterListenerAdapter(packageId, inspectSession, preInstall);
+        final ImporterListenerAdapter tracker =
+                new ImporterListenerAdapter(packageId, inspectSession, preInstall, asyncDispatcher);
 
         InternalImportOptions options = new InternalImportOptions(packageId, Packaging.class.getClassLoader());
         options.setNonRecursive(true);
@@ -803,7 +1273,12 @@ public final class OakMachine {
             options.setInstallHookPolicy(scanInstallHookPolicy);
         }
 
-        final List<PackageId> subpacks = Arrays.asList(jcrPackage.extractSubpackages(options));
+        final List<PackageId> subpacks;
+        try {
+            subpacks = Arrays.asList(jcrPackage.extractSubpackages(options));
+        } finally {
+            tracker.barrier();
+        }
 
         final VaultPackage vaultPackage = jcrPackage.getPackage();
         if (!vaultPackage.isValid()) {
@@ -814,8 +1289,14 @@ public final class OakMachine {
                 handler.beforeExtract(packageId, inspectSession, vaultPackage.getProperties(),
                         vaultPackage.getMetaInf(), subpacks));
 
-        jcrPackage.extract(options);
+        final long extractStart = System.nanoTime();
+        try {
+            jcrPackage.extract(options);
+        } finally {
+            tracker.barrier();
+        }
         admin.save();
+        recordExtract(packageId, extractStart);
 
         final SubPackageHandling subPackageHandling = jcrPackage.getPackage().getSubPackageHandling();
 
@@ -828,7 +1309,7 @@ public final class OakMachine {
                     preprocessInstallableSubpackages(manager, packageId, subPackageHandling, subpacks);
 
             for (PackageId subpackId : installableSubpacks) {
-                processSubpackage(admin, manager, subpackId, packageId,
+                processSubpackage(admin, manager, asyncDispatcher, subpackId, packageId,
                         preInstall || subpackageSilencer.test(subpackId, packageId));
             }
         }
@@ -887,35 +1368,179 @@ public final class OakMachine {
         });
     }
 
+    private void recordPhase(final @NotNull String phase, final long startNanos) {
+        if (scanMetrics != null) {
+            scanMetrics.recordPhase(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void recordExtract(final @NotNull PackageId packageId, final long startNanos) {
+        if (scanMetrics != null) {
+            scanMetrics.recordExtract(packageId, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void recordSubpackage(final @NotNull PackageId packageId, final long startNanos) {
+        if (scanMetrics != null) {
+            scanMetrics.recordSubpackage(packageId, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Returns true if the check, or the check wrapped by an internal facade, implements {@link AsyncCheck}.
+     *
+     * @param check the progress check
+     * @return true if the check declares itself as an {@link AsyncCheck}
+     */
+    static boolean isAsyncCheck(final @NotNull ProgressCheck check) {
+        if (check instanceof ProgressCheckAliasFacade) {
+            return isAsyncCheck(((ProgressCheckAliasFacade) check).getWrapped());
+        } else if (check instanceof SilencingCheckFacade) {
+            return isAsyncCheck(((SilencingCheckFacade) check).getWrapped());
+        } else if (check instanceof MetricsCheckFacade) {
+            return isAsyncCheck(((MetricsCheckFacade) check).getWrapped());
+        }
+        return check instanceof AsyncCheck;
+    }
+
+    /**
+     * Returns true if the check, or the check wrapped by an internal facade, implements {@link BatchProgressCheck}.
+     *
+     * @param check the progress check
+     * @return true if the check declares itself as a {@link BatchProgressCheck}
+     */
+    static boolean isBatchCheck(final @NotNull ProgressCheck check) {
+        if (check instanceof ProgressCheckAliasFacade) {
+            return isBatchCheck(((ProgressCheckAliasFacade) check).getWrapped());
+        } else if (check instanceof SilencingCheckFacade) {
+            return isBatchCheck(((SilencingCheckFacade) check).getWrapped());
+        } else if (check instanceof MetricsCheckFacade) {
+            return isBatchCheck(((MetricsCheckFacade) check).getWrapped());
+        }
+        return check instanceof BatchProgressCheck;
+    }
+
+    /**
+     * Returns the check, or the check wrapped by an internal facade, if it implements {@link PathInterestCheck}.
+     *
+     * @param check the progress check
+     * @return the {@link PathInterestCheck}, or null
+     */
+    static @Nullable PathInterestCheck getPathInterestCheck(final @NotNull ProgressCheck check) {
+        if (check instanceof ProgressCheckAliasFacade) {
+            return getPathInterestCheck(((ProgressCheckAliasFacade) check).getWrapped());
+        } else if (check instanceof SilencingCheckFacade) {
+            return getPathInterestCheck(((SilencingCheckFacade) check).getWrapped());
+        } else if (check instanceof MetricsCheckFacade) {
+            return getPathInterestCheck(((MetricsCheckFacade) check).getWrapped());
+        }
+        return check instanceof PathInterestCheck ? (PathInterestCheck) check : null;
+    }
+
+    final boolean isInterestedInPath(final @NotNull ProgressCheck check, final @NotNull String path) {
+        final PathInterestCheck pathInterest = pathInterests.get(check);
+        return pathInterest == null || pathInterest.isInterestedInPath(path);
+    }
+
+    /**
+     * Returns true if any batch check, or any other check, depending on the {@code batch} argument, is interested in
+     * the path.
+     *
+     * @param path  the affected path
+     * @param batch true to consider only batch checks, false to consider only the other checks
+     * @return true if any check is interested in the path
+     */
+    final boolean hasInterestedCheck(final @NotNull String path, final boolean batch) {
+        for (ProgressCheck check : scanChecks) {
+            if (batchDispatcher.isBatch(check) == batch && isInterestedInPath(check, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     final void propagateCheckPackageEvent(final boolean silenced,
                                           final @NotNull PackageId packageId,
                                           final @NotNull Fun.ThrowingConsumer<ProgressCheck> checkVisitor) {
+        batchDispatcher.flush();
         final Consumer<ProgressCheck> checkConsumer = newProgressCheckEventConsumer(silenced, checkVisitor,
                 (check, error) -> getErrorListener().onListenerException(error, check, packageId));
-        progressChecks.forEach(checkConsumer);
+        scanChecks.forEach(checkConsumer);
     }
 
     final void propagateCheckPathEvent(final boolean silenced,
                                        final @NotNull PackageId packageId,
                                        final @NotNull String path,
+                                       final @Nullable AsyncCheckDispatcher dispatcher,
                                        final @NotNull Fun.ThrowingConsumer<ProgressCheck> checkVisitor) {
         final Consumer<ProgressCheck> checkConsumer = newProgressCheckEventConsumer(silenced, checkVisitor,
                 (check, error) -> getErrorListener().onListenerPathException(error, check, packageId, path));
-        progressChecks.forEach(checkConsumer);
+        if (dispatcher == null && !batchDispatcher.hasBatchChecks() && pathInterests.isEmpty()) {
+            scanChecks.forEach(checkConsumer);
+            return;
+        }
+        final Consumer<ProgressCheck> asyncConsumer = dispatcher == null ? null
+                : newProgressCheckEventConsumer(silenced, checkVisitor,
+                (check, error) -> dispatcher.defer(() ->
+                        getErrorListener().onListenerPathException(error, check, packageId, path)));
+        for (ProgressCheck progressCheck : scanChecks) {
+            if (batchDispatcher.isBatch(progressCheck) || !isInterestedInPath(progressCheck, path)) {
+                continue;
+            }
+            if (dispatcher != null && dispatcher.isAsync(progressCheck)) {
+                dispatcher.dispatch(progressCheck, asyncConsumer);
+            } else {
+                checkConsumer.accept(progressCheck);
+            }
+        }
+    }
+
+    final void propagateCheckPathEvents(final boolean silenced,
+                                        final @NotNull PackageId packageId,
+                                        final @NotNull Session session,
+                                        final @NotNull List<BatchProgressCheck.PathEvent> pathEvents) {
+        for (ProgressCheck progressCheck : scanChecks) {
+            if (!batchDispatcher.isBatch(progressCheck)) {
+                continue;
+            }
+            final List<BatchProgressCheck.PathEvent> interesting = filterPathEvents(progressCheck, pathEvents);
+            if (interesting.isEmpty()) {
+                continue;
+            }
+            // a batch does not identify the event that failed, so the error is attributed to the first path
+            newProgressCheckEventConsumer(silenced,
+                    check -> ((BatchProgressCheck) check).pathEvents(packageId, interesting, session),
+                    (check, error) -> getErrorListener().onListenerPathException(error, check, packageId,
+                            interesting.get(0).getPath()))
+                    .accept(progressCheck);
+        }
+    }
+
+    final List<BatchProgressCheck.PathEvent>
+    filterPathEvents(final @NotNull ProgressCheck check,
+                     final @NotNull List<BatchProgressCheck.PathEvent> pathEvents) {
+        if (!pathInterests.containsKey(check)) {
+            return pathEvents;
+        }
+        return Collections.unmodifiableList(pathEvents.stream()
+                .filter(pathEvent -> isInterestedInPath(check, pathEvent.getPath()))
+                .collect(Collectors.toList()));
     }
 
     final void internalProcessSubpackage(final @NotNull Session admin,
                                          final @NotNull JcrPackageManager manager,
+                                         final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                          final @NotNull PackageId packageId,
                                          final boolean preInstall,
                                          final @NotNull Fun.ThrowingSupplier<JcrPackage> jcrPackageSupplier,
                                          final @NotNull Fun.ThrowingConsumer<ProgressCheck> identifyEvent,
                                          final @NotNull Consumer<Exception> onError) throws RepositoryException {
+        final long start = System.nanoTime();
         try (JcrPackage jcrPackage = jcrPackageSupplier.tryGet()) {
             if (jcrPackage != null) {
                 propagateCheckPackageEvent(preInstall, packageId, identifyEvent);
 
-                processPackage(admin, manager, jcrPackage, preInstall);
+                processPackage(admin, manager, asyncDispatcher, jcrPackage, preInstall);
             } else {
                 throw new PackageException("JcrPackageManager returned null package");
             }
@@ -924,15 +1549,18 @@ public final class OakMachine {
             admin.refresh(false);
         } catch (Exception e) {
             onError.accept(e);
+        } finally {
+            recordSubpackage(packageId, start);
         }
     }
 
     final void processSubpackage(final @NotNull Session admin,
                                  final @NotNull JcrPackageManager manager,
+                                 final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                  final @NotNull PackageId packageId,
                                  final @NotNull PackageId parentId,
                                  final boolean preInstall) throws RepositoryException {
-        internalProcessSubpackage(admin, manager, packageId, preInstall,
+        internalProcessSubpackage(admin, manager, asyncDispatcher, packageId, preInstall,
                 () -> manager.open(packageId),
                 check -> check.identifySubpackage(packageId, parentId),
                 error -> getErrorListener().onSubpackageException(error, packageId));
@@ -940,12 +1568,14 @@ public final class OakMachine {
 
     final void processEmbeddedPackage(final @NotNull Session admin,
                                       final @NotNull JcrPackageManager manager,
+                                      final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                       final @NotNull EmbeddedPackageInstallable installable,
                                       final boolean preInstall) throws RepositoryException {
         final Consumer<Exception> onError =
                 error -> getErrorListener().onSlingEmbeddedPackageError(error, installable);
         Fun.ThrowingSupplier<JcrPackage> supplier = slingSimulator.open(installable);
-        internalProcessSubpackage(admin, manager, installable.getEmbeddedId(), preInstall, supplier,
+        internalProcessSubpackage(admin, manager, asyncDispatcher, installable.getEmbeddedId(), preInstall,
+                supplier,
                 check -> check.identifyEmbeddedPackage(
                         installable.getEmbeddedId(),
                         installable.getParentId(),
@@ -955,6 +1585,7 @@ public final class OakMachine {
 
     private void processUploadedPackage(final @NotNull Session admin,
                                         final @NotNull JcrPackageManager manager,
+                                        final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                         final boolean preInstall,
                                         final @NotNull JcrPackage jcrPackage)
             throws IOException, PackageException, RepositoryException {
@@ -963,8 +1594,8 @@ public final class OakMachine {
         final File packageFile = vaultPackage.getFile();
         propagateCheckPackageEvent(preInstall, packageId,
                 handler -> handler.identifyPackage(packageId, packageFile));
-        processPackage(admin, manager, jcrPackage, preInstall);
-        processInstallableQueue(admin, manager, packageId, preInstall);
+        processPackage(admin, manager, asyncDispatcher, jcrPackage, preInstall);
+        processInstallableQueue(admin, manager, asyncDispatcher, packageId, preInstall);
         propagateCheckPackageEvent(preInstall, packageId,
                 handler -> handler.afterScanPackage(packageId, Util.wrapSessionReadOnly(admin)));
 
@@ -972,6 +1603,7 @@ public final class OakMachine {
 
     void processInstallableQueue(final @NotNull Session admin,
                                  final @NotNull JcrPackageManager manager,
+                                 final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                  final @NotNull PackageId lastPackageId,
                                  final boolean preInstall) throws RepositoryException {
         final Session inspectSession = Util.wrapSessionReadOnly(admin);
@@ -987,6 +1619,7 @@ public final class OakMachine {
 
             initScriptsResult.ifPresent(initScripts -> {
                 for (final String repoInitScript : initScripts.getScripts()) {
+                    final long start = System.nanoTime();
                     try (Reader reader = new StringReader(repoInitScript)) {
                         repoInitProcessor.apply(admin, reader);
                         admin.save();
@@ -994,6 +1627,8 @@ public final class OakMachine {
                         getErrorListener().onSlingRepoInitScriptsError(e, initScripts.getScripts(),
                                 repoInitScript, installable);
                         Fun.<Session>uncheckVoid1(session -> session.refresh(false)).accept(admin);
+                    } finally {
+                        recordPhase(ScanMetrics.PHASE_REPO_INIT_SCRIPTS, start);
                     }
                 }
                 propagateCheckPackageEvent(preInstall, installable.getParentId(),
@@ -1002,7 +1637,8 @@ public final class OakMachine {
             });
 
             if (installable instanceof EmbeddedPackageInstallable) {
-                processEmbeddedPackage(admin, manager, (EmbeddedPackageInstallable) installable, preInstall);
+                processEmbeddedPackage(admin, manager, asyncDispatcher, (EmbeddedPackageInstallable) installable,
+                        preInstall);
             }
 
             // do this at the end of the while scope, obviously.
@@ -1012,6 +1648,7 @@ public final class OakMachine {
 
     final void processPackageUrl(final @NotNull Session admin,
                                  final @NotNull JcrPackageManager manager,
+                                 final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                  final boolean preInstall,
                                  final @NotNull URL url)
             throws AbortedScanException {
@@ -1023,7 +1660,7 @@ public final class OakMachine {
 
         try (InputStream input = url.openStream();
              JcrPackage jcrPackage = manager.upload(input, true, true)) {
-            processUploadedPackage(admin, manager, preInstall, jcrPackage);
+            processUploadedPackage(admin, manager, asyncDispatcher, preInstall, jcrPackage);
         } catch (IOException | PackageException | RepositoryException | Fun.FunRuntimeException e) {
             throw new AbortedScanException(e, url);
         }
@@ -1031,6 +1668,7 @@ public final class OakMachine {
 
     final void processPackageFile(final @NotNull Session admin,
                                   final @NotNull JcrPackageManager manager,
+                                  final @Nullable AsyncCheckDispatcher asyncDispatcher,
                                   final boolean preInstall,
                                   final @NotNull File file)
             throws AbortedScanException {
@@ -1040,13 +1678,72 @@ public final class OakMachine {
             throw new AbortedScanException(e);
         }
 
-        try (JcrPackage jcrPackage = manager.upload(file, false, true, null, true)) {
-            processUploadedPackage(admin, manager, preInstall, jcrPackage);
+        try (JcrPackage jcrPackage = packageFilesByReference && manager instanceof JcrPackageManagerImpl
+                ? registerPackageFileByReference(admin, (JcrPackageManagerImpl) manager, file)
+                : manager.upload(file, false, true, null, true)) {
+            processUploadedPackage(admin, manager, asyncDispatcher, preInstall, jcrPackage);
         } catch (IOException | PackageException | RepositoryException | Fun.FunRuntimeException e) {
             throw new AbortedScanException(e, file);
         }
     }
 
+    /**
+     * Register a package file in the package manager without copying it into the repository. The package file is
+     * opened once as a zip archive, which is used both to read the package definition and to extract the package.
+     * The {@code jcr:data} binary of the package node is created from {@link FileReferenceNodeStore#openReference(File)},
+     * so that it references the file when the repository was created by {@link #initRepository(NodeStore)} in
+     * {@link Builder#withPackageFilesByReference(boolean)} mode.
+     *
+     * @param admin   the admin session
+     * @param manager the package manager
+     * @param file    the package file
+     * @return the registered package, backed by the opened package file
+     * @throws IOException         if the package file can not be read
+     * @throws RepositoryException if the package can not be registered
+     */
+    static JcrPackage registerPackageFileByReference(final @NotNull Session admin,
+                                                     final @NotNull JcrPackageManagerImpl manager,
+                                                     final @NotNull File file)
+            throws IOException, RepositoryException {
+        final ZipVaultPackage vaultPackage = new ZipVaultPackage(file, false, true);
+        try {
+            final PackageId packageId = vaultPackage.getId();
+            if (packageId == null || !packageId.isValid()) {
+                throw new IOException("Package does not contain a valid package id: " + file.getAbsolutePath());
+            }
+            final JcrPackage existing = manager.open(packageId);
+            if (existing != null) {
+                try {
+                    manager.remove(existing);
+                } finally {
+                    existing.close();
+                }
+            }
+            final Node packageNode;
+            try (JcrPackage created = manager.create(packageId.getGroup(), packageId.getName(),
+                    packageId.getVersionString())) {
+                packageNode = created.getNode();
+            }
+            if (packageNode == null) {
+                throw new RepositoryException("Failed to create package node for " + packageId);
+            }
+            try (InputStream input = FileReferenceNodeStore.openReference(file)) {
+                packageNode.getNode(JcrConstants.JCR_CONTENT).setProperty(JcrConstants.JCR_DATA,
+                        admin.getValueFactory().createBinary(input));
+            }
+            final JcrPackage jcrPackage = new JcrPackageImpl(manager.getInternalRegistry(), packageNode, vaultPackage);
+            final JcrPackageDefinition definition = jcrPackage.getDefinition();
+            if (definition != null) {
+                definition.unwrap(vaultPackage, true, false);
+            }
+            admin.save();
+            return jcrPackage;
+        } catch (IOException | RepositoryException | RuntimeException e) {
+            vaultPackage.close();
+            throw e;
+        }
+    }
+
     @FunctionalInterface
     public interface JcrCustomizer {
         void customize(Jcr jcr);
@@ -1061,8 +1758,51 @@ public final class OakMachine {
 
     private Repository initRepository() throws RepositoryException {
         final NodeStore nodeStore = nodeStoreSupplier.get();
-        final Oak oak = nodeStore == null ? new Oak() : new Oak(nodeStore);
-        final Jcr jcr = new Jcr(oak);
+        if (!(nodeStore instanceof Closeable)) {
+            return initRepository(nodeStore);
+        }
+        try {
+            final Repository repository = initRepository(nodeStore);
+            closeableStores.put(repository, (Closeable) nodeStore);
+            return repository;
+        } catch (RepositoryException | RuntimeException e) {
+            closeQuietly((Closeable) nodeStore);
+            throw e;
+        }
+    }
+
+    /**
+     * Create a repository forked from the snapshot baseline, on a node store from the {@link #nodeStoreSupplier}.
+     *
+     * @param forkFrom the snapshot baseline
+     * @return the forked repository
+     * @throws RepositoryException for repository errors
+     */
+    private Repository initRepository(final @NotNull Baseline forkFrom) throws RepositoryException {
+        final NodeStore nodeStore = nodeStoreSupplier.get();
+        if (nodeStore == null || nodeStore.getClass() == MemoryNodeStore.class) {
+            return initRepository(new MemoryNodeStore(forkFrom.getRoot()));
+        }
+        try {
+            forkFrom.copyTo(nodeStore);
+            final Repository repository = initRepository(nodeStore);
+            if (nodeStore instanceof Closeable) {
+                closeableStores.put(repository, (Closeable) nodeStore);
+            }
+            return repository;
+        } catch (RepositoryException | RuntimeException e) {
+            if (nodeStore instanceof Closeable) {
+                closeQuietly((Closeable) nodeStore);
+            }
+            throw e;
+        }
+    }
+
+    private Repository initRepository(final @Nullable NodeStore nodeStore) throws RepositoryException {
+        final NodeStore baseStore = nodeStore != null ? nodeStore : new MemoryNodeStore();
+        final NodeStore scanStore = packageFilesByReference ? new FileReferenceNodeStore(baseStore) : baseStore;
+        final Oak oak = new Oak(scanStore);
+        final Jcr jcr = repositoryProfile == RepositoryProfile.LEAN ? newLeanJcr(oak) : new Jcr(oak);
 
         Properties userProps = new Properties();
         userProps.put(UserConstants.PARAM_USER_PATH, "/home/users");
@@ -1096,17 +1836,106 @@ public final class OakMachine {
 
         jcr.with(homeCreator);
 
+        if (repositoryProfile == RepositoryProfile.LEAN) {
+            final RepositoryInitializer indexDisabler = OakMachine::disableLeanIndexes;
+            jcr.with(indexDisabler);
+        }
+
         if (jcrCustomizer != null) {
             jcrCustomizer.customize(jcr);
         }
 
-        return jcr.withAtomicCounter().createRepository();
+        final Repository repository = repositoryProfile == RepositoryProfile.LEAN
+                ? jcr.createRepository()
+                : jcr.withAtomicCounter().createRepository();
+        scanStores.put(repository, scanStore);
+        return repository;
+    }
+
+    /**
+     * Initialize the admin session with each {@link InitStage}, restoring node type registries from the
+     * {@link NodeTypeRegistryCache} when one is set.
+     *
+     * @param repository the scan repository
+     * @param admin      the admin session
+     * @throws RepositoryException for repository errors
+     */
+    private void initSessionStages(final @NotNull Repository repository, final @NotNull Session admin)
+            throws RepositoryException {
+        final NodeStore scanStore = scanStores.get(repository);
+        for (final InitStage initStage : this.initStages) {
+            initStage.initSession(admin, getErrorListener(), repoInitProcessor, nodeTypeRegistryCache, scanStore);
+        }
+    }
+
+    /**
+     * Construct a {@link Jcr} with the default Oak components, except for the editors left out by
+     * {@link RepositoryProfile#LEAN}. The security provider is configured separately.
+     *
+     * @param oak the oak instance
+     * @return a new Jcr builder
+     */
+    static Jcr newLeanJcr(final @NotNull Oak oak) {
+        final Jcr jcr = new Jcr(oak, false);
+        final Oak.OakDefaultComponents defaults = new Oak.OakDefaultComponents();
+        for (CommitHook commitHook : defaults.commitHooks()) {
+            jcr.with(commitHook);
+        }
+        for (RepositoryInitializer initializer : defaults.repositoryInitializers()) {
+            jcr.with(initializer);
+        }
+        for (EditorProvider editorProvider : defaults.editorProviders()) {
+            if (!(editorProvider instanceof ChangeCollectorProvider)) {
+                jcr.with(editorProvider);
+            }
+        }
+        for (IndexEditorProvider indexEditorProvider : defaults.indexEditorProviders()) {
+            if (indexEditorProvider instanceof PropertyIndexEditorProvider
+                    || indexEditorProvider instanceof ReferenceEditorProvider) {
+                jcr.with(indexEditorProvider);
+            }
+        }
+        for (QueryIndexProvider queryIndexProvider : defaults.queryIndexProviders()) {
+            jcr.with(queryIndexProvider);
+        }
+        return jcr;
+    }
+
+    /**
+     * Repository initializer for {@link RepositoryProfile#LEAN}, which disables the index definitions that are
+     * otherwise updated by every commit.
+     *
+     * @param builder the root node builder
+     */
+    static void disableLeanIndexes(final @NotNull NodeBuilder builder) {
+        final NodeBuilder indexes = builder.getChildNode(IndexConstants.INDEX_DEFINITIONS_NAME);
+        for (String name : LEAN_DISABLED_INDEXES) {
+            if (indexes.hasChildNode(name)) {
+                indexes.getChildNode(name)
+                        .setProperty(IndexConstants.TYPE_PROPERTY_NAME, IndexConstants.TYPE_DISABLED);
+            }
+        }
     }
 
     private void shutdownRepository(Repository repository) {
         if (repository instanceof JackrabbitRepository) {
             ((JackrabbitRepository) repository).shutdown();
         }
+        if (repository != null) {
+            scanStores.remove(repository);
+            final Closeable nodeStore = closeableStores.remove(repository);
+            if (nodeStore != null) {
+                closeQuietly(nodeStore);
+            }
+        }
+    }
+
+    private static void closeQuietly(final @NotNull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("failed to close node store", e);
+        }
     }
 
     private Session loginAdmin(Repository repository) throws RepositoryException {
@@ -1135,24 +1964,59 @@ public final class OakMachine {
 
         private final boolean silenced;
 
-        ImporterListenerAdapter(PackageId packageId, Session session, boolean silenced) {
+        private final AsyncCheckDispatcher asyncDispatcher;
+
+        ImporterListenerAdapter(PackageId packageId, Session session, boolean silenced,
+                                @Nullable AsyncCheckDispatcher asyncDispatcher) {
             this.packageId = packageId;
             this.session = session;
             this.silenced = silenced;
+            this.asyncDispatcher = asyncDispatcher;
+        }
+
+        /**
+         * Deliver any async path events that are still held by the dispatcher, before the next package-level event.
+         */
+        void barrier() {
+            if (asyncDispatcher != null) {
+                asyncDispatcher.barrier();
+            }
         }
 
         @Override
         public void onMessage(Mode mode, String action, String path) {
             // NOP("-"), MOD("U"), REP("R"), ERR("E"), ADD("A"), DEL("D"), MIS("!")
             if (path != null && path.startsWith("/")) {
+                final boolean batch = batchDispatcher.hasBatchChecks() && hasInterestedCheck(path, true);
+                final boolean perPath = hasInterestedCheck(path, false);
                 if ("D".equals(action)) { // deleted
-                    propagateCheckPathEvent(silenced, packageId, path,
-                            check -> check.deletedPath(packageId, path, session));
+                    if (batch) {
+                        batchDispatcher.append(silenced, packageId, session, path, PathAction.DELETED);
+                    }
+                    if (perPath) {
+                        propagateCheckPathEvent(silenced, packageId, path, asyncDispatcher,
+                                check -> check.deletedPath(packageId, path, session));
+                    }
                 } else if ("ARU-".contains(action)) { // added, replaced, updated
                     try {
-                        Node node = session.getNode(path);
-                        propagateCheckPathEvent(silenced, packageId, path, check ->
-                                check.importedPath(packageId, path, node, PathAction.fromShortCode(action)));
+                        if (batch) {
+                            batchDispatcher.append(silenced, packageId, session, path,
+                                    PathAction.fromShortCode(action));
+                        }
+                        if (perPath && !lazyNodes) {
+                            Node node = session.getNode(path);
+                            propagateCheckPathEvent(silenced, packageId, path, asyncDispatcher, check ->
+                                    check.importedPath(packageId, path, node, PathAction.fromShortCode(action)));
+                        } else if (perPath) {
+                            // the node is only looked up when a check uses it
+                            final LazyNode lazyNode = LazyNode.of(session, path);
+                            final Node node = lazyNode.newProxy();
+                            propagateCheckPathEvent(silenced, packageId, path, asyncDispatcher, check ->
+                                    check.importedPath(packageId, path, node, PathAction.fromShortCode(action)));
+                            if (lazyNode.getResolveError() != null) {
+                                throw lazyNode.getResolveError();
+                            }
+                        }
                     } catch (RepositoryException e) {
                         if (!silenced) {
                             getErrorListener().onImporterException(e, packageId, path);
@@ -25,6 +25,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -72,6 +73,12 @@ public final class OakpalPlan implements JsonObjectConvertible {
         String enablePreInstallHooks();
 
         String installHookPolicy();
+
+        String segmentStore();
+
+        String packageFilesByReference();
+
+        String repositoryProfile();
     }
 
     private static final JsonKeys KEYS = new JsonKeys() {
@@ -134,6 +141,21 @@ public final class OakpalPlan implements JsonObjectConvertible {
         public String installHookPolicy() {
             return "installHookPolicy";
         }
+
+        @Override
+        public String segmentStore() {
+            return "segmentStore";
+        }
+
+        @Override
+        public String packageFilesByReference() {
+            return "packageFilesByReference";
+        }
+
+        @Override
+        public String repositoryProfile() {
+            return "repositoryProfile";
+        }
     };
 
     @NotNull
@@ -176,6 +198,9 @@ public final class OakpalPlan implements JsonObjectConvertible {
     private final InstallHookPolicy installHookPolicy;
     private final List<URL> repoInitUrls;
     private final List<String> repoInits;
+    private final boolean segmentStore;
+    private final boolean packageFilesByReference;
+    private final RepositoryProfile repositoryProfile;
 
     private OakpalPlan(final @Nullable URL base,
                        final @Nullable JsonObject originalJson,
@@ -191,7 +216,10 @@ public final class OakpalPlan implements JsonObjectConvertible {
                        final boolean enablePreInstallHooks,
                        final @Nullable InstallHookPolicy installHookPolicy,
                        final @NotNull List<URL> repoInitUrls,
-                       final @NotNull List<String> repoInits) {
+                       final @NotNull List<String> repoInits,
+                       final boolean segmentStore,
+                       final boolean packageFilesByReference,
+                       final @Nullable RepositoryProfile repositoryProfile) {
         this.base = base;
         this.originalJson = originalJson;
         this.name = name;
@@ -207,6 +235,9 @@ public final class OakpalPlan implements JsonObjectConvertible {
         this.installHookPolicy = installHookPolicy;
         this.repoInitUrls = repoInitUrls;
         this.repoInits = repoInits;
+        this.segmentStore = segmentStore;
+        this.packageFilesByReference = packageFilesByReference;
+        this.repositoryProfile = repositoryProfile;
     }
 
     public URL getBase() {
@@ -269,6 +300,40 @@ public final class OakpalPlan implements JsonObjectConvertible {
         return repoInits;
     }
 
+    /**
+     * Whether each scan should use a new {@link SegmentTarScanNodeStore} in a temporary directory instead of a
+     * {@link org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore}.
+     *
+     * @return true to scan with a segment store
+     * @since 2.2.3
+     */
+    public boolean isSegmentStore() {
+        return segmentStore;
+    }
+
+    /**
+     * Whether scanned package files should be registered in the package manager by reference, instead of uploading a
+     * copy of each file into the repository.
+     *
+     * @return true to register scanned package files by reference
+     * @see OakMachine.Builder#withPackageFilesByReference(boolean)
+     * @since 2.2.3
+     */
+    public boolean isPackageFilesByReference() {
+        return packageFilesByReference;
+    }
+
+    /**
+     * The profile used to construct the scan repository, if specified.
+     *
+     * @return the repository profile, or null for the default
+     * @see OakMachine.Builder#withRepositoryProfile(RepositoryProfile)
+     * @since 2.2.3
+     */
+    public @Nullable RepositoryProfile getRepositoryProfile() {
+        return repositoryProfile;
+    }
+
     static URI relativizeToBaseParent(final @NotNull URI baseUri, final @NotNull URI uri) throws URISyntaxException {
         if (baseUri.isOpaque() || uri.isOpaque()) {
             return uri;
@@ -328,6 +393,9 @@ public final class OakpalPlan implements JsonObjectConvertible {
                 .key(keys().jcrNamespaces()).opt(jcrNamespaces)
                 .key(keys().enablePreInstallHooks()).opt(enablePreInstallHooks, false)
                 .key(keys().installHookPolicy()).opt(installHookPolicy)
+                .key(keys().segmentStore()).opt(segmentStore, false)
+                .key(keys().packageFilesByReference()).opt(packageFilesByReference, false)
+                .key(keys().repositoryProfile()).opt(repositoryProfile)
                 .get();
     }
 
@@ -379,7 +447,7 @@ public final class OakpalPlan implements JsonObjectConvertible {
             initResourceBundle(progressCheck, locale, classLoader);
         }
 
-        return new OakMachine.Builder()
+        final OakMachine.Builder builder = new OakMachine.Builder()
                 .withErrorListener(errorListener)
                 .withProgressChecks(allChecks)
                 .withInitStages(checklistPlanner.getInitStages())
@@ -389,7 +457,13 @@ public final class OakpalPlan implements JsonObjectConvertible {
                 .withInstallHookClassLoader(classLoader)
                 .withRunModes(new HashSet<>(getRunModes()))
                 .withSlingSimulator(DefaultSlingSimulator.instance())
-                .withEnablePreInstallHooks(enablePreInstallHooks);
+                .withEnablePreInstallHooks(enablePreInstallHooks)
+                .withPackageFilesByReference(packageFilesByReference)
+                .withRepositoryProfile(repositoryProfile);
+        if (segmentStore) {
+            builder.withNodeStoreSupplier(SegmentTarScanNodeStore.supplier(null));
+        }
+        return builder;
     }
 
     void initResourceBundle(final ViolationReporter reporter, final Locale locale, final ClassLoader classLoader) {
@@ -448,6 +522,22 @@ public final class OakpalPlan implements JsonObjectConvertible {
             builder.withInstallHookPolicy(InstallHookPolicy.forName(
                     json.getString(keys().installHookPolicy())));
         }
+        if (hasNonNull(json, keys().segmentStore())) {
+            builder.withSegmentStore(json.getBoolean(keys().segmentStore()));
+        }
+        if (hasNonNull(json, keys().packageFilesByReference())) {
+            builder.withPackageFilesByReference(json.getBoolean(keys().packageFilesByReference()));
+        }
+        if (hasNonNull(json, keys().repositoryProfile())) {
+            final String profileName = json.getString(keys().repositoryProfile());
+            final RepositoryProfile profile = RepositoryProfile.forName(profileName);
+            if (profile == null) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "unknown {0} \"{1}\", expected one of {2}", keys().repositoryProfile(), profileName,
+                        Arrays.toString(RepositoryProfile.values())));
+            }
+            builder.withRepositoryProfile(profile);
+        }
         return builder.build(json);
     }
 
@@ -456,6 +546,7 @@ public final class OakpalPlan implements JsonObjectConvertible {
      *
      * @param json the json object to read.
      * @return an OakpalPlan, guaranteed
+     * @throws IllegalArgumentException if the {@code repositoryProfile} value is not a {@link RepositoryProfile} name
      */
     public static OakpalPlan fromJson(final @NotNull JsonObject json) {
         return fromJson(new Builder(null, null), json);
@@ -486,6 +577,9 @@ public final class OakpalPlan implements JsonObjectConvertible {
         private List<URL> repoInitUrls = Collections.emptyList();
         private List<String> repoInits = Collections.emptyList();
         private List<String> runModes = Collections.emptyList();
+        private boolean segmentStore;
+        private boolean packageFilesByReference;
+        private RepositoryProfile repositoryProfile;
 
         public Builder(final @Nullable URL base, final @Nullable String name) {
             this.base = base;
@@ -508,6 +602,9 @@ public final class OakpalPlan implements JsonObjectConvertible {
                     .withRepoInitUrls(plan.getRepoInitUrls())
                     .withRepoInits(plan.getRepoInits())
                     .withRunModes(plan.getRunModes())
+                    .withSegmentStore(plan.isSegmentStore())
+                    .withPackageFilesByReference(plan.isPackageFilesByReference())
+                    .withRepositoryProfile(plan.getRepositoryProfile())
                     .withPreInstallUrls(plan.getPreInstallUrls());
         }
 
@@ -571,10 +668,48 @@ public final class OakpalPlan implements JsonObjectConvertible {
             return this;
         }
 
+        /**
+         * Set to true to scan with a new {@link SegmentTarScanNodeStore} for each scan.
+         *
+         * @param segmentStore true to scan with a segment store
+         * @return my builder self
+         * @since 2.2.3
+         */
+        public Builder withSegmentStore(final boolean segmentStore) {
+            this.segmentStore = segmentStore;
+            return this;
+        }
+
+        /**
+         * Set to true to register scanned package files by reference instead of by copy.
+         *
+         * @param packageFilesByReference true to register scanned package files by reference
+         * @return my builder self
+         * @see OakMachine.Builder#withPackageFilesByReference(boolean)
+         * @since 2.2.3
+         */
+        public Builder withPackageFilesByReference(final boolean packageFilesByReference) {
+            this.packageFilesByReference = packageFilesByReference;
+            return this;
+        }
+
+        /**
+         * Set the profile used to construct the scan repository.
+         *
+         * @param repositoryProfile the repository profile, or null for the default
+         * @return my builder self
+         * @see OakMachine.Builder#withRepositoryProfile(RepositoryProfile)
+         * @since 2.2.3
+         */
+        public Builder withRepositoryProfile(final @Nullable RepositoryProfile repositoryProfile) {
+            this.repositoryProfile = repositoryProfile;
+            return this;
+        }
+
         private OakpalPlan build(final @Nullable JsonObject originalJson) {
             return new OakpalPlan(base, originalJson, name, runModes, checklists, preInstallUrls, jcrNamespaces,
                     jcrNodetypes, jcrPrivileges, forcedRoots, checks, enablePreInstallHooks, scanInstallHookPolicy,
-                    repoInitUrls, repoInits);
+                    repoInitUrls, repoInits, segmentStore, packageFilesByReference, repositoryProfile);
         }
 
         public OakpalPlan build() {
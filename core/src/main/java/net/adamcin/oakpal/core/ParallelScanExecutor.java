@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.Result;
+import net.adamcin.oakpal.api.Violation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a list of independent {@link ScanJob}s on a bounded thread pool. Each job is executed by its own
+ * {@link OakMachine}, built from its own {@link OakpalPlan} with a fresh {@link DefaultErrorListener} and freshly
+ * loaded progress checks, and therefore against its own isolated repository. Results are always returned in job
+ * order, regardless of the order in which the jobs complete.
+ */
+public final class ParallelScanExecutor {
+
+    /**
+     * A list of package files to scan in sequence, along with the plan to scan them with.
+     */
+    public static final class ScanJob {
+        private final OakpalPlan plan;
+        private final List<File> files;
+
+        public ScanJob(final @NotNull OakpalPlan plan, final @NotNull List<File> files) {
+            this.plan = plan;
+            this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        }
+
+        public OakpalPlan getPlan() {
+            return plan;
+        }
+
+        public List<File> getFiles() {
+            return files;
+        }
+    }
+
+    private final int parallelism;
+
+    private final ClassLoader classLoader;
+
+    private final Consumer<OakMachine.Builder> machineCustomizer;
+
+    private final NodeTypeRegistryCache registryCache = new NodeTypeRegistryCache();
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism       the maximum number of concurrent scans. values less than 1 are treated as 1.
+     * @param classLoader       the classloader to load checklists and checks from, also used as the context
+     *                          classloader for each worker thread
+     * @param machineCustomizer optional function to customize each job's {@link OakMachine.Builder} prior to build,
+     *                          e.g. for {@link OakMachine.Builder#withNodeStoreSupplier(java.util.function.Supplier)}
+     */
+    public ParallelScanExecutor(final int parallelism,
+                                final @NotNull ClassLoader classLoader,
+                                final @Nullable Consumer<OakMachine.Builder> machineCustomizer) {
+        this.parallelism = Math.max(1, parallelism);
+        this.classLoader = classLoader;
+        this.machineCustomizer = machineCustomizer != null ? machineCustomizer : builder -> {
+        };
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * The node type registrations shared by the jobs of this executor.
+     *
+     * @return the node type registry cache
+     */
+    NodeTypeRegistryCache getNodeTypeRegistryCache() {
+        return registryCache;
+    }
+
+    /**
+     * Perform a single job on the current thread.
+     *
+     * @param job the job
+     * @return the list of check reports
+     * @throws Exception for plan loading errors or aborted scans
+     */
+    List<CheckReport> scanJob(final @NotNull ScanJob job) throws Exception {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldLoader = thread.getContextClassLoader();
+        try {
+            thread.setContextClassLoader(classLoader);
+            final OakMachine.Builder builder = job.getPlan()
+                    .toOakMachineBuilder(new DefaultErrorListener(), classLoader)
+                    .withNodeTypeRegistryCache(registryCache);
+            machineCustomizer.accept(builder);
+            return builder.build().scanPackages(job.getFiles());
+        } finally {
+            thread.setContextClassLoader(oldLoader);
+        }
+    }
+
+    /**
+     * Execute all the jobs, and return a result for each, in job order.
+     *
+     * @param jobs the list of jobs
+     * @return a list of scan results, one per job, in the same order as the jobs
+     */
+    public List<Result<List<CheckReport>>> scanAll(final @NotNull List<ScanJob> jobs) {
+        if (jobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, jobs.size()),
+                new ScanThreadFactory());
+        try {
+            final List<Future<List<CheckReport>>> futures = new ArrayList<>();
+            for (ScanJob job : jobs) {
+                final Callable<List<CheckReport>> task = () -> scanJob(job);
+                futures.add(executor.submit(task));
+            }
+            final List<Result<List<CheckReport>>> results = new ArrayList<>();
+            for (Future<List<CheckReport>> future : futures) {
+                results.add(awaitResult(future));
+            }
+            return Collections.unmodifiableList(results);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static Result<List<CheckReport>> awaitResult(final @NotNull Future<List<CheckReport>> future) {
+        try {
+            return Result.success(future.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.failure(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                return Result.failure((Exception) e.getCause());
+            }
+            return Result.failure(e);
+        }
+    }
+
+    /**
+     * Merge the reports of several scans into a single list, with one report per check name. Reports are ordered by
+     * the first appearance of each check name, and violations are concatenated in scan order, so that the output is
+     * independent of scan completion order.
+     *
+     * @param scanReports a list of report lists, as returned by each scan
+     * @return a merged list of reports
+     */
+    public static List<CheckReport> mergeReports(final @NotNull List<List<CheckReport>> scanReports) {
+        final Map<String, List<Violation>> merged = new LinkedHashMap<>();
+        for (List<CheckReport> reports : scanReports) {
+            for (CheckReport report : reports) {
+                merged.computeIfAbsent(report.getCheckName(), key -> new ArrayList<>())
+                        .addAll(report.getViolations());
+            }
+        }
+        return Collections.unmodifiableList(merged.entrySet().stream()
+                .map(entry -> new SimpleReport(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList()));
+    }
+
+    static final class ScanThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final @NotNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "oakpal-scan-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
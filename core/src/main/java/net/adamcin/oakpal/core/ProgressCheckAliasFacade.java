@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.BatchProgressCheck;
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.PathAction;
 import net.adamcin.oakpal.api.ProgressCheck;
@@ -45,7 +46,7 @@ import java.util.jar.Manifest;
  * 1) ensure that a configured checkName is actually respected
  * 2) guard {@link ProgressCheckFactory}s from being externally re-configured during a scan
  */
-class ProgressCheckAliasFacade implements SilenceableCheck {
+class ProgressCheckAliasFacade implements SilenceableCheck, BatchProgressCheck {
 
     private final SilenceableCheck wrapped;
     private final String alias;
@@ -60,6 +61,10 @@ class ProgressCheckAliasFacade implements SilenceableCheck {
         this.alias = alias;
     }
 
+    @NotNull ProgressCheck getWrapped() {
+        return wrapped;
+    }
+
     @Override
     public String getCheckName() {
         if (alias != null) {
@@ -128,6 +133,12 @@ class ProgressCheckAliasFacade implements SilenceableCheck {
         wrapped.deletedPath(packageId, path, inspectSession);
     }
 
+    @Override
+    public void pathEvents(final PackageId packageId, final List<PathEvent> pathEvents, final Session inspectSession)
+            throws RepositoryException {
+        BatchCheckDispatcher.deliver(wrapped, packageId, pathEvents, inspectSession);
+    }
+
     @Override
     public void afterExtract(final PackageId packageId, final Session inspectSession) throws RepositoryException {
         wrapped.afterExtract(packageId, inspectSession);
@@ -19,32 +19,38 @@ package net.adamcin.oakpal.core;
 import net.adamcin.oakpal.api.SimpleViolation;
 import net.adamcin.oakpal.api.Violation;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.annotation.versioning.ProviderType;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonWriter;
-import javax.json.JsonWriterFactory;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
 import javax.json.stream.JsonCollectors;
 import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static net.adamcin.oakpal.api.JavaxJson.key;
-import static net.adamcin.oakpal.api.JavaxJson.mapArrayOfObjects;
-import static net.adamcin.oakpal.api.JavaxJson.optArray;
+import static net.adamcin.oakpal.api.JavaxJson.wrap;
 
 /**
  * Serialize violations to/from json.
@@ -57,6 +63,8 @@ public final class ReportMapper {
         String checkName();
 
         String violations();
+
+        String metrics();
     }
 
     private static final JsonKeys KEYS = new JsonKeys() {
@@ -74,6 +82,11 @@ public final class ReportMapper {
         public String violations() {
             return "violations";
         }
+
+        @Override
+        public String metrics() {
+            return "metrics";
+        }
     };
 
     public static JsonKeys keys() {
@@ -103,23 +116,171 @@ public final class ReportMapper {
     }
 
     /**
-     * Opens a reader, reads a json object, closes the reader, and returns a list of reports.
+     * Opens a reader, reads a json object, closes the reader, and returns a list of reports. The json is read with a
+     * streaming parser, so that only one violation at a time is held as a json object, but every report is collected
+     * in the returned list. Use {@link #readReports(ReaderSupplier, Consumer)} to handle one report at a time.
      *
      * @param readerSupplier a function supplying a {@link Reader}
      * @return a list of check reports
      * @throws IOException for failing to read
      */
     public static List<CheckReport> readReports(final @NotNull ReaderSupplier readerSupplier) throws IOException {
+        final List<CheckReport> reports = new ArrayList<>();
+        readReports(readerSupplier, reports::add);
+        return Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * Opens a reader, reads a json object, closes the reader, and passes each report to the consumer as soon as it is
+     * read, so that only one report at a time is held in memory.
+     *
+     * @param readerSupplier a function supplying a {@link Reader}
+     * @param reportConsumer the consumer of each check report
+     * @throws IOException for failing to read
+     * @since 2.2.3
+     */
+    public static void readReports(final @NotNull ReaderSupplier readerSupplier,
+                                   final @NotNull Consumer<CheckReport> reportConsumer) throws IOException {
         try (Reader reader = readerSupplier.open();
-             JsonReader jsonReader = Json.createReader(reader)) {
+             JsonParser parser = Json.createParser(reader)) {
+            expectEvent(parser, JsonParser.Event.START_OBJECT);
+            JsonParser.Event event;
+            while ((event = parser.next()) == JsonParser.Event.KEY_NAME) {
+                final String key = parser.getString();
+                final JsonParser.Event valueEvent = parser.next();
+                if (keys().reports().equals(key) && valueEvent == JsonParser.Event.START_ARRAY) {
+                    JsonParser.Event reportEvent;
+                    while ((reportEvent = parser.next()) != JsonParser.Event.END_ARRAY) {
+                        if (reportEvent == JsonParser.Event.START_OBJECT) {
+                            reportConsumer.accept(readReport(parser));
+                        } else {
+                            skipValue(parser, reportEvent);
+                        }
+                    }
+                } else {
+                    skipValue(parser, valueEvent);
+                }
+            }
+            if (event != JsonParser.Event.END_OBJECT) {
+                throw new JsonParsingException("unexpected event " + event, parser.getLocation());
+            }
+        }
+    }
+
+    /**
+     * Read a single report object, after its {@link JsonParser.Event#START_OBJECT} event, through its
+     * {@link JsonParser.Event#END_OBJECT} event.
+     *
+     * @param parser the json parser
+     * @return a check report
+     */
+    static CheckReport readReport(final @NotNull JsonParser parser) {
+        String checkName = "";
+        final List<Violation> violations = new ArrayList<>();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            final String key = parser.getString();
+            final JsonParser.Event valueEvent = parser.next();
+            if (CoreConstants.checkReportKeys().checkName().equals(key)
+                    && valueEvent == JsonParser.Event.VALUE_STRING) {
+                checkName = parser.getString();
+            } else if (CoreConstants.checkReportKeys().violations().equals(key)
+                    && valueEvent == JsonParser.Event.START_ARRAY) {
+                JsonParser.Event violationEvent;
+                while ((violationEvent = parser.next()) != JsonParser.Event.END_ARRAY) {
+                    if (violationEvent == JsonParser.Event.START_OBJECT) {
+                        violations.add(violationFromJson(readObject(parser)));
+                    } else {
+                        skipValue(parser, violationEvent);
+                    }
+                }
+            } else {
+                skipValue(parser, valueEvent);
+            }
+        }
+        return new SimpleReport(checkName, violations);
+    }
 
-            JsonObject json = jsonReader.readObject();
+    private static void expectEvent(final @NotNull JsonParser parser, final @NotNull JsonParser.Event expected) {
+        final JsonParser.Event event = parser.hasNext() ? parser.next() : null;
+        if (event != expected) {
+            throw new JsonParsingException("expected " + expected + " but found " + event, parser.getLocation());
+        }
+    }
 
-            List<CheckReport> reports = optArray(json, keys().reports())
-                    .map(jsonReports -> mapArrayOfObjects(jsonReports, ReportMapper::reportFromJson))
-                    .orElseGet(Collections::emptyList);
+    /**
+     * Skip the current value, including all nested values when the event starts an object or an array. Implemented
+     * with {@link JsonParser#next()}, because not all json providers support {@code JsonParser.skipObject()}.
+     *
+     * @param parser the json parser
+     * @param event  the event that started the value
+     */
+    static void skipValue(final @NotNull JsonParser parser, final @NotNull JsonParser.Event event) {
+        if (event != JsonParser.Event.START_OBJECT && event != JsonParser.Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 
-            return Collections.unmodifiableList(reports);
+    /**
+     * Read an object, after its {@link JsonParser.Event#START_OBJECT} event, through its
+     * {@link JsonParser.Event#END_OBJECT} event. Implemented with {@link JsonParser#next()}, because not all json
+     * providers support {@code JsonParser.getObject()}.
+     *
+     * @param parser the json parser
+     * @return the json object
+     */
+    static JsonObject readObject(final @NotNull JsonParser parser) {
+        final JsonObjectBuilder builder = Json.createObjectBuilder();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            final String key = parser.getString();
+            builder.add(key, readValue(parser, parser.next()));
+        }
+        return builder.build();
+    }
+
+    private static JsonArray readArray(final @NotNull JsonParser parser) {
+        final JsonArrayBuilder builder = Json.createArrayBuilder();
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+            builder.add(readValue(parser, event));
+        }
+        return builder.build();
+    }
+
+    private static JsonValue readValue(final @NotNull JsonParser parser, final @NotNull JsonParser.Event event) {
+        switch (event) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                return readArray(parser);
+            case VALUE_STRING:
+                return wrap(parser.getString());
+            case VALUE_NUMBER:
+                return parser.isIntegralNumber()
+                        ? wrap(parser.getLong())
+                        : wrap(parser.getBigDecimal());
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            default:
+                throw new JsonParsingException("unexpected event " + event, parser.getLocation());
         }
     }
 
@@ -137,16 +298,111 @@ public final class ReportMapper {
 
     public static void writeReports(final @NotNull Collection<CheckReport> reports,
                                     final @NotNull WriterSupplier writerSupplier) throws IOException {
-        JsonWriterFactory writerFactory = Json
-                .createWriterFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
-        try (Writer writer = writerSupplier.open(); JsonWriter jsonWriter = writerFactory.createWriter(writer)) {
-            jsonWriter.writeObject(reportsToJsonObject(reports));
+        writeReports(reports, null, writerSupplier);
+    }
+
+    /**
+     * Opens a writer, writes the reports and the optional scan metrics as a json object, and closes the writer. The
+     * json is written with a streaming generator, so that only one violation at a time is held as a json object.
+     *
+     * @param reports        the reports to serialize
+     * @param metrics        the scan metrics to serialize, if not null
+     * @param writerSupplier a function supplying a {@link Writer}
+     * @throws IOException for failing to write
+     * @since 2.2.3
+     */
+    public static void writeReports(final @NotNull Collection<CheckReport> reports,
+                                    final @Nullable ScanMetrics metrics,
+                                    final @NotNull WriterSupplier writerSupplier) throws IOException {
+        try (Writer writer = writerSupplier.open()) {
+            writeReports(reports, metrics, writer);
+        }
+    }
+
+    public static void writeReports(final @NotNull Collection<CheckReport> reports,
+                                    final @NotNull Writer writer) throws IOException {
+        writeReports(reports, null, writer);
+    }
+
+    /**
+     * Writes the reports and the optional scan metrics as a json object to an open writer, which is flushed but not
+     * closed. The json is written with a streaming generator, so that only one violation at a time is held as a json
+     * object.
+     *
+     * @param reports the reports to serialize
+     * @param metrics the scan metrics to serialize, if not null
+     * @param writer  the writer, which remains open
+     * @throws IOException for failing to write
+     * @since 2.2.3
+     */
+    public static void writeReports(final @NotNull Collection<CheckReport> reports,
+                                    final @Nullable ScanMetrics metrics,
+                                    final @NotNull Writer writer) throws IOException {
+        JsonGeneratorFactory generatorFactory = Json
+                .createGeneratorFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+        // closing the generator closes its writer, so only flush the caller's writer
+        final Writer unclosedWriter = new FilterWriter(writer) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        try (JsonGenerator generator = generatorFactory.createGenerator(unclosedWriter)) {
+            generator.writeStartObject();
+            generator.writeStartArray(keys().reports());
+            for (CheckReport report : reports) {
+                writeReport(generator, report);
+            }
+            generator.writeEnd();
+            if (metrics != null) {
+                generator.write(keys().metrics(), metrics.toJson());
+            }
+            generator.writeEnd();
+        }
+    }
+
+    /**
+     * Write a report as an element of the current array, in the same form as {@link CheckReport#toJson()}, one
+     * violation at a time.
+     *
+     * @param generator the json generator
+     * @param report    the report to write
+     */
+    static void writeReport(final @NotNull JsonGenerator generator, final @NotNull CheckReport report) {
+        generator.writeStartObject();
+        if (report.getCheckName() != null) {
+            generator.write(CoreConstants.checkReportKeys().checkName(), report.getCheckName());
         }
+        final Collection<Violation> violations = report.getViolations();
+        if (!violations.isEmpty()) {
+            generator.writeStartArray(CoreConstants.checkReportKeys().violations());
+            for (Violation violation : violations) {
+                generator.write(violation.toJson());
+            }
+            generator.writeEnd();
+        }
+        generator.writeEnd();
     }
 
     public static void writeReportsToFile(final Collection<CheckReport> reports,
                                           final @NotNull File outputFile) throws IOException {
-        writeReports(reports, () -> new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8));
+        writeReportsToFile(reports, null, outputFile);
+    }
+
+    /**
+     * Write the reports and the optional scan metrics to a json file.
+     *
+     * @param reports    the reports to serialize
+     * @param metrics    the scan metrics to serialize, if not null
+     * @param outputFile the json file to write
+     * @throws IOException if fails to write the file
+     * @since 2.2.3
+     */
+    public static void writeReportsToFile(final Collection<CheckReport> reports,
+                                          final @Nullable ScanMetrics metrics,
+                                          final @NotNull File outputFile) throws IOException {
+        writeReports(reports, metrics,
+                () -> new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8));
     }
 
     static CheckReport reportFromJson(final JsonObject jsonReport) {
@@ -179,4 +435,21 @@ public final class ReportMapper {
     public static JsonObject reportsToJsonObject(final @NotNull Collection<CheckReport> reports) {
         return key(keys().reports(), reportsToJson(reports)).get();
     }
+
+    /**
+     * Transforms a collection of CheckReports to a JsonArray assigned to a key {@link JsonKeys#reports()} in
+     * an outer object, along with the scan metrics assigned to a key {@link JsonKeys#metrics()}, if not null.
+     *
+     * @param reports the reports to serialize
+     * @param metrics the scan metrics to serialize, if not null
+     * @return a JsonObject with a JsonArray of CheckReport json objects and an optional metrics object
+     * @since 2.2.3
+     */
+    public static JsonObject reportsToJsonObject(final @NotNull Collection<CheckReport> reports,
+                                                 final @Nullable ScanMetrics metrics) {
+        if (metrics == null) {
+            return reportsToJsonObject(reports);
+        }
+        return key(keys().reports(), reportsToJson(reports)).key(keys().metrics(), metrics).get();
+    }
 }
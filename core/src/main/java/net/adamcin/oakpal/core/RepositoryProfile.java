@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Enumeration of profiles for constructing the Oak repository used for each scan, which determine the commit hooks
+ * that run for each session save.
+ *
+ * @since 2.2.3
+ */
+public enum RepositoryProfile {
+    /**
+     * The default Oak repository, with all default index editors, query index providers, observation change
+     * collection, and atomic counter support. Use this profile for checks that execute JCR queries.
+     */
+    FULL,
+
+    /**
+     * A repository that skips commit hooks that checks rarely depend on: the {@code nodetype} property index is
+     * disabled, and the atomic counter editor, the node counter and ordered property index editors, and the
+     * observation change collector are left out. The {@code uuid} index and the reference index are kept, because
+     * identifier lookups and referential integrity affect how packages are imported. Queries still return correct
+     * results, but node type restrictions are evaluated by traversal.
+     */
+    LEAN;
+
+    public static final RepositoryProfile DEFAULT = FULL;
+
+    /**
+     * Find the profile with the given name, ignoring case.
+     *
+     * @param name the profile name
+     * @return the matching profile, or null if the name is null or unknown
+     */
+    public static @Nullable RepositoryProfile forName(final @Nullable String name) {
+        for (RepositoryProfile value : values()) {
+            if (value.name().equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.JavaxJson;
+import net.adamcin.oakpal.api.JsonObjectConvertible;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+import javax.json.JsonObject;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static net.adamcin.oakpal.api.JavaxJson.key;
+
+/**
+ * Collects wall-clock timings and invocation counts during one or more scans by an {@link OakMachine} built with
+ * {@link OakMachine.Builder#withScanMetrics(ScanMetrics)}. Metrics are recorded:
+ * <dl>
+ * <dt>{@code checks}</dt>
+ * <dd>for each {@link net.adamcin.oakpal.api.ProgressCheck} callback, grouped by check name and event name.</dd>
+ * <dt>{@code extracts}</dt>
+ * <dd>for the FileVault extraction of each package and subpackage, by package id.</dd>
+ * <dt>{@code subpackages}</dt>
+ * <dd>for the entire processing of each subpackage and sling-installed embedded package, including events and
+ * nested subpackages, by package id.</dd>
+ * <dt>{@code phases}</dt>
+ * <dd>for each of the scan phases named by the {@code PHASE_*} constants.</dd>
+ * </dl>
+ * All timers are safe to update from multiple threads. When serialized by {@link #toJson()}, the entries of each
+ * group are sorted by descending total time, so that hotspots are listed first.
+ *
+ * @since 2.2.3
+ */
+public final class ScanMetrics implements JsonObjectConvertible {
+    /**
+     * The entire scan, from repository initialization to the {@code finishedScan} events.
+     */
+    public static final String PHASE_SCAN = "scan";
+    /**
+     * The {@link InitStage#initSession(javax.jcr.Session, ErrorListener, OakMachine.RepoInitProcessor)} calls.
+     */
+    public static final String PHASE_INIT_STAGES = "initStages";
+    /**
+     * The processing of all pre-install packages.
+     */
+    public static final String PHASE_PRE_INSTALL = "preInstall";
+    /**
+     * The execution of each repoinit script found in a sling-installed OSGi config.
+     */
+    public static final String PHASE_REPO_INIT_SCRIPTS = "repoInitScripts";
+
+    @ProviderType
+    public interface JsonKeys {
+        String checks();
+
+        String extracts();
+
+        String subpackages();
+
+        String phases();
+
+        String count();
+
+        String millis();
+    }
+
+    private static final JsonKeys KEYS = new JsonKeys() {
+        @Override
+        public String checks() {
+            return "checks";
+        }
+
+        @Override
+        public String extracts() {
+            return "extracts";
+        }
+
+        @Override
+        public String subpackages() {
+            return "subpackages";
+        }
+
+        @Override
+        public String phases() {
+            return "phases";
+        }
+
+        @Override
+        public String count() {
+            return "count";
+        }
+
+        @Override
+        public String millis() {
+            return "millis";
+        }
+    };
+
+    @NotNull
+    public static JsonKeys keys() {
+        return KEYS;
+    }
+
+    /**
+     * An accumulating invocation count and total elapsed time.
+     */
+    public static final class Timer implements JsonObjectConvertible {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(final long elapsedNanos) {
+            count.increment();
+            nanos.add(elapsedNanos);
+        }
+
+        void add(final @NotNull Timer other) {
+            count.add(other.getCount());
+            nanos.add(other.getTotalNanos());
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        public double getTotalMillis() {
+            return Math.round((double) getTotalNanos() / TimeUnit.MILLISECONDS.toNanos(1) * 1000.0) / 1000.0;
+        }
+
+        @Override
+        public JsonObject toJson() {
+            return key(keys().count(), getCount()).key(keys().millis(), getTotalMillis()).get();
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> checks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> extracts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> subpackages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> phases = new ConcurrentHashMap<>();
+
+    /**
+     * Record a single progress check callback.
+     *
+     * @param checkName    the check name
+     * @param eventName    the callback method name
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    public void recordCheckEvent(final @NotNull String checkName, final @NotNull String eventName,
+                                 final long elapsedNanos) {
+        checks.computeIfAbsent(checkName, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(eventName, key -> new Timer())
+                .record(elapsedNanos);
+    }
+
+    /**
+     * Record the extraction of a package.
+     *
+     * @param packageId    the package id
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    public void recordExtract(final @NotNull PackageId packageId, final long elapsedNanos) {
+        extracts.computeIfAbsent(packageId.toString(), key -> new Timer()).record(elapsedNanos);
+    }
+
+    /**
+     * Record the processing of a subpackage or embedded package.
+     *
+     * @param packageId    the package id
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    public void recordSubpackage(final @NotNull PackageId packageId, final long elapsedNanos) {
+        subpackages.computeIfAbsent(packageId.toString(), key -> new Timer()).record(elapsedNanos);
+    }
+
+    /**
+     * Record a scan phase.
+     *
+     * @param phase        the phase name, usually one of the {@code PHASE_*} constants
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    public void recordPhase(final @NotNull String phase, final long elapsedNanos) {
+        phases.computeIfAbsent(phase, key -> new Timer()).record(elapsedNanos);
+    }
+
+    /**
+     * Get the timers for each check callback, by check name and then by event name, sorted by descending total time.
+     *
+     * @return the check event timers
+     */
+    public @NotNull Map<String, Map<String, Timer>> getCheckEvents() {
+        final Map<String, Map<String, Timer>> sorted = new LinkedHashMap<>();
+        for (String checkName : sortedByTime(getCheckTotals()).keySet()) {
+            sorted.put(checkName, sortedByTime(checks.get(checkName)));
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    /**
+     * Get the sum of the callback timers of each check, sorted by descending total time.
+     *
+     * @return the total timer for each check
+     */
+    public @NotNull Map<String, Timer> getCheckTotals() {
+        final Map<String, Timer> totals = new LinkedHashMap<>();
+        for (Map.Entry<String, ConcurrentMap<String, Timer>> entry : checks.entrySet()) {
+            final Timer total = new Timer();
+            entry.getValue().values().forEach(total::add);
+            totals.put(entry.getKey(), total);
+        }
+        return sortedByTime(totals);
+    }
+
+    /**
+     * Get the extraction timers by package id, sorted by descending total time.
+     *
+     * @return the extraction timers
+     */
+    public @NotNull Map<String, Timer> getExtracts() {
+        return sortedByTime(extracts);
+    }
+
+    /**
+     * Get the subpackage timers by package id, sorted by descending total time.
+     *
+     * @return the subpackage timers
+     */
+    public @NotNull Map<String, Timer> getSubpackages() {
+        return sortedByTime(subpackages);
+    }
+
+    /**
+     * Get the phase timers by phase name, sorted by descending total time.
+     *
+     * @return the phase timers
+     */
+    public @NotNull Map<String, Timer> getPhases() {
+        return sortedByTime(phases);
+    }
+
+    static Map<String, Timer> sortedByTime(final @NotNull Map<String, Timer> timers) {
+        final Map<String, Timer> sorted = new LinkedHashMap<>();
+        timers.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, Timer> entry) -> entry.getValue().getTotalNanos())
+                        .reversed().thenComparing(Map.Entry::getKey))
+                .forEachOrdered(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    @Override
+    public JsonObject toJson() {
+        final JavaxJson.Obj checksJson = JavaxJson.obj();
+        getCheckEvents().forEach((checkName, events) -> checksJson.key(checkName, events));
+        return key(keys().phases(), getPhases())
+                .key(keys().checks(), checksJson)
+                .key(keys().extracts(), getExtracts())
+                .key(keys().subpackages(), getSubpackages())
+                .get();
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * A report cache that persists the check reports of completed scans in a directory, keyed by a SHA-256 digest of
+ * everything that can affect the reports, so that a build can skip a scan entirely when neither the plan nor any of
+ * the scanned packages have changed since the last run.
+ * <p>
+ * This is not an incremental scan. A cache hit requires every input to be unchanged, and when any input has changed,
+ * even only the last package, the whole scan must run again. {@link net.adamcin.oakpal.api.ProgressCheck}
+ * implementations hold arbitrary in-memory state across the whole scan, so a scan can not be safely resumed from a
+ * repository checkpoint after the last unchanged package. Use {@link #getChangedIndex(List, List)} to report which
+ * package invalidated the cache.
+ * <p>
+ * Packages are identified by the names and contents of their zip entries, so that a package rebuilt with the same
+ * content, but with different entry timestamps or a different entry order, still hits the cache. Packages whose
+ * metadata changes on every build, like a {@code created} timestamp in {@code META-INF/vault/properties.xml}, will
+ * not hit the cache.
+ *
+ * @since 2.2.3
+ */
+public final class ScanResultCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanResultCache.class);
+
+    static final String HASH_ALGORITHM = "SHA-256";
+    static final String REPORTS_SUFFIX = ".json";
+    static final String PACKAGES_SUFFIX = ".packages";
+
+    /**
+     * The default number of entries retained by {@link #save(Key, Collection)}.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private final File cacheDir;
+    private final int maxEntries;
+
+    public ScanResultCache(final @NotNull File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir   the cache directory
+     * @param maxEntries the number of most-recently saved entries to retain, or 0 to retain all entries
+     */
+    public ScanResultCache(final @NotNull File cacheDir, final int maxEntries) {
+        this.cacheDir = cacheDir;
+        this.maxEntries = maxEntries;
+    }
+
+    public @NotNull File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Start a new cache key.
+     *
+     * @return a new key builder
+     */
+    public static Key key() {
+        return new Key();
+    }
+
+    /**
+     * Accumulates a SHA-256 digest over the scan inputs in the order they are added. Package files should be added
+     * last, using {@link #withPackage(File)}, so that the individual package digests can be compared with the
+     * previous run.
+     */
+    public static final class Key {
+        private final MessageDigest digest = newDigest();
+        private final List<String> packageDigests = new ArrayList<>();
+
+        private Key() {
+            /* use ScanResultCache.key() */
+        }
+
+        /**
+         * Add a string value, such as an option that affects the scan.
+         *
+         * @param value the value
+         * @return this key
+         */
+        public Key withString(final @Nullable String value) {
+            final byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+            return this;
+        }
+
+        /**
+         * Add the JSON serialization of a plan.
+         *
+         * @param plan the plan
+         * @return this key
+         */
+        public Key withPlan(final @NotNull OakpalPlan plan) {
+            return withString(plan.toJson().toString());
+        }
+
+        /**
+         * Add the content of a URL, such as a pre-install package or repoinit script referenced by a plan.
+         *
+         * @param url the url
+         * @return this key
+         * @throws IOException if the url can not be read
+         */
+        public Key withContent(final @NotNull URL url) throws IOException {
+            try (InputStream input = url.openStream()) {
+                return withString(url.toExternalForm()).withString(digestStream(input));
+            }
+        }
+
+        /**
+         * Add the path, length, and last modified time of a file, or of every file under a directory. This is much
+         * cheaper than {@link #withContent(URL)} for large classpath jars and directories.
+         *
+         * @param file the file or directory
+         * @return this key
+         * @throws IOException if the directory can not be walked
+         */
+        public Key withStamp(final @NotNull File file) throws IOException {
+            if (file.isDirectory()) {
+                try (Stream<Path> paths = Files.walk(file.toPath())) {
+                    for (File child : paths.map(Path::toFile).filter(File::isFile)
+                            .sorted(Comparator.comparing(File::getPath)).collect(Collectors.toList())) {
+                        stamp(child);
+                    }
+                }
+            } else {
+                stamp(file);
+            }
+            return this;
+        }
+
+        private void stamp(final @NotNull File file) {
+            withString(file.getAbsolutePath());
+            withString(Long.toString(file.length()));
+            withString(Long.toString(file.lastModified()));
+        }
+
+        /**
+         * Add the content of a scanned package file, as a digest of the sorted names and the contents of its zip
+         * entries, ignoring entry timestamps and entry order. A file that is not a zip file is digested as is.
+         *
+         * @param file the package file
+         * @return this key
+         * @throws IOException if the file can not be read
+         */
+        public Key withPackage(final @NotNull File file) throws IOException {
+            final String packageDigest = digestPackage(file);
+            packageDigests.add(packageDigest);
+            return withString(packageDigest);
+        }
+
+        /**
+         * Get the SHA-256 digests of each package added with {@link #withPackage(File)}, in order.
+         *
+         * @return the package digests
+         */
+        public @NotNull List<String> getPackageDigests() {
+            return new ArrayList<>(packageDigests);
+        }
+
+        /**
+         * Get the hex-encoded digest of all inputs added so far.
+         *
+         * @return the hex-encoded digest
+         */
+        public @NotNull String getDigest() {
+            try {
+                return toHex(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getDigest();
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String digestStream(final @NotNull InputStream input) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    static String digestPackage(final @NotNull File file) throws IOException {
+        final ZipFile zipFile;
+        try {
+            zipFile = new ZipFile(file);
+        } catch (final ZipException e) {
+            try (InputStream input = new FileInputStream(file)) {
+                return digestStream(input);
+            }
+        }
+        try {
+            final List<ZipEntry> entries = Collections.list(zipFile.entries()).stream()
+                    .sorted(Comparator.comparing(ZipEntry::getName))
+                    .collect(Collectors.toList());
+            final MessageDigest digest = newDigest();
+            for (ZipEntry entry : entries) {
+                final byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+                digest.update(Integer.toString(name.length).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(name);
+                if (!entry.isDirectory()) {
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        digest.update(digestStream(input).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return toHex(digest.digest());
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    File getReportsFile(final @NotNull Key key) {
+        return new File(cacheDir, key.getDigest() + REPORTS_SUFFIX);
+    }
+
+    File getLastPackagesFile() {
+        return new File(cacheDir, "last" + PACKAGES_SUFFIX);
+    }
+
+    /**
+     * Load the reports saved for the key, if present.
+     *
+     * @param key the cache key
+     * @return the saved reports, or empty if not present or unreadable
+     */
+    public Optional<List<CheckReport>> load(final @NotNull Key key) {
+        final File reportsFile = getReportsFile(key);
+        if (!reportsFile.isFile()) {
+            return Optional.empty();
+        }
+        try {
+            final List<CheckReport> reports = ReportMapper.readReportsFromFile(reportsFile);
+            if (!reportsFile.setLastModified(System.currentTimeMillis())) {
+                LOGGER.debug("failed to update last modified time of {}", reportsFile);
+            }
+            return Optional.of(reports);
+        } catch (Exception e) {
+            LOGGER.warn("failed to read cached reports from {}", reportsFile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Save the reports for the key, record its package digests for {@link #getLastPackageDigests()}, and delete the
+     * least-recently-used entries beyond the maximum number of entries.
+     *
+     * @param key     the cache key
+     * @param reports the reports to save
+     * @throws IOException if the reports can not be written
+     */
+    public void save(final @NotNull Key key, final @NotNull Collection<CheckReport> reports) throws IOException {
+        Files.createDirectories(cacheDir.toPath());
+        final File reportsFile = getReportsFile(key);
+        final Path temp = Files.createTempFile(cacheDir.toPath(), reportsFile.getName(), ".tmp");
+        try {
+            ReportMapper.writeReportsToFile(reports, temp.toFile());
+            moveAtomically(temp, reportsFile.toPath());
+            final Path packagesTemp = Files.createTempFile(cacheDir.toPath(), getLastPackagesFile().getName(), ".tmp");
+            try {
+                Files.write(packagesTemp, key.getPackageDigests(), StandardCharsets.UTF_8);
+                moveAtomically(packagesTemp, getLastPackagesFile().toPath());
+            } finally {
+                Files.deleteIfExists(packagesTemp);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        prune();
+    }
+
+    /**
+     * Get the package digests of the last saved scan.
+     *
+     * @return the package digests of the last saved scan, or an empty list
+     */
+    public @NotNull List<String> getLastPackageDigests() {
+        final File lastPackages = getLastPackagesFile();
+        if (lastPackages.isFile()) {
+            try {
+                return Files.readAllLines(lastPackages.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.debug("failed to read {}", lastPackages, e);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Compare two lists of package digests and return the index of the first difference.
+     *
+     * @param previous the previous package digests
+     * @param current  the current package digests
+     * @return the index of the first changed, added, or removed package, or -1 if the lists are equal
+     */
+    public static int getChangedIndex(final @NotNull List<String> previous, final @NotNull List<String> current) {
+        final int common = Math.min(previous.size(), current.size());
+        for (int i = 0; i < common; i++) {
+            if (!previous.get(i).equals(current.get(i))) {
+                return i;
+            }
+        }
+        return previous.size() == current.size() ? -1 : common;
+    }
+
+    static void moveAtomically(final @NotNull Path source, final @NotNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    void prune() {
+        final File[] entries = cacheDir.listFiles((dir, name) -> name.endsWith(REPORTS_SUFFIX));
+        if (maxEntries <= 0 || entries == null || entries.length <= maxEntries) {
+            return;
+        }
+        final List<File> sorted = Arrays.stream(entries)
+                .sorted(Comparator.comparingLong(File::lastModified).reversed())
+                .collect(Collectors.toList());
+        for (File stale : sorted.subList(maxEntries, sorted.size())) {
+            if (!stale.delete()) {
+                LOGGER.debug("failed to delete stale cache entry {}", stale);
+            }
+        }
+    }
+}
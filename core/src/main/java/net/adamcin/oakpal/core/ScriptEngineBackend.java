@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapts a {@link Compilable} JSR-223 script engine implementation for {@link ScriptProgressCheck} instances that are
+ * each evaluated in their own {@link ScriptContext}, from a script compiled once per engine.
+ * <p>
+ * Handler functions resolved from a check's global bindings must be invoked in that check's context, rather than in
+ * the engine's default context that {@link Invocable#invokeFunction(String, Object...)} uses. Nashorn can invoke the
+ * resolved function objects directly. Other engines call the handler through a small dispatch script that is also
+ * compiled once per engine, and evaluated in the check's context with the handler arguments bound to reserved globals.
+ *
+ * @since 2.2.3
+ */
+enum ScriptEngineBackend {
+    /**
+     * The Nashorn engine bundled with JDK 8 through 14.
+     */
+    NASHORN {
+        @Override
+        ScriptProgressCheck.HandlerHandle newHandle(final @NotNull ScriptEngine engine,
+                                                    final @NotNull ScriptProgressCheck.CompiledScriptCache scripts,
+                                                    final @NotNull ScriptContext context,
+                                                    final @NotNull String methodName,
+                                                    final @NotNull Object function) {
+            return args -> {
+                // Function.prototype.call(thisArg, ...args) invokes the function object in its own global scope
+                final Object[] callArgs = new Object[args.length + 1];
+                System.arraycopy(args, 0, callArgs, 1, args.length);
+                return ((Invocable) engine).invokeMethod(function, "call", callArgs);
+            };
+        }
+    },
+
+    /**
+     * The GraalJS engine, when {@code org.graalvm.js:js-scriptengine} is on the classpath, and it is either requested by
+     * the {@code graal.js} engine name, or preferred for the {@code js} extension by setting the
+     * {@value #GRAALJS_PREFERRED_PROPERTY} system property to {@code true}. Every script context created
+     * by the same GraalJS script engine shares its polyglot engine, so that a script check compiled for one check
+     * instance is cached and JIT-compiled for all of them.
+     */
+    GRAALJS {
+        @Override
+        void prepareBindings(final @NotNull Bindings bindings) {
+            // grant the same unrestricted host access and Nashorn extensions, like Java.type(), that checks rely on
+            GRAALJS_BINDINGS_OPTIONS.forEach(bindings::put);
+        }
+    },
+
+    /**
+     * Any other engine that implements both {@link Compilable} and {@link Invocable}.
+     */
+    COMPILABLE;
+
+    /**
+     * The primary name of the GraalJS script engine.
+     */
+    static final String GRAALJS_ENGINE_NAME = "graal.js";
+
+    /**
+     * Set this system property to {@code true} to prefer the GraalJS engine over Nashorn for script checks with the
+     * {@code js} extension.
+     */
+    static final String GRAALJS_PREFERRED_PROPERTY = "oakpal.script.graaljs";
+
+    static final String NASHORN_ENGINE_NAME = "nashorn";
+
+    static final String DISPATCH_ARG_PREFIX = "__oakpalArg";
+
+    static final Map<String, Object> GRAALJS_BINDINGS_OPTIONS;
+
+    static {
+        final Map<String, Object> options = new LinkedHashMap<>();
+        options.put("polyglot.js.allowAllAccess", true);
+        options.put("polyglot.js.nashorn-compat", true);
+        GRAALJS_BINDINGS_OPTIONS = Collections.unmodifiableMap(options);
+    }
+
+    /**
+     * Set engine-specific options on new engine scope bindings, before the script is evaluated.
+     *
+     * @param bindings the new engine scope bindings
+     */
+    void prepareBindings(final @NotNull Bindings bindings) {
+        /* no options by default */
+    }
+
+    /**
+     * Create a handle that invokes the resolved handler function in the check's script context.
+     *
+     * @param engine     the script engine
+     * @param scripts    the cache of scripts compiled by the engine
+     * @param context    the check's script context
+     * @param methodName the name of the handler function
+     * @param function   the handler function object resolved from the context's engine scope bindings
+     * @return a handler handle
+     */
+    ScriptProgressCheck.HandlerHandle newHandle(final @NotNull ScriptEngine engine,
+                                                final @NotNull ScriptProgressCheck.CompiledScriptCache scripts,
+                                                final @NotNull ScriptContext context,
+                                                final @NotNull String methodName,
+                                                final @NotNull Object function) {
+        return args -> {
+            final Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            for (int i = 0; i < args.length; i++) {
+                bindings.put(DISPATCH_ARG_PREFIX + i, args[i]);
+            }
+            try {
+                return scripts.compile((Compilable) engine, dispatchSource(methodName, args.length)).eval(context);
+            } finally {
+                for (int i = 0; i < args.length; i++) {
+                    bindings.remove(DISPATCH_ARG_PREFIX + i);
+                }
+            }
+        };
+    }
+
+    /**
+     * Check if the GraalJS engine should be preferred for script checks with the {@code js} extension.
+     *
+     * @return true if the {@value #GRAALJS_PREFERRED_PROPERTY} system property is set to {@code true}
+     */
+    static boolean isGraalJsPreferred() {
+        return Boolean.getBoolean(GRAALJS_PREFERRED_PROPERTY);
+    }
+
+    static String dispatchSource(final @NotNull String methodName, final int arity) {
+        final StringBuilder sb = new StringBuilder(methodName).append("(");
+        for (int i = 0; i < arity; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(DISPATCH_ARG_PREFIX).append(i);
+        }
+        return sb.append(");").toString();
+    }
+
+    /**
+     * Select the backend for the engine.
+     *
+     * @param engine the script engine
+     * @return the backend, or null if the engine does not implement both {@link Compilable} and {@link Invocable}
+     */
+    static @Nullable ScriptEngineBackend forEngine(final @NotNull ScriptEngine engine) {
+        if (!(engine instanceof Compilable && engine instanceof Invocable)) {
+            return null;
+        }
+        final List<String> names = engine.getFactory() != null
+                ? engine.getFactory().getNames()
+                : Collections.emptyList();
+        if (names.contains(NASHORN_ENGINE_NAME)) {
+            return NASHORN;
+        } else if (names.contains(GRAALJS_ENGINE_NAME)) {
+            return GRAALJS;
+        }
+        return COMPILABLE;
+    }
+}
@@ -39,6 +39,8 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.json.JsonObject;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
@@ -47,16 +49,24 @@ import javax.script.ScriptException;
 import javax.script.SimpleBindings;
 import javax.script.SimpleScriptContext;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.jar.Manifest;
 
 import static net.adamcin.oakpal.core.Util.isEmpty;
@@ -98,6 +108,15 @@ import static net.adamcin.oakpal.core.Util.isEmpty;
  * </dl>
  * <p>
  * To report package violations, a {@link ScriptHelper} is bound to the global variable "oakpal".
+ * <p>
+ * When the script engine implements {@link Compilable}, each script is compiled once per engine and evaluated in a new
+ * {@link ScriptContext} for each check instance, and the handler functions are resolved from the check's own global
+ * bindings at {@link #startedScan()}, instead of being looked up by name for every event.
+ * <p>
+ * Scripts with the {@code js} extension, and inline scripts without an engine name, run on the Nashorn engine by
+ * default. Set the {@code oakpal.script.graaljs} system property to {@code true} to run them on the GraalJS engine
+ * instead, when {@code org.graalvm.js:js-scriptengine} is on the class path. Specify the {@code graal.js} engine name
+ * to run a single check on GraalJS, or the {@code nashorn} engine name to keep running a check on Nashorn.
  */
 public final class ScriptProgressCheck implements ProgressCheck {
     public static final String DEFAULT_SCRIPT_ENGINE_EXTENSION = "js";
@@ -120,19 +139,69 @@ public final class ScriptProgressCheck implements ProgressCheck {
     public static final String INVOKE_ON_FINISHED_SCAN = "finishedScan";
     public static final String INVOKE_GET_CHECK_NAME = "getCheckName";
 
+    static final List<String> HANDLER_NAMES = Collections.unmodifiableList(Arrays.asList(
+            INVOKE_GET_CHECK_NAME,
+            INVOKE_ON_SIMULATE_SLING,
+            INVOKE_ON_STARTED_SCAN,
+            INVOKE_ON_IDENTIFY_PACKAGE,
+            INVOKE_ON_READ_MANIFEST,
+            INVOKE_ON_BEFORE_EXTRACT,
+            INVOKE_ON_IMPORTED_PATH,
+            INVOKE_ON_DELETED_PATH,
+            INVOKE_ON_AFTER_EXTRACT,
+            INVOKE_ON_IDENTIFY_SUBPACKAGE,
+            INVOKE_ON_BEFORE_SLING_INSTALL,
+            INVOKE_ON_IDENTIFY_EMBEDDED_PACKAGE,
+            INVOKE_ON_APPLIED_REPO_INIT_SCRIPTS,
+            INVOKE_ON_AFTER_SCAN_PACKAGE,
+            INVOKE_ON_FINISHED_SCAN));
+
     private final Invocable script;
+    private final ScriptEngineBackend backend;
+    private final CompiledScriptCache scripts;
+    private final ScriptContext scriptContext;
     private final ScriptHelper helper;
     private final URL scriptUrl;
     private final Set<String> handlerMissCache = new HashSet<>();
+    private final Map<String, HandlerHandle> handlers = new HashMap<>();
 
     ScriptProgressCheck(final @NotNull Invocable script,
                         final @NotNull ScriptHelper helper,
                         final @Nullable URL scriptUrl) {
         this.script = script;
+        this.backend = null;
+        this.scripts = null;
+        this.scriptContext = null;
         this.helper = helper;
         this.scriptUrl = scriptUrl;
     }
 
+    /**
+     * Constructor for a check evaluated in its own script context.
+     *
+     * @param engine        the script engine
+     * @param backend       the script engine backend
+     * @param scripts       the cache of scripts compiled by the engine
+     * @param scriptContext the check's script context, from whose engine scope bindings the handler functions are
+     *                      resolved
+     * @param helper        the script helper
+     * @param scriptUrl     the script url, or null for an inline script
+     */
+    ScriptProgressCheck(final @NotNull ScriptEngine engine,
+                        final @NotNull ScriptEngineBackend backend,
+                        final @NotNull CompiledScriptCache scripts,
+                        final @NotNull ScriptContext scriptContext,
+                        final @NotNull ScriptHelper helper,
+                        final @Nullable URL scriptUrl) {
+        this.script = (Invocable) engine;
+        this.backend = backend;
+        this.scripts = scripts;
+        this.scriptContext = scriptContext;
+        this.helper = helper;
+        this.scriptUrl = scriptUrl;
+        resolveHandlers();
+    }
+
     @Override
     public @Nullable String getResourceBundleBaseName() {
         return null;
@@ -168,7 +237,8 @@ public final class ScriptProgressCheck implements ProgressCheck {
     @Override
     public String getCheckName() {
         try {
-            Object result = this.script.invokeFunction(INVOKE_GET_CHECK_NAME);
+            final HandlerHandle handle = getHandler(INVOKE_GET_CHECK_NAME);
+            final Object result = handle != null ? handle.invoke() : null;
             if (result != null) {
                 return String.valueOf(result);
             } else {
@@ -186,7 +256,11 @@ public final class ScriptProgressCheck implements ProgressCheck {
      */
     @FunctionalInterface
     interface HandlerHandle {
-        void apply(Object... args) throws NoSuchMethodException, ScriptException;
+        Object invoke(Object... args) throws NoSuchMethodException, ScriptException;
+
+        default void apply(Object... args) throws NoSuchMethodException, ScriptException {
+            invoke(args);
+        }
     }
 
     /**
@@ -197,6 +271,54 @@ public final class ScriptProgressCheck implements ProgressCheck {
         void apply(HandlerHandle handle) throws NoSuchMethodException, ScriptException;
     }
 
+    /**
+     * Resolve the handler functions from the check's own script context, if present, so that events are dispatched
+     * directly to the resolved function objects, and missing handlers are known without attempting to invoke them.
+     * Otherwise, handlers are invoked by name, and missing handlers are remembered when the first NoSuchMethodException
+     * is thrown.
+     */
+    private void resolveHandlers() {
+        if (scriptContext == null) {
+            return;
+        }
+        handlers.clear();
+        handlerMissCache.clear();
+        for (String methodName : HANDLER_NAMES) {
+            resolveHandler(methodName);
+        }
+    }
+
+    private @Nullable HandlerHandle resolveHandler(final String methodName) {
+        final Object function = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE).get(methodName);
+        if (function == null) {
+            handlerMissCache.add(methodName);
+            return null;
+        }
+        final HandlerHandle handle = backend.newHandle((ScriptEngine) script, scripts, scriptContext, methodName,
+                function);
+        handlers.put(methodName, handle);
+        return handle;
+    }
+
+    /**
+     * Get the handle for the named handler function.
+     *
+     * @param methodName the name of the handler function
+     * @return the handler handle, or null if the handler function is known to be missing
+     */
+    @Nullable HandlerHandle getHandler(final String methodName) {
+        if (handlerMissCache.contains(methodName)) {
+            return null;
+        }
+        final HandlerHandle resolved = handlers.get(methodName);
+        if (resolved != null) {
+            return resolved;
+        } else if (scriptContext != null) {
+            return resolveHandler(methodName);
+        }
+        return handlers.computeIfAbsent(methodName, name -> (args) -> this.script.invokeFunction(name, args));
+    }
+
     /**
      * Guards against script handler calls by remembering when NoSuchMethodExceptions are thrown when the script
      * function named by the {@code methodName} argument is invoked.
@@ -205,9 +327,10 @@ public final class ScriptProgressCheck implements ProgressCheck {
      * @param body       the ScriptProgressCheck adapter body logic to execute
      */
     void guardHandler(final String methodName, final EventHandlerBody body) {
-        if (!handlerMissCache.contains(methodName)) {
+        final HandlerHandle handle = getHandler(methodName);
+        if (handle != null) {
             try {
-                body.apply((args) -> this.script.invokeFunction(methodName, args));
+                body.apply(handle);
             } catch (NoSuchMethodException ignored) {
                 handlerMissCache.add(methodName);
             } catch (ScriptException e) {
@@ -227,9 +350,10 @@ public final class ScriptProgressCheck implements ProgressCheck {
      * @throws RepositoryException if a ScriptException is thrown with a RepositoryException cause
      */
     void guardSessionHandler(final String methodName, final EventHandlerBody body) throws RepositoryException {
-        if (!handlerMissCache.contains(methodName)) {
+        final HandlerHandle handle = getHandler(methodName);
+        if (handle != null) {
             try {
-                body.apply((args) -> this.script.invokeFunction(methodName, args));
+                body.apply(handle);
             } catch (NoSuchMethodException ignored) {
                 handlerMissCache.add(methodName);
             } catch (ScriptException e) {
@@ -249,6 +373,7 @@ public final class ScriptProgressCheck implements ProgressCheck {
     @Override
     public void startedScan() {
         helper.collector.clearViolations();
+        resolveHandlers();
         guardHandler(INVOKE_ON_STARTED_SCAN, HandlerHandle::apply);
     }
 
@@ -372,10 +497,14 @@ public final class ScriptProgressCheck implements ProgressCheck {
     static class ScriptProgressCheckFactory implements ProgressCheckFactory {
 
         private final ScriptEngine engine;
+        private final CompiledScriptCache scripts;
         private final URL scriptUrl;
 
-        private ScriptProgressCheckFactory(final @NotNull ScriptEngine engine, final @NotNull URL scriptUrl) {
+        private ScriptProgressCheckFactory(final @NotNull ScriptEngine engine,
+                                           final @NotNull CompiledScriptCache scripts,
+                                           final @NotNull URL scriptUrl) {
             this.engine = engine;
+            this.scripts = scripts;
             this.scriptUrl = scriptUrl;
         }
 
@@ -385,20 +514,194 @@ public final class ScriptProgressCheck implements ProgressCheck {
 
         @Override
         public ProgressCheck newInstance(final JsonObject config) throws Exception {
-            try (InputStream is = scriptUrl.openStream()) {
-                Bindings scriptBindings = new SimpleBindings();
-                if (config != null) {
-                    scriptBindings.put(BINDING_CHECK_CONFIG, JavaxJson.unwrapObject(config));
-                } else {
-                    scriptBindings.put(BINDING_CHECK_CONFIG, Collections.<String, Object>emptyMap());
+            return newScriptCheck(engine, scripts, readScript(scriptUrl), config, scriptUrl);
+        }
+    }
+
+    static String readScript(final @NotNull URL scriptUrl) throws IOException {
+        try (InputStream is = scriptUrl.openStream();
+             Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            final StringBuilder sb = new StringBuilder();
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Evaluate the script source in a new script context to construct a new check instance. If the engine implements
+     * {@link Compilable}, the source is compiled once and shared by every check instance evaluated by the same engine,
+     * and the engine's default context is never modified, so that the engine can be shared by parallel scans.
+     *
+     * @param engine    the script engine
+     * @param scripts   the cache of scripts compiled by the engine
+     * @param source    the script source
+     * @param config    the check config
+     * @param scriptUrl the script url, or null for an inline script
+     * @return a new script check
+     * @throws ScriptException if the script fails to compile or evaluate
+     */
+    static ScriptProgressCheck newScriptCheck(final @NotNull ScriptEngine engine,
+                                              final @NotNull CompiledScriptCache scripts,
+                                              final @NotNull String source,
+                                              final @Nullable JsonObject config,
+                                              final @Nullable URL scriptUrl) throws ScriptException {
+        return newScriptCheck(engine, ScriptEngineBackend.forEngine(engine), scripts, source, config, scriptUrl);
+    }
+
+    static ScriptProgressCheck newScriptCheck(final @NotNull ScriptEngine engine,
+                                              final @Nullable ScriptEngineBackend backend,
+                                              final @NotNull CompiledScriptCache scripts,
+                                              final @NotNull String source,
+                                              final @Nullable JsonObject config,
+                                              final @Nullable URL scriptUrl) throws ScriptException {
+        final Bindings scriptBindings = backend != null ? engine.createBindings() : new SimpleBindings();
+        if (backend != null) {
+            backend.prepareBindings(scriptBindings);
+        }
+        if (config != null) {
+            scriptBindings.put(BINDING_CHECK_CONFIG, JavaxJson.unwrapObject(config));
+        } else {
+            scriptBindings.put(BINDING_CHECK_CONFIG, Collections.<String, Object>emptyMap());
+        }
+        final ScriptHelper helper = new ScriptHelper();
+        scriptBindings.put(BINDING_SCRIPT_HELPER, helper);
+        if (backend != null) {
+            final ScriptContext scriptContext = contextWithBindings(scriptBindings);
+            scripts.compile((Compilable) engine, source).eval(scriptContext);
+            return new ScriptProgressCheck(engine, backend, scripts, scriptContext, helper, scriptUrl);
+        }
+        engine.setContext(contextWithBindings(scriptBindings));
+        engine.eval(source);
+        return new ScriptProgressCheck((Invocable) engine, helper, scriptUrl);
+    }
+
+    /**
+     * A bounded, least-recently-used cache of compiled scripts, keyed by engine and source, and of compilable script
+     * engines, keyed by class loader and engine lookup, so that script checks loaded by each {@link OakMachine} in the
+     * same JVM share a single compilation.
+     * <p>
+     * Engines from the bootstrap class loader or from the class loader of this class (or its ancestors) share a single
+     * JVM-wide cache. Every other class loader, like a Maven project realm or the extended classpath of a daemon request,
+     * gets its own cache, which is only weakly referenced by class loader, and which is strongly referenced by the
+     * factories and checks that use it, so that the class loader can be collected once they are no longer used.
+     */
+    static final class CompiledScriptCache {
+        static final int DEFAULT_MAX_ENTRIES = 256;
+
+        private static final CompiledScriptCache SHARED = new CompiledScriptCache();
+
+        private static final Map<ClassLoader, WeakReference<CompiledScriptCache>> LOADER_CACHES = new WeakHashMap<>();
+
+        /**
+         * Get the cache for engines from the class loader.
+         *
+         * @param classLoader the class loader for the {@link ScriptEngineManager}
+         * @return the JVM-wide cache, or the weakly-held cache for the class loader
+         */
+        static @NotNull CompiledScriptCache forClassLoader(final @Nullable ClassLoader classLoader) {
+            if (isSharedClassLoader(classLoader)) {
+                return SHARED;
+            }
+            synchronized (LOADER_CACHES) {
+                final WeakReference<CompiledScriptCache> ref = LOADER_CACHES.get(classLoader);
+                CompiledScriptCache cache = ref != null ? ref.get() : null;
+                if (cache == null) {
+                    cache = new CompiledScriptCache();
+                    LOADER_CACHES.put(classLoader, new WeakReference<>(cache));
                 }
-                final ScriptHelper helper = new ScriptHelper();
-                scriptBindings.put(BINDING_SCRIPT_HELPER, helper);
-                engine.setContext(contextWithBindings(scriptBindings));
-                engine.eval(new InputStreamReader(is, StandardCharsets.UTF_8));
-                return new ScriptProgressCheck((Invocable) engine, helper, scriptUrl);
+                return cache;
             }
         }
+
+        /**
+         * Class loaders that can not be collected before this class is unloaded may share the JVM-wide cache.
+         *
+         * @param classLoader the class loader
+         * @return true if the class loader is null, or is the class loader of this class, or one of its ancestors
+         */
+        static boolean isSharedClassLoader(final @Nullable ClassLoader classLoader) {
+            if (classLoader == null) {
+                return true;
+            }
+            for (ClassLoader shared = CompiledScriptCache.class.getClassLoader();
+                 shared != null; shared = shared.getParent()) {
+                if (shared == classLoader) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private final Map<List<Object>, CompiledScript> scripts;
+        private final Map<List<Object>, ScriptEngine> engines;
+
+        CompiledScriptCache() {
+            this(DEFAULT_MAX_ENTRIES);
+        }
+
+        CompiledScriptCache(final int maxEntries) {
+            this.scripts = newLruMap(maxEntries);
+            this.engines = newLruMap(maxEntries);
+        }
+
+        private static <V> Map<List<Object>, V> newLruMap(final int maxEntries) {
+            return Collections.synchronizedMap(new LinkedHashMap<List<Object>, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>, V> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+        }
+
+        CompiledScript compile(final @NotNull Compilable engine, final @NotNull String source)
+                throws ScriptException {
+            final List<Object> key = Arrays.asList(engine, source);
+            final CompiledScript cached = scripts.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            final CompiledScript compiled = engine.compile(source);
+            scripts.put(key, compiled);
+            return compiled;
+        }
+
+        /**
+         * Get a script engine for the lookup, sharing previously created engines that implement {@link Compilable}.
+         * The GraalJS engine is preferred for the {@code js} extension when it is available from the class loader, and
+         * the {@value ScriptEngineBackend#GRAALJS_PREFERRED_PROPERTY} system property is set to {@code true}.
+         *
+         * @param classLoader the class loader for the {@link ScriptEngineManager}
+         * @param byName      true to lookup the engine by name, false to lookup by extension
+         * @param lookup      the engine name or extension
+         * @return the script engine, or null if no engine is registered for the lookup
+         */
+        @Nullable ScriptEngine getEngine(final @Nullable ClassLoader classLoader,
+                                         final boolean byName,
+                                         final @NotNull String lookup) {
+            final boolean preferGraalJs = !byName && DEFAULT_SCRIPT_ENGINE_EXTENSION.equals(lookup)
+                    && ScriptEngineBackend.isGraalJsPreferred();
+            final List<Object> key = Arrays.asList(classLoader, byName, lookup, preferGraalJs);
+            final ScriptEngine cached = engines.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            final ScriptEngineManager manager = new ScriptEngineManager(classLoader);
+            ScriptEngine engine = null;
+            if (preferGraalJs) {
+                engine = manager.getEngineByName(ScriptEngineBackend.GRAALJS_ENGINE_NAME);
+            }
+            if (engine == null) {
+                engine = byName ? manager.getEngineByName(lookup) : manager.getEngineByExtension(lookup);
+            }
+            if (engine instanceof Compilable) {
+                engines.put(key, engine);
+            }
+            return engine;
+        }
     }
 
     private static ScriptContext contextWithBindings(final Bindings bindings) {
@@ -410,26 +713,20 @@ public final class ScriptProgressCheck implements ProgressCheck {
 
     private static class InlineScriptProgressCheckFactory implements ProgressCheckFactory {
         private ScriptEngine engine;
+        private final CompiledScriptCache scripts;
         private final String source;
 
-        private InlineScriptProgressCheckFactory(final @NotNull ScriptEngine engine, final @NotNull String source) {
+        private InlineScriptProgressCheckFactory(final @NotNull ScriptEngine engine,
+                                                 final @NotNull CompiledScriptCache scripts,
+                                                 final @NotNull String source) {
             this.engine = engine;
+            this.scripts = scripts;
             this.source = source;
         }
 
         @Override
         public ProgressCheck newInstance(final JsonObject config) throws Exception {
-            Bindings scriptBindings = new SimpleBindings();
-            if (config != null) {
-                scriptBindings.put(BINDING_CHECK_CONFIG, JavaxJson.unwrapObject(config));
-            } else {
-                scriptBindings.put(BINDING_CHECK_CONFIG, Collections.<String, Object>emptyMap());
-            }
-            final ScriptHelper helper = new ScriptHelper();
-            scriptBindings.put(BINDING_SCRIPT_HELPER, helper);
-            engine.setContext(contextWithBindings(scriptBindings));
-            engine.eval(this.source);
-            return new ScriptProgressCheck((Invocable) engine, helper, null);
+            return newScriptCheck(engine, scripts, source, config, null);
         }
     }
 
@@ -447,12 +744,13 @@ public final class ScriptProgressCheck implements ProgressCheck {
         } else {
             ext = scriptUrl.getPath().substring(lastPeriod + 1);
         }
-        ScriptEngine engine = new ScriptEngineManager(classLoader).getEngineByExtension(ext);
+        final CompiledScriptCache scripts = CompiledScriptCache.forClassLoader(classLoader);
+        ScriptEngine engine = scripts.getEngine(classLoader, false, ext);
         if (engine == null) {
             throw new UnregisteredScriptEngineNameException(ext,
                     "Failed to find a ScriptEngine for URL extension: " + scriptUrl.toString());
         }
-        return createScriptCheckFactory(engine, scriptUrl);
+        return new ScriptProgressCheckFactory(engine, scripts, scriptUrl);
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -488,17 +786,18 @@ public final class ScriptProgressCheck implements ProgressCheck {
                                                                     final @NotNull URL scriptUrl,
                                                                     final @Nullable ClassLoader classLoader)
             throws UnregisteredScriptEngineNameException {
-        final ScriptEngine engine = new ScriptEngineManager(classLoader).getEngineByName(engineName);
+        final CompiledScriptCache scripts = CompiledScriptCache.forClassLoader(classLoader);
+        final ScriptEngine engine = scripts.getEngine(classLoader, true, engineName);
         if (engine == null) {
             throw new UnregisteredScriptEngineNameException(engineName);
         }
-        return createScriptCheckFactory(engine, scriptUrl);
+        return new ScriptProgressCheckFactory(engine, scripts, scriptUrl);
     }
 
     @SuppressWarnings("WeakerAccess")
     public static ProgressCheckFactory createScriptCheckFactory(final @NotNull ScriptEngine engine,
                                                                 final @NotNull URL scriptUrl) {
-        return new ScriptProgressCheckFactory(engine, scriptUrl);
+        return new ScriptProgressCheckFactory(engine, new CompiledScriptCache(), scriptUrl);
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -514,16 +813,17 @@ public final class ScriptProgressCheck implements ProgressCheck {
                                                                           final @Nullable String inlineEngine,
                                                                           final @Nullable ClassLoader classLoader)
             throws UnregisteredScriptEngineNameException {
+        final CompiledScriptCache scripts = CompiledScriptCache.forClassLoader(classLoader);
         final ScriptEngine engine;
         if (isEmpty(inlineEngine)) {
-            engine = new ScriptEngineManager(classLoader).getEngineByExtension(DEFAULT_SCRIPT_ENGINE_EXTENSION);
+            engine = scripts.getEngine(classLoader, false, DEFAULT_SCRIPT_ENGINE_EXTENSION);
         } else {
-            engine = new ScriptEngineManager(classLoader).getEngineByName(inlineEngine);
+            engine = scripts.getEngine(classLoader, true, inlineEngine);
         }
         if (engine == null) {
             throw new UnregisteredScriptEngineNameException(inlineEngine);
         }
 
-        return new InlineScriptProgressCheckFactory(engine, inlineScript);
+        return new InlineScriptProgressCheckFactory(engine, scripts, inlineScript);
     }
 }
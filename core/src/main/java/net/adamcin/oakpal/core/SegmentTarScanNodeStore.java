@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.Fun;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.file.FileStoreBuilder;
+import org.apache.jackrabbit.oak.segment.file.InvalidFileStoreVersionException;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.spi.state.ProxyNodeStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A segment-tar {@link NodeStore} for scanning very large packages in a fixed heap. Both the node tree and binaries
+ * are written to memory-mapped tar files in a new temporary directory, which is deleted when the store is closed.
+ * {@link OakMachine} closes any {@link Closeable} node store returned by its node store supplier when the scan
+ * repository is shut down.
+ *
+ * @see OakMachine.Builder#withNodeStoreSupplier(Supplier)
+ * @since 2.2.3
+ */
+public final class SegmentTarScanNodeStore extends ProxyNodeStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentTarScanNodeStore.class);
+    static final String TEMP_DIR_PREFIX = "oakpal-segment-";
+    static final int MAX_FILE_SIZE_MB = 256;
+
+    private final File directory;
+    private final FileStore fileStore;
+    private final NodeStore nodeStore;
+
+    /**
+     * Create a new segment store in a new temporary directory.
+     *
+     * @param parentDir the parent directory for the temporary directory, or null for the default temp directory
+     * @throws IOException if the directory or the file store can not be created
+     */
+    public SegmentTarScanNodeStore(final @Nullable File parentDir) throws IOException {
+        if (parentDir != null && !parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("failed to create directory " + parentDir.getAbsolutePath());
+        }
+        this.directory = (parentDir != null
+                ? Files.createTempDirectory(parentDir.toPath(), TEMP_DIR_PREFIX)
+                : Files.createTempDirectory(TEMP_DIR_PREFIX)).toFile();
+        try {
+            this.fileStore = FileStoreBuilder.fileStoreBuilder(directory)
+                    .withMemoryMapping(true)
+                    .withMaxFileSize(MAX_FILE_SIZE_MB)
+                    .build();
+        } catch (InvalidFileStoreVersionException | IOException | RuntimeException e) {
+            deleteDirectory(directory);
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        this.nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+    }
+
+    /**
+     * Create a node store supplier for {@link OakMachine.Builder#withNodeStoreSupplier(Supplier)}, which creates a new
+     * segment store in a new temporary directory for each scan.
+     *
+     * @param parentDir the parent directory for each temporary directory, or null for the default temp directory
+     * @return a new node store supplier
+     */
+    public static Supplier<NodeStore> supplier(final @Nullable File parentDir) {
+        return Fun.<NodeStore>uncheck0(() -> new SegmentTarScanNodeStore(parentDir));
+    }
+
+    /**
+     * Get the temporary directory containing the tar files.
+     *
+     * @return the segment store directory
+     */
+    public @NotNull File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    protected NodeStore getNodeStore() {
+        return nodeStore;
+    }
+
+    /**
+     * Close the file store and delete the temporary directory.
+     */
+    @Override
+    public void close() {
+        try {
+            fileStore.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    static void deleteDirectory(final @NotNull File directory) {
+        if (!directory.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            LOGGER.warn("failed to delete segment store directory {}", directory.getAbsolutePath(), e);
+        }
+    }
+}
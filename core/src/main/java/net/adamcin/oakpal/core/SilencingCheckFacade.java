@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core;
 
+import net.adamcin.oakpal.api.BatchProgressCheck;
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.PathAction;
 import net.adamcin.oakpal.api.ProgressCheck;
@@ -43,7 +44,7 @@ import java.util.jar.Manifest;
  * Internal facade class which serves to forcibly silence the wrapped {@link ProgressCheck} by not passing events when
  * silenced.
  */
-class SilencingCheckFacade implements SilenceableCheck {
+class SilencingCheckFacade implements SilenceableCheck, BatchProgressCheck {
 
     private final ProgressCheck wrapped;
     private boolean silenced;
@@ -52,6 +53,10 @@ class SilencingCheckFacade implements SilenceableCheck {
         this.wrapped = wrapped;
     }
 
+    @NotNull ProgressCheck getWrapped() {
+        return wrapped;
+    }
+
     @Override
     public String getCheckName() {
         return wrapped.getCheckName();
@@ -135,6 +140,14 @@ class SilencingCheckFacade implements SilenceableCheck {
         }
     }
 
+    @Override
+    public void pathEvents(final PackageId packageId, final List<PathEvent> pathEvents, final Session inspectSession)
+            throws RepositoryException {
+        if (!silenced) {
+            BatchCheckDispatcher.deliver(wrapped, packageId, pathEvents, inspectSession);
+        }
+    }
+
     @Override
     public void afterExtract(final PackageId packageId, final Session inspectSession) throws RepositoryException {
         if (!silenced) {
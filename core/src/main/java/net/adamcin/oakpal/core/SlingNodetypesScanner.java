@@ -21,7 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -67,14 +67,12 @@ public final class SlingNodetypesScanner {
      */
     public static List<URL> findNodeTypeDefinitions(final ClassLoader classLoader) throws IOException {
         List<String> resourceNames = new ArrayList<>();
-        Enumeration<URL> resEnum = classLoader.getResources(JarFile.MANIFEST_NAME);
-        while (resEnum.hasMoreElements()) {
-            URL url = resEnum.nextElement();
+        Util.mapInParallel(Collections.list(classLoader.getResources(JarFile.MANIFEST_NAME)), url -> {
             try (InputStream is = url.openStream()) {
                 Manifest manifest = new Manifest(is);
-                resourceNames.addAll(Util.getManifestHeaderValues(manifest, SLING_NODETYPES));
+                return Util.getManifestHeaderValues(manifest, SLING_NODETYPES);
             }
-        }
+        }, IOException.class).forEach(resourceNames::addAll);
 
         return new ArrayList<>(resolveNodeTypeDefinitions(resourceNames, classLoader).values());
     }
@@ -91,22 +89,23 @@ public final class SlingNodetypesScanner {
      */
     public static List<URL> findNodeTypeDefinitions(final List<File> zipFiles) throws IOException {
         List<String> resourceNames = new ArrayList<>();
-        for (File zipFile : zipFiles) {
+        Util.mapInParallel(zipFiles, zipFile -> {
             if (!zipFile.exists() || zipFile.isDirectory()) {
                 File manifestFile = new File(zipFile, JarFile.MANIFEST_NAME);
                 if (manifestFile.exists()) {
                     try (InputStream fis = new FileInputStream(manifestFile)) {
                         Manifest manifest = new Manifest(fis);
-                        resourceNames.addAll(Util.getManifestHeaderValues(manifest, SLING_NODETYPES));
+                        return Util.getManifestHeaderValues(manifest, SLING_NODETYPES);
                     }
                 }
+                return Collections.<String>emptyList();
             } else {
                 try (JarFile jar = new JarFile(zipFile)) {
                     Manifest manifest = jar.getManifest();
-                    resourceNames.addAll(Util.getManifestHeaderValues(manifest, SLING_NODETYPES));
+                    return Util.getManifestHeaderValues(manifest, SLING_NODETYPES);
                 }
             }
-        }
+        }, IOException.class).forEach(resourceNames::addAll);
 
         return new ArrayList<>(resolveNodeTypeDefinitions(resourceNames, zipFiles).values());
     }
@@ -130,33 +129,33 @@ public final class SlingNodetypesScanner {
 
     public static Map<String, URL> resolveNodeTypeDefinitions(final List<String> resourceNames,
                                                               final List<File> zipFiles) throws IOException {
-        Map<String, URL> cndUrls = new LinkedHashMap<>();
-        for (File zipFile : zipFiles) {
+        // search each classpath element in parallel, then keep the first match for each name in classpath order
+        final List<Map<String, URL>> found = Util.mapInParallel(zipFiles, zipFile -> {
+            Map<String, URL> zipCndUrls = new LinkedHashMap<>();
             if (!zipFile.exists() || zipFile.isDirectory()) {
                 for (String name : resourceNames) {
-                    if (cndUrls.containsKey(name)) {
-                        continue;
-                    }
                     File entryFile = new File(zipFile, name);
                     if (entryFile.exists()) {
-                        cndUrls.put(name, entryFile.toURI().toURL());
+                        zipCndUrls.put(name, entryFile.toURI().toURL());
                     }
                 }
             } else {
                 try (ZipFile zip = new JarFile(zipFile)) {
                     for (String name : resourceNames) {
-                        if (cndUrls.containsKey(name)) {
-                            continue;
-                        }
                         ZipEntry zipEntry = zip.getEntry(name);
                         if (zipEntry != null) {
                             URL cndUrl = new URL(String.format("jar:%s!/%s",
                                     zipFile.toURI().toURL().toExternalForm(), name));
-                            cndUrls.put(name, cndUrl);
+                            zipCndUrls.put(name, cndUrl);
                         }
                     }
                 }
             }
+            return zipCndUrls;
+        }, IOException.class);
+        Map<String, URL> cndUrls = new LinkedHashMap<>();
+        for (Map<String, URL> zipCndUrls : found) {
+            zipCndUrls.forEach(cndUrls::putIfAbsent);
         }
 
         return cndUrls;
@@ -20,6 +20,7 @@ import aQute.bnd.header.Attrs;
 import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Domain;
 import net.adamcin.oakpal.api.Fun;
+import net.adamcin.oakpal.api.Result;
 import net.adamcin.oakpal.core.jcrfacade.SessionFacade;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -33,7 +34,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -96,42 +97,50 @@ public final class Util {
     }
 
     public static Map<URL, List<URL>> mapManifestHeaderResources(final String headerName, final ClassLoader classLoader) throws IOException {
-        Map<URL, List<URL>> map = new LinkedHashMap<>();
-        Enumeration<URL> resEnum = classLoader.getResources(JarFile.MANIFEST_NAME);
-        while (resEnum.hasMoreElements()) {
-            URL url = resEnum.nextElement();
+        final List<URL> manifestUrls = Collections.list(classLoader.getResources(JarFile.MANIFEST_NAME));
+        final List<List<URL>> resources = mapInParallel(manifestUrls, url -> {
             try (InputStream is = url.openStream()) {
                 Manifest manifest = new Manifest(is);
-                List<URL> headerResources = resolveManifestResources(url, getManifestHeaderValues(manifest, headerName));
-                map.put(url, headerResources);
+                return resolveManifestResources(url, getManifestHeaderValues(manifest, headerName));
             }
-        }
+        }, IOException.class);
 
+        Map<URL, List<URL>> map = new LinkedHashMap<>();
+        for (int i = 0; i < manifestUrls.size(); i++) {
+            map.put(manifestUrls.get(i), resources.get(i));
+        }
         return map;
     }
 
     public static Map<URL, List<URL>> mapManifestHeaderResources(final String headerName, final List<File> files) throws IOException {
-        Map<URL, List<URL>> map = new LinkedHashMap<>();
-        for (File zipFile : files) {
+        final List<Map.Entry<URL, List<URL>>> entries = mapInParallel(files, zipFile -> {
             if (!zipFile.exists() || zipFile.isDirectory()) {
                 File manifestFile = new File(zipFile, JarFile.MANIFEST_NAME);
                 if (manifestFile.exists()) {
                     try (InputStream fis = new FileInputStream(manifestFile)) {
                         Manifest manifest = new Manifest(fis);
                         final URL manifestUrl = manifestFile.toURI().toURL();
-                        map.put(manifestUrl, resolveManifestResources(manifestUrl,
+                        return Fun.toEntry(manifestUrl, resolveManifestResources(manifestUrl,
                                 getManifestHeaderValues(manifest, headerName)));
                     }
                 }
+                return null;
             } else {
                 try (JarFile jar = new JarFile(zipFile)) {
                     Manifest manifest = jar.getManifest();
                     final URL manifestUrl = new URL(String.format("jar:%s!/%s",
                             zipFile.toURI().toURL().toExternalForm(), JarFile.MANIFEST_NAME));
-                    map.put(manifestUrl, resolveManifestResources(manifestUrl,
+                    return Fun.toEntry(manifestUrl, resolveManifestResources(manifestUrl,
                             getManifestHeaderValues(manifest, headerName)));
                 }
             }
+        }, IOException.class);
+
+        Map<URL, List<URL>> map = new LinkedHashMap<>();
+        for (Map.Entry<URL, List<URL>> entry : entries) {
+            if (entry != null) {
+                map.put(entry.getKey(), entry.getValue());
+            }
         }
         return map;
     }
@@ -146,6 +155,38 @@ public final class Util {
         return map;
     }
 
+    /**
+     * Apply a function to each input element on the common fork-join pool, for I/O-bound classpath discovery tasks,
+     * and return the results in the same order as the inputs, so that callers remain deterministic. If the function
+     * fails for any input, the error for the first failed input in list order is rethrown.
+     *
+     * @param inputs    the input elements
+     * @param mapper    the function to apply to each input element
+     * @param errorType the checked exception type to rethrow
+     * @param <T>       the input type
+     * @param <R>       the result type
+     * @param <E>       the checked exception type
+     * @return the results in input order
+     * @throws E if the function fails for any input with an error of the specified type
+     * @since 2.2.3
+     */
+    static <T, R, E extends Exception> List<R> mapInParallel(final @NotNull List<T> inputs,
+                                                             final @NotNull Fun.ThrowingFunction<? super T, ? extends R> mapper,
+                                                             final @NotNull Class<E> errorType) throws E {
+        final List<Result<R>> results = inputs.parallelStream()
+                .map(Fun.<T, R>result1(mapper))
+                .collect(Collectors.toList());
+        final List<R> values = new ArrayList<>(results.size());
+        for (Result<R> result : results) {
+            if (result.isFailure()) {
+                result.throwCause(errorType);
+                throw result.getError().get();
+            }
+            values.add(result.getOrDefault(null));
+        }
+        return values;
+    }
+
     static ClassLoader getDefaultClassLoader() {
         return Thread.currentThread().getContextClassLoader() != null
                 ? Thread.currentThread().getContextClassLoader()
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import org.apache.jackrabbit.vault.fs.io.Archive;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.packaging.VaultPackage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Internal tracker of the configured paths of an expectation check that may have been affected by path events since
+ * the expectations were last validated. A configured path is affected by an event for the same path or for any of its
+ * ancestors, and also for any of its descendants if {@code includeDescendantEvents} is true, as for access control
+ * policies, which are stored in child nodes.
+ * <p>
+ * Every configured path is considered affected until the first call to {@link #validated()}, and again after
+ * {@link #invalidateAll()}, which should be called whenever the repository may have been changed without path events,
+ * like when repoinit scripts are applied, when a sling installable is installed, or when a package with install hooks
+ * is extracted.
+ */
+final class AffectedPaths {
+    static final String HOOKS_PATH = "META-INF/vault/hooks";
+
+    private final PathTrie<String> configuredPaths = new PathTrie<>();
+    private final boolean includeDescendantEvents;
+    private final Set<String> affected = new HashSet<>();
+    private boolean allAffected = true;
+
+    AffectedPaths(final @NotNull Collection<String> configuredPaths, final boolean includeDescendantEvents) {
+        for (String path : configuredPaths) {
+            this.configuredPaths.put(path, path);
+        }
+        this.includeDescendantEvents = includeDescendantEvents;
+    }
+
+    /**
+     * Returns true if a path event for the path may affect any configured path.
+     *
+     * @param path the event path
+     * @return true if any configured path may be affected
+     */
+    boolean isInterestedInPath(final @NotNull String path) {
+        return configuredPaths.hasDescendantOrSelf(path)
+                || (includeDescendantEvents && configuredPaths.hasAncestorOrSelf(path));
+    }
+
+    /**
+     * Mark the configured paths affected by a path event.
+     *
+     * @param path the event path
+     */
+    void pathEvent(final @NotNull String path) {
+        if (!allAffected) {
+            configuredPaths.forEachDescendantOrSelf(path, affected::add);
+            if (includeDescendantEvents) {
+                configuredPaths.forEachAncestorOrSelf(path, affected::add);
+            }
+        }
+    }
+
+    /**
+     * Mark every configured path as affected.
+     */
+    void invalidateAll() {
+        allAffected = true;
+        affected.clear();
+    }
+
+    /**
+     * Returns true if the configured path may have been affected since the last validation.
+     *
+     * @param path the configured path
+     * @return true if the path must be evaluated again
+     */
+    boolean isAffected(final @NotNull String path) {
+        return allAffected || affected.contains(path);
+    }
+
+    /**
+     * Reset the affected paths after all configured paths have been evaluated.
+     */
+    void validated() {
+        allAffected = false;
+        affected.clear();
+    }
+
+    /**
+     * Returns true if the package declares install hooks, which may change the repository without path events, either
+     * as external hooks in its properties, or as hook jars in its {@code META-INF/vault/hooks} folder. The folder is
+     * only inspected when the properties are provided by a {@link VaultPackage}, which is the case for packages
+     * extracted by the {@code OakMachine}.
+     *
+     * @param packageProperties the package properties passed to {@code beforeExtract}
+     * @return true if the package declares install hooks, or if its archive can not be read
+     */
+    static boolean declaresInstallHooks(final @Nullable PackageProperties packageProperties) {
+        if (packageProperties == null) {
+            return false;
+        }
+        final Map<String, String> externalHooks = packageProperties.getExternalHooks();
+        if (externalHooks != null && !externalHooks.isEmpty()) {
+            return true;
+        }
+        if (packageProperties instanceof VaultPackage) {
+            final Archive archive = ((VaultPackage) packageProperties).getArchive();
+            if (archive != null) {
+                try {
+                    final Archive.Entry hooks = archive.getEntry(HOOKS_PATH);
+                    return hooks != null && hooks.getChildren().stream()
+                            .anyMatch(entry -> !entry.isDirectory() && entry.getName().endsWith(".jar"));
+                } catch (final IOException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -19,24 +19,30 @@ package net.adamcin.oakpal.core.checks;
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.Fun;
 import net.adamcin.oakpal.api.JavaxJson;
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.PathInterestCheck;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
 import net.adamcin.oakpal.api.Result;
 import net.adamcin.oakpal.api.Rule;
 import net.adamcin.oakpal.api.Rules;
 import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SilenceableCheck;
 import net.adamcin.oakpal.api.SimpleProgressCheckFactoryCheck;
 import net.adamcin.oakpal.api.SlingInstallable;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
+import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.annotation.versioning.ProviderType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
@@ -48,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -100,7 +107,9 @@ import static net.adamcin.oakpal.api.Fun.zipKeysWithValueFunc;
  * rep:policy nodes are imported differently from normal DocView content. Instead of having a predictable path, they are
  * potentially merged and renamed depending on existing rep:GrantACE or rep:DenyACE children of the rep:policy. Therefore,
  * we have a special check that evaluates the presence of expected rules based on their attributes, instead of their own
- * paths within a package.
+ * paths within a package. The policies at each criteria path are only read again after a package if a path event was
+ * raised for the path, or for an ancestor or a descendant of it, or if the repository may have been changed by a sling
+ * install or by repoinit scripts since the last evaluation.
  * <p>
  * Finer-grained Access Control Handling Policies like MERGE and MERGE_PRESERVE operate along lines defined by the principal
  * identified by a particular ACE. Therefore, this check requires that you specific a specific principal to expect aces for.
@@ -286,7 +295,8 @@ public final class ExpectAces implements ProgressCheckFactory {
         return allCriterias;
     }
 
-    static final class Check extends SimpleProgressCheckFactoryCheck<ExpectAces> {
+    static final class Check extends SimpleProgressCheckFactoryCheck<ExpectAces>
+            implements SilenceableCheck, PathInterestCheck {
         final List<AceCriteria> expectedAces;
         final List<AceCriteria> notExpectedAces;
         final PackageGraph graph = new PackageGraph();
@@ -295,6 +305,12 @@ public final class ExpectAces implements ProgressCheckFactory {
         final List<Rule> afterPackageIdRules;
         final boolean ignoreNestedPackages;
         final Severity severity;
+        final Map<String, List<AceCriteria>> expectedsByPath;
+        final Map<String, List<AceCriteria>> notExpectedsByPath;
+        final Set<String> allPaths;
+        final AffectedPaths affectedPaths;
+        final Map<AceCriteria, Boolean> satisfiedCache = new HashMap<>();
+        private boolean silenced;
 
         Check(final @NotNull List<AceCriteria> expectedAces,
               final @NotNull List<AceCriteria> notExpectedAces,
@@ -307,6 +323,30 @@ public final class ExpectAces implements ProgressCheckFactory {
             this.afterPackageIdRules = afterPackageIdRules;
             this.ignoreNestedPackages = ignoreNestedPackages;
             this.severity = severity;
+            this.expectedsByPath = groupCriteriaByPath(expectedAces);
+            this.notExpectedsByPath = groupCriteriaByPath(notExpectedAces);
+            final Set<String> allPaths = new LinkedHashSet<>(expectedsByPath.keySet());
+            allPaths.addAll(notExpectedsByPath.keySet());
+            this.allPaths = Collections.unmodifiableSet(allPaths);
+            this.affectedPaths = new AffectedPaths(allPaths.stream()
+                    .map(Check::getPolicyEventPath)
+                    .collect(Collectors.toList()), true);
+        }
+
+        /**
+         * Map a criteria path to the path of the node that holds its policy, which is affected by path events for its
+         * rep:policy child nodes.
+         *
+         * @param path the criteria path
+         * @return the path to track path events for
+         */
+        static String getPolicyEventPath(final @NotNull String path) {
+            return path.isEmpty() ? "/rep:repoPolicy" : path;
+        }
+
+        @Override
+        public void setSilenced(final boolean silenced) {
+            this.silenced = silenced;
         }
 
         @Override
@@ -315,6 +355,42 @@ public final class ExpectAces implements ProgressCheckFactory {
             graph.startedScan();
             expectedViolators.clear();
             notExpectedViolators.clear();
+            affectedPaths.invalidateAll();
+            satisfiedCache.clear();
+        }
+
+        @Override
+        public boolean isInterestedInPath(final @NotNull String path) {
+            return affectedPaths.isInterestedInPath(path);
+        }
+
+        @Override
+        public void importedPath(final PackageId packageId, final String path, final Node node,
+                                 final PathAction action) {
+            // track affected paths even when silenced, because silenced packages still change the repository
+            affectedPaths.pathEvent(path);
+        }
+
+        @Override
+        public void deletedPath(final PackageId packageId, final String path, final Session inspectSession) {
+            affectedPaths.pathEvent(path);
+        }
+
+        @Override
+        public void beforeExtract(final PackageId packageId, final Session inspectSession,
+                                  final PackageProperties packageProperties, final MetaInf metaInf,
+                                  final List<PackageId> subpackages) {
+            // install hooks may change the repository without raising path events
+            if (AffectedPaths.declaresInstallHooks(packageProperties)) {
+                affectedPaths.invalidateAll();
+            }
+        }
+
+        @Override
+        public void beforeSlingInstall(final PackageId scanPackageId, final SlingInstallable slingInstallable,
+                                       final Session inspectSession) {
+            // the sling simulator may change the repository without raising path events
+            affectedPaths.invalidateAll();
         }
 
         static Map<String, List<AceCriteria>> groupCriteriaByPath(final @NotNull List<AceCriteria> criteriaList) {
@@ -345,17 +421,23 @@ public final class ExpectAces implements ProgressCheckFactory {
 
         @Override
         public void identifyPackage(final PackageId packageId, final File file) {
-            graph.identifyPackage(packageId, file);
+            if (!silenced) {
+                graph.identifyPackage(packageId, file);
+            }
         }
 
         @Override
         public void identifySubpackage(final PackageId packageId, final PackageId parentId) {
-            graph.identifySubpackage(packageId, parentId);
+            if (!silenced) {
+                graph.identifySubpackage(packageId, parentId);
+            }
         }
 
         @Override
         public void identifyEmbeddedPackage(final PackageId packageId, final PackageId parentId, final EmbeddedPackageInstallable slingInstallable) {
-            graph.identifyEmbeddedPackage(packageId, parentId, slingInstallable);
+            if (!silenced) {
+                graph.identifyEmbeddedPackage(packageId, parentId, slingInstallable);
+            }
         }
 
         /**
@@ -372,40 +454,47 @@ public final class ExpectAces implements ProgressCheckFactory {
                                   final @NotNull Session inspectSession) throws RepositoryException {
             final JackrabbitAccessControlManager aclManager =
                     (JackrabbitAccessControlManager) inspectSession.getAccessControlManager();
-            final Map<String, List<AceCriteria>> expectedsByPath = groupCriteriaByPath(expectedAces);
-            final Map<String, List<AceCriteria>> notExpectedsByPath = groupCriteriaByPath(notExpectedAces);
-            final Set<String> allPaths = new LinkedHashSet<>(expectedsByPath.keySet());
-            allPaths.addAll(notExpectedsByPath.keySet());
             for (String path : allPaths) {
-                final JackrabbitAccessControlList[] policiesAtPath =
-                        // provide null path for rep:repoPolicy evaluation
-                        (path.isEmpty() ? Stream.of(aclManager.getPolicies((String) null))
-                                : (inspectSession.nodeExists(path) ? Stream.of(aclManager.getPolicies(path))
-                                : Stream.empty()))
-                                .filter(JackrabbitAccessControlList.class::isInstance)
-                                .map(JackrabbitAccessControlList.class::cast)
-                                .toArray(JackrabbitAccessControlList[]::new);
-                for (AceCriteria criteria : expectedsByPath.getOrDefault(path, Collections.emptyList())) {
+                final List<AceCriteria> expecteds = expectedsByPath.getOrDefault(path, Collections.emptyList());
+                final List<AceCriteria> notExpecteds = notExpectedsByPath.getOrDefault(path, Collections.emptyList());
+                if (affectedPaths.isAffected(getPolicyEventPath(path))
+                        || !satisfiedCache.keySet().containsAll(expecteds)
+                        || !satisfiedCache.keySet().containsAll(notExpecteds)) {
+                    final JackrabbitAccessControlList[] policiesAtPath =
+                            // provide null path for rep:repoPolicy evaluation
+                            (path.isEmpty() ? Stream.of(aclManager.getPolicies((String) null))
+                                    : (inspectSession.nodeExists(path) ? Stream.of(aclManager.getPolicies(path))
+                                    : Stream.empty()))
+                                    .filter(JackrabbitAccessControlList.class::isInstance)
+                                    .map(JackrabbitAccessControlList.class::cast)
+                                    .toArray(JackrabbitAccessControlList[]::new);
+                    Stream.concat(expecteds.stream(), notExpecteds.stream()).forEach(criteria ->
+                            satisfiedCache.put(criteria, Stream.of(policiesAtPath).anyMatch(criteria::satisfiedBy)));
+                }
+                for (AceCriteria criteria : expecteds) {
                     // only look for sling violators of an expected ace criteria if a violation for said criteria
                     // has not already been collected.
                     final List<PackageId> violators = getViolatorListForExpectedCriteria(expectedViolators, criteria);
-                    if (violators.isEmpty() && Stream.of(policiesAtPath).noneMatch(criteria::satisfiedBy)) {
+                    final boolean satisfied = satisfiedCache.get(criteria);
+                    if (violators.isEmpty() && !satisfied) {
                         violators.addAll(possibleViolators);
-                    } else if (!violators.isEmpty() && Stream.of(policiesAtPath).anyMatch(criteria::satisfiedBy)) {
+                    } else if (!violators.isEmpty() && satisfied) {
                         violators.removeAll(possibleViolators);
                     }
                 }
-                for (AceCriteria criteria : notExpectedsByPath.getOrDefault(path, Collections.emptyList())) {
+                for (AceCriteria criteria : notExpecteds) {
                     // only look for sling violators of an unexpected path if a violation for said path has not already
                     // been collected.
                     final List<PackageId> violators = getViolatorListForExpectedCriteria(notExpectedViolators, criteria);
-                    if (violators.isEmpty() && Stream.of(policiesAtPath).anyMatch(criteria::satisfiedBy)) {
+                    final boolean satisfied = satisfiedCache.get(criteria);
+                    if (violators.isEmpty() && satisfied) {
                         violators.addAll(possibleViolators);
-                    } else if (!violators.isEmpty() && Stream.of(policiesAtPath).noneMatch(criteria::satisfiedBy)) {
+                    } else if (!violators.isEmpty() && !satisfied) {
                         violators.removeAll(possibleViolators);
                     }
                 }
             }
+            affectedPaths.validated();
         }
 
         /**
@@ -418,7 +507,7 @@ public final class ExpectAces implements ProgressCheckFactory {
          */
         @Override
         public void afterExtract(final PackageId packageId, final Session inspectSession) throws RepositoryException {
-            if (shouldExpectAfterExtract(packageId)) {
+            if (!silenced && shouldExpectAfterExtract(packageId)) {
                 validateExpectations(graph.getSelfAndAncestors(packageId), inspectSession);
             }
         }
@@ -437,7 +526,8 @@ public final class ExpectAces implements ProgressCheckFactory {
         public void appliedRepoInitScripts(final PackageId scanPackageId, final List<String> scripts,
                                            final SlingInstallable slingInstallable, final Session inspectSession)
                 throws RepositoryException {
-            if (shouldExpectAfterExtract(slingInstallable.getParentId())) {
+            affectedPaths.invalidateAll();
+            if (!silenced && shouldExpectAfterExtract(slingInstallable.getParentId())) {
                 validateExpectations(graph.getSelfAndAncestors(slingInstallable.getParentId()),
                         inspectSession);
             }
@@ -455,7 +545,9 @@ public final class ExpectAces implements ProgressCheckFactory {
         @Override
         public void afterScanPackage(final PackageId scanPackageId, final Session inspectSession)
                 throws RepositoryException {
-            if (ignoreNestedPackages && shouldExpectAfterExtract(scanPackageId)) {
+            if (!silenced && ignoreNestedPackages && shouldExpectAfterExtract(scanPackageId)) {
+                // evaluate every path again to account for any changes made outside of path events during the scan
+                affectedPaths.invalidateAll();
                 validateExpectations(graph.getSelfAndDescendants(scanPackageId), inspectSession);
             }
         }
@@ -18,17 +18,23 @@ package net.adamcin.oakpal.core.checks;
 
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.JavaxJson;
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.PathInterestCheck;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
 import net.adamcin.oakpal.api.Rule;
 import net.adamcin.oakpal.api.Rules;
 import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SilenceableCheck;
 import net.adamcin.oakpal.api.SimpleProgressCheckFactoryCheck;
 import net.adamcin.oakpal.api.SlingInstallable;
+import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
 import org.jetbrains.annotations.NotNull;
 import org.osgi.annotation.versioning.ProviderType;
 
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.json.JsonObject;
@@ -36,9 +42,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static net.adamcin.oakpal.api.JavaxJson.arrayOrEmpty;
 import static net.adamcin.oakpal.api.JavaxJson.optArray;
@@ -60,6 +69,10 @@ import static net.adamcin.oakpal.api.JavaxJson.optArray;
  * <dt>{@code severity}</dt>
  * <dd>By default, the severity of violations created by this check is MAJOR, but can be set to MINOR or SEVERE.</dd>
  * </dl>
+ * <p>
+ * The existence of each configured path is only checked again after a package if an imported or deleted path event
+ * was raised for the path or one of its ancestors, or if the repository may have been changed by a sling install or
+ * by repoinit scripts since the last evaluation.
  */
 public final class ExpectPaths implements ProgressCheckFactory {
     @ProviderType
@@ -126,7 +139,8 @@ public final class ExpectPaths implements ProgressCheckFactory {
         return new Check(expectedPaths, notExpectedPaths, afterPackageIdRules, ignoreNestedPackages, severity);
     }
 
-    static final class Check extends SimpleProgressCheckFactoryCheck<ExpectPaths> {
+    static final class Check extends SimpleProgressCheckFactoryCheck<ExpectPaths>
+            implements SilenceableCheck, PathInterestCheck {
 
         final List<String> expectedPaths;
         final List<String> notExpectedPaths;
@@ -136,6 +150,9 @@ public final class ExpectPaths implements ProgressCheckFactory {
         final PackageGraph graph = new PackageGraph();
         final Map<String, List<PackageId>> expectedViolators = new LinkedHashMap<>();
         final Map<String, List<PackageId>> notExpectedViolators = new LinkedHashMap<>();
+        final AffectedPaths affectedPaths;
+        final Map<String, Boolean> itemExistsCache = new HashMap<>();
+        private boolean silenced;
 
         Check(final @NotNull List<String> expectedPaths,
               final @NotNull List<String> notExpectedPaths,
@@ -148,6 +165,13 @@ public final class ExpectPaths implements ProgressCheckFactory {
             this.afterPackageIdRules = afterPackageIdRules;
             this.ignoreNestedPackages = ignoreNestedPackages;
             this.severity = severity;
+            this.affectedPaths = new AffectedPaths(Stream.concat(expectedPaths.stream(), notExpectedPaths.stream())
+                    .collect(Collectors.toList()), false);
+        }
+
+        @Override
+        public void setSilenced(final boolean silenced) {
+            this.silenced = silenced;
         }
 
         @Override
@@ -156,6 +180,53 @@ public final class ExpectPaths implements ProgressCheckFactory {
             graph.startedScan();
             expectedViolators.clear();
             notExpectedViolators.clear();
+            affectedPaths.invalidateAll();
+            itemExistsCache.clear();
+        }
+
+        @Override
+        public boolean isInterestedInPath(final @NotNull String path) {
+            return affectedPaths.isInterestedInPath(path);
+        }
+
+        @Override
+        public void importedPath(final PackageId packageId, final String path, final Node node,
+                                 final PathAction action) {
+            // track affected paths even when silenced, because silenced packages still change the repository
+            affectedPaths.pathEvent(path);
+        }
+
+        @Override
+        public void deletedPath(final PackageId packageId, final String path, final Session inspectSession) {
+            affectedPaths.pathEvent(path);
+        }
+
+        @Override
+        public void beforeExtract(final PackageId packageId, final Session inspectSession,
+                                  final PackageProperties packageProperties, final MetaInf metaInf,
+                                  final List<PackageId> subpackages) {
+            // install hooks may change the repository without raising path events
+            if (AffectedPaths.declaresInstallHooks(packageProperties)) {
+                affectedPaths.invalidateAll();
+            }
+        }
+
+        @Override
+        public void beforeSlingInstall(final PackageId scanPackageId, final SlingInstallable slingInstallable,
+                                       final Session inspectSession) {
+            // the sling simulator may change the repository without raising path events
+            affectedPaths.invalidateAll();
+        }
+
+        boolean itemExists(final @NotNull Session inspectSession, final @NotNull String path)
+                throws RepositoryException {
+            final Boolean cached = itemExistsCache.get(path);
+            if (cached == null || affectedPaths.isAffected(path)) {
+                final boolean exists = inspectSession.itemExists(path);
+                itemExistsCache.put(path, exists);
+                return exists;
+            }
+            return cached;
         }
 
         static List<PackageId> getViolatorListForExpectedPath(final @NotNull Map<String, List<PackageId>> violatorsMap,
@@ -182,18 +253,24 @@ public final class ExpectPaths implements ProgressCheckFactory {
 
         @Override
         public void identifyPackage(final PackageId packageId, final File file) {
-            graph.identifyPackage(packageId, file);
+            if (!silenced) {
+                graph.identifyPackage(packageId, file);
+            }
         }
 
         @Override
         public void identifySubpackage(final PackageId packageId, final PackageId parentId) {
-            graph.identifySubpackage(packageId, parentId);
+            if (!silenced) {
+                graph.identifySubpackage(packageId, parentId);
+            }
         }
 
         @Override
         public void identifyEmbeddedPackage(final PackageId packageId, final PackageId parentId,
                                             final EmbeddedPackageInstallable slingInstallable) {
-            graph.identifyEmbeddedPackage(packageId, parentId, slingInstallable);
+            if (!silenced) {
+                graph.identifyEmbeddedPackage(packageId, parentId, slingInstallable);
+            }
         }
 
         /**
@@ -212,9 +289,9 @@ public final class ExpectPaths implements ProgressCheckFactory {
                 // only look for sling violators of an expected path if a violation for said path has not already
                 // been collected.
                 final List<PackageId> violators = getViolatorListForExpectedPath(expectedViolators, expectedPath);
-                if (violators.isEmpty() && !inspectSession.itemExists(expectedPath)) {
+                if (violators.isEmpty() && !itemExists(inspectSession, expectedPath)) {
                     violators.addAll(possibleViolators);
-                } else if (!violators.isEmpty() && inspectSession.itemExists(expectedPath)) {
+                } else if (!violators.isEmpty() && itemExists(inspectSession, expectedPath)) {
                     violators.removeAll(possibleViolators);
                 }
             }
@@ -222,12 +299,13 @@ public final class ExpectPaths implements ProgressCheckFactory {
                 // only look for sling violators of an unexpected path if a violation for said path has not already
                 // been collected.
                 final List<PackageId> violators = getViolatorListForExpectedPath(notExpectedViolators, notExpectedPath);
-                if (violators.isEmpty() && inspectSession.itemExists(notExpectedPath)) {
+                if (violators.isEmpty() && itemExists(inspectSession, notExpectedPath)) {
                     violators.addAll(possibleViolators);
-                } else if (!violators.isEmpty() && !inspectSession.itemExists(notExpectedPath)) {
+                } else if (!violators.isEmpty() && !itemExists(inspectSession, notExpectedPath)) {
                     violators.removeAll(possibleViolators);
                 }
             }
+            affectedPaths.validated();
         }
 
         /**
@@ -240,7 +318,7 @@ public final class ExpectPaths implements ProgressCheckFactory {
          */
         @Override
         public void afterExtract(final PackageId packageId, final Session inspectSession) throws RepositoryException {
-            if (shouldExpectAfterExtract(packageId)) {
+            if (!silenced && shouldExpectAfterExtract(packageId)) {
                 validateExpectations(graph.getSelfAndAncestors(packageId), inspectSession);
             }
         }
@@ -259,7 +337,8 @@ public final class ExpectPaths implements ProgressCheckFactory {
         public void appliedRepoInitScripts(final PackageId scanPackageId, final List<String> scripts,
                                            final SlingInstallable slingInstallable, final Session inspectSession)
                 throws RepositoryException {
-            if (shouldExpectAfterExtract(slingInstallable.getParentId())) {
+            affectedPaths.invalidateAll();
+            if (!silenced && shouldExpectAfterExtract(slingInstallable.getParentId())) {
                 validateExpectations(graph.getSelfAndAncestors(slingInstallable.getParentId()),
                         inspectSession);
             }
@@ -277,7 +356,9 @@ public final class ExpectPaths implements ProgressCheckFactory {
         @Override
         public void afterScanPackage(final PackageId scanPackageId,
                                      final Session inspectSession) throws RepositoryException {
-            if (ignoreNestedPackages && shouldExpectAfterExtract(scanPackageId)) {
+            if (!silenced && ignoreNestedPackages && shouldExpectAfterExtract(scanPackageId)) {
+                // evaluate every path again to account for any changes made outside of path events during the scan
+                affectedPaths.invalidateAll();
                 validateExpectations(graph.getSelfAndDescendants(scanPackageId), inspectSession);
             }
         }
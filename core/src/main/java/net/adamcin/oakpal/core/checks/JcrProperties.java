@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core.checks;
 
+import net.adamcin.oakpal.api.CompiledRuleSet;
 import net.adamcin.oakpal.api.PathAction;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
@@ -37,6 +38,8 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.nodetype.NodeTypeDefinition;
 import javax.json.JsonObject;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
@@ -176,11 +179,12 @@ public final class JcrProperties implements ProgressCheckFactory {
     }
 
     static final class Check extends SimpleProgressCheckFactoryCheck<JcrProperties> {
-        private final List<Rule> scopePaths;
+        private final CompiledRuleSet scopePaths;
         private final List<String> denyNodeTypes;
         private final List<String> scopeNodeTypes;
         private final List<JcrPropertyConstraints> propertyChecks;
         private final ResourceBundleHolder resourceBundleHolder;
+        private final NodeTypeMembership nodeTypeMembership;
         private WorkspaceFilter wspFilter;
 
         Check(final List<Rule> scopePaths,
@@ -189,11 +193,14 @@ public final class JcrProperties implements ProgressCheckFactory {
               final List<JcrPropertyConstraints> propertyChecks,
               final ResourceBundleHolder resourceBundleHolder) {
             super(JcrProperties.class);
-            this.scopePaths = scopePaths;
+            this.scopePaths = CompiledRuleSet.compile(scopePaths);
             this.denyNodeTypes = denyNodeTypes;
             this.scopeNodeTypes = scopeNodeTypes;
             this.propertyChecks = propertyChecks;
             this.resourceBundleHolder = resourceBundleHolder;
+            final List<String> nodeTypes = new ArrayList<>(denyNodeTypes);
+            nodeTypes.addAll(scopeNodeTypes);
+            this.nodeTypeMembership = new NodeTypeMembership(nodeTypes);
         }
 
         @Override
@@ -212,6 +219,8 @@ public final class JcrProperties implements ProgressCheckFactory {
                                   final PackageProperties packageProperties, final MetaInf metaInf,
                                   final List<PackageId> subpackages) throws RepositoryException {
             this.wspFilter = metaInf.getFilter();
+            // a package may register or update node types
+            this.nodeTypeMembership.clear();
         }
 
         @Override
@@ -221,15 +230,17 @@ public final class JcrProperties implements ProgressCheckFactory {
                 return;
             }
 
-            final Rule lastMatch = Rules.lastMatch(scopePaths, path);
+            final Rule lastMatch = scopePaths.lastMatch(path);
             if (lastMatch.isInclude()) {
                 this.checkNode(packageId, node);
             }
         }
 
         void checkNode(final PackageId packageId, final Node node) throws RepositoryException {
-            for (String denyNodeType : denyNodeTypes) {
-                if (node.isNodeType(denyNodeType)) {
+            final BitSet membership = nodeTypeMembership.getMembership(node);
+            for (int i = 0; i < denyNodeTypes.size(); i++) {
+                if (membership.get(i)) {
+                    final String denyNodeType = denyNodeTypes.get(i);
                     final Object[] arguments = new Object[]{
                             node.getPath(),
                             node.getPrimaryNodeType().getName(),
@@ -247,12 +258,8 @@ public final class JcrProperties implements ProgressCheckFactory {
                 }
             }
 
-            boolean isInScope = scopeNodeTypes.isEmpty();
-            for (String nodeType : scopeNodeTypes) {
-                if (node.isNodeType(nodeType)) {
-                    isInScope = true;
-                }
-            }
+            // scope node type bits follow the deny node type bits
+            final boolean isInScope = scopeNodeTypes.isEmpty() || membership.nextSetBit(denyNodeTypes.size()) >= 0;
             if (isInScope) {
                 for (JcrPropertyConstraints check : propertyChecks) {
                     check.evaluate(packageId, node).ifPresent(collector::reportViolation);
@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core.checks;
 
+import net.adamcin.oakpal.api.CompiledRuleSet;
 import net.adamcin.oakpal.api.Rule;
 import net.adamcin.oakpal.api.Rules;
 import net.adamcin.oakpal.api.Severity;
@@ -180,6 +181,7 @@ public final class JcrPropertyConstraints {
     private final boolean denyIfMultivalued;
     private final String requireType;
     private final List<Rule> valueRules;
+    private final CompiledRuleSet compiledValueRules;
     private final Severity severity;
     private final Supplier<ResourceBundle> resourceBundleSupplier;
 
@@ -197,6 +199,7 @@ public final class JcrPropertyConstraints {
         this.denyIfMultivalued = denyIfMultivalued;
         this.requireType = requireType;
         this.valueRules = valueRules;
+        this.compiledValueRules = CompiledRuleSet.compile(valueRules);
         this.severity = severity;
         this.resourceBundleSupplier = resourceBundleSupplier;
     }
@@ -276,6 +279,10 @@ public final class JcrPropertyConstraints {
                                 PropertyType.nameFromValue(property.getType()), getRequireType())));
             }
 
+            if (valueRules.isEmpty()) {
+                return Optional.empty();
+            }
+
             List<String> values = new ArrayList<>();
             if (property.isMultiple()) {
                 for (Value value : property.getValues()) {
@@ -286,7 +293,7 @@ public final class JcrPropertyConstraints {
             }
 
             for (String value : values) {
-                final Rule lastMatch = Rules.lastMatch(getValueRules(), value);
+                final Rule lastMatch = compiledValueRules.lastMatch(value);
                 if (lastMatch.isDeny()) {
                     return Optional.of(constructViolation(packageId, node,
                             MessageFormat.format(getString("value {0} denied by pattern {1}"),
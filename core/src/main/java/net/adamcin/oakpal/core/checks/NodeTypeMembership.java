@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.jetbrains.annotations.NotNull;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Internal cache of the membership of nodes in a fixed list of node types, keyed by the combination of the primary
+ * type and mixin type names of each node. The effective type of a node is fully determined by that combination, so
+ * {@link Node#isNodeType(String)} only needs to be called for the first node of each combination. Every other node
+ * costs a read of its type properties, after which each type check is a bit test.
+ * <p>
+ * The cache must be cleared whenever node types may have been registered or changed.
+ */
+final class NodeTypeMembership {
+    private final List<String> nodeTypes;
+    private final Map<String, BitSet> memberships = new HashMap<>();
+
+    NodeTypeMembership(final @NotNull List<String> nodeTypes) {
+        this.nodeTypes = nodeTypes;
+    }
+
+    /**
+     * Returns a bit set with a bit set for each index of the list of node types that the node is a member of.
+     *
+     * @param node the node
+     * @return the membership bits, which must not be modified
+     * @throws RepositoryException for JCR errors
+     */
+    @NotNull
+    BitSet getMembership(final @NotNull Node node) throws RepositoryException {
+        if (nodeTypes.isEmpty()) {
+            return new BitSet();
+        }
+        final String key = getTypeKey(node);
+        BitSet membership = memberships.get(key);
+        if (membership == null) {
+            membership = new BitSet(nodeTypes.size());
+            for (int i = 0; i < nodeTypes.size(); i++) {
+                if (node.isNodeType(nodeTypes.get(i))) {
+                    membership.set(i);
+                }
+            }
+            memberships.put(key, membership);
+        }
+        return membership;
+    }
+
+    static String getTypeKey(final @NotNull Node node) throws RepositoryException {
+        final StringBuilder key = new StringBuilder(node.getProperty(JcrConstants.JCR_PRIMARYTYPE).getString());
+        if (node.hasProperty(JcrConstants.JCR_MIXINTYPES)) {
+            final Value[] values = node.getProperty(JcrConstants.JCR_MIXINTYPES).getValues();
+            final String[] mixins = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                mixins[i] = values[i].getString();
+            }
+            Arrays.sort(mixins);
+            for (String mixin : mixins) {
+                key.append(' ').append(mixin);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Remove all cached memberships.
+     */
+    void clear() {
+        memberships.clear();
+    }
+}
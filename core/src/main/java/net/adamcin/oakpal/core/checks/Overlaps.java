@@ -21,6 +21,7 @@ import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
 import net.adamcin.oakpal.api.Severity;
 import net.adamcin.oakpal.api.SimpleProgressCheckFactoryCheck;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.packaging.PackageId;
@@ -32,18 +33,20 @@ import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.json.JsonObject;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import static net.adamcin.oakpal.api.JavaxJson.hasNonNull;
 
 /**
  * The {@code overlaps} check keeps track of installed package workspace filters, and checks every affected path going
- * forward against previous workspace filters for overlap, using {@link WorkspaceFilter#contains(String)}. Overlapping
- * deletions are reported as {@link Severity#MAJOR}, whereas other affected paths are
+ * forward against previous workspace filters for overlap, using {@link WorkspaceFilter#contains(String)}. Only the
+ * filters that have a filter root at or above the affected path are evaluated, using an index of filter roots.
+ * Overlapping deletions are reported as {@link Severity#MAJOR}, whereas other affected paths are
  * reported as {@link Severity#MINOR}.
  * <p>
  * This check is sequence-dependent, in that changing the sequence of packages in the scan may result in a different
@@ -89,6 +92,8 @@ public final class Overlaps implements ProgressCheckFactory {
     static final class Check extends SimpleProgressCheckFactoryCheck<Overlaps> {
 
         final Map<PackageId, WorkspaceFilter> filters = new HashMap<>();
+        // the package ids of the filters in the filters map, indexed by the roots of their filter sets
+        final PathTrie<PackageId> filterRoots = new PathTrie<>();
         final Map<PackageId, Severity> reported = new HashMap<>();
 
         final boolean reportAllOverlaps;
@@ -102,6 +107,7 @@ public final class Overlaps implements ProgressCheckFactory {
         public void startedScan() {
             super.startedScan();
             filters.clear();
+            filterRoots.clear();
             reported.clear();
         }
 
@@ -109,11 +115,13 @@ public final class Overlaps implements ProgressCheckFactory {
         public void beforeExtract(final PackageId packageId, final Session inspectSession,
                                   final PackageProperties packageProperties, final MetaInf metaInf,
                                   final List<PackageId> subpackages) throws RepositoryException {
-            filters.put(packageId, metaInf.getFilter());
-        }
-
-        Predicate<? super Map.Entry<PackageId, WorkspaceFilter>> overlaps(final String path) {
-            return entry -> entry.getValue().contains(path);
+            final WorkspaceFilter filter = metaInf.getFilter();
+            filters.put(packageId, filter);
+            if (filter != null) {
+                for (PathFilterSet filterSet : filter.getFilterSets()) {
+                    filterRoots.put(filterSet.getRoot(), packageId);
+                }
+            }
         }
 
         void findOverlaps(final PackageId currentPackageId, final String path,
@@ -125,13 +133,17 @@ public final class Overlaps implements ProgressCheckFactory {
                 return;
             }
 
-            // find any overlapping filters, looking forward.
-            List<PackageId> overlapping = filters.entrySet().stream()
-                    .filter(entry -> !entry.getKey().equals(currentPackageId))
-                    .filter(overlaps(path))
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-
+            // find any overlapping filters, looking forward, among filters with a root that covers the path.
+            final Set<PackageId> candidates = new LinkedHashSet<>();
+            filterRoots.forEachAncestorOrSelf(path, candidates::add);
+            candidates.remove(currentPackageId);
+            final List<PackageId> overlapping = new ArrayList<>();
+            for (PackageId candidate : candidates) {
+                final WorkspaceFilter filter = filters.get(candidate);
+                if (filter != null && filter.contains(path)) {
+                    overlapping.add(candidate);
+                }
+            }
 
             if (!overlapping.isEmpty()) {
                 if (!reportAllOverlaps) {
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Internal index of values keyed by absolute JCR paths, organized as a trie of path segments, for checks that must
+ * find the configured paths related to each affected path without scanning every configured path.
+ *
+ * @param <V> the value type
+ */
+final class PathTrie<V> {
+    private final TrieNode<V> root = new TrieNode<>();
+
+    private static final class TrieNode<V> {
+        private Map<String, TrieNode<V>> children = Collections.emptyMap();
+        private List<V> values = Collections.emptyList();
+
+        TrieNode<V> child(final String segment) {
+            if (children.isEmpty()) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(segment, key -> new TrieNode<>());
+        }
+
+        void add(final V value) {
+            if (values.isEmpty()) {
+                values = new ArrayList<>(1);
+            }
+            values.add(value);
+        }
+
+        void forEachDescendantOrSelf(final @NotNull Consumer<? super V> consumer) {
+            values.forEach(consumer);
+            for (TrieNode<V> child : children.values()) {
+                child.forEachDescendantOrSelf(consumer);
+            }
+        }
+    }
+
+    static String[] segments(final @NotNull String path) {
+        final String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        return trimmed.split("/");
+    }
+
+    /**
+     * Add a value for the path. A path may be associated with more than one value.
+     *
+     * @param path  the absolute path
+     * @param value the value
+     */
+    void put(final @NotNull String path, final @NotNull V value) {
+        TrieNode<V> node = root;
+        for (String segment : segments(path)) {
+            node = node.child(segment);
+        }
+        node.add(value);
+    }
+
+    /**
+     * Remove all values.
+     */
+    void clear() {
+        root.children = Collections.emptyMap();
+        root.values = Collections.emptyList();
+    }
+
+    /**
+     * Returns true if any value is associated with the path or any of its ancestors.
+     *
+     * @param path the absolute path
+     * @return true if the path or an ancestor has a value
+     */
+    boolean hasAncestorOrSelf(final @NotNull String path) {
+        TrieNode<V> node = root;
+        if (!node.values.isEmpty()) {
+            return true;
+        }
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return false;
+            } else if (!node.values.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if any value is associated with the path or any of its descendants.
+     *
+     * @param path the absolute path
+     * @return true if the path or a descendant has a value
+     */
+    boolean hasDescendantOrSelf(final @NotNull String path) {
+        TrieNode<V> node = root;
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return false;
+            }
+        }
+        // every node other than an empty root is created by put(), and so has a value in its subtree
+        return !node.values.isEmpty() || !node.children.isEmpty();
+    }
+
+    /**
+     * Pass every value associated with the path or any of its ancestors to the consumer, in order from the root.
+     *
+     * @param path     the absolute path
+     * @param consumer the value consumer
+     */
+    void forEachAncestorOrSelf(final @NotNull String path, final @NotNull Consumer<? super V> consumer) {
+        TrieNode<V> node = root;
+        node.values.forEach(consumer);
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+            node.values.forEach(consumer);
+        }
+    }
+
+    /**
+     * Pass every value associated with the path or any of its descendants to the consumer.
+     *
+     * @param path     the absolute path
+     * @param consumer the value consumer
+     */
+    void forEachDescendantOrSelf(final @NotNull String path, final @NotNull Consumer<? super V> consumer) {
+        TrieNode<V> node = root;
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+        }
+        node.forEachDescendantOrSelf(consumer);
+    }
+}
@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core.checks;
 
+import net.adamcin.oakpal.api.CompiledRuleSet;
 import net.adamcin.oakpal.api.PathAction;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
@@ -124,13 +125,13 @@ public final class Paths implements ProgressCheckFactory {
     }
 
     static final class Check extends SimpleProgressCheckFactoryCheck<Paths> {
-        private final List<Rule> rules;
+        private final CompiledRuleSet rules;
         private final boolean denyAllDeletes;
         private final Severity severity;
 
         Check(final List<Rule> rules, final boolean denyAllDeletes, final Severity severity) {
             super(Paths.class);
-            this.rules = rules;
+            this.rules = CompiledRuleSet.compile(rules);
             this.denyAllDeletes = denyAllDeletes;
             this.severity = severity;
         }
@@ -140,7 +141,7 @@ public final class Paths implements ProgressCheckFactory {
                                  final PathAction action)
                 throws RepositoryException {
 
-            Rule lastMatch = Rules.lastMatch(rules, path);
+            Rule lastMatch = rules.lastMatch(path);
             if (lastMatch.isDeny()) {
                 reporting(violation -> violation
                         .withSeverity(severity)
@@ -160,7 +161,7 @@ public final class Paths implements ProgressCheckFactory {
                         .withDescription("deleted path {0}. All deletions are denied.")
                         .withArgument(path));
             } else {
-                final Rule lastMatch = Rules.lastMatch(rules, path);
+                final Rule lastMatch = rules.lastMatch(path);
                 if (lastMatch.isDeny()) {
                     reporting(violation -> violation
                             .withSeverity(severity)
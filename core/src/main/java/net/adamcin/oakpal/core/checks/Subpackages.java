@@ -16,6 +16,7 @@
 
 package net.adamcin.oakpal.core.checks;
 
+import net.adamcin.oakpal.api.CompiledRuleSet;
 import net.adamcin.oakpal.api.ProgressCheck;
 import net.adamcin.oakpal.api.ProgressCheckFactory;
 import net.adamcin.oakpal.api.Rule;
@@ -102,12 +103,12 @@ public final class Subpackages implements ProgressCheckFactory {
     }
 
     static final class Check extends SimpleProgressCheckFactoryCheck<Subpackages> {
-        private final List<Rule> rules;
+        private final CompiledRuleSet rules;
         private final boolean denyAll;
 
         Check(final List<Rule> rules, final boolean denyAll) {
             super(Subpackages.class);
-            this.rules = rules;
+            this.rules = CompiledRuleSet.compile(rules);
             this.denyAll = denyAll;
         }
 
@@ -120,7 +121,7 @@ public final class Subpackages implements ProgressCheckFactory {
                         .withDescription("subpackage {0} included by {1}. no subpackages are allowed.")
                         .withArgument(packageId, parentId));
             } else {
-                final Rule lastMatch = Rules.lastMatch(rules, packageId.toString());
+                final Rule lastMatch = rules.lastMatch(packageId.toString());
                 if (lastMatch.isDeny()) {
                     reporting(violation -> violation
                             .withSeverity(Severity.MAJOR)
@@ -25,17 +25,24 @@ import net.adamcin.oakpal.api.SlingSimulator;
 import net.adamcin.oakpal.core.ErrorListener;
 import org.apache.felix.cm.file.ConfigurationHandler;
 import org.apache.felix.cm.json.Configurations;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.jackrabbit.vault.packaging.CyclicDependencyException;
+import org.apache.jackrabbit.vault.packaging.Dependency;
 import org.apache.jackrabbit.vault.packaging.DependencyUtil;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
 import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.VaultPackage;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageImpl;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageManagerImpl;
+import org.apache.jackrabbit.vault.packaging.impl.ZipVaultPackage;
 import org.apache.sling.installer.api.InstallableResource;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
@@ -52,18 +59,18 @@ import java.lang.reflect.Array;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.function.Function;
 
-import static net.adamcin.oakpal.api.Fun.inferTest1;
 import static net.adamcin.oakpal.api.Fun.result0;
 import static net.adamcin.oakpal.api.Fun.result1;
 import static net.adamcin.oakpal.api.Fun.toEntry;
@@ -82,11 +89,21 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
 
     private ErrorListener errorListener;
 
-    private final LinkedList<SlingInstallable> installables = new LinkedList<>();
+    /**
+     * The installable queue, keyed by JCR path, so that an installable can be replaced in constant time.
+     */
+    private final Map<String, SlingInstallable> installables = new LinkedHashMap<>();
+
+    /**
+     * The dependencies of each embedded package, read once when the package node is first inspected, so that the
+     * queue can be reordered without reopening every queued package.
+     */
+    private final Map<PackageId, Dependency[]> packageDependencies = new HashMap<>();
 
     @Override
     public void startedScan() {
         installables.clear();
+        packageDependencies.clear();
     }
 
     @Override
@@ -106,7 +123,13 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
 
     @Override
     public @Nullable SlingInstallable dequeueInstallable() {
-        return installables.poll();
+        final Iterator<SlingInstallable> iterator = installables.values().iterator();
+        if (iterator.hasNext()) {
+            final SlingInstallable installable = iterator.next();
+            iterator.remove();
+            return installable;
+        }
+        return null;
     }
 
     @SuppressWarnings("unchecked")
@@ -122,11 +145,72 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
         };
     }
 
+    /**
+     * Register the embedded package in the package manager without uploading a second copy of its archive. The new
+     * package node references the same {@link Binary} as the embedded package node, which Oak stores as a reference to
+     * the existing blob rather than a copy. When the package manager is a {@link JcrPackageManagerImpl}, the returned
+     * package also reuses the archive that was opened to read the package id, so that the embedded binary is only read
+     * once, instead of once to register the package and again to install it. Only a node without a
+     * {@code jcr:content/jcr:data} property falls back to
+     * {@link JcrPackageManager#upload(InputStream, boolean, boolean)}.
+     *
+     * @param installable the embedded package installable
+     * @return the registered package
+     * @throws IOException         if the embedded archive is not a valid package
+     * @throws RepositoryException for repository errors
+     */
     public @NotNull JcrPackage
     openEmbeddedPackage(@NotNull final EmbeddedPackageInstallable installable) throws IOException, RepositoryException {
         Node packageNode = session.getNode(installable.getJcrPath());
-        try (InputStream input = JcrUtils.readFile(packageNode)) {
-            return packageManager.upload(input, true, true);
+        if (!packageNode.hasProperty(JCR_CONTENT_DATA)) {
+            try (InputStream input = JcrUtils.readFile(packageNode)) {
+                return packageManager.upload(input, true, true);
+            }
+        }
+
+        final JcrPackage embedded = packageManager.open(packageNode, true);
+        final Binary binary = packageNode.getProperty(JCR_CONTENT_DATA).getBinary();
+        // the opened archive is handed over to the registered package when it can be reused
+        boolean reused = false;
+        try {
+            final VaultPackage vaultPackage = embedded != null ? embedded.getPackage() : null;
+            final PackageId packageId = vaultPackage != null ? vaultPackage.getId() : null;
+            if (packageId == null || !packageId.isValid()) {
+                throw new IOException("Embedded package is not a valid content package: " + installable.getJcrPath());
+            }
+            // replace an existing package with the same id, like upload(input, true, true)
+            try (JcrPackage existing = packageManager.open(packageId)) {
+                if (existing != null) {
+                    packageManager.remove(existing);
+                }
+            }
+            final Node registeredNode;
+            try (JcrPackage created = packageManager.create(packageId.getGroup(), packageId.getName(),
+                    packageId.getVersionString())) {
+                registeredNode = created.getNode();
+                if (registeredNode == null) {
+                    throw new RepositoryException("Failed to create package node for " + packageId);
+                }
+                registeredNode.getNode(JcrConstants.JCR_CONTENT).setProperty(JcrConstants.JCR_DATA, binary);
+                final JcrPackageDefinition definition = created.getDefinition();
+                if (definition != null) {
+                    definition.unwrap(vaultPackage, true, false);
+                }
+            }
+            session.save();
+            if (packageManager instanceof JcrPackageManagerImpl && vaultPackage instanceof ZipVaultPackage) {
+                final JcrPackage registered = new JcrPackageImpl(
+                        ((JcrPackageManagerImpl) packageManager).getInternalRegistry(),
+                        registeredNode, (ZipVaultPackage) vaultPackage);
+                reused = true;
+                return registered;
+            }
+            return packageManager.open(registeredNode);
+        } finally {
+            binary.dispose();
+            if (embedded != null && !reused) {
+                embedded.close();
+            }
         }
     }
 
@@ -143,9 +227,8 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
     }
 
     void internalAddInstallable(final @NotNull SlingInstallable installable) {
-        installables.removeIf(registered ->
-                installable.getJcrPath().equals(registered.getJcrPath()));
-        installables.add(installable);
+        installables.remove(installable.getJcrPath());
+        installables.put(installable.getJcrPath(), installable);
     }
 
     @Override
@@ -165,13 +248,56 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
             internalAddInstallable(installable);
         }
         if (installable instanceof EmbeddedPackageInstallable) {
-            Fun.resultNothing1(DefaultSlingSimulator::shufflePackagesByDependency).apply(this);
+            // the queue is kept in dependency order, so a package appended to the tail only needs to be moved when
+            // a package already in the queue depends on it.
+            final Result<Boolean> required = Fun.<DefaultSlingSimulator, EmbeddedPackageInstallable, Boolean>result2(
+                    DefaultSlingSimulator::isRequiredByQueuedPackage).apply(this, (EmbeddedPackageInstallable) installable);
+            if (required.getOrDefault(true)) {
+                Fun.resultNothing1(DefaultSlingSimulator::shufflePackagesByDependency).apply(this);
+            }
         }
         return installable;
     }
 
-    LinkedList<SlingInstallable> getInstallables() {
-        return installables;
+    Collection<SlingInstallable> getInstallables() {
+        return installables.values();
+    }
+
+    /**
+     * Get the dependencies of the embedded package, which are usually cached by
+     * {@link #maybePackageResource(NodeRes)}. Otherwise, the package is opened once to read them.
+     *
+     * @param installable the embedded package installable
+     * @return the package dependencies
+     * @throws RepositoryException for repository errors
+     * @throws IOException         for package read errors
+     */
+    @NotNull Dependency[] getPackageDependencies(final @NotNull EmbeddedPackageInstallable installable)
+            throws RepositoryException, IOException {
+        final Dependency[] cached = packageDependencies.get(installable.getEmbeddedId());
+        if (cached != null) {
+            return cached;
+        }
+        try (JcrPackage jcrPack = packageManager.open(session.getNode(installable.getJcrPath()), true)) {
+            final VaultPackage vaultPackage = jcrPack != null ? jcrPack.getPackage() : null;
+            final Dependency[] dependencies = vaultPackage != null && vaultPackage.getDependencies() != null
+                    ? vaultPackage.getDependencies()
+                    : new Dependency[0];
+            packageDependencies.put(installable.getEmbeddedId(), dependencies);
+            return dependencies;
+        }
+    }
+
+    boolean isRequiredByQueuedPackage(final @NotNull EmbeddedPackageInstallable added)
+            throws RepositoryException, IOException {
+        for (SlingInstallable queued : getInstallables()) {
+            if (queued != added && queued instanceof EmbeddedPackageInstallable
+                    && DependencyUtil.matches(getPackageDependencies((EmbeddedPackageInstallable) queued),
+                    added.getEmbeddedId())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     void shufflePackagesByDependency() throws RepositoryException, CyclicDependencyException, IOException {
@@ -181,35 +307,20 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
                 .map(inst -> toEntry(inst.getEmbeddedId(), inst))
                 .collect(Fun.entriesToMapOfType(LinkedHashMap::new, Fun.keepFirstMerger()));
 
-        final List<PackageId> originalOrder = new ArrayList<>(originalLookup.keySet());
-        final List<PackageId> sortedOrder = new ArrayList<>();
-
-        final List<JcrPackage> closeable = new LinkedList<>();
-        final List<VaultPackage> sortable = new LinkedList<>();
-        try {
-            for (PackageId key : originalOrder) {
-                final JcrPackage jcrPack = packageManager.open(session.getNode(originalLookup.get(key).getJcrPath()),
-                        true);
-                closeable.add(jcrPack);
-                sortable.add(jcrPack.getPackage());
-            }
-            DependencyUtil.sort(sortable);
-            for (VaultPackage pack : sortable) {
-                sortedOrder.add(pack.getId());
-            }
-        } finally {
-            closeable.forEach(Fun.toVoid1(Fun.resultNothing1(JcrPackage::close)));
+        final Map<PackageId, Dependency[]> dependencyLookup = new LinkedHashMap<>();
+        for (Map.Entry<PackageId, EmbeddedPackageInstallable> entry : originalLookup.entrySet()) {
+            dependencyLookup.put(entry.getKey(), getPackageDependencies(entry.getValue()));
         }
 
+        final List<PackageId> originalOrder = new ArrayList<>(originalLookup.keySet());
+        final List<PackageId> sortedOrder = DependencyUtil.resolve(dependencyLookup);
+
         if (sortedOrder.size() == originalOrder.size() && !originalOrder.equals(sortedOrder)) {
             for (int i = 0; i < originalOrder.size(); i++) {
                 if (!originalOrder.get(i).equals(sortedOrder.get(i))) {
                     for (PackageId key : sortedOrder.subList(i, sortedOrder.size())) {
                         final EmbeddedPackageInstallable installable = originalLookup.get(key);
-                        if (getInstallables().removeIf(inferTest1(EmbeddedPackageInstallable.class::isInstance)
-                                .and(registered ->
-                                        key.equals(((EmbeddedPackageInstallable) registered).getEmbeddedId())))) {
-
+                        if (installables.remove(installable.getJcrPath()) != null) {
                             internalAddInstallable(installable);
                         }
                     }
@@ -294,7 +405,7 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
         if (nodeRes.getPath().endsWith(".zip")) {
             try (JcrPackage pack = packageManager.open(nodeRes.getNode(), true)) {
                 return result1(JcrPackage::getPackage).apply(pack)
-                        .flatMap(result1(VaultPackage::getId))
+                        .flatMap(result1(this::readPackageIdAndDependencies))
                         .map(EmbeddedPackageInstallableParams::new)
                         .toOptional().orElse(null);
             } catch (RepositoryException e) {
@@ -305,6 +416,15 @@ public final class DefaultSlingSimulator implements SlingSimulatorBackend, Sling
         return null;
     }
 
+    @Nullable PackageId readPackageIdAndDependencies(final @NotNull VaultPackage vaultPackage) {
+        final PackageId packageId = vaultPackage.getId();
+        if (packageId != null) {
+            final Dependency[] dependencies = vaultPackage.getDependencies();
+            packageDependencies.put(packageId, dependencies != null ? dependencies : new Dependency[0]);
+        }
+        return packageId;
+    }
+
     static String separatorsToUnix(final String path) {
         if (path == null || path.indexOf('\\') == -1) {
             return path;
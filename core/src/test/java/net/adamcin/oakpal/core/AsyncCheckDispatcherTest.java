@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.AsyncCheck;
+import net.adamcin.oakpal.api.ProgressCheck;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class AsyncCheckDispatcherTest {
+
+    @Test
+    public void testDispatchAndBarrier() {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        final ProgressCheck syncCheck = mock(ProgressCheck.class);
+        final List<Integer> events = new CopyOnWriteArrayList<>();
+        final List<String> threadNames = new CopyOnWriteArrayList<>();
+        final List<String> deferred = new ArrayList<>();
+        try (AsyncCheckDispatcher dispatcher =
+                     new AsyncCheckDispatcher(Arrays.asList(asyncCheck, asyncCheck), 3, 2)) {
+            assertEquals("expect one thread per distinct check", 1, dispatcher.getThreads().size());
+            assertTrue("expect async", dispatcher.isAsync(asyncCheck));
+            assertFalse("expect not async", dispatcher.isAsync(syncCheck));
+            for (int i = 0; i < 10; i++) {
+                final int event = i;
+                dispatcher.dispatch(asyncCheck, check -> {
+                    threadNames.add(Thread.currentThread().getName());
+                    events.add(event);
+                    if (event == 5) {
+                        dispatcher.defer(() -> deferred.add(Thread.currentThread().getName()));
+                    }
+                });
+            }
+            dispatcher.barrier();
+            assertEquals("expect all events in order",
+                    IntStream.range(0, 10).boxed().collect(Collectors.toList()), events);
+            assertTrue("expect worker thread",
+                    threadNames.stream().allMatch(name -> name.startsWith("oakpal-async-check-")));
+            assertEquals("expect deferred on calling thread",
+                    Collections.singletonList(Thread.currentThread().getName()), deferred);
+        }
+    }
+
+    @Test
+    public void testDispatch_heldUntilBarrier() {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        final List<Integer> events = new CopyOnWriteArrayList<>();
+        try (AsyncCheckDispatcher dispatcher =
+                     new AsyncCheckDispatcher(Collections.singletonList(asyncCheck), 3, 2)) {
+            dispatcher.dispatch(asyncCheck, check -> events.add(0));
+            dispatcher.dispatch(asyncCheck, check -> events.add(1));
+            assertTrue("expect delivery deferred until the batch is full", events.isEmpty());
+            dispatcher.dispatch(asyncCheck, check -> events.add(2));
+            assertEquals("expect full batch delivered before dispatch returns", Arrays.asList(0, 1, 2), events);
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testBarrierRethrowsError() {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        try (AsyncCheckDispatcher dispatcher =
+                     new AsyncCheckDispatcher(Collections.singletonList(asyncCheck), 1, 1)) {
+            dispatcher.dispatch(asyncCheck, check -> {
+                throw new AssertionError("failed");
+            });
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        final AsyncCheckDispatcher dispatcher =
+                new AsyncCheckDispatcher(Collections.singletonList(asyncCheck), 0, 0);
+        final List<Boolean> events = new CopyOnWriteArrayList<>();
+        dispatcher.dispatch(asyncCheck, check -> events.add(true));
+        dispatcher.close();
+        assertEquals("expect event before close", Collections.singletonList(true), events);
+        for (Thread thread : dispatcher.getThreads()) {
+            thread.join(5000L);
+            assertFalse("expect thread is stopped", thread.isAlive());
+        }
+    }
+
+    @Test
+    public void testBarrier_noWorkers() {
+        final List<Boolean> deferred = new ArrayList<>();
+        final AsyncCheckDispatcher dispatcher = new AsyncCheckDispatcher(Collections.emptyList(), 1, 1);
+        dispatcher.defer(() -> deferred.add(true));
+        dispatcher.barrier();
+        assertEquals("expect deferred", Collections.singletonList(true), deferred);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.BatchProgressCheck;
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.ProgressCheck;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchCheckDispatcherTest {
+
+    @Test
+    public void testAppendAndFlush() {
+        final ProgressCheck batchCheck = mock(BatchProgressCheck.class);
+        final ProgressCheck pathCheck = mock(ProgressCheck.class);
+        final Session session = mock(Session.class);
+        final PackageId fooId = PackageId.fromString("my_packages:foo:1.0");
+        final PackageId barId = PackageId.fromString("my_packages:bar:1.0");
+        final List<String> batches = new ArrayList<>();
+        final BatchCheckDispatcher dispatcher = new BatchCheckDispatcher(Collections.singletonList(batchCheck), 2,
+                (silenced, packageId, batchSession, pathEvents) -> batches.add(silenced + " " + packageId.getName()
+                        + " " + pathEvents.stream().map(BatchProgressCheck.PathEvent::getPath)
+                        .collect(Collectors.joining(","))));
+        assertTrue("expect batch checks", dispatcher.hasBatchChecks());
+        assertTrue("expect batch", dispatcher.isBatch(batchCheck));
+        assertFalse("expect not batch", dispatcher.isBatch(pathCheck));
+
+        dispatcher.append(false, fooId, session, "/foo1", PathAction.ADDED);
+        dispatcher.append(false, fooId, session, "/foo2", PathAction.ADDED);
+        dispatcher.append(false, fooId, session, "/foo3", PathAction.MODIFIED);
+        dispatcher.append(false, barId, session, "/bar1", PathAction.DELETED);
+        dispatcher.append(true, barId, session, "/bar2", PathAction.ADDED);
+        dispatcher.flush();
+        dispatcher.flush();
+        assertEquals("expect batches split by size, package, and silenced state",
+                Arrays.asList("false foo /foo1,/foo2", "false foo /foo3", "false bar /bar1", "true bar /bar2"),
+                batches);
+    }
+
+    @Test
+    public void testPathEventGetNode() throws Exception {
+        final Session session = mock(Session.class);
+        final Node node = mock(Node.class);
+        when(session.nodeExists("/foo")).thenReturn(true);
+        when(session.getNode("/foo")).thenReturn(node);
+        assertSame("expect node", node, new BatchProgressCheck.PathEvent("/foo", PathAction.ADDED).getNode(session));
+        assertNull("expect no node for deleted",
+                new BatchProgressCheck.PathEvent("/foo", PathAction.DELETED).getNode(session));
+        assertNull("expect no node for missing path",
+                new BatchProgressCheck.PathEvent("/bar", PathAction.MODIFIED).getNode(session));
+        assertEquals("expect toString", "U /bar",
+                new BatchProgressCheck.PathEvent("/bar", PathAction.MODIFIED).toString());
+    }
+
+    @Test
+    public void testDeliver() throws Exception {
+        final Session session = mock(Session.class);
+        final Node node = mock(Node.class);
+        when(session.nodeExists("/foo")).thenReturn(true);
+        when(session.getNode("/foo")).thenReturn(node);
+        final PackageId packageId = PackageId.fromString("my_packages:foo:1.0");
+        final List<BatchProgressCheck.PathEvent> pathEvents = Arrays.asList(
+                new BatchProgressCheck.PathEvent("/foo", PathAction.ADDED),
+                new BatchProgressCheck.PathEvent("/bar", PathAction.DELETED),
+                new BatchProgressCheck.PathEvent("/baz", PathAction.MODIFIED));
+
+        final BatchProgressCheck batchCheck = mock(BatchProgressCheck.class);
+        BatchCheckDispatcher.deliver(batchCheck, packageId, pathEvents, session);
+        verify(batchCheck).pathEvents(packageId, pathEvents, session);
+        verify(batchCheck, never()).importedPath(any(), any(), any(), any());
+
+        final ProgressCheck pathCheck = mock(ProgressCheck.class);
+        BatchCheckDispatcher.deliver(pathCheck, packageId, pathEvents, session);
+        verify(pathCheck).importedPath(packageId, "/foo", node, PathAction.ADDED);
+        verify(pathCheck).deletedPath(packageId, "/bar", session);
+        verify(pathCheck, never()).importedPath(eq(packageId), eq("/baz"), any(), any());
+    }
+}
@@ -89,4 +89,22 @@ public class CNDURLInstallerTest {
         assertEquals("f and y should report errors: " + errorListener.getReportedViolations(), 2,
                 errorListener.getReportedViolations().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrefetch() throws Exception {
+        final DefaultErrorListener errorListener = new DefaultErrorListener();
+        final File missingFile = new File("src/test/resources/CNDURLInstallerTest/missing.cnd");
+        final CNDURLInstaller installer = new CNDURLInstaller(errorListener,
+                Arrays.asList(cndBUrl, cndAUrl, missingFile.toURI().toURL()), null);
+        assertTrue("expect a.cnd content", CNDURLInstaller.readCnd(cndAUrl).contains("a:primaryType"));
+
+        new OakMachine.Builder().build().adminInitAndInspect(session -> {
+            installer.register(session);
+            NodeTypeManager ntManager = session.getWorkspace().getNodeTypeManager();
+            assertTrue("has a:primaryType", ntManager.hasNodeType("a:primaryType"));
+            assertTrue("has b:primaryType", ntManager.hasNodeType("b:primaryType"));
+        });
+        assertEquals("missing cnd should report an error: " + errorListener.getReportedViolations(), 1,
+                errorListener.getReportedViolations().size());
+    }
+}
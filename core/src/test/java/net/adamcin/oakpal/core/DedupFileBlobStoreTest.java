@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DedupFileBlobStoreTest {
+    private static final int BLOB_SIZE = 600 * 1024;
+    private static final long TWO_HOURS_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2L);
+
+    private final File baseDir = new File("target/test-output/DedupFileBlobStoreTest");
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir.mkdirs();
+    }
+
+    private File cleanDir(final String name) throws IOException {
+        final File dir = new File(baseDir, name);
+        if (dir.isDirectory()) {
+            FileUtils.deleteDirectory(dir);
+        }
+        return dir;
+    }
+
+    private static byte[] content(final int seed) {
+        final byte[] data = new byte[BLOB_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i * 31 + seed) % 251);
+        }
+        return data;
+    }
+
+    private static List<File> listFiles(final File dir, final String suffix) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.map(Path::toFile)
+                    .filter(file -> file.isFile() && file.getName().endsWith(suffix))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testWriteBlob_dedup() throws Exception {
+        final File dir = cleanDir("testWriteBlob_dedup");
+        final DedupFileBlobStore blobStore = new DedupFileBlobStore(dir.getAbsolutePath());
+        assertEquals("expect default max size", DedupFileBlobStore.DEFAULT_MAX_SIZE_MB * 1024L * 1024L,
+                blobStore.getMaxSizeBytes());
+        final byte[] data = content(1);
+        final String blobId = blobStore.writeBlob(new ByteArrayInputStream(data));
+        final List<File> blocks = listFiles(dir, DedupFileBlobStore.BLOCK_SUFFIX);
+        assertEquals("expect one block", 1, blocks.size());
+        assertTrue("block is at least blob size", blocks.get(0).length() >= BLOB_SIZE);
+
+        final File block = blocks.get(0);
+        assertTrue("set old last modified", block.setLastModified(TWO_HOURS_AGO));
+        final String sameBlobId = new DedupFileBlobStore(dir.getAbsolutePath())
+                .writeBlob(new ByteArrayInputStream(data));
+        assertEquals("expect same blob id", blobId, sameBlobId);
+        assertEquals("expect same blocks", blocks, listFiles(dir, DedupFileBlobStore.BLOCK_SUFFIX));
+        assertTrue("expect block touched", block.lastModified() > TWO_HOURS_AGO);
+        assertTrue("expect no temp files", listFiles(dir, DedupFileBlobStore.TEMP_SUFFIX).isEmpty());
+
+        assertTrue("set old last modified again", block.setLastModified(TWO_HOURS_AGO));
+        try (InputStream input = new DedupFileBlobStore(dir.getAbsolutePath()).getInputStream(blobId)) {
+            assertArrayEquals("expect same content", data, IOUtils.toByteArray(input));
+        }
+        assertTrue("expect block touched by read", block.lastModified() > TWO_HOURS_AGO);
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        final File dir = cleanDir("testEvict");
+        final DedupFileBlobStore blobStore = new DedupFileBlobStore(dir.getAbsolutePath(), 1L);
+        assertEquals("expect nothing to evict in missing dir", 0, blobStore.evict());
+        blobStore.writeBlob(new ByteArrayInputStream(content(1)));
+        blobStore.writeBlob(new ByteArrayInputStream(content(2)));
+        blobStore.writeBlob(new ByteArrayInputStream(content(3)));
+        blobStore.writeBlob(new ByteArrayInputStream(content(4)));
+        final List<File> blocks = listFiles(dir, DedupFileBlobStore.BLOCK_SUFFIX);
+        assertEquals("expect four blocks", 4, blocks.size());
+        assertTrue("expect total size over max", blobStore.getTotalSize() > blobStore.getMaxSizeBytes());
+
+        assertEquals("expect no eviction within grace period", 0, blobStore.evict());
+        assertEquals("expect no eviction when unbounded", 0,
+                new DedupFileBlobStore(dir.getAbsolutePath(), 0L).evict());
+
+        for (File block : blocks) {
+            assertTrue("set last modified", block.setLastModified(TWO_HOURS_AGO));
+        }
+        final File abandonedTemp = new File(blocks.get(0).getParentFile(), "abandoned"
+                + DedupFileBlobStore.TEMP_SUFFIX);
+        assertTrue("create abandoned temp", abandonedTemp.createNewFile());
+        assertTrue("set temp last modified", abandonedTemp.setLastModified(TWO_HOURS_AGO));
+        final File newest = blocks.get(2);
+        assertTrue("set newest last modified", newest.setLastModified(TWO_HOURS_AGO + 1000L));
+
+        final File lockFile = new File(dir, DedupFileBlobStore.LOCK_FILE_NAME);
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            assertTrue("expect lock", lock.isValid());
+            assertEquals("expect no eviction while locked", 0, blobStore.evict());
+        }
+
+        assertEquals("expect three evicted blocks", 3, blobStore.evict());
+        assertEquals("expect newest block remains", Arrays.asList(newest),
+                listFiles(dir, DedupFileBlobStore.BLOCK_SUFFIX));
+        assertFalse("expect abandoned temp deleted", abandonedTemp.exists());
+        assertTrue("expect total size within max", blobStore.getTotalSize() <= blobStore.getMaxSizeBytes());
+    }
+
+    @Test
+    public void testFileBlobMemoryNodeStore_close() throws Exception {
+        final File dir = cleanDir("testFileBlobMemoryNodeStore_close");
+        final FileBlobMemoryNodeStore nodeStore = new FileBlobMemoryNodeStore(dir.getAbsolutePath(), 1L);
+        nodeStore.createBlob(new ByteArrayInputStream(content(1)));
+        nodeStore.createBlob(new ByteArrayInputStream(content(2)));
+        nodeStore.createBlob(new ByteArrayInputStream(content(3)));
+        nodeStore.createBlob(new ByteArrayInputStream(content(4)));
+        for (File block : listFiles(dir, DedupFileBlobStore.BLOCK_SUFFIX)) {
+            assertTrue("set last modified", block.setLastModified(TWO_HOURS_AGO));
+        }
+        nodeStore.close();
+        assertTrue("expect total size within max",
+                nodeStore.getBlobStore().getTotalSize() <= nodeStore.getBlobStore().getMaxSizeBytes());
+    }
+}
@@ -327,6 +327,31 @@ public class InitStageTest {
         assertEquals("bad forced root path is", "/folder/unstructured", errorRoot.getNow(""));
     }
 
+    @Test
+    public void testBuildWithForcedRoots_batched() throws Exception {
+        final List<String> errorRoots = new ArrayList<>();
+        ErrorListener errorListener = mock(ErrorListener.class);
+        doAnswer(invoked -> errorRoots.add(((ForcedRoot) invoked.getArgument(1)).getPath()))
+                .when(errorListener).onForcedRootCreationError(any(Throwable.class), any(ForcedRoot.class));
+
+        final int rootCount = InitStage.FORCED_ROOT_BATCH_SIZE + 10;
+        final InitStage.Builder builder = new InitStage.Builder();
+        for (int i = 0; i < rootCount; i++) {
+            builder.withForcedRoot(String.format("/bulk/root%04d", i), "nt:folder");
+        }
+        builder.withForcedRoot("/bulk/root0001/unstructured", "nt:unstructured");
+        new OakMachine.Builder().withErrorListener(errorListener)
+                .withInitStage(builder.build()).build().adminInitAndInspect(session -> {
+            for (int i = 0; i < rootCount; i++) {
+                assertTrue("path should exist", session.nodeExists(String.format("/bulk/root%04d", i)));
+            }
+            assertFalse("bad path should not exist", session.nodeExists("/bulk/root0001/unstructured"));
+        });
+
+        assertEquals("bad forced root paths are",
+                Collections.singletonList("/bulk/root0001/unstructured"), errorRoots);
+    }
+
     @Test
     public void testBuildWithUnorderedCndUrls() throws Exception {
         final InitStage stage = new InitStage.Builder().withNs(getNs())
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.ProgressCheck;
+import net.adamcin.oakpal.api.SilenceableCheck;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsCheckFacadeTest {
+
+    @Test
+    public void testWrap() {
+        final ScanMetrics metrics = new ScanMetrics();
+        final ProgressCheck check = mock(ProgressCheck.class);
+        final MetricsCheckFacade facade = MetricsCheckFacade.wrap(check, metrics);
+        assertSame("expect wrapped", check, facade.getWrapped());
+        assertFalse("expect not silenceable", facade instanceof SilenceableCheck);
+
+        final SilenceableCheck silenceable = mock(SilenceableCheck.class);
+        final MetricsCheckFacade silenceableFacade = MetricsCheckFacade.wrap(silenceable, metrics);
+        assertTrue("expect silenceable", silenceableFacade instanceof SilenceableCheck);
+        ((SilenceableCheck) silenceableFacade).setSilenced(true);
+        verify(silenceable).setSilenced(true);
+    }
+
+    @Test
+    public void testTimeEvents() throws Exception {
+        final ScanMetrics metrics = new ScanMetrics();
+        final ProgressCheck check = mock(ProgressCheck.class);
+        when(check.getCheckName()).thenReturn("check");
+        final PackageId packageId = PackageId.fromString("my_packages:test");
+        doThrow(RepositoryException.class).when(check)
+                .importedPath(any(PackageId.class), any(String.class), any(Node.class), any(PathAction.class));
+        final MetricsCheckFacade facade = MetricsCheckFacade.wrap(check, metrics);
+        assertEquals("expect check name", "check", facade.getCheckName());
+
+        facade.startedScan();
+        facade.identifyPackage(packageId, null);
+        facade.afterExtract(packageId, mock(Session.class));
+        try {
+            facade.importedPath(packageId, "/foo", mock(Node.class), PathAction.ADDED);
+            fail("expect RepositoryException");
+        } catch (final RepositoryException e) {
+            // expected
+        }
+        facade.finishedScan();
+
+        verify(check).startedScan();
+        verify(check).identifyPackage(packageId, null);
+        verify(check).finishedScan();
+        assertEquals("expect five events", 5, metrics.getCheckEvents().get("check").size());
+        assertEquals("expect importedPath timed despite error", 1L,
+                metrics.getCheckEvents().get("check").get("importedPath").getCount());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.jackrabbit.api.JackrabbitWorkspace;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.file.FileStoreBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.query.Query;
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NodeTypeRegistryCacheTest {
+
+    private static final String CND_A = "<'nt'='http://www.jcp.org/jcr/nt/1.0'>\n<'a'='http://a.com/1.0'>\n"
+            + "[a:primaryType] > nt:base\n[a:mixinType]\n  mixin\n";
+    private static final String CND_A_CHANGED = CND_A + "[a:otherType] > nt:base\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final URL cndAUrl = new File("src/test/resources/InitStageTest/a.cnd").toURI().toURL();
+    private final URL cndBUrl = new File("src/test/resources/InitStageTest/b.cnd").toURI().toURL();
+
+    public NodeTypeRegistryCacheTest() throws Exception {
+    }
+
+    private InitStage newStage() {
+        return new InitStage.Builder()
+                .withNs(InitStageTest.getNs())
+                .withUnorderedCndUrl(cndAUrl)
+                .withOrderedCndUrl(cndBUrl)
+                .withPrivilege("foo:canDo")
+                .withForcedRoot("/a_root", "a:primaryType")
+                .build();
+    }
+
+    private static void assertRegistered(final Session session) throws Exception {
+        final NodeTypeManager manager = session.getWorkspace().getNodeTypeManager();
+        assertTrue("expect a:primaryType", manager.hasNodeType("a:primaryType"));
+        assertTrue("expect b:mixinType", manager.hasNodeType("b:mixinType"));
+        assertEquals("expect foo namespace", "http://foo.com", session.getNamespaceURI("foo"));
+        assertNotNull("expect privilege", ((JackrabbitWorkspace) session.getWorkspace())
+                .getPrivilegeManager().getPrivilege("foo:canDo"));
+        assertEquals("expect forced root type", "a:primaryType",
+                session.getNode("/a_root").getPrimaryNodeType().getName());
+
+        final Node node = session.getRootNode().addNode("b_node", "b:primaryType");
+        node.addMixin("a:mixinType");
+        session.save();
+        final NodeIterator nodes = session.getWorkspace().getQueryManager()
+                .createQuery("select * from [a:mixinType]", Query.JCR_SQL2).execute().getNodes();
+        assertTrue("expect query result", nodes.hasNext());
+        assertEquals("expect node path", "/b_node", nodes.nextNode().getPath());
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        final NodeTypeRegistryCache cache = new NodeTypeRegistryCache();
+        new OakMachine.Builder().withInitStage(newStage()).withNodeTypeRegistryCache(cache).build()
+                .adminInitAndInspect(NodeTypeRegistryCacheTest::assertRegistered);
+        assertEquals("expect no hits", 0L, cache.getHits());
+        assertEquals("expect one miss", 1L, cache.getMisses());
+
+        new OakMachine.Builder().withInitStage(newStage()).withNodeTypeRegistryCache(cache).build()
+                .adminInitAndInspect(NodeTypeRegistryCacheTest::assertRegistered);
+        assertEquals("expect one hit", 1L, cache.getHits());
+
+        new OakMachine.Builder().withInitStage(newStage()).withNodeTypeRegistryCache(cache)
+                .withPackageFilesByReference(true)
+                .withRepositoryProfile(RepositoryProfile.LEAN).build()
+                .adminInitAndInspect(NodeTypeRegistryCacheTest::assertRegistered);
+        assertEquals("expect hit for a different repository profile", 2L, cache.getHits());
+
+        cache.clear();
+        new OakMachine.Builder().withInitStage(newStage()).withNodeTypeRegistryCache(cache).build()
+                .adminInitAndInspect(NodeTypeRegistryCacheTest::assertRegistered);
+        assertEquals("expect miss after clear", 2L, cache.getMisses());
+    }
+
+    @Test
+    public void testRestore_segmentStore() throws Exception {
+        final NodeTypeRegistryCache cache = new NodeTypeRegistryCache();
+        for (int i = 0; i < 2; i++) {
+            final File storeDir = temporaryFolder.newFolder();
+            final FileStore fileStore = FileStoreBuilder.fileStoreBuilder(storeDir).build();
+            try {
+                new OakMachine.Builder().withInitStage(newStage()).withNodeTypeRegistryCache(cache)
+                        .withNodeStoreSupplier(() -> SegmentNodeStoreBuilders.builder(fileStore).build())
+                        .build()
+                        .adminInitAndInspect(NodeTypeRegistryCacheTest::assertRegistered);
+            } finally {
+                fileStore.close();
+            }
+        }
+        assertEquals("expect one hit after the first store is closed", 1L, cache.getHits());
+    }
+
+    @Test
+    public void testNoCacheForErrors() throws Exception {
+        final NodeTypeRegistryCache cache = new NodeTypeRegistryCache();
+        for (int i = 0; i < 2; i++) {
+            final DefaultErrorListener errorListener = new DefaultErrorListener();
+            new OakMachine.Builder().withErrorListener(errorListener).withNodeTypeRegistryCache(cache)
+                    .withInitStage(new InitStage.Builder().withNs(InitStageTest.getNs())
+                            .withPrivileges(Collections.singletonList("bad:privilege")).build())
+                    .build().adminInitAndInspect(session -> {
+            });
+            assertEquals("expect the error is reported for each scan", 1,
+                    errorListener.getReportedViolations().size());
+        }
+        assertEquals("expect no hits", 0L, cache.getHits());
+        assertEquals("expect two misses", 2L, cache.getMisses());
+    }
+
+    @Test
+    public void testMissForChangedCnd() throws Exception {
+        final NodeTypeRegistryCache cache = new NodeTypeRegistryCache();
+        final File cndFile = temporaryFolder.newFile("a.cnd");
+        final URL cndUrl = cndFile.toURI().toURL();
+        Files.write(cndFile.toPath(), CND_A.getBytes(StandardCharsets.UTF_8));
+        final OakMachine machine = new OakMachine.Builder().withNodeTypeRegistryCache(cache)
+                .withInitStage(new InitStage.Builder().withUnorderedCndUrl(cndUrl).build())
+                .build();
+        machine.adminInitAndInspect(session -> {
+            assertFalse("expect no a:otherType", session.getWorkspace().getNodeTypeManager()
+                    .hasNodeType("a:otherType"));
+        });
+        Files.write(cndFile.toPath(), CND_A_CHANGED.getBytes(StandardCharsets.UTF_8));
+        machine.adminInitAndInspect(session -> {
+            assertTrue("expect a:otherType", session.getWorkspace().getNodeTypeManager()
+                    .hasNodeType("a:otherType"));
+        });
+        assertEquals("expect no hits", 0L, cache.getHits());
+        machine.adminInitAndInspect(session -> {
+            assertTrue("expect a:otherType", session.getWorkspace().getNodeTypeManager()
+                    .hasNodeType("a:otherType"));
+        });
+        assertEquals("expect hit for unchanged cnd", 1L, cache.getHits());
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        final NodeTypeRegistryCache cache = new NodeTypeRegistryCache(1);
+        final InitStage stageA = new InitStage.Builder().withUnorderedCndUrl(cndAUrl).build();
+        final InitStage stageB = new InitStage.Builder().withUnorderedCndUrl(cndBUrl).build();
+        for (InitStage stage : new InitStage[]{stageA, stageB, stageA}) {
+            new OakMachine.Builder().withNodeTypeRegistryCache(cache).withInitStage(stage).build()
+                    .adminInitAndInspect(session -> {
+                    });
+        }
+        assertEquals("expect no hits after eviction", 0L, cache.getHits());
+        assertEquals("expect three misses", 3L, cache.getMisses());
+    }
+
+    @Test
+    public void testDigestCnd() {
+        assertNull("expect null digest for null content", NodeTypeRegistryCache.digestCnd(null));
+        assertEquals("expect same digest for same content",
+                NodeTypeRegistryCache.digestCnd(CND_A), NodeTypeRegistryCache.digestCnd(CND_A));
+        assertFalse("expect different digest for changed content",
+                NodeTypeRegistryCache.digestCnd(CND_A).equals(NodeTypeRegistryCache.digestCnd(CND_A_CHANGED)));
+    }
+}
@@ -17,10 +17,16 @@
 package net.adamcin.oakpal.core;
 
 import junitx.util.PrivateAccessor;
+import net.adamcin.oakpal.api.AsyncCheck;
+import net.adamcin.oakpal.api.BatchProgressCheck;
 import net.adamcin.oakpal.api.Fun;
 import net.adamcin.oakpal.api.OsgiConfigInstallable;
 import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.PathInterestCheck;
 import net.adamcin.oakpal.api.ProgressCheck;
+import net.adamcin.oakpal.api.ReportCollector;
+import net.adamcin.oakpal.api.Rule;
+import net.adamcin.oakpal.api.RuleType;
 import net.adamcin.oakpal.api.SilenceableCheck;
 import net.adamcin.oakpal.api.SimpleProgressCheck;
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
@@ -30,6 +36,7 @@ import net.adamcin.oakpal.api.SlingInstallable;
 import net.adamcin.oakpal.core.sling.SlingSimulatorBackend;
 import net.adamcin.oakpal.testing.TestPackageUtil;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
 import org.apache.jackrabbit.oak.security.SecurityProviderImpl;
 import org.apache.jackrabbit.oak.spi.security.ConfigurationParameters;
@@ -49,6 +56,8 @@ import org.apache.jackrabbit.vault.packaging.PackageException;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.PackageProperties;
 import org.apache.jackrabbit.vault.packaging.Packaging;
+import org.apache.jackrabbit.vault.packaging.PackagingService;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageManagerImpl;
 import org.apache.jackrabbit.vault.packaging.impl.PackagingImpl;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -59,8 +68,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 import javax.jcr.Binary;
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.query.Query;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
@@ -73,6 +85,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -84,7 +97,9 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.jar.Manifest;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -92,6 +107,7 @@ import static net.adamcin.oakpal.api.Fun.compose1;
 import static net.adamcin.oakpal.api.Fun.toEntry;
 import static net.adamcin.oakpal.api.Fun.uncheck1;
 import static net.adamcin.oakpal.api.Fun.uncheckVoid1;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -101,12 +117,16 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.nullable;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 
@@ -472,6 +492,425 @@ public class OakMachineTest {
         assertTrue("uri is same", fooUrlLatch.getNow(false));
     }
 
+    @Test
+    public void testScanWithSnapshotBaseline() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final AtomicInteger repoInitCount = new AtomicInteger(0);
+        final AtomicInteger nodeStoreCount = new AtomicInteger(0);
+        final InitStage stage = new InitStage.Builder()
+                .withNs("foo", "http://foo.com")
+                .withRepoInits(Collections.singletonList("create path /baseline"))
+                .build();
+        final List<Boolean> preInstalled = new ArrayList<>();
+        final ProgressCheck check = mock(ProgressCheck.class);
+        doAnswer(call -> {
+            final Session session = call.getArgument(1, Session.class);
+            preInstalled.add(session.nodeExists("/tmp/foo/bar") && session.nodeExists("/baseline"));
+            return true;
+        }).when(check)
+                .beforeExtract(
+                        any(PackageId.class),
+                        any(Session.class),
+                        any(PackageProperties.class),
+                        any(MetaInf.class),
+                        any(List.class)
+                );
+        final OakMachine machine = builder().withInitStage(stage)
+                .withRepoInitProcesser((admin, reader) -> {
+                    repoInitCount.incrementAndGet();
+                    Fun.<Session>uncheckVoid1(session -> session.getRootNode().addNode("baseline", "nt:folder"))
+                            .accept(admin);
+                })
+                .withNodeStoreSupplier(() -> {
+                    nodeStoreCount.incrementAndGet();
+                    return new MemoryNodeStore();
+                })
+                .withPreInstallUrl(testPackage.toURI().toURL())
+                .withProgressCheck(check)
+                .withSnapshotBaseline(true)
+                .build();
+
+        machine.scanPackage(testPackage);
+        machine.scanPackage(testPackage);
+        machine.initAndInspect(session -> {
+            assertTrue("inspect session should be forked from baseline", session.nodeExists("/tmp/foo/bar"));
+            assertEquals("expect namespace", "http://foo.com", session.getNamespaceURI("foo"));
+        });
+
+        assertEquals("expect repoinit once", 1, repoInitCount.get());
+        assertEquals("expect node store supplier for baseline and each fork", 4, nodeStoreCount.get());
+        assertEquals("expect beforeExtract events", Arrays.asList(true, true), preInstalled);
+    }
+
+    @Test
+    public void testScanWithSnapshotBaseline_nodeStoreSupplier() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final File segmentDir = new File("target/test-output/OakMachineTest/snapshotSegmentStore");
+        final Supplier<NodeStore> segmentSupplier = SegmentTarScanNodeStore.supplier(segmentDir);
+        final List<NodeStore> nodeStores = new ArrayList<>();
+        final List<Boolean> forked = new ArrayList<>();
+        final ProgressCheck check = mock(ProgressCheck.class);
+        doAnswer(call -> {
+            forked.add(call.getArgument(1, Session.class).nodeExists("/baseline"));
+            return true;
+        }).when(check).afterExtract(any(PackageId.class), any(Session.class));
+        final OakMachine machine = builder()
+                .withInitStage(new InitStage.Builder()
+                        .withForcedRoot(new ForcedRoot().withPath("/baseline").withPrimaryType("nt:folder"))
+                        .build())
+                .withNodeStoreSupplier(() -> {
+                    final NodeStore nodeStore = segmentSupplier.get();
+                    nodeStores.add(nodeStore);
+                    return nodeStore;
+                })
+                .withProgressCheck(check)
+                .withSnapshotBaseline(true)
+                .build();
+
+        machine.scanPackage(testPackage);
+        machine.scanPackage(testPackage);
+
+        assertEquals("expect node store for baseline and each fork", 3, nodeStores.size());
+        assertTrue("expect segment stores",
+                nodeStores.stream().allMatch(nodeStore -> nodeStore instanceof SegmentTarScanNodeStore));
+        assertEquals("expect baseline content in each fork", Arrays.asList(true, true), forked);
+    }
+
+    @Test
+    public void testScanWithSnapshotBaseline_baselineErrors() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final ProgressCheck check = mock(ProgressCheck.class);
+        final OakMachine machine = builder()
+                .withInitStage(new InitStage.Builder()
+                        .withForcedRoot(new ForcedRoot().withPath("/baseline").withPrimaryType("foo:undefined"))
+                        .build())
+                .withProgressCheck(check)
+                .withSnapshotBaseline(true)
+                .build();
+
+        final List<CheckReport> firstReports = machine.scanPackage(testPackage);
+        final List<CheckReport> secondReports = machine.scanPackage(testPackage);
+        assertEquals("expect forced root error in first scan", 1, firstReports.get(0).getViolations().size());
+        assertEquals("expect same errors in later scan", firstReports.get(0).getViolations(),
+                secondReports.get(0).getViolations());
+
+        final ErrorListener resettingListener = new DefaultErrorListener() {
+            private final ReportCollector collector = new ReportCollector();
+
+            @Override
+            public String getResourceBundleBaseName() {
+                return DefaultErrorListener.class.getName();
+            }
+
+            @Override
+            public void startedScan() {
+                collector.clearViolations();
+            }
+
+            @Override
+            protected void reportViolation(final Violation violation) {
+                collector.reportViolation(violation);
+            }
+
+            @Override
+            public Collection<Violation> getReportedViolations() {
+                return collector.getReportedViolations();
+            }
+        };
+        final OakMachine resettingMachine = builder()
+                .withInitStage(new InitStage.Builder()
+                        .withForcedRoot(new ForcedRoot().withPath("/baseline").withPrimaryType("foo:undefined"))
+                        .build())
+                .withErrorListener(resettingListener)
+                .withProgressCheck(check)
+                .withSnapshotBaseline(true)
+                .build();
+        assertEquals("expect forced root error in first scan with resetting listener", 1,
+                resettingMachine.scanPackage(testPackage).get(0).getViolations().size());
+        assertEquals("expect baseline error in later scan with resetting listener", 1,
+                resettingMachine.scanPackage(testPackage).get(0).getViolations().size());
+        // baseline pass, reset after the baseline, and each scan, for each machine
+        verify(check, times(8)).startedScan();
+        verify(check, times(6)).finishedScan();
+    }
+
+    @Test
+    public void testBaselineRestoreSessionPrefixes() throws Exception {
+        builder().withInitStage(new InitStage.Builder().withNs("foo", "http://foo.com").build())
+                .build().adminInitAndInspect(admin -> {
+            admin.setNamespacePrefix("bar", "http://foo.com");
+            final Map<String, String> captured = OakMachine.Baseline.captureSessionPrefixes(admin);
+            assertEquals("expect remapped prefix", Collections.singletonMap("bar", "http://foo.com"), captured);
+            final OakMachine.Baseline baseline = new OakMachine.Baseline(
+                    mock(NodeState.class), captured);
+            assertEquals("expect same prefixes", captured, baseline.getSessionPrefixes());
+            admin.setNamespacePrefix("foo", "http://foo.com");
+            baseline.restoreSessionPrefixes(admin);
+            assertEquals("expect restored prefix", "bar", admin.getNamespacePrefix("http://foo.com"));
+        });
+    }
+
+    private static final class AsyncRecorder implements AsyncCheck {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void importedPath(final PackageId packageId, final String path, final Node node,
+                                 final PathAction action) throws RepositoryException {
+            threadNames.add(Thread.currentThread().getName());
+            events.add(path);
+            if ("/tmp/foo".equals(path)) {
+                throw new RepositoryException("async failure");
+            }
+        }
+
+        @Override
+        public void afterExtract(final PackageId packageId, final Session inspectSession) {
+            events.add("afterExtract");
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testScanWithAsyncCheckDispatch() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final AsyncRecorder syncRecorder = new AsyncRecorder();
+        builder().withProgressCheck(syncRecorder).build().scanPackage(testPackage);
+
+        final AsyncRecorder asyncRecorder = new AsyncRecorder();
+        final DefaultErrorListener errorListener = new DefaultErrorListener();
+        final ProgressCheck aliased = new ProgressCheckAliasFacade(asyncRecorder, "aliased");
+        builder().withProgressCheck(aliased)
+                .withErrorListener(errorListener)
+                .withAsyncCheckDispatch(true)
+                .build().scanPackage(testPackage);
+
+        assertTrue("expect afterExtract last", asyncRecorder.events.indexOf("afterExtract")
+                == asyncRecorder.events.size() - 1);
+        assertEquals("expect same events as sync dispatch", syncRecorder.events, asyncRecorder.events);
+        assertTrue("expect worker threads", asyncRecorder.threadNames.stream()
+                .allMatch(name -> name.startsWith("oakpal-async-check-")));
+        assertTrue("expect reported listener exception", errorListener.getReportedViolations().stream()
+                .anyMatch(violation -> violation.getDescription().contains("async failure")));
+    }
+
+    @Test
+    public void testIsAsyncCheck() {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        final ProgressCheck syncCheck = mock(ProgressCheck.class);
+        assertTrue("expect async", OakMachine.isAsyncCheck(asyncCheck));
+        assertFalse("expect sync", OakMachine.isAsyncCheck(syncCheck));
+        assertTrue("expect async alias", OakMachine.isAsyncCheck(new ProgressCheckAliasFacade(asyncCheck, "alias")));
+        assertFalse("expect sync alias", OakMachine.isAsyncCheck(new ProgressCheckAliasFacade(syncCheck, "alias")));
+        assertTrue("expect async silencing", OakMachine.isAsyncCheck(new SilencingCheckFacade(asyncCheck)));
+    }
+
+    private static final class BatchRecorder implements BatchProgressCheck {
+        private final List<String> events = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public void pathEvents(final PackageId packageId, final List<PathEvent> pathEvents,
+                               final Session inspectSession) throws RepositoryException {
+            batchSizes.add(pathEvents.size());
+            for (PathEvent pathEvent : pathEvents) {
+                if (pathEvent.getNode(inspectSession) != null) {
+                    events.add(pathEvent.getPath());
+                }
+            }
+        }
+
+        @Override
+        public void importedPath(final PackageId packageId, final String path, final Node node,
+                                 final PathAction action) {
+            events.add("importedPath");
+        }
+
+        @Override
+        public void afterExtract(final PackageId packageId, final Session inspectSession) {
+            events.add("afterExtract");
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testScanWithBatchProgressCheck() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final AsyncRecorder pathRecorder = new AsyncRecorder();
+        final BatchRecorder batchRecorder = new BatchRecorder();
+        builder().withProgressCheck(pathRecorder, new ProgressCheckAliasFacade(batchRecorder, "batch"))
+                .withScanMetrics(new ScanMetrics())
+                .build().scanPackage(testPackage);
+
+        assertFalse("expect no individual path events", batchRecorder.events.contains("importedPath"));
+        assertEquals("expect one batch", 1, batchRecorder.batchSizes.size());
+        assertEquals("expect same events as path check", pathRecorder.events, batchRecorder.events);
+
+        final BatchRecorder batchOnly = new BatchRecorder();
+        builder().withProgressCheck(batchOnly).build().scanPackage(testPackage);
+        assertEquals("expect same events as path check without path checks",
+                pathRecorder.events, batchOnly.events);
+    }
+
+    @Test
+    public void testScanWithBatchProgressCheck_pathException() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final BatchProgressCheck batchCheck = mock(BatchProgressCheck.class);
+        doThrow(RepositoryException.class).when(batchCheck)
+                .pathEvents(any(PackageId.class), any(), any(Session.class));
+        final CompletableFuture<String> pathLatch = new CompletableFuture<>();
+        final ErrorListener errorListener = mock(ErrorListener.class);
+        doAnswer(call -> {
+            pathLatch.complete(call.getArgument(3, String.class));
+            return true;
+        }).when(errorListener).onListenerPathException(any(Exception.class), any(ProgressCheck.class),
+                any(PackageId.class), anyString());
+        builder().withProgressCheck(batchCheck).withErrorListener(errorListener).build().scanPackage(testPackage);
+        assertEquals("expect the first path of the batch", "/", pathLatch.getNow(null));
+        verify(errorListener, never()).onListenerException(any(Exception.class), any(ProgressCheck.class),
+                any(PackageId.class));
+    }
+
+    @Test
+    public void testIsBatchCheck() {
+        final ProgressCheck batchCheck = mock(BatchProgressCheck.class);
+        final ProgressCheck pathCheck = mock(ProgressCheck.class);
+        assertTrue("expect batch", OakMachine.isBatchCheck(batchCheck));
+        assertFalse("expect path", OakMachine.isBatchCheck(pathCheck));
+        assertTrue("expect batch alias", OakMachine.isBatchCheck(new ProgressCheckAliasFacade(batchCheck, "alias")));
+        assertFalse("expect path alias", OakMachine.isBatchCheck(new ProgressCheckAliasFacade(pathCheck, "alias")));
+        assertTrue("expect batch silencing", OakMachine.isBatchCheck(new SilencingCheckFacade(batchCheck)));
+        assertFalse("expect path metrics",
+                OakMachine.isBatchCheck(MetricsCheckFacade.wrap(pathCheck, new ScanMetrics())));
+    }
+
+    private static final Pattern TMP_FOO_PATTERN = Pattern.compile("/tmp/foo(/.*)?");
+
+    private static final class PathInterestRecorder implements PathInterestCheck {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public @NotNull List<Rule> getPathInterestRules() {
+            return Collections.singletonList(new Rule(RuleType.INCLUDE, TMP_FOO_PATTERN));
+        }
+
+        @Override
+        public void importedPath(final PackageId packageId, final String path, final Node node,
+                                 final PathAction action) {
+            events.add(path);
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return Collections.emptyList();
+        }
+    }
+
+    private static final class BatchPathInterestRecorder implements BatchProgressCheck, PathInterestCheck {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public @NotNull List<Rule> getPathInterestRules() {
+            return Collections.singletonList(new Rule(RuleType.INCLUDE, TMP_FOO_PATTERN));
+        }
+
+        @Override
+        public void pathEvents(final PackageId packageId, final List<PathEvent> pathEvents,
+                               final Session inspectSession) {
+            pathEvents.forEach(pathEvent -> events.add(pathEvent.getPath()));
+        }
+
+        @Override
+        public Collection<Violation> getReportedViolations() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testScanWithPathInterestCheck() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final AsyncRecorder allPaths = new AsyncRecorder();
+        final PathInterestRecorder pathInterest = new PathInterestRecorder();
+        final BatchPathInterestRecorder batchInterest = new BatchPathInterestRecorder();
+        final BatchRecorder batchAllPaths = new BatchRecorder();
+        builder().withProgressCheck(allPaths, new ProgressCheckAliasFacade(pathInterest, "paths"),
+                batchInterest, batchAllPaths).build().scanPackage(testPackage);
+
+        final List<String> expectPaths = allPaths.events.stream()
+                .filter(path -> TMP_FOO_PATTERN.matcher(path).matches())
+                .collect(Collectors.toList());
+        assertFalse("expect some interesting paths", expectPaths.isEmpty());
+        assertEquals("expect only interesting paths", expectPaths, pathInterest.events);
+        assertEquals("expect only interesting batch paths", expectPaths, batchInterest.events);
+        assertTrue("expect all paths for batch check without interest",
+                batchAllPaths.events.containsAll(allPaths.events.stream()
+                        .filter(path -> path.startsWith("/"))
+                        .collect(Collectors.toList())));
+
+        final PathInterestRecorder pathInterestOnly = new PathInterestRecorder();
+        builder().withProgressCheck(pathInterestOnly).build().scanPackage(testPackage);
+        assertEquals("expect only interesting paths without other checks", expectPaths, pathInterestOnly.events);
+    }
+
+    @Test
+    public void testGetPathInterestCheck() {
+        final PathInterestCheck pathInterest = mock(PathInterestCheck.class);
+        final ProgressCheck check = mock(ProgressCheck.class);
+        assertSame("expect path interest", pathInterest, OakMachine.getPathInterestCheck(pathInterest));
+        assertNull("expect null", OakMachine.getPathInterestCheck(check));
+        assertSame("expect path interest alias", pathInterest,
+                OakMachine.getPathInterestCheck(new ProgressCheckAliasFacade(pathInterest, "alias")));
+        assertSame("expect path interest metrics", pathInterest,
+                OakMachine.getPathInterestCheck(MetricsCheckFacade.wrap(pathInterest, new ScanMetrics())));
+        assertNull("expect null silencing", OakMachine.getPathInterestCheck(new SilencingCheckFacade(check)));
+    }
+
+    @Test
+    public void testScanWithScanMetrics() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("subsubtest.zip");
+        final AsyncRecorder recorder = new AsyncRecorder();
+        final ScanMetrics metrics = new ScanMetrics();
+        final OakMachine machine = builder()
+                .withProgressCheck(new ProgressCheckAliasFacade(recorder, "recorder"))
+                .withScanMetrics(metrics)
+                .withAsyncCheckDispatch(true)
+                .build();
+        assertSame("expect same metrics", metrics, machine.getScanMetrics());
+        assertTrue("expect unwrapped checks", machine.getProgressChecks().get(0) instanceof ProgressCheckAliasFacade);
+        final List<CheckReport> reports = machine.scanPackage(testPackage);
+
+        assertTrue("expect report for recorder", reports.stream()
+                .anyMatch(report -> "recorder".equals(report.getCheckName())));
+        assertEquals("expect one scan", 1L, metrics.getPhases().get(ScanMetrics.PHASE_SCAN).getCount());
+        assertEquals("expect one startedScan", 1L,
+                metrics.getCheckEvents().get("recorder").get("startedScan").getCount());
+        assertEquals("expect importedPath for each path event", recorder.events.stream()
+                        .filter(event -> event.startsWith("/")).count(),
+                metrics.getCheckEvents().get("recorder").get("importedPath").getCount());
+        assertEquals("expect extract for root and subpackages", 4, metrics.getExtracts().size());
+        assertEquals("expect subpackages", new HashSet<>(Arrays.asList("my_packages:subtest",
+                "my_packages:sub_a", "my_packages:sub_b")), metrics.getSubpackages().keySet());
+        assertEquals("expect one preinstall phase", 1L,
+                metrics.getPhases().get(ScanMetrics.PHASE_PRE_INSTALL).getCount());
+    }
+
+    @Test
+    public void testIsAsyncCheck_metrics() {
+        final ProgressCheck asyncCheck = mock(AsyncCheck.class);
+        final ProgressCheck syncCheck = mock(ProgressCheck.class);
+        final ScanMetrics metrics = new ScanMetrics();
+        assertTrue("expect async metrics", OakMachine.isAsyncCheck(MetricsCheckFacade.wrap(asyncCheck, metrics)));
+        assertFalse("expect sync metrics", OakMachine.isAsyncCheck(MetricsCheckFacade.wrap(syncCheck, metrics)));
+    }
+
     @Test(expected = AbortedScanException.class)
     public void testScanInvalidPackage() throws Exception {
         final File testPackage = TestPackageUtil.prepareTestPackage("unfiltered_package.zip");
@@ -637,7 +1076,7 @@ public class OakMachineTest {
             return true;
         }).when(errorListener).onSubpackageException(any(Exception.class), any(PackageId.class));
         builder().withErrorListener(errorListener).build()
-                .processSubpackage(session, manager, sub1, root, false);
+                .processSubpackage(session, manager, null, sub1, root, false);
         assertTrue("error is of type", eLatch.getNow(null) instanceof RepositoryException);
         assertEquals("package id is", sub1, idLatch.getNow(null));
 
@@ -660,7 +1099,7 @@ public class OakMachineTest {
             return true;
         }).when(errorListener).onSubpackageException(any(Exception.class), any(PackageId.class));
         builder().withErrorListener(errorListener).build()
-                .processSubpackage(session, manager, sub1, root, false);
+                .processSubpackage(session, manager, null, sub1, root, false);
     }
 
     @Test
@@ -688,7 +1127,7 @@ public class OakMachineTest {
         builder()
                 .withSlingSimulator(installWatcher)
                 .withErrorListener(errorListener).build()
-                .processEmbeddedPackage(session, manager, installable, false);
+                .processEmbeddedPackage(session, manager, null, installable, false);
         assertTrue("error is of type", eLatch.getNow(null) instanceof RepositoryException);
         assertSame("expect same installable", installable, installableLatch.getNow(null));
     }
@@ -720,7 +1159,7 @@ public class OakMachineTest {
         builder()
                 .withSlingSimulator(installWatcher)
                 .withErrorListener(errorListener).build()
-                .processEmbeddedPackage(session, manager, installable, false);
+                .processEmbeddedPackage(session, manager, null, installable, false);
     }
 
     @Test
@@ -742,7 +1181,7 @@ public class OakMachineTest {
             return true;
         }).when(errorListener).onSubpackageException(any(Exception.class), any(PackageId.class));
         builder().withErrorListener(errorListener).build()
-                .internalProcessSubpackage(session, manager, sub1, false,
+                .internalProcessSubpackage(session, manager, null, sub1, false,
                         () -> manager.open(sub1), check -> check.identifySubpackage(sub1, root),
                         error -> errorListener.onSubpackageException(error, sub1));
         assertTrue("error is of type", eLatch.getNow(null) instanceof PackageException);
@@ -770,7 +1209,7 @@ public class OakMachineTest {
         }).when(errorListener).onSubpackageException(any(Exception.class), any(PackageId.class));
 
         builder().withErrorListener(errorListener).build()
-                .internalProcessSubpackage(session, manager, sub1, false,
+                .internalProcessSubpackage(session, manager, null, sub1, false,
                         () -> manager.open(sub1), check -> check.identifySubpackage(sub1, root),
                         error -> errorListener.onSubpackageException(error, sub1));
         assertTrue("error is of type", eLatch.getNow(null) instanceof RuntimeException);
@@ -785,7 +1224,7 @@ public class OakMachineTest {
         final JcrPackageManager manager = mock(JcrPackageManager.class);
         final Session session = mock(Session.class);
         final PackageId root = PackageId.fromString("my_packages:subsubtest");
-        new OakMachine.Builder().build().processInstallableQueue(session, manager, root, false);
+        new OakMachine.Builder().build().processInstallableQueue(session, manager, null, root, false);
     }
 
 /*
@@ -818,7 +1257,7 @@ public class OakMachineTest {
                 .withSlingSimulator(sling)
                 .withErrorListener(errorListener)
                 .build()
-                .processInstallableQueue(session, manager, root, false);
+                .processInstallableQueue(session, manager, null, root, false);
 
         assertTrue("error is of type", eLatch.getNow(null) instanceof IllegalStateException);
         assertSame("expect same installable", installable, installableLatch.getNow(null));
@@ -858,7 +1297,7 @@ public class OakMachineTest {
 
         new OakMachine.Builder()
                 .withSlingSimulator(installWatcher)
-                .build().processInstallableQueue(session, manager, root, false);
+                .build().processInstallableQueue(session, manager, null, root, false);
 
         assertEquals("expect dequeued values",
                 Arrays.asList(Optional.of(installable), Optional.empty()), dequeuedValues);
@@ -919,7 +1358,7 @@ public class OakMachineTest {
                 .withRepoInitProcesser(repoInitProcessor)
                 .withSlingSimulator(installWatcher)
                 .withProgressCheck(check)
-                .build().processInstallableQueue(session, manager, root, false);
+                .build().processInstallableQueue(session, manager, null, root, false);
 
         assertEquals("expect dequeued values",
                 Arrays.asList(Optional.of(installable), Optional.empty()), dequeuedValues);
@@ -984,7 +1423,7 @@ public class OakMachineTest {
                 .withErrorListener(errorListener)
                 .withRepoInitProcesser(repoInitProcessor)
                 .withSlingSimulator(installWatcher)
-                .build().processInstallableQueue(session, manager, root, false);
+                .build().processInstallableQueue(session, manager, null, root, false);
 
         assertEquals("expect dequeued values",
                 Arrays.asList(Optional.of(installable), Optional.empty()), dequeuedValues);
@@ -1007,7 +1446,7 @@ public class OakMachineTest {
         // upload try block
         doThrow(NullPointerException.class).when(manager)
                 .upload(any(InputStream.class), anyBoolean(), anyBoolean());
-        builder().build().processPackageUrl(session, manager, false, testPackage.toURI().toURL());
+        builder().build().processPackageUrl(session, manager, null, false, testPackage.toURI().toURL());
     }
 
     @Test(expected = AbortedScanException.class)
@@ -1022,7 +1461,7 @@ public class OakMachineTest {
         // upload try block
         doThrow(NullPointerException.class).when(manager)
                 .upload(any(File.class), anyBoolean(), anyBoolean(), nullable(String.class), anyBoolean());
-        builder().build().processPackageFile(session, manager, true, testPackage);
+        builder().build().processPackageFile(session, manager, null, true, testPackage);
     }
 
     @Test
@@ -1187,13 +1626,89 @@ public class OakMachineTest {
         }).when(errorListener).onImporterException(any(Exception.class), any(PackageId.class), anyString());
         final OakMachine machine = builder().withErrorListener(errorListener).build();
         final OakMachine.ImporterListenerAdapter adapter =
-                machine.new ImporterListenerAdapter(expectId, session, false);
+                machine.new ImporterListenerAdapter(expectId, session, false, null);
         adapter.onError(ProgressTrackerListener.Mode.PATHS, expectPath, expectError);
         assertSame("error is same", expectError, eLatch.getNow(null));
         assertEquals("package id is", expectId, idLatch.getNow(null));
         assertEquals("path is", expectPath, pathLatch.getNow(null));
     }
 
+    @Test
+    public void testImporterListenerAdapter_onMessage_lazyNode() throws Exception {
+        final PackageId expectId = PackageId.fromString("my_packages:tmp_foo_bar");
+        final String expectPath = "/missing/path";
+        final Session session = mock(Session.class);
+        when(session.getNode(expectPath)).thenThrow(new PathNotFoundException(expectPath));
+
+        final CompletableFuture<Exception> eLatch = new CompletableFuture<>();
+        final ErrorListener errorListener = mock(ErrorListener.class);
+        doAnswer(call -> {
+            eLatch.complete(call.getArgument(0, Exception.class));
+            return true;
+        }).when(errorListener).onImporterException(any(Exception.class), eq(expectId), eq(expectPath));
+
+        final PathInterestCheck uninterested = mock(PathInterestCheck.class);
+        when(uninterested.isInterestedInPath(anyString())).thenReturn(false);
+        builder().withErrorListener(errorListener).withProgressCheck(uninterested).build()
+                .new ImporterListenerAdapter(expectId, session, false, null)
+                .onMessage(ProgressTrackerListener.Mode.PATHS, "A", expectPath);
+        verify(session, never()).nodeExists(anyString());
+        verify(session, never()).getNode(anyString());
+        assertFalse("expect no error without an interested check", eLatch.isDone());
+
+        final CompletableFuture<String> nodePath = new CompletableFuture<>();
+        final PathInterestCheck pathOnly = mock(PathInterestCheck.class);
+        when(pathOnly.isInterestedInPath(anyString())).thenReturn(true);
+        doAnswer(call -> nodePath.complete(call.getArgument(2, Node.class).getPath())).when(pathOnly)
+                .importedPath(any(PackageId.class), anyString(), any(Node.class), any(PathAction.class));
+        builder().withErrorListener(errorListener).withProgressCheck(pathOnly).build()
+                .new ImporterListenerAdapter(expectId, session, false, null)
+                .onMessage(ProgressTrackerListener.Mode.PATHS, "A", expectPath);
+        assertEquals("expect node path", expectPath, nodePath.getNow(null));
+        verify(session, never()).getNode(anyString());
+        assertFalse("expect no error when the node is not used", eLatch.isDone());
+
+        final PathInterestCheck nodeUser = mock(PathInterestCheck.class);
+        when(nodeUser.isInterestedInPath(anyString())).thenReturn(true);
+        doAnswer(call -> call.getArgument(2, Node.class).getName()).when(nodeUser)
+                .importedPath(any(PackageId.class), anyString(), any(Node.class), any(PathAction.class));
+        builder().withErrorListener(errorListener).withProgressCheck(nodeUser).build()
+                .new ImporterListenerAdapter(expectId, session, false, null)
+                .onMessage(ProgressTrackerListener.Mode.PATHS, "A", expectPath);
+        verify(session, times(1)).getNode(expectPath);
+        assertTrue("expect path not found when the node is used",
+                eLatch.getNow(null) instanceof PathNotFoundException);
+
+        final ProgressCheck legacy = mock(ProgressCheck.class);
+        builder().withErrorListener(errorListener).withProgressCheck(pathOnly, legacy).build()
+                .new ImporterListenerAdapter(expectId, session, false, null)
+                .onMessage(ProgressTrackerListener.Mode.PATHS, "A", expectPath);
+        verify(session, times(2)).getNode(expectPath);
+        verify(legacy, never()).importedPath(any(PackageId.class), anyString(), any(Node.class),
+                any(PathAction.class));
+    }
+
+    @Test
+    public void testImporterListenerAdapter_asyncDispatcher() throws Exception {
+        final PackageId expectId = PackageId.fromString("my_packages:tmp_foo_bar");
+        final String expectPath = "/correct/path";
+        final Session session = mock(Session.class);
+        final Node node = mock(Node.class);
+        when(session.getNode(expectPath)).thenReturn(node);
+
+        final AsyncCheck asyncCheck = mock(AsyncCheck.class);
+        final OakMachine machine = builder().withProgressCheck(asyncCheck).withAsyncCheckDispatch(true).build();
+        try (AsyncCheckDispatcher dispatcher = new AsyncCheckDispatcher(Collections.singletonList(asyncCheck),
+                AsyncCheckDispatcher.DEFAULT_BATCH_SIZE, AsyncCheckDispatcher.DEFAULT_RING_SIZE)) {
+            final OakMachine.ImporterListenerAdapter adapter =
+                    machine.new ImporterListenerAdapter(expectId, session, false, dispatcher);
+            adapter.onMessage(ProgressTrackerListener.Mode.PATHS, "A", expectPath);
+            verify(asyncCheck, never()).importedPath(expectId, expectPath, node, PathAction.ADDED);
+            adapter.barrier();
+            verify(asyncCheck, times(1)).importedPath(expectId, expectPath, node, PathAction.ADDED);
+        }
+    }
+
     @Test(expected = RuntimeException.class)
     public void testImporterListenerAdapter_onMessage_error() throws Exception {
         final PackageId expectId = PackageId.fromString("my_packages:tmp_foo_bar");
@@ -1213,7 +1728,7 @@ public class OakMachineTest {
         }).when(errorListener).onImporterException(any(Exception.class), any(PackageId.class), anyString());
         final OakMachine machine = builder().withErrorListener(errorListener).build();
         final OakMachine.ImporterListenerAdapter adapter =
-                machine.new ImporterListenerAdapter(expectId, session, false);
+                machine.new ImporterListenerAdapter(expectId, session, false, null);
         adapter.onMessage(ProgressTrackerListener.Mode.PATHS, "E", expectPath);
         assertEquals("package id is", expectId, idLatch.getNow(null));
         assertEquals("path is", expectPath, pathLatch.getNow(null));
@@ -1305,6 +1820,112 @@ public class OakMachineTest {
         assertEquals("blobChildren is not empty @>4k", 1, blobChildren.length);
     }
 
+    @Test
+    public void testScanWithPackageFilesByReference() throws Exception {
+        final File manifestPackage = TestPackageUtil.prepareTestPackage("null-dependency-test.zip");
+        final File testPackage = TestPackageUtil.prepareTestPackage("subsubtest.zip");
+        final List<PackageId> subpackageIds = new ArrayList<>();
+        final CompletableFuture<Boolean> manifestWasRead = new CompletableFuture<>();
+        final ProgressCheck check = new SimpleProgressCheck() {
+            @Override
+            public void readManifest(final PackageId packageId, final Manifest manifest) {
+                manifestWasRead.complete(Util.getManifestHeaderValues(manifest, "Content-Package-Id")
+                        .contains("my_packages:null-dependency-test"));
+            }
+
+            @Override
+            public void identifySubpackage(final PackageId packageId, final PackageId parentId) {
+                subpackageIds.add(packageId);
+            }
+        };
+        builder().withPackageFilesByReference(true).withProgressCheck(check).build()
+                .scanPackage(manifestPackage, testPackage);
+        assertTrue("manifest was read from archive", manifestWasRead.isDone() && manifestWasRead.get());
+        assertEquals("expect subpackages", Arrays.asList(
+                PackageId.fromString("my_packages:subtest"),
+                PackageId.fromString("my_packages:sub_a"),
+                PackageId.fromString("my_packages:sub_b")), subpackageIds);
+    }
+
+    @Test
+    public void testRepositoryProfile() throws Exception {
+        builder().build().adminInitAndInspect(session -> {
+            assertEquals("expect nodetype index enabled by default", "property",
+                    session.getNode("/oak:index/nodetype").getProperty("type").getString());
+        });
+        builder().withRepositoryProfile(RepositoryProfile.LEAN).build().adminInitAndInspect(session -> {
+            assertEquals("expect nodetype index disabled", "disabled",
+                    session.getNode("/oak:index/nodetype").getProperty("type").getString());
+            assertEquals("expect uuid index enabled", "property",
+                    session.getNode("/oak:index/uuid").getProperty("type").getString());
+            final Node folder = session.getRootNode().addNode("leanFolder", "nt:folder");
+            folder.addMixin("mix:referenceable");
+            session.save();
+            assertTrue("expect lookup by identifier",
+                    folder.isSame(session.getNodeByIdentifier(folder.getIdentifier())));
+            final NodeIterator nodes = session.getWorkspace().getQueryManager()
+                    .createQuery("select * from [nt:folder] where name() = 'leanFolder'", Query.JCR_SQL2)
+                    .execute().getNodes();
+            assertTrue("expect query result by traversal", nodes.hasNext() && folder.isSame(nodes.nextNode()));
+        });
+
+        final File testPackage = TestPackageUtil.prepareTestPackage("subsubtest.zip");
+        final List<PackageId> subpackageIds = new ArrayList<>();
+        final ProgressCheck check = new SimpleProgressCheck() {
+            @Override
+            public void identifySubpackage(final PackageId packageId, final PackageId parentId) {
+                subpackageIds.add(packageId);
+            }
+        };
+        builder().withRepositoryProfile(RepositoryProfile.LEAN).withProgressCheck(check).build()
+                .scanPackage(testPackage);
+        assertEquals("expect subpackages", Arrays.asList(
+                PackageId.fromString("my_packages:subtest"),
+                PackageId.fromString("my_packages:sub_a"),
+                PackageId.fromString("my_packages:sub_b")), subpackageIds);
+    }
+
+    @Test
+    public void testRegisterPackageFileByReference() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final PackageId packageId = PackageId.fromString("my_packages:tmp_foo_bar");
+        builder().withPackageFilesByReference(true).build().adminInitAndInspect(session -> {
+            final JcrPackageManagerImpl manager = (JcrPackageManagerImpl) PackagingService.getPackageManager(session);
+            try (JcrPackage jcrPackage = OakMachine.registerPackageFileByReference(session, manager, testPackage)) {
+                assertEquals("expect package id", packageId, jcrPackage.getDefinition().getId());
+                assertEquals("expect package file", testPackage, jcrPackage.getPackage().getFile());
+                try (InputStream input = jcrPackage.getData().getBinary().getStream()) {
+                    assertArrayEquals("expect same content", FileUtils.readFileToByteArray(testPackage),
+                            IOUtils.toByteArray(input));
+                }
+            }
+            // register again to replace the existing package
+            try (JcrPackage jcrPackage = OakMachine.registerPackageFileByReference(session, manager, testPackage)) {
+                assertEquals("expect one package", 1, manager.listPackages().size());
+                assertTrue("expect package node", jcrPackage.getNode().isSame(manager.open(packageId).getNode()));
+            }
+        });
+    }
+
+    @Test
+    public void testFileReferenceNodeStore() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final FileReferenceNodeStore nodeStore = new FileReferenceNodeStore(new MemoryNodeStore());
+        try (InputStream input = FileReferenceNodeStore.openReference(testPackage)) {
+            final org.apache.jackrabbit.oak.api.Blob blob = nodeStore.createBlob(input);
+            assertTrue("expect file blob", blob instanceof FileReferenceNodeStore.FileBlob);
+            assertEquals("expect file length", testPackage.length(), blob.length());
+            try (InputStream blobInput = blob.getNewStream()) {
+                assertArrayEquals("expect same content", FileUtils.readFileToByteArray(testPackage),
+                        IOUtils.toByteArray(blobInput));
+            }
+        }
+        final org.apache.jackrabbit.oak.api.Blob copied =
+                nodeStore.createBlob(new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)));
+        assertFalse("expect copied blob", copied instanceof FileReferenceNodeStore.FileBlob);
+        assertEquals("expect copied length", 3L, copied.length());
+    }
+
     private static Binary alphaFill(final @NotNull Session session, final int bufSize) throws RepositoryException {
         final byte[] buffer = new byte[bufSize];
         final String fillString = "abcdefghijklmnopqrstuvwxyz";
@@ -43,6 +43,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -200,6 +202,65 @@ public class OakpalPlanTest {
                         .isEnablePreInstallHooks());
     }
 
+    @Test
+    public void testBuilder_withSegmentStore() {
+        assertFalse("segmentStore default", builder().build().isSegmentStore());
+        assertTrue("segmentStore true",
+                builder().withSegmentStore(true).build().isSegmentStore());
+        assertTrue("segmentStore derived",
+                builder().startingWithPlan(builder().withSegmentStore(true).build()).build().isSegmentStore());
+        final OakpalPlan fromJson = OakpalPlan.fromJson(builder().withSegmentStore(true).build().toJson());
+        assertTrue("segmentStore fromJson", fromJson.isSegmentStore());
+        assertEquals("segmentStore toJson", JsonValue.TRUE,
+                fromJson.toJson().get(OakpalPlan.keys().segmentStore()));
+    }
+
+    @Test
+    public void testBuilder_withPackageFilesByReference() {
+        assertFalse("packageFilesByReference default", builder().build().isPackageFilesByReference());
+        assertTrue("packageFilesByReference true",
+                builder().withPackageFilesByReference(true).build().isPackageFilesByReference());
+        assertTrue("packageFilesByReference derived",
+                builder().startingWithPlan(builder().withPackageFilesByReference(true).build()).build()
+                        .isPackageFilesByReference());
+        final OakpalPlan fromJson = OakpalPlan.fromJson(builder().withPackageFilesByReference(true).build().toJson());
+        assertTrue("packageFilesByReference fromJson", fromJson.isPackageFilesByReference());
+        assertEquals("packageFilesByReference toJson", JsonValue.TRUE,
+                fromJson.toJson().get(OakpalPlan.keys().packageFilesByReference()));
+    }
+
+    @Test
+    public void testBuilder_withRepositoryProfile() {
+        assertNull("repositoryProfile default", builder().build().getRepositoryProfile());
+        assertSame("repositoryProfile lean", RepositoryProfile.LEAN,
+                builder().withRepositoryProfile(RepositoryProfile.LEAN).build().getRepositoryProfile());
+        assertSame("repositoryProfile derived", RepositoryProfile.LEAN,
+                builder().startingWithPlan(builder().withRepositoryProfile(RepositoryProfile.LEAN).build()).build()
+                        .getRepositoryProfile());
+        final OakpalPlan fromJson = OakpalPlan.fromJson(builder()
+                .withRepositoryProfile(RepositoryProfile.LEAN).build().toJson());
+        assertSame("repositoryProfile fromJson", RepositoryProfile.LEAN, fromJson.getRepositoryProfile());
+        assertEquals("repositoryProfile toJson", "LEAN",
+                fromJson.toJson().getString(OakpalPlan.keys().repositoryProfile()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromJson_unknownRepositoryProfile() {
+        OakpalPlan.fromJson(key(OakpalPlan.keys().repositoryProfile(), "lean ").get());
+    }
+
+    @Test
+    public void testFromJsonUrl_unknownRepositoryProfile() throws Exception {
+        final File planFile = new File("target/test-output/OakpalPlanTest/unknown-repository-profile.json");
+        planFile.getParentFile().mkdirs();
+        Files.write(planFile.toPath(), key(OakpalPlan.keys().repositoryProfile(), "medium").get().toString()
+                .getBytes(StandardCharsets.UTF_8));
+        final Result<OakpalPlan> planResult = OakpalPlan.fromJson(planFile.toURI().toURL());
+        assertTrue("expect failure", planResult.isFailure());
+        assertTrue("expect valid values in message", planResult.getError()
+                .map(Throwable::getMessage).orElse("").contains("[FULL, LEAN]"));
+    }
+
     @Test
     public void testBuilder_withInstallHookPolicy() {
         assertNull("implicit null", builder().build().getInstallHookPolicy());
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.Result;
+import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.api.Violation;
+import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelScanExecutorTest {
+
+    private static OakpalPlan basicPlan() {
+        return OakpalPlan.fromJson(OakpalPlan.BASIC_PLAN_URL).getOrDefault(null);
+    }
+
+    @Test
+    public void testGetParallelism() {
+        assertEquals("expect min parallelism", 1,
+                new ParallelScanExecutor(0, Util.getDefaultClassLoader(), null).getParallelism());
+        assertEquals("expect parallelism", 4,
+                new ParallelScanExecutor(4, Util.getDefaultClassLoader(), null).getParallelism());
+    }
+
+    @Test
+    public void testScanAll_empty() {
+        assertEquals("expect empty results", Collections.emptyList(),
+                new ParallelScanExecutor(2, Util.getDefaultClassLoader(), null)
+                        .scanAll(Collections.emptyList()));
+    }
+
+    @Test
+    public void testScanAll() throws Exception {
+        final File goodPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final File badPackage = TestPackageUtil.prepareTestPackage("unfiltered_package.zip");
+        final OakpalPlan plan = basicPlan();
+        final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        final AtomicInteger customized = new AtomicInteger(0);
+        final ParallelScanExecutor executor = new ParallelScanExecutor(2, Util.getDefaultClassLoader(),
+                builder -> {
+                    customized.incrementAndGet();
+                    builder.withJcrCustomizer(jcr -> threadNames.add(Thread.currentThread().getName()));
+                });
+
+        final List<ParallelScanExecutor.ScanJob> jobs = Arrays.asList(
+                new ParallelScanExecutor.ScanJob(plan, Collections.singletonList(goodPackage)),
+                new ParallelScanExecutor.ScanJob(plan, Collections.singletonList(badPackage)),
+                new ParallelScanExecutor.ScanJob(plan, Arrays.asList(goodPackage, goodPackage)));
+
+        final List<Result<List<CheckReport>>> results = executor.scanAll(jobs);
+        assertEquals("expect customized jobs", 3, customized.get());
+        assertEquals("expect result per job", 3, results.size());
+        assertTrue("expect success first", results.get(0).isSuccess());
+        assertTrue("expect failure second", results.get(1).findCause(AbortedScanException.class).isPresent());
+        assertTrue("expect success third", results.get(2).isSuccess());
+        assertTrue("expect scan threads", threadNames.stream().allMatch(name -> name.startsWith("oakpal-scan-")));
+        assertTrue("expect shared node type registrations",
+                executor.getNodeTypeRegistryCache().getHits() > 0);
+
+        final List<CheckReport> sequential = plan.toOakMachineBuilder(new DefaultErrorListener(),
+                Util.getDefaultClassLoader()).build().scanPackage(goodPackage);
+        assertEquals("expect same check names as sequential scan",
+                sequential.stream().map(CheckReport::getCheckName).collect(Collectors.toList()),
+                results.get(0).getOrDefault(Collections.emptyList()).stream()
+                        .map(CheckReport::getCheckName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testMergeReports() {
+        final Violation v1 = new SimpleViolation(Severity.MINOR, "one");
+        final Violation v2 = new SimpleViolation(Severity.MAJOR, "two");
+        final Violation v3 = new SimpleViolation(Severity.SEVERE, "three");
+        final List<CheckReport> first = Arrays.asList(
+                new SimpleReport("alpha", Collections.singletonList(v1)),
+                new SimpleReport("beta", Collections.emptyList()));
+        final List<CheckReport> second = Arrays.asList(
+                new SimpleReport("gamma", Collections.singletonList(v3)),
+                new SimpleReport("alpha", Collections.singletonList(v2)));
+
+        assertEquals("expect merged reports", Arrays.asList(
+                new SimpleReport("alpha", Arrays.asList(v1, v2)),
+                new SimpleReport("beta", Collections.emptyList()),
+                new SimpleReport("gamma", Collections.singletonList(v3))),
+                ParallelScanExecutor.mergeReports(Arrays.asList(first, second)));
+    }
+
+    @Test
+    public void testAwaitResult() {
+        final CompletableFuture<List<CheckReport>> success = new CompletableFuture<>();
+        final List<CheckReport> reports = Collections.emptyList();
+        success.complete(reports);
+        assertSame("expect same reports", reports,
+                ParallelScanExecutor.awaitResult(success).getOrDefault(null));
+
+        final CompletableFuture<List<CheckReport>> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("failed"));
+        assertTrue("expect cause", ParallelScanExecutor.awaitResult(failure)
+                .findCause(IllegalStateException.class).isPresent());
+
+        final CompletableFuture<List<CheckReport>> errored = new CompletableFuture<>();
+        errored.completeExceptionally(new AssertionError("failed"));
+        assertTrue("expect wrapped error", ParallelScanExecutor.awaitResult(errored).isFailure());
+    }
+
+    @Test
+    public void testScanThreadFactory() {
+        final ParallelScanExecutor.ScanThreadFactory factory = new ParallelScanExecutor.ScanThreadFactory();
+        final List<Thread> threads = IntStream.range(0, 2)
+                .mapToObj(i -> factory.newThread(() -> {
+                })).collect(Collectors.toList());
+        assertEquals("expect names", Arrays.asList("oakpal-scan-1", "oakpal-scan-2"),
+                threads.stream().map(Thread::getName).collect(Collectors.toList()));
+        assertTrue("expect daemon", threads.stream().allMatch(Thread::isDaemon));
+    }
+}
@@ -19,15 +19,24 @@ package net.adamcin.oakpal.core;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.stream.JsonParsingException;
 import java.io.File;
+import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import net.adamcin.oakpal.api.Severity;
 import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.api.Violation;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.junit.Before;
 import org.junit.Test;
@@ -98,4 +107,100 @@ public class ReportMapperTest {
                 new ArrayList<>(ReportMapper.readReportsFromFile(jsonFile)));
 
     }
+
+    @Test
+    public void testWriteReportsWithMetrics() throws Exception {
+        final File jsonFile = new File(baseDir, "reports-with-metrics.json");
+        final List<CheckReport> originalReports = singletonList(
+                new SimpleReport("test/first",
+                        singletonList(
+                                new SimpleViolation(Severity.MINOR,
+                                        "one",
+                                        PackageId.fromString("test:first")))));
+        final ScanMetrics metrics = new ScanMetrics();
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 1000L);
+
+        assertFalse("expect no metrics key",
+                ReportMapper.reportsToJsonObject(originalReports, null).containsKey(ReportMapper.keys().metrics()));
+        final JsonObject json = ReportMapper.reportsToJsonObject(originalReports, metrics);
+        assertEquals("expect metrics", metrics.toJson(), json.getJsonObject(ReportMapper.keys().metrics()));
+
+        ReportMapper.writeReportsToFile(originalReports, metrics, jsonFile);
+        assertEquals("expect same reports after read", originalReports,
+                ReportMapper.readReportsFromFile(jsonFile));
+    }
+
+    @Test
+    public void testWriteReportsMatchesJsonObject() throws Exception {
+        final List<CheckReport> originalReports = asList(
+                new SimpleReport("test/first",
+                        singletonList(
+                                new SimpleViolation(Severity.MINOR,
+                                        "one",
+                                        PackageId.fromString("test:first")))),
+                new SimpleReport("test/empty", Collections.emptyList()),
+                new SimpleReport(null, singletonList(new SimpleViolation(Severity.MAJOR, null))));
+        final ScanMetrics metrics = new ScanMetrics();
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 1000L);
+
+        final StringWriter writer = new StringWriter();
+        ReportMapper.writeReports(originalReports, metrics, () -> writer);
+        try (JsonReader reader = Json.createReader(new StringReader(writer.toString()))) {
+            assertEquals("expect streamed json equal to the json object",
+                    ReportMapper.reportsToJsonObject(originalReports, metrics), reader.readObject());
+        }
+    }
+
+    @Test
+    public void testWriteReportsToOpenWriter() throws Exception {
+        final List<CheckReport> originalReports = asList(
+                new SimpleReport("test/first", singletonList(new SimpleViolation(Severity.MINOR, "one"))),
+                new SimpleReport("test/second", singletonList(new SimpleViolation(Severity.MAJOR, "two"))));
+        final StringWriter stringWriter = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(stringWriter)) {
+            ReportMapper.writeReports(originalReports, writer);
+            writer.println();
+            writer.print("after");
+        }
+        assertTrue("expect writer still open after reports", stringWriter.toString().endsWith("after"));
+        final List<CheckReport> readReports = new ArrayList<>();
+        ReportMapper.readReports(() -> new StringReader(stringWriter.toString().replace("after", "")),
+                readReports::add);
+        assertEquals("expect same reports from consumer", originalReports, readReports);
+    }
+
+    @Test
+    public void testReadReportsSkipsUnknownKeys() throws Exception {
+        final String json = "{\"before\":{\"reports\":[{\"checkName\":\"nested\"}]},"
+                + "\"reports\":[1,[{}],{\"checkName\":\"test/first\",\"extra\":[{\"a\":[true,null,1.5]}],"
+                + "\"violations\":[{\"severity\":\"MAJOR\",\"description\":\"one\",\"extra\":{\"b\":2}}]},"
+                + "{}],\"metrics\":{\"phases\":{\"scan\":1}}}";
+        final List<CheckReport> reports = ReportMapper.readReports(() -> new StringReader(json));
+        assertEquals("expect reports", asList(
+                new SimpleReport("test/first", singletonList(new SimpleViolation(Severity.MAJOR, "one"))),
+                new SimpleReport("", Collections.emptyList())), reports);
+        assertTrue("expect no reports for empty object",
+                ReportMapper.readReports(() -> new StringReader("{}")).isEmpty());
+    }
+
+    @Test(expected = JsonParsingException.class)
+    public void testReadReportsNotAnObject() throws Exception {
+        ReportMapper.readReports(() -> new StringReader("[]"));
+    }
+
+    @Test
+    public void testWriteThenReadManyViolations() throws Exception {
+        final File jsonFile = new File(baseDir, "many-violations.json");
+        final List<Violation> violations = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            violations.add(new SimpleViolation(Severity.MINOR, "violation " + i,
+                    PackageId.fromString("test:pack" + (i % 10))));
+        }
+        final List<CheckReport> originalReports = asList(
+                new SimpleReport("test/first", violations),
+                new SimpleReport("test/second", violations));
+        ReportMapper.writeReportsToFile(originalReports, jsonFile);
+        assertEquals("CheckReports should round trip", originalReports,
+                ReportMapper.readReportsFromFile(jsonFile));
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.junit.Test;
+
+import static net.adamcin.oakpal.core.RepositoryProfile.FULL;
+import static net.adamcin.oakpal.core.RepositoryProfile.LEAN;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RepositoryProfileTest {
+
+    @Test
+    public void testForName() {
+        assertNull("forName null is null", RepositoryProfile.forName(null));
+        assertNull("forName unknown is null", RepositoryProfile.forName("medium"));
+        assertSame("forName full", FULL, RepositoryProfile.forName("full"));
+        assertSame("forName lean", LEAN, RepositoryProfile.forName("LEAN"));
+        assertSame("forName default is full", FULL, RepositoryProfile.DEFAULT);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanMetricsTest {
+
+    @Test
+    public void testTimer() {
+        final ScanMetrics.Timer timer = new ScanMetrics.Timer();
+        timer.record(TimeUnit.MICROSECONDS.toNanos(1500));
+        timer.record(TimeUnit.MICROSECONDS.toNanos(250));
+        assertEquals("expect count", 2L, timer.getCount());
+        assertEquals("expect nanos", TimeUnit.MICROSECONDS.toNanos(1750), timer.getTotalNanos());
+        assertEquals("expect millis", 1.75D, timer.getTotalMillis(), 0.0D);
+        final JsonObject json = timer.toJson();
+        assertEquals("expect json count", 2L, json.getJsonNumber(ScanMetrics.keys().count()).longValue());
+        assertEquals("expect json millis", 1.75D,
+                json.getJsonNumber(ScanMetrics.keys().millis()).doubleValue(), 0.0D);
+    }
+
+    @Test
+    public void testRecordCheckEvent() {
+        final ScanMetrics metrics = new ScanMetrics();
+        metrics.recordCheckEvent("fast", "importedPath", 10L);
+        metrics.recordCheckEvent("slow", "importedPath", 100L);
+        metrics.recordCheckEvent("slow", "afterExtract", 1000L);
+        metrics.recordCheckEvent("slow", "importedPath", 100L);
+
+        assertEquals("expect checks sorted by total", Arrays.asList("slow", "fast"),
+                new ArrayList<>(metrics.getCheckTotals().keySet()));
+        assertEquals("expect slow total", 1200L, metrics.getCheckTotals().get("slow").getTotalNanos());
+        assertEquals("expect slow count", 3L, metrics.getCheckTotals().get("slow").getCount());
+        assertEquals("expect events sorted by total", Arrays.asList("afterExtract", "importedPath"),
+                new ArrayList<>(metrics.getCheckEvents().get("slow").keySet()));
+        assertEquals("expect importedPath count", 2L,
+                metrics.getCheckEvents().get("slow").get("importedPath").getCount());
+    }
+
+    @Test
+    public void testRecordPackages() {
+        final ScanMetrics metrics = new ScanMetrics();
+        final PackageId first = PackageId.fromString("my_packages:first");
+        final PackageId second = PackageId.fromString("my_packages:second");
+        metrics.recordExtract(first, 10L);
+        metrics.recordExtract(second, 20L);
+        metrics.recordSubpackage(second, 30L);
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 100L);
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 100L);
+
+        assertEquals("expect extracts sorted by total", Arrays.asList(second.toString(), first.toString()),
+                new ArrayList<>(metrics.getExtracts().keySet()));
+        assertEquals("expect subpackage", 30L, metrics.getSubpackages().get(second.toString()).getTotalNanos());
+        assertEquals("expect two scans", 2L, metrics.getPhases().get(ScanMetrics.PHASE_SCAN).getCount());
+    }
+
+    @Test
+    public void testToJson() {
+        final ScanMetrics metrics = new ScanMetrics();
+        metrics.recordCheckEvent("check", "startedScan", 10L);
+        metrics.recordPhase(ScanMetrics.PHASE_SCAN, 100L);
+        final JsonObject json = metrics.toJson();
+        assertTrue("expect phases", json.getJsonObject(ScanMetrics.keys().phases())
+                .containsKey(ScanMetrics.PHASE_SCAN));
+        assertEquals("expect check event count", 1L, json.getJsonObject(ScanMetrics.keys().checks())
+                .getJsonObject("check").getJsonObject("startedScan")
+                .getJsonNumber(ScanMetrics.keys().count()).longValue());
+        assertTrue("expect empty extracts", json.getJsonObject(ScanMetrics.keys().extracts()).isEmpty());
+        assertTrue("expect empty subpackages", json.getJsonObject(ScanMetrics.keys().subpackages()).isEmpty());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.Severity;
+import net.adamcin.oakpal.api.SimpleViolation;
+import net.adamcin.oakpal.api.Violation;
+import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanResultCacheTest {
+
+    private final File baseDir = new File("target/test-output/ScanResultCacheTest");
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir.mkdirs();
+    }
+
+    private File cleanDir(final String name) throws Exception {
+        final File dir = new File(baseDir, name);
+        if (dir.isDirectory()) {
+            FileUtils.deleteDirectory(dir);
+        }
+        return dir;
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        final File dir = cleanDir("testKey");
+        final File packageFile = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final OakpalPlan plan = new OakpalPlan.Builder(null, null).withEnablePreInstallHooks(true).build();
+        final String digest = ScanResultCache.key().withPlan(plan).withPackage(packageFile).getDigest();
+        assertEquals("expect same digest", digest,
+                ScanResultCache.key().withPlan(plan).withPackage(packageFile).getDigest());
+        assertNotEquals("expect different digest for different plan", digest,
+                ScanResultCache.key().withPlan(new OakpalPlan.Builder(null, null).build())
+                        .withPackage(packageFile).getDigest());
+        assertNotEquals("expect different digest for value boundaries",
+                ScanResultCache.key().withString("ab").withString("c").getDigest(),
+                ScanResultCache.key().withString("a").withString("bc").getDigest());
+
+        final ScanResultCache.Key key = ScanResultCache.key().withPackage(packageFile).withPackage(packageFile);
+        assertEquals("expect two package digests", 2, key.getPackageDigests().size());
+        assertEquals("expect same package digests", key.getPackageDigests().get(0), key.getPackageDigests().get(1));
+        assertEquals("getDigest is repeatable", key.getDigest(), key.getDigest());
+        assertEquals("toString is digest", key.getDigest(), key.toString());
+
+        dir.mkdirs();
+        final File stamped = new File(dir, "stamped.txt");
+        Files.write(stamped.toPath(), "one".getBytes(StandardCharsets.UTF_8));
+        assertTrue("set last modified", stamped.setLastModified(1000L));
+        final String stampDigest = ScanResultCache.key().withStamp(dir).getDigest();
+        assertEquals("expect same stamp digest for file", ScanResultCache.key().withStamp(stamped).getDigest(),
+                stampDigest);
+        assertTrue("set last modified", stamped.setLastModified(2000L));
+        assertNotEquals("expect different stamp digest", stampDigest,
+                ScanResultCache.key().withStamp(dir).getDigest());
+        assertNotEquals("expect different content digest",
+                ScanResultCache.key().withContent(stamped.toURI().toURL()).getDigest(),
+                ScanResultCache.key().withContent(packageFile.toURI().toURL()).getDigest());
+    }
+
+    private static void writeZip(final File zipFile, final long time, final String... namesAndContents)
+            throws Exception {
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int i = 0; i + 1 < namesAndContents.length; i += 2) {
+                final ZipEntry entry = new ZipEntry(namesAndContents[i]);
+                entry.setTime(time);
+                zip.putNextEntry(entry);
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    public void testWithPackage_rebuiltZip() throws Exception {
+        final File dir = cleanDir("testWithPackage_rebuiltZip");
+        dir.mkdirs();
+        final File original = new File(dir, "original.zip");
+        writeZip(original, 1000L, "jcr_root/a.txt", "a", "jcr_root/b.txt", "b");
+        final File rebuilt = new File(dir, "rebuilt.zip");
+        writeZip(rebuilt, 2000000L, "jcr_root/b.txt", "b", "jcr_root/a.txt", "a");
+        final File changed = new File(dir, "changed.zip");
+        writeZip(changed, 1000L, "jcr_root/a.txt", "a", "jcr_root/b.txt", "c");
+        final File renamed = new File(dir, "renamed.zip");
+        writeZip(renamed, 1000L, "jcr_root/a.txt", "a", "jcr_root/c.txt", "b");
+
+        final String digest = ScanResultCache.key().withPackage(original).getDigest();
+        assertEquals("expect same digest for rebuilt zip", digest,
+                ScanResultCache.key().withPackage(rebuilt).getDigest());
+        assertNotEquals("expect different digest for changed entry content", digest,
+                ScanResultCache.key().withPackage(changed).getDigest());
+        assertNotEquals("expect different digest for renamed entry", digest,
+                ScanResultCache.key().withPackage(renamed).getDigest());
+
+        final File notZip = new File(dir, "not-a-zip.zip");
+        Files.write(notZip.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+        try (InputStream input = new FileInputStream(notZip)) {
+            assertEquals("expect raw digest for non-zip file", ScanResultCache.digestStream(input),
+                    ScanResultCache.key().withPackage(notZip).getPackageDigests().get(0));
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final File dir = cleanDir("testSaveAndLoad");
+        final ScanResultCache cache = new ScanResultCache(dir);
+        assertEquals("expect cache dir", dir, cache.getCacheDir());
+        final File packageFile = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final ScanResultCache.Key key = ScanResultCache.key().withString("test").withPackage(packageFile);
+        assertFalse("expect no entry", cache.load(key).isPresent());
+        assertTrue("expect no last package digests", cache.getLastPackageDigests().isEmpty());
+
+        final List<CheckReport> reports = Collections.singletonList(new SimpleReport("test",
+                Collections.<Violation>singletonList(new SimpleViolation(Severity.MAJOR, "fail",
+                        PackageId.fromString("my_packages:tmp_foo_bar:1.0")))));
+        cache.save(key, reports);
+        assertEquals("expect same reports", reports, cache.load(key).orElse(null));
+        assertEquals("expect last package digests", key.getPackageDigests(), cache.getLastPackageDigests());
+
+        Files.write(cache.getReportsFile(key).toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+        assertFalse("expect no entry for unreadable reports", cache.load(key).isPresent());
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        final File dir = cleanDir("testPrune");
+        final ScanResultCache cache = new ScanResultCache(dir, 2);
+        final ScanResultCache.Key key1 = ScanResultCache.key().withString("one");
+        final ScanResultCache.Key key2 = ScanResultCache.key().withString("two");
+        final ScanResultCache.Key key3 = ScanResultCache.key().withString("three");
+        cache.save(key1, Collections.emptyList());
+        assertTrue("set last modified", cache.getReportsFile(key1).setLastModified(1000L));
+        cache.save(key2, Collections.emptyList());
+        assertTrue("set last modified", cache.getReportsFile(key2).setLastModified(2000L));
+        cache.save(key3, Collections.emptyList());
+        assertFalse("expect oldest entry pruned", cache.load(key1).isPresent());
+        assertTrue("expect entry two", cache.load(key2).isPresent());
+        assertTrue("expect entry three", cache.load(key3).isPresent());
+    }
+
+    @Test
+    public void testGetChangedIndex() {
+        final List<String> previous = Arrays.asList("a", "b", "c");
+        assertEquals(-1, ScanResultCache.getChangedIndex(previous, Arrays.asList("a", "b", "c")));
+        assertEquals(2, ScanResultCache.getChangedIndex(previous, Arrays.asList("a", "b", "x")));
+        assertEquals(0, ScanResultCache.getChangedIndex(previous, Arrays.asList("x", "b", "c")));
+        assertEquals(3, ScanResultCache.getChangedIndex(previous, Arrays.asList("a", "b", "c", "d")));
+        assertEquals(2, ScanResultCache.getChangedIndex(previous, Arrays.asList("a", "b")));
+        assertEquals(0, ScanResultCache.getChangedIndex(Collections.emptyList(), Arrays.asList("a")));
+    }
+}
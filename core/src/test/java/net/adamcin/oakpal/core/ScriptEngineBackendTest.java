@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.PathAction;
+import net.adamcin.oakpal.api.Violation;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleBindings;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static net.adamcin.oakpal.api.JavaxJson.key;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class ScriptEngineBackendTest {
+
+    private static ScriptEngine mockCompilableEngine(final String... names) {
+        final ScriptEngine engine = mock(ScriptEngine.class,
+                withSettings().extraInterfaces(Compilable.class, Invocable.class));
+        final ScriptEngineFactory factory = mock(ScriptEngineFactory.class);
+        when(factory.getNames()).thenReturn(Arrays.asList(names));
+        when(engine.getFactory()).thenReturn(factory);
+        return engine;
+    }
+
+    @Test
+    public void testForEngine() {
+        assertSame("expect nashorn", ScriptEngineBackend.NASHORN,
+                ScriptEngineBackend.forEngine(new ScriptEngineManager().getEngineByName("nashorn")));
+        assertNull("expect null for non-compilable engine",
+                ScriptEngineBackend.forEngine(mock(ScriptEngine.class)));
+        assertSame("expect graaljs", ScriptEngineBackend.GRAALJS,
+                ScriptEngineBackend.forEngine(mockCompilableEngine("js", "Graal.js", "graal.js")));
+        assertSame("expect compilable", ScriptEngineBackend.COMPILABLE,
+                ScriptEngineBackend.forEngine(mockCompilableEngine("foobar")));
+    }
+
+    @Test
+    public void testGraalJsPreferred() {
+        final String previous = System.getProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY);
+        try {
+            System.clearProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY);
+            assertFalse("expect graaljs not preferred by default", ScriptEngineBackend.isGraalJsPreferred());
+            final ScriptProgressCheck.CompiledScriptCache cache = new ScriptProgressCheck.CompiledScriptCache();
+            final ScriptEngine defaultEngine = cache.getEngine(null, false, "js");
+            assertSame("expect nashorn by default", ScriptEngineBackend.NASHORN,
+                    ScriptEngineBackend.forEngine(defaultEngine));
+            System.setProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY, "true");
+            assertTrue("expect graaljs preferred", ScriptEngineBackend.isGraalJsPreferred());
+            final ScriptEngine preferredEngine = cache.getEngine(null, false, "js");
+            assertNotSame("expect separate engine lookup when graaljs is preferred", defaultEngine, preferredEngine);
+            assertSame("expect nashorn fallback when graaljs is not on the classpath", ScriptEngineBackend.NASHORN,
+                    ScriptEngineBackend.forEngine(preferredEngine));
+        } finally {
+            if (previous != null) {
+                System.setProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY, previous);
+            } else {
+                System.clearProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY);
+            }
+        }
+    }
+
+    private static void assertDispatch(final ScriptEngine engine, final ScriptEngineBackend backend,
+                                       final ScriptProgressCheck.CompiledScriptCache cache) throws Exception {
+        final ScriptProgressCheck check = ScriptProgressCheck.newScriptCheck(engine, backend, cache,
+                "function getCheckName() { return config.checkName; }\n"
+                        + "function importedPath(packageId, path) { oakpal.majorViolation(path, packageId); }",
+                key("checkName", "dispatched").get(), null);
+        assertEquals("expect check name from config", "dispatched", check.getCheckName());
+        check.startedScan();
+        final PackageId packageId = PackageId.fromString("my_packages:test:1.0");
+        check.importedPath(packageId, "/foo", null, PathAction.ADDED);
+        final Collection<Violation> violations = check.getReportedViolations();
+        assertEquals("expect one violation", 1, violations.size());
+        assertEquals("expect violation path", "/foo", violations.iterator().next().getDescription());
+    }
+
+    @Test
+    public void testGraalJsDispatch() throws Exception {
+        // the graaljs backend options and eval-based dispatch must also work on an engine that ignores the options
+        assertDispatch(new ScriptEngineManager().getEngineByName("nashorn"), ScriptEngineBackend.GRAALJS,
+                new ScriptProgressCheck.CompiledScriptCache());
+        final String previous = System.getProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY);
+        try {
+            System.setProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY, "true");
+            final ScriptProgressCheck.CompiledScriptCache cache = new ScriptProgressCheck.CompiledScriptCache();
+            final ScriptEngine engine = cache.getEngine(null, false, "js");
+            Assume.assumeTrue("skip when graaljs is not on the classpath",
+                    engine != null && ScriptEngineBackend.forEngine(engine) == ScriptEngineBackend.GRAALJS);
+            assertDispatch(engine, ScriptEngineBackend.GRAALJS, cache);
+        } finally {
+            if (previous != null) {
+                System.setProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY, previous);
+            } else {
+                System.clearProperty(ScriptEngineBackend.GRAALJS_PREFERRED_PROPERTY);
+            }
+        }
+    }
+
+    @Test
+    public void testPrepareBindings() {
+        final Bindings bindings = new SimpleBindings();
+        ScriptEngineBackend.NASHORN.prepareBindings(bindings);
+        assertEquals("expect no nashorn options", 0, bindings.size());
+        ScriptEngineBackend.GRAALJS.prepareBindings(bindings);
+        assertEquals("expect host access", true, bindings.get("polyglot.js.allowAllAccess"));
+        assertEquals("expect nashorn compat", true, bindings.get("polyglot.js.nashorn-compat"));
+    }
+
+    @Test
+    public void testDispatchSource() {
+        assertEquals("startedScan();", ScriptEngineBackend.dispatchSource("startedScan", 0));
+        assertEquals("afterExtract(__oakpalArg0, __oakpalArg1);",
+                ScriptEngineBackend.dispatchSource("afterExtract", 2));
+    }
+
+    @Test
+    public void testCompilableDispatch() throws Exception {
+        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        final ScriptProgressCheck check = ScriptProgressCheck.newScriptCheck(engine,
+                ScriptEngineBackend.COMPILABLE,
+                new ScriptProgressCheck.CompiledScriptCache(),
+                "function getCheckName() { return config.checkName; }\n"
+                        + "function importedPath(packageId, path) { oakpal.majorViolation(path, packageId); }\n"
+                        + "function afterExtract(packageId) { if (typeof __oakpalArg2 !== 'undefined') { "
+                        + "oakpal.minorViolation('leaked', packageId); } }",
+                key("checkName", "dispatched").get(), null);
+        assertEquals("expect check name from config", "dispatched", check.getCheckName());
+        check.startedScan();
+        final PackageId packageId = PackageId.fromString("my_packages:test:1.0");
+        check.importedPath(packageId, "/foo", null, PathAction.ADDED);
+        check.afterExtract(packageId, null);
+        final Collection<Violation> violations = check.getReportedViolations();
+        assertEquals("expect one violation", 1, violations.size());
+        assertEquals("expect violation path", "/foo", violations.iterator().next().getDescription());
+        assertEquals("expect violation package", Arrays.asList(packageId),
+                violations.iterator().next().getPackages());
+    }
+}
@@ -32,13 +32,18 @@ import org.junit.Test;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
+import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,7 +57,10 @@ import static net.adamcin.oakpal.api.Fun.toEntry;
 import static net.adamcin.oakpal.api.JavaxJson.key;
 import static net.adamcin.oakpal.api.JavaxJson.obj;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -536,6 +544,84 @@ public class ScriptProgressCheckTest {
         check.guardSessionHandler("missingFunction", handle -> handle.apply("test"));
     }
 
+    @Test
+    public void testNewInstance_sharesCompiledScript() throws Exception {
+        final ProgressCheckFactory factory = ScriptProgressCheck
+                .createInlineScriptCheckFactory("function getCheckName() { return config.checkNameForTest; }", "js");
+        final ProgressCheck checkFoo = factory.newInstance(key("checkNameForTest", "foo").get());
+        final ProgressCheck checkBar = factory.newInstance(key("checkNameForTest", "bar").get());
+        assertEquals("expect foo check keeps its own globals", "foo", checkFoo.getCheckName());
+        assertEquals("expect bar check keeps its own globals", "bar", checkBar.getCheckName());
+
+        final ScriptProgressCheck.ScriptProgressCheckFactory urlFactory =
+                (ScriptProgressCheck.ScriptProgressCheckFactory) ScriptProgressCheck
+                        .createScriptCheckFactory(testScriptUrl("checkWithName.js"));
+        final ScriptProgressCheck.ScriptProgressCheckFactory otherUrlFactory =
+                (ScriptProgressCheck.ScriptProgressCheckFactory) ScriptProgressCheck
+                        .createScriptCheckFactory(testScriptUrl("checkWithName.js"));
+        assertSame("expect shared engine", urlFactory.getEngine(), otherUrlFactory.getEngine());
+    }
+
+    @Test
+    public void testCompiledScriptCache() throws Exception {
+        final ScriptProgressCheck.CompiledScriptCache cache = new ScriptProgressCheck.CompiledScriptCache(1);
+        final ScriptEngine engine = cache.getEngine(null, false, "js");
+        assertNotNull("expect js engine", engine);
+        assertSame("expect same engine", engine, cache.getEngine(null, false, "js"));
+        assertNull("expect no engine", cache.getEngine(null, true, "foobar"));
+        final Compilable compilable = (Compilable) engine;
+        final CompiledScript compiled = cache.compile(compilable, "var foo = 1;");
+        assertSame("expect same compiled script", compiled, cache.compile(compilable, "var foo = 1;"));
+        cache.compile(compilable, "var bar = 2;");
+        assertNotSame("expect evicted compiled script", compiled, cache.compile(compilable, "var foo = 1;"));
+    }
+
+    @Test
+    public void testCompiledScriptCache_forClassLoader() throws Exception {
+        final ScriptProgressCheck.CompiledScriptCache shared =
+                ScriptProgressCheck.CompiledScriptCache.forClassLoader(null);
+        assertSame("expect shared cache for bootstrap loader", shared,
+                ScriptProgressCheck.CompiledScriptCache.forClassLoader(getClass().getClassLoader()));
+        final ClassLoader parent = getClass().getClassLoader();
+        final URLClassLoader childLoader = new URLClassLoader(new URL[0], parent);
+        final ScriptProgressCheck.CompiledScriptCache childCache =
+                ScriptProgressCheck.CompiledScriptCache.forClassLoader(childLoader);
+        assertNotSame("expect own cache for child loader", shared, childCache);
+        assertSame("expect same cache for child loader while referenced", childCache,
+                ScriptProgressCheck.CompiledScriptCache.forClassLoader(childLoader));
+        assertFalse("expect child loader is not shared",
+                ScriptProgressCheck.CompiledScriptCache.isSharedClassLoader(childLoader));
+
+        final WeakReference<ClassLoader> loaderRef = new WeakReference<>(
+                new URLClassLoader(new URL[0], parent));
+        assertEquals("expect check name", "weak",
+                ScriptProgressCheck.createClassLoaderInlineScriptCheckFactory(
+                        "function getCheckName() { return \"weak\"; }", null, loaderRef.get())
+                        .newInstance(null).getCheckName());
+        for (int i = 0; i < 10 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50L);
+        }
+        assertNull("expect collected class loader", loaderRef.get());
+    }
+
+    @Test
+    public void testResolveHandlers() throws Exception {
+        final ScriptProgressCheck check = (ScriptProgressCheck) ScriptProgressCheck
+                .createInlineScriptCheckFactory("function importedPath(packageId, path) { "
+                        + "oakpal.minorViolation(path, packageId); }", "js")
+                .newInstance(null);
+        assertNotNull("expect resolved importedPath", check.getHandler(ScriptProgressCheck.INVOKE_ON_IMPORTED_PATH));
+        assertNull("expect missing deletedPath", check.getHandler(ScriptProgressCheck.INVOKE_ON_DELETED_PATH));
+        check.startedScan();
+        final PackageId packageId = PackageId.fromString("my_packages:test:1.0");
+        check.importedPath(packageId, "/foo", null, PathAction.ADDED);
+        check.deletedPath(packageId, "/foo", null);
+        assertEquals("expect one violation", 1, check.getReportedViolations().size());
+        assertEquals("expect violation for /foo", "/foo",
+                check.getReportedViolations().iterator().next().getDescription());
+    }
+
     PropertyResourceBundle fromPropertiesUrl(URL propertiesUrl) {
         try (InputStream propsStream = propertiesUrl.openStream()) {
             return new PropertyResourceBundle(propsStream);
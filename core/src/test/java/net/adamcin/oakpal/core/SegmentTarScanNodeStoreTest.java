@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core;
+
+import net.adamcin.oakpal.api.ProgressCheck;
+import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class SegmentTarScanNodeStoreTest {
+
+    private final File baseDir = new File("target/test-output/SegmentTarScanNodeStoreTest");
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir.mkdirs();
+    }
+
+    @Test
+    public void testCloseDeletesDirectory() throws Exception {
+        final File parentDir = new File(baseDir, "testCloseDeletesDirectory");
+        final SegmentTarScanNodeStore nodeStore = new SegmentTarScanNodeStore(parentDir);
+        final File directory = nodeStore.getDirectory();
+        assertEquals("expect parent dir", parentDir.getAbsoluteFile(), directory.getParentFile().getAbsoluteFile());
+        assertTrue("expect directory", directory.isDirectory());
+        assertTrue("expect root node state", nodeStore.getRoot().exists());
+        nodeStore.close();
+        assertFalse("expect directory deleted", directory.exists());
+    }
+
+    @Test
+    public void testScanPackage() throws Exception {
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final File parentDir = new File(baseDir, "testScanPackage");
+        final List<SegmentTarScanNodeStore> created = new ArrayList<>();
+        final CompletableFuture<String> afterExtractPath = new CompletableFuture<>();
+        final ProgressCheck check = mock(ProgressCheck.class);
+        doAnswer(call -> afterExtractPath.complete(call.<Session>getArgument(1).getNode("/tmp/foo/bar").getPath()))
+                .when(check).afterExtract(any(PackageId.class), any(Session.class));
+        final OakMachine machine = new OakMachine.Builder()
+                .withProgressCheck(check)
+                .withNodeStoreSupplier(() -> {
+                    final NodeStore nodeStore = SegmentTarScanNodeStore.supplier(parentDir).get();
+                    created.add((SegmentTarScanNodeStore) nodeStore);
+                    return nodeStore;
+                })
+                .build();
+        machine.scanPackage(testPackage);
+        machine.scanPackage(testPackage);
+        assertEquals("expect path imported into segment store", "/tmp/foo/bar", afterExtractPath.getNow(""));
+        assertEquals("expect a new store for each scan", 2, created.size());
+        for (SegmentTarScanNodeStore nodeStore : created) {
+            assertFalse("expect directory deleted after scan", nodeStore.getDirectory().exists());
+        }
+
+        final List<Node> inspected = new ArrayList<>();
+        machine.adminInitAndInspect(admin -> inspected.add(admin.getRootNode()));
+        assertEquals("expect inspected", 1, inspected.size());
+        assertEquals("expect a new store for inspect", 3, created.size());
+        assertFalse("expect directory deleted after inspect", created.get(2).getDirectory().exists());
+    }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -249,4 +250,26 @@ public class UtilTest {
         assertEquals("value for three is a squared long 9",
                 9L, composed.apply("three").longValue());
     }
+
+    @Test
+    public void testMapInParallel() throws Exception {
+        final List<Integer> inputs = Stream.iterate(0, i -> i + 1).limit(100).collect(Collectors.toList());
+        assertEquals("expect results in input order",
+                inputs.stream().map(i -> i * i).collect(Collectors.toList()),
+                Util.mapInParallel(inputs, i -> i * i, IOException.class));
+        assertTrue("expect empty results for empty input",
+                Util.mapInParallel(Collections.<Integer>emptyList(), i -> i, IOException.class).isEmpty());
+
+        try {
+            Util.mapInParallel(inputs, i -> {
+                if (i >= 50) {
+                    throw new IOException("failed " + i);
+                }
+                return i;
+            }, IOException.class);
+            fail("expect IOException");
+        } catch (IOException e) {
+            assertEquals("expect error for first failed input", "failed 50", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import org.apache.jackrabbit.vault.fs.io.Archive;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.packaging.VaultPackage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class AffectedPathsTest {
+
+    @Test
+    public void testPathEvent() {
+        final AffectedPaths paths = new AffectedPaths(Arrays.asList("/foo", "/foo/bar", "/baz"), false);
+        assertTrue("expect interest in ancestor", paths.isInterestedInPath("/"));
+        assertTrue("expect interest in self", paths.isInterestedInPath("/foo/bar"));
+        assertFalse("expect no interest in descendant", paths.isInterestedInPath("/foo/bar/cat"));
+        assertTrue("expect all affected before validation", paths.isAffected("/baz"));
+        paths.pathEvent("/foo");
+        paths.validated();
+        assertFalse("expect /foo not affected after validation", paths.isAffected("/foo"));
+        paths.pathEvent("/foo/bar/cat");
+        assertFalse("expect descendant event ignored", paths.isAffected("/foo/bar"));
+        paths.pathEvent("/foo");
+        assertTrue("expect /foo affected", paths.isAffected("/foo"));
+        assertTrue("expect /foo/bar affected", paths.isAffected("/foo/bar"));
+        assertFalse("expect /baz not affected", paths.isAffected("/baz"));
+        paths.validated();
+        paths.invalidateAll();
+        assertTrue("expect /baz affected after invalidateAll", paths.isAffected("/baz"));
+    }
+
+    @Test
+    public void testPathEvent_includeDescendantEvents() {
+        final AffectedPaths paths = new AffectedPaths(Arrays.asList("/foo", "/baz"), true);
+        assertTrue("expect interest in descendant", paths.isInterestedInPath("/foo/rep:policy/allow"));
+        assertFalse("expect no interest in sibling", paths.isInterestedInPath("/bar"));
+        paths.validated();
+        paths.pathEvent("/foo/rep:policy/allow");
+        assertTrue("expect /foo affected", paths.isAffected("/foo"));
+        assertFalse("expect /baz not affected", paths.isAffected("/baz"));
+    }
+
+    private static Archive.Entry mockEntry(final String name, final boolean directory) {
+        final Archive.Entry entry = mock(Archive.Entry.class);
+        when(entry.getName()).thenReturn(name);
+        when(entry.isDirectory()).thenReturn(directory);
+        return entry;
+    }
+
+    @Test
+    public void testDeclaresInstallHooks() throws Exception {
+        assertFalse("expect false for null", AffectedPaths.declaresInstallHooks(null));
+        final PackageProperties noHooks = mock(PackageProperties.class);
+        assertFalse("expect false for no hooks", AffectedPaths.declaresInstallHooks(noHooks));
+        final PackageProperties externalHooks = mock(PackageProperties.class);
+        when(externalHooks.getExternalHooks()).thenReturn(Collections.singletonMap("foo", "com.example.Hook"));
+        assertTrue("expect true for external hooks", AffectedPaths.declaresInstallHooks(externalHooks));
+
+        final PackageProperties vaultPackage = mock(PackageProperties.class,
+                withSettings().extraInterfaces(VaultPackage.class));
+        final Archive archive = mock(Archive.class);
+        when(((VaultPackage) vaultPackage).getArchive()).thenReturn(archive);
+        assertFalse("expect false for no hooks folder", AffectedPaths.declaresInstallHooks(vaultPackage));
+        final Archive.Entry hooks = mockEntry("hooks", true);
+        when(archive.getEntry(AffectedPaths.HOOKS_PATH)).thenReturn(hooks);
+        doReturn(Collections.singletonList(mockEntry("readme.txt", false))).when(hooks).getChildren();
+        assertFalse("expect false for no hook jars", AffectedPaths.declaresInstallHooks(vaultPackage));
+        doReturn(Collections.singletonList(mockEntry("hook.jar", false))).when(hooks).getChildren();
+        assertTrue("expect true for hook jar", AffectedPaths.declaresInstallHooks(vaultPackage));
+        when(archive.getEntry(AffectedPaths.HOOKS_PATH)).thenThrow(IOException.class);
+        assertTrue("expect true for unreadable archive", AffectedPaths.declaresInstallHooks(vaultPackage));
+    }
+}
@@ -18,15 +18,18 @@ package net.adamcin.oakpal.core.checks;
 
 import net.adamcin.oakpal.api.EmbeddedPackageInstallable;
 import net.adamcin.oakpal.api.Fun;
+import net.adamcin.oakpal.api.PathAction;
 import net.adamcin.oakpal.api.Result;
 import net.adamcin.oakpal.api.Rule;
 import net.adamcin.oakpal.api.RuleType;
 import net.adamcin.oakpal.api.Severity;
 import net.adamcin.oakpal.api.SlingInstallable;
 import net.adamcin.oakpal.api.Violation;
+import net.adamcin.oakpal.core.CheckReport;
 import net.adamcin.oakpal.core.JsonCnd;
 import net.adamcin.oakpal.core.OakMachine;
 import net.adamcin.oakpal.core.OakpalPlan;
+import net.adamcin.oakpal.testing.TestPackageUtil;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.api.JackrabbitWorkspace;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
@@ -41,6 +44,7 @@ import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.value.ValueFactoryImpl;
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
 import org.junit.Test;
@@ -55,6 +59,7 @@ import javax.jcr.security.AccessControlPolicy;
 import javax.jcr.security.AccessControlPolicyIterator;
 import javax.jcr.security.Privilege;
 import javax.json.JsonObject;
+import java.io.File;
 import java.security.Principal;
 import java.util.Arrays;
 import java.util.Collection;
@@ -84,7 +89,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ExpectAcesTest {
@@ -94,6 +102,20 @@ public class ExpectAcesTest {
         return (ExpectAces.Check) new ExpectAces().newInstance(config);
     }
 
+    @Test
+    public void testBeforeExtract_installHooks() throws Exception {
+        final ExpectAces.Check check = checkFor(key("principal", "nouser")
+                .key("expectedAces", arr("type=allow;path=/foo;privileges=jcr:read")).get());
+        final PackageId packageId = PackageId.fromString("my_packages:hooks:1.0");
+        check.affectedPaths.validated();
+        check.beforeExtract(packageId, null, mock(PackageProperties.class), null, Collections.emptyList());
+        assertFalse("expect not affected without hooks", check.affectedPaths.isAffected("/foo"));
+        final PackageProperties hookProperties = mock(PackageProperties.class);
+        when(hookProperties.getExternalHooks()).thenReturn(Collections.singletonMap("foo", "com.example.Hook"));
+        check.beforeExtract(packageId, null, hookProperties, null, Collections.emptyList());
+        assertTrue("expect affected with hooks", check.affectedPaths.isAffected("/foo"));
+    }
+
     @Test(expected = Exception.class)
     public void testNewInstance_missingPrincipal() throws Exception {
         checkFor(key("principal", "").key("expectedAces", arr("type=allow;path=/;privileges=jcr:read")).get());
@@ -1023,4 +1045,58 @@ public class ExpectAcesTest {
         Assert.assertNotEquals("expect not same", left, right);
         Assert.assertNotEquals("expect not same hash", left.hashCode(), right.hashCode());
     }
+
+    @Test
+    public void testValidateExpectations_onlyAffectedPaths() throws Exception {
+        final ExpectAces.Check check = checkFor(obj()
+                .key(ExpectAces.keys().principal(), "nouser")
+                .key(ExpectAces.keys().expectedAces(), arr()
+                        .val("type=allow;path=/foo1;privileges=jcr:read")
+                        .val("type=allow;path=/foo2;privileges=jcr:read"))
+                .get());
+        final Session session = mock(Session.class);
+        final JackrabbitAccessControlManager aclManager = mock(JackrabbitAccessControlManager.class);
+        when(session.getAccessControlManager()).thenReturn(aclManager);
+        when(session.nodeExists(anyString())).thenReturn(true);
+        when(aclManager.getPolicies(anyString())).thenReturn(new AccessControlPolicy[0]);
+        final PackageId fooId = PackageId.fromString("foo");
+        assertTrue("expect interest in policy", check.isInterestedInPath("/foo1/rep:policy/allow"));
+        assertTrue("expect interest in ancestor", check.isInterestedInPath("/"));
+        assertFalse("expect no interest in sibling", check.isInterestedInPath("/foo3"));
+
+        check.startedScan();
+        check.afterExtract(fooId, session);
+        verify(aclManager, times(1)).getPolicies("/foo1");
+        verify(aclManager, times(1)).getPolicies("/foo2");
+        check.afterExtract(fooId, session);
+        verify(aclManager, times(1)).getPolicies("/foo1");
+        check.importedPath(fooId, "/foo1/rep:policy", null, PathAction.ADDED);
+        check.afterExtract(fooId, session);
+        verify(aclManager, times(2)).getPolicies("/foo1");
+        verify(aclManager, times(1)).getPolicies("/foo2");
+        check.appliedRepoInitScripts(fooId, Collections.emptyList(),
+                new EmbeddedPackageInstallable(fooId, "", fooId), session);
+        verify(aclManager, times(2)).getPolicies("/foo2");
+    }
+
+    @Test
+    public void testScanWithAclPackage() throws Exception {
+        final File aclPackage = TestPackageUtil.prepareTestPackageFromFolder("acl_policy_package.zip",
+                new File("target/test-classes/acl_policy_package"));
+        final File tmpFoo = TestPackageUtil.prepareTestPackage("tmp_foo.zip");
+        final ExpectAces.Check check = checkFor(obj()
+                .key(ExpectAces.keys().principal(), "nouser")
+                .key(ExpectAces.keys().notExpectedAces(), arr()
+                        .val("type=allow;path=/foo1;privileges=jcr:read"))
+                .get());
+        final List<CheckReport> reports = new OakMachine.Builder().withProgressChecks(check).build()
+                .scanPackages(Arrays.asList(tmpFoo, aclPackage));
+        final Collection<Violation> violations = reports.stream()
+                .filter(report -> check.getCheckName().equals(report.getCheckName()))
+                .findFirst().map(CheckReport::getViolations).orElse(Collections.emptyList());
+        Assert.assertEquals("expect one unexpected violation", 1, violations.size());
+        Assert.assertEquals("expect violation for acl package",
+                Collections.singletonList(PackageId.fromString("my_packages:acl_policy_package:1.0")),
+                violations.iterator().next().getPackages());
+    }
 }
\ No newline at end of file
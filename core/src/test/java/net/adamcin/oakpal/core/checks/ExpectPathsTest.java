@@ -33,6 +33,7 @@ import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -59,7 +60,10 @@ import static net.adamcin.oakpal.api.JavaxJson.obj;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ExpectPathsTest {
@@ -68,6 +72,19 @@ public class ExpectPathsTest {
         return (ExpectPaths.Check) new ExpectPaths().newInstance(config);
     }
 
+    @Test
+    public void testBeforeExtract_installHooks() {
+        final ExpectPaths.Check check = checkFor(key(ExpectPaths.keys().expectedPaths(), arr("/foo")).get());
+        final PackageId packageId = PackageId.fromString("my_packages:hooks:1.0");
+        check.affectedPaths.validated();
+        check.beforeExtract(packageId, null, mock(PackageProperties.class), null, Collections.emptyList());
+        assertFalse("expect not affected without hooks", check.affectedPaths.isAffected("/foo"));
+        final PackageProperties hookProperties = mock(PackageProperties.class);
+        when(hookProperties.getExternalHooks()).thenReturn(Collections.singletonMap("foo", "com.example.Hook"));
+        check.beforeExtract(packageId, null, hookProperties, null, Collections.emptyList());
+        assertTrue("expect affected with hooks", check.affectedPaths.isAffected("/foo"));
+    }
+
     @Test
     public void testNewInstance_empty() throws Exception {
         ExpectPaths.Check emptyCheck = checkFor(obj().get());
@@ -501,4 +518,31 @@ public class ExpectPathsTest {
 
     }
 
+
+    @Test
+    public void testValidateExpectations_onlyAffectedPaths() throws Exception {
+        final ExpectPaths.Check check = checkFor(obj()
+                .key(ExpectPaths.keys().expectedPaths(), arr("/foo1", "/foo2"))
+                .key(ExpectPaths.keys().notExpectedPaths(), arr("/foo3"))
+                .get());
+        final Session session = mock(Session.class);
+        when(session.itemExists(anyString())).thenReturn(true);
+        final PackageId fooId = PackageId.fromString("foo");
+        assertTrue("expect interest in ancestor", check.isInterestedInPath("/"));
+        assertTrue("expect interest in self", check.isInterestedInPath("/foo1"));
+        assertFalse("expect no interest in descendant", check.isInterestedInPath("/foo1/bar"));
+
+        check.startedScan();
+        check.afterExtract(fooId, session);
+        verify(session, times(1)).itemExists("/foo1");
+        verify(session, times(1)).itemExists("/foo3");
+        check.afterExtract(fooId, session);
+        verify(session, times(1)).itemExists("/foo1");
+        check.deletedPath(fooId, "/foo1", session);
+        check.afterExtract(fooId, session);
+        verify(session, times(2)).itemExists("/foo1");
+        verify(session, times(1)).itemExists("/foo2");
+        check.finishedScan();
+        assertEquals("expect one unexpected violation", 1, check.getReportedViolations().size());
+    }
 }
\ No newline at end of file
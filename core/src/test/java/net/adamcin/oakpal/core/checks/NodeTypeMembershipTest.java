@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import net.adamcin.oakpal.core.OakMachine;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class NodeTypeMembershipTest {
+
+    @Test
+    public void testGetMembership() throws Exception {
+        new OakMachine.Builder().build().adminInitAndInspect(session -> {
+            final Node root = session.getRootNode();
+            final Node folder1 = spy(root.addNode("folder1", "nt:folder"));
+            final Node folder2 = spy(root.addNode("folder2", "nt:folder"));
+            final Node mixFolder = root.addNode("mixFolder", "nt:folder");
+            mixFolder.addMixin("mix:referenceable");
+            mixFolder.addMixin("mix:created");
+            final Node mixFolder2 = root.addNode("mixFolder2", "nt:folder");
+            mixFolder2.addMixin("mix:created");
+            mixFolder2.addMixin("mix:referenceable");
+            final Node unstructured = root.addNode("unstructured", "nt:unstructured");
+            session.save();
+
+            assertEquals("expect same key for same mixins in any order",
+                    NodeTypeMembership.getTypeKey(mixFolder), NodeTypeMembership.getTypeKey(mixFolder2));
+
+            final NodeTypeMembership membership = new NodeTypeMembership(
+                    Arrays.asList("nt:hierarchyNode", "mix:referenceable", "nt:unstructured"));
+            final BitSet expectFolder = new BitSet();
+            expectFolder.set(0);
+            assertEquals("expect folder membership", expectFolder, membership.getMembership(folder1));
+            assertEquals("expect folder membership", expectFolder, membership.getMembership(folder2));
+            verify(folder1, times(1)).isNodeType("nt:hierarchyNode");
+            verify(folder2, times(0)).isNodeType("nt:hierarchyNode");
+
+            final BitSet expectMixFolder = new BitSet();
+            expectMixFolder.set(0, 2);
+            assertEquals("expect mixin membership", expectMixFolder, membership.getMembership(mixFolder));
+            final BitSet expectUnstructured = new BitSet();
+            expectUnstructured.set(2);
+            assertEquals("expect unstructured membership", expectUnstructured, membership.getMembership(unstructured));
+
+            membership.clear();
+            assertEquals("expect folder membership after clear", expectFolder, membership.getMembership(folder2));
+            verify(folder2, times(1)).isNodeType("nt:hierarchyNode");
+
+            assertTrue("expect empty membership for no types",
+                    new NodeTypeMembership(Collections.emptyList()).getMembership(folder1).isEmpty());
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.oakpal.core.checks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathTrieTest {
+
+    @Test
+    public void testSegments() {
+        assertArrayEquals("expect no segments for root", new String[0], PathTrie.segments("/"));
+        assertArrayEquals("expect segments", new String[]{"foo", "bar"}, PathTrie.segments("/foo/bar"));
+    }
+
+    @Test
+    public void testForEachAncestorOrSelf() {
+        final PathTrie<String> trie = new PathTrie<>();
+        trie.put("/", "root");
+        trie.put("/foo", "foo");
+        trie.put("/foo/bar", "bar");
+        trie.put("/foo/bar", "bar2");
+        trie.put("/foo/baz", "baz");
+        final List<String> values = new ArrayList<>();
+        trie.forEachAncestorOrSelf("/foo/bar/cat", values::add);
+        assertEquals("expect ancestors from root", Arrays.asList("root", "foo", "bar", "bar2"), values);
+        values.clear();
+        trie.forEachAncestorOrSelf("/", values::add);
+        assertEquals("expect root only", Collections.singletonList("root"), values);
+        values.clear();
+        trie.clear();
+        trie.forEachAncestorOrSelf("/foo/bar", values::add);
+        assertEquals("expect empty after clear", Collections.emptyList(), values);
+    }
+
+    @Test
+    public void testForEachDescendantOrSelf() {
+        final PathTrie<String> trie = new PathTrie<>();
+        trie.put("/", "root");
+        trie.put("/foo", "foo");
+        trie.put("/foo/bar", "bar");
+        trie.put("/foo/bar/cat", "cat");
+        trie.put("/foobar", "foobar");
+        final List<String> values = new ArrayList<>();
+        trie.forEachDescendantOrSelf("/foo/bar", values::add);
+        assertEquals("expect self and descendants", Arrays.asList("bar", "cat"), values);
+        values.clear();
+        trie.forEachDescendantOrSelf("/foo/baz", values::add);
+        assertEquals("expect none for unknown path", Collections.emptyList(), values);
+        values.clear();
+        trie.forEachDescendantOrSelf("/", values::add);
+        assertEquals("expect all", 5, values.size());
+    }
+
+    @Test
+    public void testHasAncestorOrDescendantOrSelf() {
+        final PathTrie<String> trie = new PathTrie<>();
+        assertFalse("expect no descendant for empty trie", trie.hasDescendantOrSelf("/"));
+        trie.put("/foo/bar", "bar");
+        assertTrue("expect self", trie.hasAncestorOrSelf("/foo/bar"));
+        assertTrue("expect ancestor", trie.hasAncestorOrSelf("/foo/bar/cat"));
+        assertFalse("expect no ancestor", trie.hasAncestorOrSelf("/foo"));
+        assertTrue("expect descendant", trie.hasDescendantOrSelf("/foo"));
+        assertTrue("expect descendant of root", trie.hasDescendantOrSelf("/"));
+        assertFalse("expect no descendant", trie.hasDescendantOrSelf("/foo/bar/cat"));
+        assertFalse("expect no descendant of sibling", trie.hasDescendantOrSelf("/foo/baz"));
+    }
+}
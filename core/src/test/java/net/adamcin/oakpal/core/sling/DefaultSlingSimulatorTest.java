@@ -25,11 +25,14 @@ import net.adamcin.oakpal.api.SlingOpenable;
 import net.adamcin.oakpal.core.ErrorListener;
 import net.adamcin.oakpal.core.OakpalPlan;
 import net.adamcin.oakpal.testing.TestPackageUtil;
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.apache.jackrabbit.vault.packaging.Dependency;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackagingService;
 import org.apache.jackrabbit.vault.packaging.VaultPackage;
 import org.apache.sling.installer.api.InstallableResource;
 import org.jetbrains.annotations.NotNull;
@@ -44,11 +47,13 @@ import javax.jcr.ValueFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
@@ -73,14 +78,17 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class DefaultSlingSimulatorTest {
@@ -595,12 +603,9 @@ public class DefaultSlingSimulatorTest {
 
         JcrPackage jcrPackageFromOpen = mock(JcrPackage.class);
         when(jcrPackageFromOpen.getPackage()).thenReturn(vaultPackage);
-        JcrPackage jcrPackageFromUpload = mock(JcrPackage.class);
-        when(jcrPackageFromUpload.getPackage()).thenReturn(vaultPackage);
 
         JcrPackageManager packageManager = mock(JcrPackageManager.class);
         when(packageManager.open(argThat(nodeWithPath(packagePath)), eq(true))).thenReturn(jcrPackageFromOpen);
-        when(packageManager.upload(any(InputStream.class), eq(true), eq(true))).thenReturn(jcrPackageFromUpload);
 
         slingSimulator.setPackageManager(packageManager);
 
@@ -631,15 +636,95 @@ public class DefaultSlingSimulatorTest {
 
             Fun.ThrowingSupplier<JcrPackage> opened = slingSimulator.open(installable);
             assertNotNull("expect not null function", opened);
-            JcrPackage openedPackage = opened.tryGet();
-            assertEquals("open returned correct package", jcrPackageFromUpload, openedPackage);
 
             verify(packageManager, times(1)).open(argThat(nodeWithPath(packagePath)), eq(true));
-            verify(packageManager, times(1)).upload(any(InputStream.class), eq(true), eq(true));
             verifyNoMoreInteractions(packageManager);
         });
     }
 
+    @Test
+    public void testOpenEmbeddedPackage() throws Exception {
+        final File embeddedPackageFile = TestPackageUtil.prepareTestPackage("package_1.0.zip");
+        final String packagePath = "/apps/with-embedded/install/package_1.0.zip";
+        final File withEmbeddedPackage = TestPackageUtil.prepareTestPackageFromFolder("with-embedded-package.zip",
+                new File("target/test-classes/with-embedded-package"),
+                Collections.singletonMap("jcr_root" + packagePath, embeddedPackageFile));
+
+        new OakpalPlan.Builder(new URL("https://github.com/adamcin/oakpal"), null)
+                .withPreInstallUrls(Collections.singletonList(withEmbeddedPackage.toURI().toURL()))
+                .build().toOakMachineBuilder(null, getClass().getClassLoader())
+                .build().adminInitAndInspect(session -> {
+            final JcrPackageManager packageManager = spy(PackagingService.getPackageManager(session));
+            slingSimulator.setSession(session);
+            slingSimulator.setPackageManager(packageManager);
+
+            final PackageId embeddedId = PackageId.fromString("my_packages:package:1.0");
+            final EmbeddedPackageInstallable installable = new EmbeddedPackageInstallable(
+                    PackageId.fromString("com.test:base:1.0.0"), packagePath, embeddedId);
+            for (int i = 0; i < 2; i++) {
+                try (JcrPackage opened = slingSimulator.open(installable).tryGet()) {
+                    assertNotNull("expect package", opened);
+                    assertEquals("expect embedded id", embeddedId, opened.getPackage().getId());
+                    assertTrue("expect valid package", opened.isValid());
+                    try (InputStream expected = new FileInputStream(embeddedPackageFile);
+                         InputStream actual = opened.getData().getBinary().getStream()) {
+                        assertTrue("expect same package data", IOUtils.contentEquals(expected, actual));
+                    }
+                }
+            }
+            verify(packageManager, times(0)).upload(any(InputStream.class), anyBoolean(), anyBoolean());
+            verify(packageManager, times(1)).remove(any(JcrPackage.class));
+            verify(packageManager, times(0)).open(any(Node.class));
+        });
+    }
+
+    private static VaultPackage mockVaultPackage(final PackageId packageId, final Dependency... dependencies) {
+        VaultPackage vaultPackage = mock(VaultPackage.class);
+        when(vaultPackage.getId()).thenReturn(packageId);
+        when(vaultPackage.getDependencies()).thenReturn(dependencies);
+        return vaultPackage;
+    }
+
+    @Test
+    public void testShufflePackagesByDependency_cachedDependencies() throws Exception {
+        final JcrPackageManager packageManager = mock(JcrPackageManager.class);
+        slingSimulator.setPackageManager(packageManager);
+        final PackageId parentId = PackageId.fromString("com.test:parent:1.0");
+        final PackageId idA = PackageId.fromString("com.test:a:1.0");
+        final PackageId idB = PackageId.fromString("com.test:b:1.0");
+        final PackageId idC = PackageId.fromString("com.test:c:1.0");
+        assertEquals("expect id a", idA, slingSimulator.readPackageIdAndDependencies(mockVaultPackage(idA)));
+        slingSimulator.readPackageIdAndDependencies(mockVaultPackage(idB));
+        slingSimulator.readPackageIdAndDependencies(mockVaultPackage(idC, new Dependency(idA)));
+
+        final EmbeddedPackageInstallable installableA = new EmbeddedPackageInstallable(parentId, "/a.zip", idA);
+        final EmbeddedPackageInstallable installableB = new EmbeddedPackageInstallable(parentId, "/b.zip", idB);
+        final EmbeddedPackageInstallable installableC = new EmbeddedPackageInstallable(parentId, "/c.zip", idC);
+        slingSimulator.internalAddInstallable(installableB);
+        assertFalse("b is not required", slingSimulator.isRequiredByQueuedPackage(installableB));
+        slingSimulator.internalAddInstallable(installableC);
+        assertFalse("c is not required", slingSimulator.isRequiredByQueuedPackage(installableC));
+        slingSimulator.internalAddInstallable(installableA);
+        assertTrue("a is required by c", slingSimulator.isRequiredByQueuedPackage(installableA));
+
+        slingSimulator.shufflePackagesByDependency();
+        assertEquals("expect dependency order",
+                Arrays.asList(installableB, installableA, installableC),
+                new ArrayList<>(slingSimulator.getInstallables()));
+
+        final EmbeddedPackageInstallable replacementB = new EmbeddedPackageInstallable(
+                PackageId.fromString("com.test:other:1.0"), "/b.zip", idB);
+        slingSimulator.internalAddInstallable(replacementB);
+        assertEquals("expect replaced b at tail",
+                Arrays.asList(installableA, installableC, replacementB),
+                new ArrayList<>(slingSimulator.getInstallables()));
+        assertSame("dequeue a", installableA, slingSimulator.dequeueInstallable());
+        assertSame("dequeue c", installableC, slingSimulator.dequeueInstallable());
+        assertSame("dequeue b", replacementB, slingSimulator.dequeueInstallable());
+        assertNull("expect empty queue", slingSimulator.dequeueInstallable());
+        verifyZeroInteractions(packageManager);
+    }
+
     static class UnsupportedSlingOpenable implements SlingOpenable<Nothing> {
         private final PackageId parentId;
         private final String jcrPath;
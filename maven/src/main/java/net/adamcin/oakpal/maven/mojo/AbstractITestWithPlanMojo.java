@@ -21,13 +21,18 @@ import net.adamcin.oakpal.api.ProgressCheckFactory;
 import net.adamcin.oakpal.core.AbortedScanException;
 import net.adamcin.oakpal.core.CheckReport;
 import net.adamcin.oakpal.core.CheckSpec;
+import net.adamcin.oakpal.core.DedupFileBlobStore;
 import net.adamcin.oakpal.core.DefaultErrorListener;
 import net.adamcin.oakpal.core.FileBlobMemoryNodeStore;
 import net.adamcin.oakpal.core.ForcedRoot;
 import net.adamcin.oakpal.core.InstallHookPolicy;
 import net.adamcin.oakpal.core.JcrNs;
+import net.adamcin.oakpal.core.NodeTypeRegistryCache;
 import net.adamcin.oakpal.core.OakMachine;
+import net.adamcin.oakpal.core.OakpalPlan;
 import net.adamcin.oakpal.core.ReportMapper;
+import net.adamcin.oakpal.core.ScanResultCache;
+import net.adamcin.oakpal.core.SegmentTarScanNodeStore;
 import net.adamcin.oakpal.maven.component.JsonConverter;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -35,6 +40,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +54,11 @@ import java.util.Optional;
  */
 abstract class AbstractITestWithPlanMojo extends AbstractITestMojo implements PlanBuilderParams, MojoWithPlanParams {
 
+    /**
+     * Node type registrations are shared in memory by every execution of the plugin in the same build.
+     */
+    static final NodeTypeRegistryCache NODE_TYPE_REGISTRY_CACHE = new NodeTypeRegistryCache();
+
     /**
      * Specify a list of content-package artifacts to download and pre-install before the scanned packages.
      * <p>
@@ -334,6 +348,54 @@ abstract class AbstractITestWithPlanMojo extends AbstractITestMojo implements Pl
     @Parameter(defaultValue = "${project.build.directory}/oakpal-plugin/blobs")
     protected String blobStorePath;
 
+    /**
+     * Specify the maximum size in megabytes of the blob store, which is shared by every scan using the same
+     * {@code blobStorePath}. Least-recently-used blocks are evicted after each scan when the maximum is exceeded.
+     * Specify 0 to disable eviction.
+     *
+     * @since 2.2.3
+     */
+    @Parameter(property = "blobStoreMaxSize", defaultValue = "10240")
+    protected long blobStoreMaxSize = DedupFileBlobStore.DEFAULT_MAX_SIZE_MB;
+
+    /**
+     * Set to true to scan with a memory-mapped segment-tar node store in a temporary directory under
+     * {@code segmentStorePath}, which is deleted after each scan. This allows very large packages to be scanned in a
+     * fixed heap. Takes precedence over {@code storeBlobs}.
+     *
+     * @since 2.2.3
+     */
+    @Parameter(property = "segmentStore")
+    protected boolean segmentStore;
+
+    /**
+     * Specify a different parent directory for segment stores.
+     *
+     * @since 2.2.3
+     */
+    @Parameter(defaultValue = "${project.build.directory}/oakpal-plugin/segments")
+    protected String segmentStorePath;
+
+    /**
+     * Set to true to save the check reports of each scan in {@code scanCachePath}, keyed by a SHA-256 digest of the
+     * plan, the pre-install and repoinit files, the test-scope classpath, and the content of each scanned package, and
+     * to reuse the saved reports instead of scanning again when none of these inputs have changed. This is not an
+     * incremental scan: when any input has changed, even only the last package, every package is scanned again.
+     *
+     * @since 2.2.3
+     */
+    @Parameter(property = "cacheScanReports")
+    protected boolean cacheScanReports;
+
+    /**
+     * Specify a different directory for the {@code cacheScanReports} report cache. Choose a directory outside of the
+     * project build directory to retain the cache across {@code mvn clean}.
+     *
+     * @since 2.2.3
+     */
+    @Parameter(property = "scanCachePath", defaultValue = "${project.build.directory}/oakpal-plugin/scan-cache")
+    protected String scanCachePath;
+
     /**
      * Specify an inline repoinit script. This will be applied after all other state initialization parameters,
      * including {@code repoInitFiles}.
@@ -461,20 +523,82 @@ abstract class AbstractITestWithPlanMojo extends AbstractITestMojo implements Pl
         return runModes;
     }
 
+    ScanResultCache.Key getScanCacheKey(final @NotNull OakpalPlan plan, final @NotNull List<File> scanFiles)
+            throws IOException, URISyntaxException {
+        final ScanResultCache.Key key = ScanResultCache.key()
+                .withPlan(plan)
+                .withString(Boolean.toString(silenceAllSubpackages));
+        for (URL url : plan.getPreInstallUrls()) {
+            key.withContent(url);
+        }
+        for (URL url : plan.getRepoInitUrls()) {
+            key.withContent(url);
+        }
+        final CodeSource pluginSource = OakMachine.class.getProtectionDomain().getCodeSource();
+        if (pluginSource != null && "file".equals(pluginSource.getLocation().getProtocol())) {
+            key.withStamp(new File(pluginSource.getLocation().toURI()));
+        }
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                if ("file".equals(url.getProtocol())) {
+                    key.withStamp(new File(url.toURI()));
+                }
+            }
+        }
+        for (File scanFile : scanFiles) {
+            key.withPackage(scanFile);
+        }
+        return key;
+    }
+
     protected void performScan(final @NotNull List<File> scanFiles) throws MojoFailureException {
-        List<CheckReport> reports;
+        List<CheckReport> reports = null;
         try {
-
-            final OakMachine.Builder machineBuilder = buildPlan().toOakMachineBuilder(new DefaultErrorListener(),
-                    Thread.currentThread().getContextClassLoader());
-            if (storeBlobs && blobStorePath != null && !blobStorePath.isEmpty()) {
-                machineBuilder.withNodeStoreSupplier(() -> new FileBlobMemoryNodeStore(blobStorePath));
+            final OakpalPlan plan = buildPlan();
+            final ScanResultCache scanCache = cacheScanReports && scanCachePath != null && !scanCachePath.isEmpty()
+                    ? new ScanResultCache(new File(scanCachePath)) : null;
+            ScanResultCache.Key cacheKey = null;
+            if (scanCache != null) {
+                cacheKey = getScanCacheKey(plan, scanFiles);
+                reports = scanCache.load(cacheKey).orElse(null);
+                if (reports != null) {
+                    getLog().info("Plan and packages are unchanged since a previous scan. Reusing check reports.");
+                } else {
+                    final int changedIndex = ScanResultCache.getChangedIndex(scanCache.getLastPackageDigests(),
+                            cacheKey.getPackageDigests());
+                    if (changedIndex >= 0 && changedIndex < scanFiles.size()) {
+                        getLog().info("Scanning all packages. First changed package: "
+                                + scanFiles.get(changedIndex).getPath());
+                    }
+                }
             }
-            if (silenceAllSubpackages) {
-                machineBuilder.withSubpackageSilencer((subpackageId, parentId) -> true);
+
+            if (reports == null) {
+                final OakMachine.Builder machineBuilder = plan.toOakMachineBuilder(new DefaultErrorListener(),
+                        Thread.currentThread().getContextClassLoader())
+                        .withNodeTypeRegistryCache(NODE_TYPE_REGISTRY_CACHE);
+                if (segmentStore) {
+                    machineBuilder.withNodeStoreSupplier(SegmentTarScanNodeStore.supplier(
+                            segmentStorePath != null && !segmentStorePath.isEmpty()
+                                    ? new File(segmentStorePath) : null));
+                } else if (storeBlobs && blobStorePath != null && !blobStorePath.isEmpty()) {
+                    machineBuilder.withNodeStoreSupplier(() ->
+                            new FileBlobMemoryNodeStore(blobStorePath, blobStoreMaxSize));
+                }
+                if (silenceAllSubpackages) {
+                    machineBuilder.withSubpackageSilencer((subpackageId, parentId) -> true);
+                }
+                final OakMachine machine = machineBuilder.build();
+                reports = machine.scanPackages(scanFiles);
+                if (scanCache != null) {
+                    try {
+                        scanCache.save(cacheKey, reports);
+                    } catch (final IOException e) {
+                        getLog().warn("Failed to save check reports to scan cache: " + e.getMessage());
+                    }
+                }
             }
-            final OakMachine machine = machineBuilder.build();
-            reports = machine.scanPackages(scanFiles);
         } catch (AbortedScanException e) {
             String currentFilePath = e.getCurrentPackageFile()
                     .map(f -> "Failed package: " + f.getAbsolutePath()).orElse("");
@@ -32,6 +32,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -274,6 +275,44 @@ public class AbstractITestWithPlanMojoTest {
         assertTrue("blobStore has children", children.length > 0);
     }
 
+    @Test
+    public void testPerformScan_cacheScanReports() throws Exception {
+        final File testOutDir = new File(testOutBaseDir, "testPerformScan_cacheScanReports");
+        FileUtils.deleteDirectory(testOutDir);
+        testOutDir.mkdirs();
+        final File summaryFile = new File(testOutDir, "summary.json");
+        AbstractITestWithPlanMojo mojo = newMojo();
+        mojo.deferBuildFailure = true;
+        mojo.cacheScanReports = true;
+        mojo.scanCachePath = new File(testOutDir, "scanCache").getAbsolutePath();
+        mojo.summaryFile = summaryFile;
+        mojo.checks.add(CheckSpec.fromJson(obj()
+                .key("name", "failer")
+                .key("inlineScript", "function afterExtract(packageId){ oakpal.majorViolation(\"fail\", packageId);}")
+                .get()));
+        final File testPackage = TestPackageUtil.prepareTestPackage("tmp_foo_bar.zip");
+        final File otherPackage = TestPackageUtil.prepareTestPackage("subtest_with_content.zip");
+        final MockMojoLog log = (MockMojoLog) mojo.getLog();
+
+        mojo.performScan(Collections.singletonList(testPackage));
+        final List<CheckReport> scannedReports = ReportMapper.readReportsFromFile(summaryFile);
+        assertTrue("expect no reused reports",
+                log.none(entry -> entry.message.startsWith("Plan and packages are unchanged")));
+
+        mojo.performScan(Collections.singletonList(testPackage));
+        assertTrue("expect reused reports",
+                log.any(entry -> entry.message.startsWith("Plan and packages are unchanged")));
+        assertEquals("expect same reports", scannedReports, ReportMapper.readReportsFromFile(summaryFile));
+
+        mojo.performScan(Arrays.asList(testPackage, otherPackage));
+        assertTrue("expect changed package",
+                log.any(entry -> entry.message.endsWith("First changed package: " + otherPackage.getPath())));
+        final Optional<CheckReport> failerReport = ReportMapper.readReportsFromFile(summaryFile).stream()
+                .filter(report -> "failer".equals(report.getCheckName())).findFirst();
+        assertTrue("failer is present", failerReport.isPresent());
+        assertTrue("expect violations for the added package", failerReport.get().getViolations().size() > 1);
+    }
+
     @Test(expected = MojoFailureException.class)
     public void testPerformScan_writeSummaryFailure() throws Exception {
         final File testOutDir = new File(testOutBaseDir, "testPerformScan_writeSummaryFailure");